@@ -0,0 +1,46 @@
+package com.kramphub.datastore.benchmarks;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic entities shared by the benchmarks
+ */
+final class BenchmarkData {
+    private static final byte[] PAYLOAD = new byte[256];
+
+    private BenchmarkData() {
+    }
+
+    static BenchmarkEntity newEntity(int index) {
+        return new BenchmarkEntity(
+                "entity-" + index,
+                "name " + index,
+                "description of benchmark entity " + index,
+                "category-" + (index % 16),
+                (long) index,
+                index % 1000,
+                index * 0.25d,
+                index % 2 == 0,
+                Timestamp.ofTimeSecondsAndNanos(1_500_000_000L + index, 0),
+                Blob.copyFrom(PAYLOAD));
+    }
+
+    static Key newKey(KeyFactory keyFactory, int index) {
+        return keyFactory.newKey("entity-" + index);
+    }
+
+    static List<Entity> newEntities(KeyFactory keyFactory, int count) {
+        List<Entity> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entities.add(newEntity(i).toEntity(newKey(keyFactory, i)));
+        }
+        return entities;
+    }
+}
@@ -0,0 +1,86 @@
+package com.kramphub.datastore.benchmarks;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.mapping.DatastoreEntity;
+
+@DatastoreEntity(kind = BenchmarkKind.class)
+public class BenchmarkEntity extends BaseEntity {
+    private final String id;
+    private final String name;
+    private final String description;
+    private final String category;
+    private final Long quantity;
+    private final Integer stock;
+    private final Double price;
+    private final Boolean active;
+    private final Timestamp createdAt;
+    private final Blob payload;
+
+    public BenchmarkEntity(String id, String name, String description, String category, Long quantity, Integer stock,
+                           Double price, Boolean active, Timestamp createdAt, Blob payload) {
+        this.id = id;
+        this.name = name;
+        this.description = description;
+        this.category = category;
+        this.quantity = quantity;
+        this.stock = stock;
+        this.price = price;
+        this.active = active;
+        this.createdAt = createdAt;
+        this.payload = payload;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public Long getQuantity() {
+        return quantity;
+    }
+
+    public Integer getStock() {
+        return stock;
+    }
+
+    public Double getPrice() {
+        return price;
+    }
+
+    public Boolean getActive() {
+        return active;
+    }
+
+    public Timestamp getCreatedAt() {
+        return createdAt;
+    }
+
+    public Blob getPayload() {
+        return payload;
+    }
+
+    @Override
+    public Entity toEntity(Key key) {
+        return BenchmarkEntityMapper.INSTANCE.toEntity(this, key);
+    }
+
+    @Override
+    public String getKey() {
+        return getId();
+    }
+}
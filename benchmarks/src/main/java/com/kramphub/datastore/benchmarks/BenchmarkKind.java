@@ -0,0 +1,31 @@
+package com.kramphub.datastore.benchmarks;
+
+import com.kramphub.datastore.kind.BaseKind;
+
+public enum BenchmarkKind implements BaseKind {
+    ID("id"),
+    NAME("name"),
+    DESCRIPTION("description"),
+    CATEGORY("category"),
+    QUANTITY("quantity"),
+    STOCK("stock"),
+    PRICE("price"),
+    ACTIVE("active"),
+    CREATED_AT("createdAt"),
+    PAYLOAD("payload");
+
+    private final String value;
+
+    BenchmarkKind(String value) {
+        this.value = value;
+    }
+
+    public String value() {
+        return value;
+    }
+
+    @Override
+    public String getKindIdentifier() {
+        return "benchmark";
+    }
+}
@@ -0,0 +1,32 @@
+package com.kramphub.datastore.benchmarks;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.kramphub.datastore.exception.EntityNotFoundException;
+import com.kramphub.datastore.exception.EntityParseException;
+import com.kramphub.datastore.exception.InvalidEntityException;
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.repository.DatastoreRepository;
+import com.kramphub.datastore.repository.RepositoryOptions;
+import org.slf4j.helpers.NOPLogger;
+
+public class BenchmarkRepository extends DatastoreRepository<BenchmarkEntity> {
+
+    public BenchmarkRepository(Datastore datastore, RepositoryOptions options) {
+        super(datastore, NOPLogger.NOP_LOGGER, 5000, options);
+    }
+
+    @Override
+    public BaseKind getKind() {
+        return BenchmarkKind.ID;
+    }
+
+    @Override
+    protected BenchmarkEntity map(Entity entity) throws InvalidEntityException {
+        try {
+            return BenchmarkEntityMapper.INSTANCE.map(entity);
+        } catch (EntityNotFoundException | EntityParseException e) {
+            throw new InvalidEntityException(e.getMessage());
+        }
+    }
+}
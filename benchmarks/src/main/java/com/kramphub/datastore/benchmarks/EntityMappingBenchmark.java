@@ -0,0 +1,96 @@
+package com.kramphub.datastore.benchmarks;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.kramphub.datastore.convert.EntityAccessor;
+import com.kramphub.datastore.convert.EntityReader;
+import org.openjdk.jmh.annotations.*;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ways of mapping a ten property entity: the tryGet methods validating on every call,
+ * the validate once EntityAccessor view and the generated mapper, plus hand written against generated toEntity.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityMappingBenchmark {
+    private EntityReader entityReader;
+    private BenchmarkEntity source;
+    private Key key;
+    private Entity entity;
+
+    @Setup
+    public void setUp() {
+        entityReader = new EntityReader(NOPLogger.NOP_LOGGER);
+        source = BenchmarkData.newEntity(42);
+        key = BenchmarkData.newKey(new KeyFactory("benchmarks").setKind(BenchmarkKind.ID.getKindIdentifier()), 42);
+        entity = source.toEntity(key);
+    }
+
+    @Benchmark
+    public BenchmarkEntity mapWithReader() {
+        return new BenchmarkEntity(
+                entityReader.tryGetString(entity, BenchmarkKind.ID),
+                entityReader.tryGetString(entity, BenchmarkKind.NAME),
+                entityReader.tryGetString(entity, BenchmarkKind.DESCRIPTION),
+                entityReader.tryGetString(entity, BenchmarkKind.CATEGORY),
+                entityReader.tryGetLong(entity, BenchmarkKind.QUANTITY),
+                entityReader.tryGetInteger(entity, BenchmarkKind.STOCK),
+                entityReader.tryGetDouble(entity, BenchmarkKind.PRICE),
+                entityReader.tryGetBoolean(entity, BenchmarkKind.ACTIVE),
+                entityReader.tryGetTimestamp(entity, BenchmarkKind.CREATED_AT),
+                entityReader.tryGetBlob(entity, BenchmarkKind.PAYLOAD));
+    }
+
+    @Benchmark
+    public BenchmarkEntity mapWithAccessor() {
+        return entityReader.read(entity, this::map);
+    }
+
+    @Benchmark
+    public BenchmarkEntity mapWithGeneratedMapper() {
+        return BenchmarkEntityMapper.INSTANCE.map(entity);
+    }
+
+    @Benchmark
+    public Entity toEntityHandWritten() {
+        return Entity.newBuilder(key)
+                .set(BenchmarkKind.ID.value(), source.getId())
+                .set(BenchmarkKind.NAME.value(), source.getName())
+                .set(BenchmarkKind.DESCRIPTION.value(), source.getDescription())
+                .set(BenchmarkKind.CATEGORY.value(), source.getCategory())
+                .set(BenchmarkKind.QUANTITY.value(), source.getQuantity())
+                .set(BenchmarkKind.STOCK.value(), source.getStock())
+                .set(BenchmarkKind.PRICE.value(), source.getPrice())
+                .set(BenchmarkKind.ACTIVE.value(), source.getActive())
+                .set(BenchmarkKind.CREATED_AT.value(), source.getCreatedAt())
+                .set(BenchmarkKind.PAYLOAD.value(), source.getPayload())
+                .build();
+    }
+
+    @Benchmark
+    public Entity toEntityGenerated() {
+        return BenchmarkEntityMapper.INSTANCE.toEntity(source, key);
+    }
+
+    private BenchmarkEntity map(EntityAccessor accessor) {
+        return new BenchmarkEntity(
+                accessor.getString(BenchmarkKind.ID),
+                accessor.getString(BenchmarkKind.NAME),
+                accessor.getString(BenchmarkKind.DESCRIPTION),
+                accessor.getString(BenchmarkKind.CATEGORY),
+                accessor.getLong(BenchmarkKind.QUANTITY),
+                accessor.getInteger(BenchmarkKind.STOCK),
+                accessor.getDouble(BenchmarkKind.PRICE),
+                accessor.getBoolean(BenchmarkKind.ACTIVE),
+                accessor.getTimestamp(BenchmarkKind.CREATED_AT),
+                accessor.getBlob(BenchmarkKind.PAYLOAD));
+    }
+}
@@ -0,0 +1,103 @@
+package com.kramphub.datastore.benchmarks;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.kramphub.datastore.convert.LargeValueCodec;
+import com.kramphub.datastore.repository.RepositoryOptions;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures encoding and decoding of large values with the default threshold and inline size, for compressible
+ * JSON text and incompressible random bytes. Values from 1 MiB on are split into chunk entities.
+ * The rawBytes and storedBytes counters report the bytes saved per encoded value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LargeValueCodecBenchmark {
+    private static final String PROPERTY = "payload";
+
+    @Param({"json", "random"})
+    public String content;
+
+    @Param({"16384", "1048576", "4194304"})
+    public int size;
+
+    private LargeValueCodec codec;
+    private Key owner;
+    private byte[] data;
+    private Entity entity;
+    private Map<Key, Entity> chunks;
+
+    @Setup
+    public void setUp() {
+        codec = new LargeValueCodec(RepositoryOptions.DEFAULT_LARGE_VALUE_THRESHOLD, RepositoryOptions.DEFAULT_LARGE_VALUE_MAX_INLINE_BYTES);
+        owner = BenchmarkData.newKey(new KeyFactory("benchmarks").setKind(BenchmarkKind.ID.getKindIdentifier()), 42);
+        data = "json".equals(content) ? json(size) : random(size);
+
+        LargeValueCodec.Encoded encoded = codec.encode(owner, PROPERTY, data);
+        entity = Entity.newBuilder(owner).set(PROPERTY, encoded.getValue()).build();
+        chunks = new HashMap<>();
+        for (Entity chunk : encoded.getChunks()) {
+            chunks.put(chunk.getKey(), chunk);
+        }
+    }
+
+    @Benchmark
+    public LargeValueCodec.Encoded encode(Bytes bytes) {
+        LargeValueCodec.Encoded encoded = codec.encode(owner, PROPERTY, data);
+        bytes.rawBytes += encoded.getRawBytes();
+        bytes.storedBytes += encoded.getStoredBytes();
+        return encoded;
+    }
+
+    @Benchmark
+    public byte[] decode() {
+        return LargeValueCodec.decode(entity, PROPERTY, chunks);
+    }
+
+    /**
+     * Bytes before and after encoding, summed per iteration
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bytes {
+        public long rawBytes;
+        public long storedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawBytes = 0;
+            storedBytes = 0;
+        }
+    }
+
+    private static byte[] json(int size) {
+        StringBuilder json = new StringBuilder(size + 128).append('[');
+        for (int i = 0; json.length() < size; i++) {
+            BenchmarkEntity entity = BenchmarkData.newEntity(i);
+            json.append("{\"id\":\"").append(entity.getId())
+                    .append("\",\"name\":\"").append(entity.getName())
+                    .append("\",\"category\":\"").append(entity.getCategory())
+                    .append("\",\"quantity\":").append(entity.getQuantity())
+                    .append("},");
+        }
+        return json.substring(0, size).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] random(int size) {
+        byte[] bytes = new byte[size];
+        new Random(42).nextBytes(bytes);
+        return bytes;
+    }
+}
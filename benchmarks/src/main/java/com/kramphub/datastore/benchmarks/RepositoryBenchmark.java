@@ -0,0 +1,103 @@
+package com.kramphub.datastore.benchmarks;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.kramphub.datastore.query.LookupResult;
+import com.kramphub.datastore.query.QueryPage;
+import com.kramphub.datastore.repository.RepositoryOptions;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the repository paths on top of the in-memory Datastore: query result parsing, paging,
+ * batch writes with the id conversion, and single and batched lookups with and without the entity cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RepositoryBenchmark {
+    private static final int ENTITY_COUNT = 2000;
+    private static final int WRITE_COUNT = 500;
+    private static final int LOOKUP_COUNT = 200;
+
+    @Param({"100", "500"})
+    public int pageSize;
+
+    private BenchmarkRepository repository;
+    private BenchmarkRepository cachedRepository;
+    private List<Entity> writes;
+    private List<Key> lookupKeys;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        InMemoryDatastore datastore = new InMemoryDatastore();
+        repository = new BenchmarkRepository(datastore, RepositoryOptions.newBuilder()
+                .setQueryPageSize(pageSize)
+                .build());
+        cachedRepository = new BenchmarkRepository(datastore, RepositoryOptions.newBuilder()
+                .setQueryPageSize(pageSize)
+                .setEntityCacheSize(ENTITY_COUNT)
+                .build());
+
+        repository.upsert(BenchmarkData.newEntities(datastore.newKeyFactory().setKind(BenchmarkKind.ID.getKindIdentifier()), ENTITY_COUNT));
+        writes = new ArrayList<>(BenchmarkData.newEntities(datastore.newKeyFactory().setKind(BenchmarkKind.ID.getKindIdentifier()), WRITE_COUNT));
+        lookupKeys = new ArrayList<>(LOOKUP_COUNT);
+        for (Entity entity : writes.subList(0, LOOKUP_COUNT)) {
+            lookupKeys.add(entity.getKey());
+        }
+        cachedRepository.findByKeys(lookupKeys);
+    }
+
+    @Benchmark
+    public List<BenchmarkEntity> executeQuery() {
+        return repository.executeQuery(repository.getQueryBuilder().build());
+    }
+
+    @Benchmark
+    public long stream() {
+        return repository.stream().count();
+    }
+
+    @Benchmark
+    public QueryPage<BenchmarkEntity> fetchPage() {
+        return repository.fetchPage(repository.getQueryBuilder(pageSize).build(), null);
+    }
+
+    @Benchmark
+    public List<String> upsertBatch() {
+        return repository.upsert(writes);
+    }
+
+    @Benchmark
+    public BenchmarkEntity findById() {
+        return repository.findById(nextId());
+    }
+
+    @Benchmark
+    public BenchmarkEntity findByIdCached() {
+        return cachedRepository.findById(nextId());
+    }
+
+    @Benchmark
+    public LookupResult<BenchmarkEntity> findByKeys() {
+        return repository.findByKeys(lookupKeys);
+    }
+
+    @Benchmark
+    public LookupResult<BenchmarkEntity> findByKeysCached() {
+        return cachedRepository.findByKeys(lookupKeys);
+    }
+
+    private String nextId() {
+        next = (next + 1) % LOOKUP_COUNT;
+        return "entity-" + next;
+    }
+}
@@ -28,8 +28,6 @@ public class ExampleService {
         Key key = exampleRepository.createKey(entity);
         exampleRepository.upsert(entity.toEntity(key));
 
-        TimeUnit.SECONDS.sleep(10);
-
         try {
             ExampleEntity entityFromDatestore = exampleRepository.findById(entity.getKey());
             log.info("Saved status -> " + String.valueOf(entityFromDatestore != null));
@@ -38,6 +36,9 @@ public class ExampleService {
             log.error("Saved status -> false", e);
         }
 
+        // the lookup by key above is strongly consistent, the queries below may not see the write yet on Datastore in legacy mode
+        TimeUnit.SECONDS.sleep(10);
+
         log.info("All entities of kind -> {}", exampleRepository.findAll().toString());
         log.info("Removing all entities of kind -> {}", exampleRepository.deleteAll());
         log.info("All entities left of kind -> {}", exampleRepository.findAll().toString());
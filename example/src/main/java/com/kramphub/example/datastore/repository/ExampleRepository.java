@@ -2,12 +2,15 @@ package com.kramphub.example.datastore.repository;
 
 import com.google.cloud.datastore.Datastore;
 import com.google.cloud.datastore.Entity;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
 import com.kramphub.datastore.exception.EntityNotFoundException;
 import com.kramphub.datastore.exception.EntityParseException;
 import com.kramphub.datastore.exception.InvalidEntityException;
 import com.kramphub.datastore.kind.BaseKind;
 import com.kramphub.datastore.repository.DatastoreRepository;
+import com.kramphub.datastore.repository.RepositoryOptions;
 import com.kramphub.example.datastore.entity.ExampleEntity;
+import com.kramphub.example.datastore.entity.ExampleEntityMapper;
 import com.kramphub.example.datastore.kind.ExampleKind;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
@@ -17,7 +20,9 @@ import org.springframework.stereotype.Component;
 public class ExampleRepository extends DatastoreRepository<ExampleEntity> {
 
     public ExampleRepository(Datastore datastore) {
-        super(datastore, log, 100);
+        super(datastore, log, 100, RepositoryOptions.newBuilder()
+                .setWriteInitialRate(WriteRateLimiter.RAMP_UP_INITIAL_RATE)
+                .build());
     }
 
     @Override
@@ -28,10 +33,7 @@ public class ExampleRepository extends DatastoreRepository<ExampleEntity> {
     @Override
     protected ExampleEntity map(Entity entity) throws InvalidEntityException {
         try {
-            return ExampleEntity.builder()
-                    .id(entityReader.tryGetString(entity, ExampleKind.ID))
-                    .field(entityReader.tryGetString(entity, ExampleKind.FIELD))
-                    .build();
+            return ExampleEntityMapper.INSTANCE.map(entity);
         } catch (EntityNotFoundException | EntityParseException e) {
             throw new InvalidEntityException(e.getMessage());
         }
@@ -0,0 +1,141 @@
+package com.kramphub.datastore.metrics.micrometer;
+
+import com.kramphub.datastore.metrics.RepositoryMetrics;
+import com.kramphub.datastore.metrics.RepositoryOperation;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Publishes repository metrics to a Micrometer registry, tagged by kind and operation:
+ * <ul>
+ * <li>datastore.repository.operation timer</li>
+ * <li>datastore.repository.entities summary of entities read or written per operation</li>
+ * <li>datastore.repository.batch.size and datastore.repository.batch.bytes summaries per commit batch</li>
+ * <li>datastore.repository.retries summary of retries per operation, e.g. of transactions aborted by contention</li>
+ * <li>datastore.repository.errors counter, additionally tagged by exception class</li>
+ * </ul>
+ * Meters are registered on first use and kept per kind and operation, error counters also per exception class,
+ * so recording does not allocate after warm up.
+ */
+@SuppressWarnings("unused")
+public class MicrometerRepositoryMetrics implements RepositoryMetrics {
+    public static final String OPERATION_TIMER = "datastore.repository.operation";
+    public static final String ENTITIES_SUMMARY = "datastore.repository.entities";
+    public static final String BATCH_SIZE_SUMMARY = "datastore.repository.batch.size";
+    public static final String BATCH_BYTES_SUMMARY = "datastore.repository.batch.bytes";
+    public static final String RETRIES_SUMMARY = "datastore.repository.retries";
+    public static final String ERRORS_COUNTER = "datastore.repository.errors";
+    private static final String KIND_TAG = "kind";
+    private static final String OPERATION_TAG = "operation";
+    private static final String EXCEPTION_TAG = "exception";
+
+    private final MeterRegistry registry;
+    private final ConcurrentMap<String, AtomicReferenceArray<OperationMeters>> meters = new ConcurrentHashMap<>();
+
+    public MicrometerRepositoryMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void recordOperation(String kind, RepositoryOperation operation, long durationNanos, int entities) {
+        OperationMeters operationMeters = meters(kind, operation);
+        operationMeters.timer.record(durationNanos, TimeUnit.NANOSECONDS);
+        operationMeters.entities.record(entities);
+    }
+
+    @Override
+    public void recordBatch(String kind, RepositoryOperation operation, int entities, long bytes) {
+        OperationMeters operationMeters = meters(kind, operation);
+        operationMeters.batchSize.record(entities);
+        operationMeters.batchBytes.record(bytes);
+    }
+
+    @Override
+    public void recordRetries(String kind, RepositoryOperation operation, int retries) {
+        meters(kind, operation).retries.record(retries);
+    }
+
+    @Override
+    public void recordError(String kind, RepositoryOperation operation, Throwable error) {
+        meters(kind, operation).errors(error.getClass()).increment();
+    }
+
+    private OperationMeters meters(String kind, RepositoryOperation operation) {
+        AtomicReferenceArray<OperationMeters> kindMeters = meters.get(kind);
+        if (kindMeters == null) {
+            kindMeters = new AtomicReferenceArray<>(RepositoryOperation.values().length);
+            AtomicReferenceArray<OperationMeters> existing = meters.putIfAbsent(kind, kindMeters);
+            if (existing != null) {
+                kindMeters = existing;
+            }
+        }
+        OperationMeters operationMeters = kindMeters.get(operation.ordinal());
+        if (operationMeters == null) {
+            // the registry returns the same meters for the same tags, so a race only registers them twice
+            operationMeters = new OperationMeters(registry, kind, operation);
+            kindMeters.set(operation.ordinal(), operationMeters);
+        }
+        return operationMeters;
+    }
+
+    private static final class OperationMeters {
+        private final MeterRegistry registry;
+        private final String kind;
+        private final RepositoryOperation operation;
+        private final ConcurrentMap<Class<?>, Counter> errors = new ConcurrentHashMap<>();
+        private final Timer timer;
+        private final DistributionSummary entities;
+        private final DistributionSummary batchSize;
+        private final DistributionSummary batchBytes;
+        private final DistributionSummary retries;
+
+        private OperationMeters(MeterRegistry registry, String kind, RepositoryOperation operation) {
+            this.registry = registry;
+            this.kind = kind;
+            this.operation = operation;
+            this.timer = Timer.builder(OPERATION_TIMER)
+                    .tag(KIND_TAG, kind)
+                    .tag(OPERATION_TAG, operation.value())
+                    .register(registry);
+            this.entities = DistributionSummary.builder(ENTITIES_SUMMARY)
+                    .baseUnit("entities")
+                    .tag(KIND_TAG, kind)
+                    .tag(OPERATION_TAG, operation.value())
+                    .register(registry);
+            this.batchSize = DistributionSummary.builder(BATCH_SIZE_SUMMARY)
+                    .baseUnit("entities")
+                    .tag(KIND_TAG, kind)
+                    .tag(OPERATION_TAG, operation.value())
+                    .register(registry);
+            this.batchBytes = DistributionSummary.builder(BATCH_BYTES_SUMMARY)
+                    .baseUnit("bytes")
+                    .tag(KIND_TAG, kind)
+                    .tag(OPERATION_TAG, operation.value())
+                    .register(registry);
+            this.retries = DistributionSummary.builder(RETRIES_SUMMARY)
+                    .baseUnit("retries")
+                    .tag(KIND_TAG, kind)
+                    .tag(OPERATION_TAG, operation.value())
+                    .register(registry);
+        }
+
+        private Counter errors(Class<?> exceptionClass) {
+            Counter counter = errors.get(exceptionClass);
+            if (counter == null) {
+                counter = errors.computeIfAbsent(exceptionClass, key -> Counter.builder(ERRORS_COUNTER)
+                        .tag(KIND_TAG, kind)
+                        .tag(OPERATION_TAG, operation.value())
+                        .tag(EXCEPTION_TAG, key.getSimpleName())
+                        .register(registry));
+            }
+            return counter;
+        }
+    }
+}
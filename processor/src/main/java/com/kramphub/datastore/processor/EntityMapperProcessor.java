@@ -0,0 +1,249 @@
+package com.kramphub.datastore.processor;
+
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.mapping.DatastoreEntity;
+import com.kramphub.datastore.mapping.DatastoreIgnore;
+import com.kramphub.datastore.mapping.DatastoreProperty;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates an EntityMapper for every class annotated with DatastoreEntity.
+ * The generated mapper is straight line code without reflection: one accessor call per field,
+ * property names resolved from the kind enum once in static fields.
+ */
+@SupportedAnnotationTypes("com.kramphub.datastore.mapping.DatastoreEntity")
+public class EntityMapperProcessor extends AbstractProcessor {
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(DatastoreEntity.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error(element, "@DatastoreEntity is only supported on classes");
+                continue;
+            }
+            TypeElement entity = (TypeElement) element;
+            TypeElement kind = getKind(entity);
+            if (kind == null) {
+                continue;
+            }
+            List<MappedField> fields = getFields(entity, kind);
+            if (fields == null) {
+                continue;
+            }
+            try {
+                write(entity, kind, fields);
+            } catch (IOException e) {
+                error(entity, "Unable to write mapper: " + e.getMessage());
+            }
+        }
+        return true;
+    }
+
+    private TypeElement getKind(TypeElement entity) {
+        for (AnnotationMirror annotation : entity.getAnnotationMirrors()) {
+            if (!((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(DatastoreEntity.class.getName())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> value : annotation.getElementValues().entrySet()) {
+                if (value.getKey().getSimpleName().contentEquals("kind")) {
+                    TypeElement kind = (TypeElement) ((DeclaredType) value.getValue().getValue()).asElement();
+                    TypeMirror baseKind = processingEnv.getElementUtils().getTypeElement(BaseKind.class.getName()).asType();
+                    if (kind.getKind() != ElementKind.ENUM || !processingEnv.getTypeUtils().isAssignable(kind.asType(), baseKind)) {
+                        error(entity, "kind of @DatastoreEntity must be an enum implementing BaseKind");
+                        return null;
+                    }
+                    return kind;
+                }
+            }
+        }
+        return null;
+    }
+
+    private List<MappedField> getFields(TypeElement entity, TypeElement kind) {
+        Set<String> constants = new HashSet<>();
+        for (Element element : kind.getEnclosedElements()) {
+            if (element.getKind() == ElementKind.ENUM_CONSTANT) {
+                constants.add(element.getSimpleName().toString());
+            }
+        }
+
+        List<MappedField> fields = new ArrayList<>();
+        Set<String> mappedConstants = new HashSet<>();
+        boolean valid = true;
+        for (VariableElement field : ElementFilter.fieldsIn(entity.getEnclosedElements())) {
+            if (field.getModifiers().contains(Modifier.STATIC)) {
+                continue;
+            }
+            String name = field.getSimpleName().toString();
+            PropertyType type = PropertyType.of(field.asType());
+            boolean ignored = field.getAnnotation(DatastoreIgnore.class) != null;
+            if (type == null && !ignored) {
+                error(field, "Unsupported field type " + field.asType() + ", use @DatastoreIgnore and map it by hand");
+                valid = false;
+                continue;
+            }
+            DatastoreProperty property = field.getAnnotation(DatastoreProperty.class);
+            String constant = property != null ? property.value() : toUpperSnakeCase(name);
+            if (!ignored && !constants.contains(constant)) {
+                error(field, "No constant " + constant + " in " + kind.getQualifiedName() + " for field " + name);
+                valid = false;
+                continue;
+            }
+            if (!ignored && !mappedConstants.add(constant)) {
+                error(field, "Constant " + constant + " is mapped by more than one field");
+                valid = false;
+                continue;
+            }
+            fields.add(new MappedField(name, field.asType(), type, constant, ignored));
+        }
+        return valid ? fields : null;
+    }
+
+    private void write(TypeElement entity, TypeElement kind, List<MappedField> fields) throws IOException {
+        String packageName = processingEnv.getElementUtils().getPackageOf(entity).getQualifiedName().toString();
+        String entityName = entity.getQualifiedName().toString();
+        String mapperName = entity.getSimpleName() + "Mapper";
+        String kindName = kind.getQualifiedName().toString();
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n")
+                .append(" * Generated by ").append(EntityMapperProcessor.class.getSimpleName())
+                .append(" from ").append(entity.getSimpleName()).append(" and ").append(kind.getSimpleName()).append(", do not edit.\n")
+                .append(" */\n")
+                .append("public final class ").append(mapperName)
+                .append(" implements com.kramphub.datastore.mapping.EntityMapper<").append(entityName).append("> {\n")
+                .append("    public static final ").append(mapperName).append(" INSTANCE = new ").append(mapperName).append("();\n\n");
+
+        List<MappedField> mapped = new ArrayList<>();
+        for (MappedField field : fields) {
+            if (!field.ignored) {
+                mapped.add(field);
+                source.append("    private static final String ").append(field.propertyField())
+                        .append(" = ").append(kindName).append('.').append(field.constant).append(".value();\n");
+            }
+        }
+        source.append("    private static final String[] PROPERTIES = {");
+        for (int i = 0; i < mapped.size(); i++) {
+            source.append(i == 0 ? "" : ", ").append(mapped.get(i).propertyField());
+        }
+        source.append("};\n")
+                .append("    private static final com.google.cloud.datastore.ValueType[] TYPES = {");
+        for (int i = 0; i < mapped.size(); i++) {
+            source.append(i == 0 ? "" : ", ").append("com.google.cloud.datastore.ValueType.").append(mapped.get(i).type.getValueType());
+        }
+        source.append("};\n\n")
+                .append("    private ").append(mapperName).append("() {\n")
+                .append("    }\n\n");
+
+        source.append("    @Override\n")
+                .append("    public ").append(entityName).append(" map(com.google.cloud.datastore.Entity entity) {\n")
+                .append("        if (entity == null || entity.getKey() == null) {\n")
+                .append("            throw new com.kramphub.datastore.exception.EntityNotFoundException(\"").append(entity.getSimpleName()).append("\");\n")
+                .append("        }\n")
+                .append("        try {\n")
+                .append("            return new ").append(entityName).append("(");
+        for (int i = 0; i < fields.size(); i++) {
+            MappedField field = fields.get(i);
+            source.append(i == 0 ? "\n" : ",\n").append("                    ");
+            if (field.ignored) {
+                source.append(field.defaultValue());
+            } else {
+                source.append("com.kramphub.datastore.mapping.EntityMappers.").append(field.type.getGetter())
+                        .append("(entity, ").append(field.propertyField()).append(')');
+            }
+        }
+        source.append(");\n")
+                .append("        } catch (ClassCastException | ArithmeticException e) {\n")
+                .append("            throw com.kramphub.datastore.mapping.EntityMappers.parseException(entity, PROPERTIES, TYPES, e);\n")
+                .append("        }\n")
+                .append("    }\n\n");
+
+        source.append("    @Override\n")
+                .append("    public com.google.cloud.datastore.Entity toEntity(").append(entityName)
+                .append(" source, com.google.cloud.datastore.Key key) {\n")
+                .append("        com.google.cloud.datastore.Entity.Builder builder = com.google.cloud.datastore.Entity.newBuilder(key);\n");
+        for (MappedField field : mapped) {
+            source.append("        com.kramphub.datastore.mapping.EntityMappers.set(builder, ").append(field.propertyField())
+                    .append(", source.").append(field.getterName()).append("());\n");
+        }
+        source.append("        return builder.build();\n")
+                .append("    }\n")
+                .append("}\n");
+
+        String qualifiedMapperName = packageName.isEmpty() ? mapperName : packageName + "." + mapperName;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedMapperName, entity);
+        try (Writer writer = file.openWriter()) {
+            writer.write(source.toString());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    static String toUpperSnakeCase(String name) {
+        StringBuilder result = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0 && !Character.isUpperCase(name.charAt(i - 1))) {
+                result.append('_');
+            }
+            result.append(Character.toUpperCase(c));
+        }
+        return result.toString();
+    }
+
+    private static class MappedField {
+        private final String name;
+        private final TypeMirror typeMirror;
+        private final PropertyType type;
+        private final String constant;
+        private final boolean ignored;
+
+        private MappedField(String name, TypeMirror typeMirror, PropertyType type, String constant, boolean ignored) {
+            this.name = name;
+            this.typeMirror = typeMirror;
+            this.type = type;
+            this.constant = constant;
+            this.ignored = ignored;
+        }
+
+        private String propertyField() {
+            return "PROPERTY_" + constant;
+        }
+
+        private String defaultValue() {
+            if (typeMirror.getKind() == TypeKind.BOOLEAN) {
+                return "false";
+            }
+            return typeMirror.getKind().isPrimitive() ? "(" + typeMirror + ") 0" : "(" + typeMirror + ") null";
+        }
+
+        private String getterName() {
+            String prefix = type == PropertyType.BOOLEAN_VALUE ? "is" : "get";
+            return prefix + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.kramphub.datastore.processor;
+
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeMirror;
+import java.util.List;
+
+/**
+ * Field types supported by generated mappers with their EntityMappers getter and Datastore value type
+ */
+enum PropertyType {
+    STRING("java.lang.String", "getString", "STRING"),
+    LONG("java.lang.Long", "getLong", "LONG"),
+    LONG_VALUE("long", "getLongValue", "LONG"),
+    INTEGER("java.lang.Integer", "getInteger", "LONG"),
+    INT_VALUE("int", "getIntValue", "LONG"),
+    DOUBLE("java.lang.Double", "getDouble", "DOUBLE"),
+    DOUBLE_VALUE("double", "getDoubleValue", "DOUBLE"),
+    BOOLEAN("java.lang.Boolean", "getBoolean", "BOOLEAN"),
+    BOOLEAN_VALUE("boolean", "getBooleanValue", "BOOLEAN"),
+    TIMESTAMP("com.google.cloud.Timestamp", "getTimestamp", "TIMESTAMP"),
+    INSTANT("java.time.Instant", "getInstant", "TIMESTAMP"),
+    LAT_LNG("com.google.cloud.datastore.LatLng", "getLatLng", "LAT_LNG"),
+    BLOB("com.google.cloud.datastore.Blob", "getBlob", "BLOB"),
+    BYTE_BUFFER("java.nio.ByteBuffer", "getBlobAsByteBuffer", "BLOB"),
+    KEY("com.google.cloud.datastore.Key", "getKey", "KEY"),
+    LAZY_STRING(PropertyType.LAZY + "<java.lang.String>", "getLazyString", "STRING"),
+    LAZY_BLOB(PropertyType.LAZY + "<com.google.cloud.datastore.Blob>", "getLazyBlob", "BLOB"),
+    LAZY_LIST(PropertyType.LAZY + "<java.util.List>", "getLazyList", "LIST"),
+    LAZY_ENTITY(PropertyType.LAZY + "<com.google.cloud.datastore.FullEntity>", "getLazyEntity", "ENTITY");
+
+    private static final String LAZY = "com.kramphub.datastore.mapping.Lazy";
+
+    private final String typeName;
+    private final String getter;
+    private final String valueType;
+
+    PropertyType(String typeName, String getter, String valueType) {
+        this.typeName = typeName;
+        this.getter = getter;
+        this.valueType = valueType;
+    }
+
+    String getTypeName() {
+        return typeName;
+    }
+
+    String getGetter() {
+        return getter;
+    }
+
+    String getValueType() {
+        return valueType;
+    }
+
+    /**
+     * @param type field type
+     * @return matching property type, null if the type is not supported
+     */
+    static PropertyType of(TypeMirror type) {
+        String name = type.getKind().isPrimitive() ? type.toString() : qualifiedName(type);
+        if (LAZY.equals(name)) {
+            // lazy fields are matched by their value type, e.g. Lazy<java.util.List> for Lazy<List<String>>
+            List<? extends TypeMirror> arguments = ((DeclaredType) type).getTypeArguments();
+            name = arguments.size() == 1 ? LAZY + "<" + qualifiedName(arguments.get(0)) + ">" : null;
+        }
+        for (PropertyType propertyType : values()) {
+            if (propertyType.typeName.equals(name)) {
+                return propertyType;
+            }
+        }
+        return null;
+    }
+
+    private static String qualifiedName(TypeMirror type) {
+        return type instanceof DeclaredType ? ((TypeElement) ((DeclaredType) type).asElement()).getQualifiedName().toString() : null;
+    }
+}
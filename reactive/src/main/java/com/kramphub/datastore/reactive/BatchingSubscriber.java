@@ -0,0 +1,166 @@
+package com.kramphub.datastore.reactive;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Collects the published values into batches and writes each batch on the executor.
+ * A batch is requested only after the previous one is written, so at most one batch is held
+ * and a slow Datastore slows down the publisher instead of piling up values.
+ *
+ * @param <V> written value, Entity or Key
+ */
+class BatchingSubscriber<V> implements Subscriber<V> {
+    private final int batchSize;
+    private final Consumer<List<V>> write;
+    private final Executor executor;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    // guarded by this, signals and write completions arrive on different threads
+    private Subscription subscription;
+    private List<V> batch;
+    private long written;
+    private boolean writing;
+    private boolean completed;
+
+    /**
+     * @param batchSize values per write
+     * @param write     writes a batch, called on the executor
+     * @param executor
+     */
+    BatchingSubscriber(int batchSize, Consumer<List<V>> write, Executor executor) {
+        this.batchSize = batchSize;
+        this.write = write;
+        this.executor = executor;
+        this.batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * @return completed with the number of written values once the publisher completed and all batches are written
+     */
+    CompletableFuture<Long> result() {
+        return result;
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        synchronized (this) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+        }
+        subscription.request(batchSize);
+    }
+
+    @Override
+    public void onNext(V value) {
+        List<V> full = null;
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            batch.add(value);
+            if (batch.size() >= batchSize) {
+                full = takeBatch();
+            }
+        }
+        if (full != null) {
+            write(full);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this) {
+            completed = true;
+            batch = new ArrayList<>(0);
+        }
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        List<V> rest;
+        synchronized (this) {
+            completed = true;
+            if (writing) {
+                // written once the batch in flight is done
+                return;
+            }
+            rest = takeBatch();
+        }
+        if (rest.isEmpty()) {
+            finish();
+        } else {
+            write(rest);
+        }
+    }
+
+    private List<V> takeBatch() {
+        List<V> taken = batch;
+        batch = new ArrayList<>(batchSize);
+        writing = !taken.isEmpty();
+        return taken;
+    }
+
+    private void write(List<V> values) {
+        try {
+            executor.execute(() -> {
+                try {
+                    write.accept(values);
+                } catch (RuntimeException e) {
+                    fail(e);
+                    return;
+                }
+                written(values.size());
+            });
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void written(int count) {
+        List<V> rest = null;
+        boolean finished;
+        synchronized (this) {
+            written += count;
+            writing = false;
+            finished = completed;
+            if (completed) {
+                rest = takeBatch();
+            }
+        }
+        if (!finished) {
+            subscription.request(batchSize);
+        } else if (rest.isEmpty()) {
+            finish();
+        } else {
+            write(rest);
+        }
+    }
+
+    private void finish() {
+        long total;
+        synchronized (this) {
+            total = written;
+        }
+        result.complete(total);
+    }
+
+    private void fail(RuntimeException e) {
+        Subscription current;
+        synchronized (this) {
+            completed = true;
+            current = subscription;
+        }
+        current.cancel();
+        result.completeExceptionally(e);
+    }
+}
@@ -0,0 +1,144 @@
+package com.kramphub.datastore.reactive;
+
+import com.kramphub.datastore.query.QueryPage;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Cold publisher of query results, every subscription pages through the query from the start.
+ * A page is fetched on the executor only when the previous one is emitted and demand is left,
+ * so at most one page is held per subscription.
+ *
+ * @param <T> mapped result type
+ */
+class QueryPublisher<T> implements Publisher<T> {
+    private final Function<String, QueryPage<T>> fetchPage;
+    private final Executor executor;
+
+    /**
+     * @param fetchPage fetches the page after the cursor token, null for the first page, and reports no more pages at the limit
+     * @param executor  executor pages are fetched and emitted on
+     */
+    QueryPublisher(Function<String, QueryPage<T>> fetchPage, Executor executor) {
+        this.fetchPage = fetchPage;
+        this.executor = executor;
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+    }
+
+    private final class PageSubscription implements Subscription, Runnable {
+        private final Subscriber<? super T> subscriber;
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        // only accessed by the drain loop, which runs on one thread at a time
+        private Iterator<T> page = Collections.emptyIterator();
+        private String cursorToken;
+        private boolean lastPage;
+
+        private PageSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " results, demand must be positive");
+            } else {
+                requested.getAndUpdate(current -> current + n < 0 ? Long.MAX_VALUE : current + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() == 0) {
+                try {
+                    executor.execute(this);
+                } catch (RuntimeException e) {
+                    cancelled = true;
+                    subscriber.onError(e);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            int missed = 1;
+            while (true) {
+                long demand = requested.get();
+                long emitted = 0;
+                while (!cancelled) {
+                    if (invalidRequest != null) {
+                        fail(invalidRequest);
+                        return;
+                    }
+                    if (!page.hasNext() && !lastPage && emitted != demand) {
+                        if (!fetch()) {
+                            return;
+                        }
+                    }
+                    if (!page.hasNext() && lastPage) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (emitted == demand) {
+                        break;
+                    }
+                    T next = page.next();
+                    emitted++;
+                    subscriber.onNext(next);
+                }
+                if (cancelled) {
+                    return;
+                }
+                if (emitted != 0 && demand != Long.MAX_VALUE) {
+                    requested.addAndGet(-emitted);
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private boolean fetch() {
+            QueryPage<T> next;
+            try {
+                next = fetchPage.apply(cursorToken);
+            } catch (RuntimeException e) {
+                fail(e);
+                return false;
+            }
+            cursorToken = next.getCursorToken();
+            lastPage = !next.hasMore();
+            page = next.getResults().iterator();
+            return true;
+        }
+
+        private void fail(Throwable e) {
+            cancelled = true;
+            subscriber.onError(e);
+        }
+    }
+}
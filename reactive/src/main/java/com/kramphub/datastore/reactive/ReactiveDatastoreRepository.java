@@ -0,0 +1,122 @@
+package com.kramphub.datastore.reactive;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.StructuredQuery;
+import com.kramphub.datastore.concurrent.RepositoryExecutors;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.repository.DatastoreRepository;
+import com.kramphub.datastore.repository.RepositoryOptions;
+import org.reactivestreams.Publisher;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+/**
+ * Reactive Streams view of a DatastoreRepository, e.g. for WebFlux endpoints or Kafka producers:
+ * <pre>
+ * ReactiveDatastoreRepository&lt;ExampleEntity&gt; reactive = new ReactiveDatastoreRepository&lt;&gt;(repository);
+ * Flux.from(reactive.query(query)).map(ExampleEntity::getField);
+ * reactive.upsert(Flux.fromIterable(entities).map(entity -&gt; entity.toEntity(repository.createKey(entity))));
+ * </pre>
+ * Query results are fetched page by page with cursors as downstream demand arrives,
+ * writes are collected into batches and the next batch is requested once the previous one is written.
+ * Memory use is bounded by one page or batch per subscription, whatever the result or input size.
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class ReactiveDatastoreRepository<T extends BaseEntity> {
+    private final DatastoreRepository<T> repository;
+    private final Executor executor;
+    private final int batchSize;
+
+    /**
+     * Init with the shared async executor and batches of 500 writes
+     *
+     * @param repository
+     */
+    public ReactiveDatastoreRepository(DatastoreRepository<T> repository) {
+        this(repository, RepositoryExecutors.async(), RepositoryOptions.MAX_BATCH_SIZE);
+    }
+
+    /**
+     * @param repository
+     * @param executor   executor pages are fetched and batches are written on, signals are emitted on it too
+     * @param batchSize  values per write, max 500
+     */
+    public ReactiveDatastoreRepository(DatastoreRepository<T> repository, Executor executor, int batchSize) {
+        this.repository = repository;
+        this.executor = executor;
+        this.batchSize = batchSize > RepositoryOptions.MAX_BATCH_SIZE || batchSize < 1 ? RepositoryOptions.MAX_BATCH_SIZE : batchSize;
+    }
+
+    /**
+     * This method publishes the mapped query results, every subscription runs the query
+     * The limit of the query is the total limit over all pages.
+     *
+     * @param structuredQuery
+     * @return Publisher of mapped entities
+     */
+    public Publisher<T> query(StructuredQuery<Entity> structuredQuery) {
+        return query(structuredQuery, null);
+    }
+
+    /**
+     * This method publishes the mapped query results from the cursor on, every subscription runs the query
+     *
+     * @param structuredQuery
+     * @param cursorToken     cursor token to resume from, null to start from the beginning
+     * @return Publisher of mapped entities
+     */
+    public Publisher<T> query(StructuredQuery<Entity> structuredQuery, String cursorToken) {
+        return new QueryPublisher<>(token -> repository.fetchPage(structuredQuery, token != null ? token : cursorToken), executor);
+    }
+
+    /**
+     * This method publishes all entities of the kind
+     *
+     * @return Publisher of mapped entities
+     */
+    public Publisher<T> findAll() {
+        return query(repository.getQueryBuilder(null).build());
+    }
+
+    /**
+     * This method saves or updates the published entities in batches
+     *
+     * @param entities
+     * @return completed with the number of written entities, or exceptionally with the first failure
+     */
+    public CompletableFuture<Long> upsert(Publisher<Entity> entities) {
+        return write(entities, repository::upsert);
+    }
+
+    /**
+     * This method adds the published entities in batches, failing if any already exists
+     *
+     * @param entities
+     * @return completed with the number of written entities, or exceptionally with the first failure
+     */
+    public CompletableFuture<Long> add(Publisher<Entity> entities) {
+        return write(entities, repository::add);
+    }
+
+    /**
+     * This method deletes the published keys in batches
+     *
+     * @param keys
+     * @return completed with the number of deleted keys, or exceptionally with the first failure
+     */
+    public CompletableFuture<Long> delete(Publisher<Key> keys) {
+        return write(keys, repository::delete);
+    }
+
+    private <V> CompletableFuture<Long> write(Publisher<V> values, Consumer<List<V>> write) {
+        BatchingSubscriber<V> subscriber = new BatchingSubscriber<>(batchSize, write, executor);
+        values.subscribe(subscriber);
+        return subscriber.result();
+    }
+}
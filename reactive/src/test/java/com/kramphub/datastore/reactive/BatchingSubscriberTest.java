@@ -0,0 +1,162 @@
+package com.kramphub.datastore.reactive;
+
+import org.junit.Test;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.Assert.*;
+
+public class BatchingSubscriberTest {
+    private final List<List<Integer>> batches = new ArrayList<>();
+    private final List<Runnable> writes = new ArrayList<>();
+    private final RecordingSubscription subscription = new RecordingSubscription();
+
+    @Test
+    public void valuesAreWrittenInBatchesRequestedOneAtATime() throws Exception {
+        BatchingSubscriber<Integer> subscriber = subscriber(2, Runnable::run);
+        subscriber.onSubscribe(subscription);
+        assertEquals(Arrays.asList(2L), subscription.requests);
+
+        publish(subscriber, 0, 1);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1)), batches);
+        assertEquals(Arrays.asList(2L, 2L), subscription.requests);
+        publish(subscriber, 2);
+        subscriber.onComplete();
+
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2)), batches);
+        assertEquals(Long.valueOf(3), subscriber.result().get());
+        assertFalse(subscription.cancelled);
+    }
+
+    @Test
+    public void nextBatchIsRequestedOnlyAfterTheWriteFinished() {
+        BatchingSubscriber<Integer> subscriber = subscriber(2, writes::add);
+        subscriber.onSubscribe(subscription);
+
+        publish(subscriber, 0, 1);
+        assertEquals("no demand while the batch is written", Arrays.asList(2L), subscription.requests);
+        writes.remove(0).run();
+
+        assertEquals(Arrays.asList(2L, 2L), subscription.requests);
+    }
+
+    @Test
+    public void completionWaitsForTheBatchInFlight() throws Exception {
+        BatchingSubscriber<Integer> subscriber = subscriber(2, writes::add);
+        subscriber.onSubscribe(subscription);
+        publish(subscriber, 0, 1);
+
+        subscriber.onComplete();
+        assertFalse(subscriber.result().isDone());
+        writes.remove(0).run();
+
+        assertTrue(writes.isEmpty());
+        assertEquals(Long.valueOf(2), subscriber.result().get());
+    }
+
+    @Test
+    public void emptyPublisherCompletesWithZero() throws Exception {
+        BatchingSubscriber<Integer> subscriber = subscriber(2, Runnable::run);
+        subscriber.onSubscribe(subscription);
+
+        subscriber.onComplete();
+
+        assertTrue(batches.isEmpty());
+        assertEquals(Long.valueOf(0), subscriber.result().get());
+    }
+
+    @Test
+    public void publisherErrorFailsTheResult() {
+        BatchingSubscriber<Integer> subscriber = subscriber(2, Runnable::run);
+        subscriber.onSubscribe(subscription);
+        publish(subscriber, 0);
+
+        subscriber.onError(new IllegalStateException("query failed"));
+
+        assertFailed(subscriber, IllegalStateException.class);
+        assertTrue("the partial batch is dropped", batches.isEmpty());
+    }
+
+    @Test
+    public void failedWriteCancelsTheSubscription() {
+        BatchingSubscriber<Integer> subscriber = new BatchingSubscriber<>(2, batch -> {
+            throw new IllegalStateException("write failed");
+        }, Runnable::run);
+        subscriber.onSubscribe(subscription);
+
+        publish(subscriber, 0, 1);
+        publish(subscriber, 2, 3);
+
+        assertTrue(subscription.cancelled);
+        assertFailed(subscriber, IllegalStateException.class);
+        assertEquals(Arrays.asList(2L), subscription.requests);
+    }
+
+    @Test
+    public void rejectedWriteCancelsTheSubscription() {
+        BatchingSubscriber<Integer> subscriber = subscriber(2, command -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        subscriber.onSubscribe(subscription);
+
+        publish(subscriber, 0, 1);
+
+        assertTrue(subscription.cancelled);
+        assertFailed(subscriber, RejectedExecutionException.class);
+    }
+
+    @Test
+    public void secondSubscriptionIsCancelled() {
+        BatchingSubscriber<Integer> subscriber = subscriber(2, Runnable::run);
+        RecordingSubscription second = new RecordingSubscription();
+        subscriber.onSubscribe(subscription);
+
+        subscriber.onSubscribe(second);
+
+        assertTrue(second.cancelled);
+        assertTrue(second.requests.isEmpty());
+        assertFalse(subscription.cancelled);
+    }
+
+    private BatchingSubscriber<Integer> subscriber(int batchSize, Executor executor) {
+        return new BatchingSubscriber<>(batchSize, batch -> batches.add(new ArrayList<>(batch)), executor);
+    }
+
+    private static void publish(BatchingSubscriber<Integer> subscriber, Integer... values) {
+        for (Integer value : values) {
+            subscriber.onNext(value);
+        }
+    }
+
+    private static void assertFailed(BatchingSubscriber<Integer> subscriber, Class<? extends Throwable> type) {
+        try {
+            subscriber.result().get();
+            fail("the result must fail");
+        } catch (ExecutionException e) {
+            assertTrue(type.isInstance(e.getCause()));
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class RecordingSubscription implements Subscription {
+        private final List<Long> requests = new ArrayList<>();
+        private boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requests.add(n);
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.kramphub.datastore.reactive;
+
+import com.kramphub.datastore.query.QueryPage;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class QueryPublisherTest {
+    private final List<String> fetched = new CopyOnWriteArrayList<>();
+
+    @Test
+    public void pagesAreFetchedOnlyForOutstandingDemand() {
+        RecordingSubscriber subscriber = subscribe(publisher(pages(7, 2)));
+
+        subscriber.subscription.request(3);
+        assertEquals(Arrays.asList(0, 1, 2), subscriber.values);
+        assertEquals("two pages hold the first three results", Arrays.asList(null, "2"), fetched);
+
+        subscriber.subscription.request(1);
+        assertEquals(Arrays.asList(0, 1, 2, 3), subscriber.values);
+        assertEquals(2, fetched.size());
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void completesAfterTheLastPage() {
+        RecordingSubscriber subscriber = subscribe(publisher(pages(5, 2)));
+
+        subscriber.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), subscriber.values);
+        assertTrue(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void emptyResultCompletesWithoutDemand() {
+        RecordingSubscriber subscriber = subscribe(publisher(pages(0, 2)));
+
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.values.isEmpty());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void demandAddsUpWithoutOverflowing() {
+        RecordingSubscriber subscriber = subscribe(publisher(pages(5, 2)));
+        subscriber.onNext = value -> {
+            if (value == 0) {
+                subscriber.subscription.request(Long.MAX_VALUE);
+                subscriber.subscription.request(Long.MAX_VALUE);
+            }
+        };
+
+        subscriber.subscription.request(1);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), subscriber.values);
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void requestsFromOnNextDoNotRecurse() {
+        RecordingSubscriber subscriber = subscribe(publisher(pages(20_000, 1000)));
+        subscriber.onNext = value -> subscriber.subscription.request(1);
+
+        subscriber.subscription.request(1);
+
+        assertEquals(20_000, subscriber.values.size());
+        assertTrue(subscriber.completed);
+    }
+
+    @Test
+    public void cancelStopsEmittingAndFetching() {
+        RecordingSubscriber subscriber = subscribe(publisher(pages(10, 2)));
+        subscriber.onNext = value -> {
+            if (value == 2) {
+                subscriber.subscription.cancel();
+            }
+        };
+
+        subscriber.subscription.request(10);
+        subscriber.subscription.request(10);
+
+        assertEquals(Arrays.asList(0, 1, 2), subscriber.values);
+        assertEquals(2, fetched.size());
+        assertFalse(subscriber.completed);
+        assertNull(subscriber.error);
+    }
+
+    @Test
+    public void failedFetchIsSignalledOnce() {
+        Function<String, QueryPage<Integer>> pages = pages(10, 2);
+        RecordingSubscriber subscriber = subscribe(publisher(token -> {
+            if ("4".equals(token)) {
+                throw new IllegalStateException("query failed");
+            }
+            return pages.apply(token);
+        }));
+
+        subscriber.subscription.request(10);
+        subscriber.subscription.request(10);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3), subscriber.values);
+        assertEquals("query failed", subscriber.error.getMessage());
+        assertEquals(1, subscriber.signals);
+        assertFalse(subscriber.completed);
+    }
+
+    @Test
+    public void nonPositiveDemandIsSignalledAsError() {
+        RecordingSubscriber subscriber = subscribe(publisher(pages(10, 2)));
+
+        subscriber.subscription.request(0);
+
+        assertTrue(subscriber.error instanceof IllegalArgumentException);
+        assertTrue(subscriber.values.isEmpty());
+        assertTrue(fetched.isEmpty());
+    }
+
+    @Test
+    public void rejectedFetchIsSignalledAsError() {
+        QueryPublisher<Integer> publisher = new QueryPublisher<>(pages(10, 2), command -> {
+            throw new RejectedExecutionException("shut down");
+        });
+        RecordingSubscriber subscriber = subscribe(publisher);
+
+        subscriber.subscription.request(1);
+
+        assertTrue(subscriber.error instanceof RejectedExecutionException);
+    }
+
+    @Test
+    public void everySubscriptionStartsFromTheFirstPage() {
+        QueryPublisher<Integer> publisher = publisher(pages(3, 2));
+        RecordingSubscriber first = subscribe(publisher);
+        RecordingSubscriber second = subscribe(publisher);
+
+        first.subscription.request(Long.MAX_VALUE);
+        second.subscription.request(Long.MAX_VALUE);
+
+        assertEquals(Arrays.asList(0, 1, 2), first.values);
+        assertEquals(Arrays.asList(0, 1, 2), second.values);
+        assertEquals(Arrays.asList(null, "2", null, "2"), fetched);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullSubscriberIsRejected() {
+        publisher(pages(1, 1)).subscribe(null);
+    }
+
+    private QueryPublisher<Integer> publisher(Function<String, QueryPage<Integer>> fetchPage) {
+        return new QueryPublisher<>(fetchPage, Runnable::run);
+    }
+
+    /**
+     * Pages of consecutive numbers, the cursor token is the offset of the next page
+     */
+    private Function<String, QueryPage<Integer>> pages(int total, int pageSize) {
+        return token -> {
+            fetched.add(token);
+            int offset = token == null ? 0 : Integer.parseInt(token);
+            List<Integer> results = new ArrayList<>();
+            for (int i = offset; i < Math.min(total, offset + pageSize); i++) {
+                results.add(i);
+            }
+            int next = offset + results.size();
+            return new QueryPage<>(results, String.valueOf(next), next < total);
+        };
+    }
+
+    private static RecordingSubscriber subscribe(QueryPublisher<Integer> publisher) {
+        RecordingSubscriber subscriber = new RecordingSubscriber();
+        publisher.subscribe(subscriber);
+        assertNotNull(subscriber.subscription);
+        return subscriber;
+    }
+
+    private static class RecordingSubscriber implements Subscriber<Integer> {
+        private final List<Integer> values = new ArrayList<>();
+        private Consumer<Integer> onNext = value -> {
+        };
+        private Subscription subscription;
+        private Throwable error;
+        private boolean completed;
+        private int signals;
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer value) {
+            values.add(value);
+            onNext.accept(value);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            signals++;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+            signals++;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.google.cloud.datastore;
+
+import java.util.Map;
+
+/**
+ * Exposes the package private parts of the Datastore client the in-memory Datastore needs
+ * to evaluate filters and build results. Not meant to be used outside of com.kramphub.datastore.testing.
+ */
+public final class DatastoreInternals {
+
+    private DatastoreInternals() {
+    }
+
+    public static com.google.datastore.v1.Filter toPb(StructuredQuery.Filter filter) {
+        return filter.toPb();
+    }
+
+    public static com.google.datastore.v1.Value toPb(Value<?> value) {
+        return value.toPb();
+    }
+
+    public static Value<?> fromPb(com.google.datastore.v1.Value value) {
+        return Value.fromPb(value);
+    }
+
+    public static byte[] toByteArray(Cursor cursor) {
+        return cursor.getByteString().toByteArray();
+    }
+
+    public static ProjectionEntity newProjectionEntity(Key key, Map<String, Value<?>> properties) {
+        ProjectionEntity.Builder builder = new ProjectionEntity.Builder().setKey(key);
+        properties.forEach(builder::set);
+        return builder.build();
+    }
+
+    public static DatastoreException propagateUserException(Exception exception) {
+        return DatastoreException.propagateUserException(exception);
+    }
+}
@@ -0,0 +1,28 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.Batch;
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Key;
+
+import java.util.List;
+
+/**
+ * Batch committing all writes at once on submit
+ */
+final class InMemoryBatch extends InMemoryBatchWriter implements Batch {
+
+    InMemoryBatch(InMemoryDatastore datastore) {
+        super(datastore);
+    }
+
+    @Override
+    public Response submit() {
+        List<Key> generatedKeys = submit(null);
+        return () -> generatedKeys;
+    }
+
+    @Override
+    public Datastore getDatastore() {
+        return datastore;
+    }
+}
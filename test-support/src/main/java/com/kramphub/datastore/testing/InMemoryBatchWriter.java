@@ -0,0 +1,132 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.DatastoreException;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.Key;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects the writes of a batch or transaction and commits them at once.
+ * Entities with incomplete keys get their id on add or put, or at commit when deferred.
+ */
+abstract class InMemoryBatchWriter {
+    final InMemoryDatastore datastore;
+    private final List<Mutation> mutations = new ArrayList<>();
+    private final List<FullEntity<?>> deferredAdds = new ArrayList<>();
+    private final List<FullEntity<?>> deferredPuts = new ArrayList<>();
+    private boolean active = true;
+
+    InMemoryBatchWriter(InMemoryDatastore datastore) {
+        this.datastore = datastore;
+    }
+
+    public Entity add(FullEntity<?> entity) {
+        checkActive();
+        Entity complete = datastore.complete(entity);
+        mutations.add(Mutation.write(Mutation.Operation.ADD, complete));
+        return complete;
+    }
+
+    public List<Entity> add(FullEntity<?>... entities) {
+        List<Entity> added = new ArrayList<>(entities.length);
+        for (FullEntity<?> entity : entities) {
+            added.add(add(entity));
+        }
+        return added;
+    }
+
+    public void addWithDeferredIdAllocation(FullEntity<?>... entities) {
+        checkActive();
+        for (FullEntity<?> entity : entities) {
+            if (entity.getKey() instanceof Key) {
+                add(entity);
+            } else {
+                deferredAdds.add(entity);
+            }
+        }
+    }
+
+    public void update(Entity... entities) {
+        checkActive();
+        for (Entity entity : entities) {
+            mutations.add(Mutation.write(Mutation.Operation.UPDATE, entity));
+        }
+    }
+
+    public Entity put(FullEntity<?> entity) {
+        checkActive();
+        Entity complete = datastore.complete(entity);
+        mutations.add(Mutation.write(Mutation.Operation.PUT, complete));
+        return complete;
+    }
+
+    public List<Entity> put(FullEntity<?>... entities) {
+        List<Entity> put = new ArrayList<>(entities.length);
+        for (FullEntity<?> entity : entities) {
+            put.add(put(entity));
+        }
+        return put;
+    }
+
+    public void putWithDeferredIdAllocation(FullEntity<?>... entities) {
+        checkActive();
+        for (FullEntity<?> entity : entities) {
+            if (entity.getKey() instanceof Key) {
+                put(entity);
+            } else {
+                deferredPuts.add(entity);
+            }
+        }
+    }
+
+    public void delete(Key... keys) {
+        checkActive();
+        for (Key key : keys) {
+            mutations.add(Mutation.delete(key));
+        }
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    /**
+     * This method allocates the deferred ids and commits the writes
+     *
+     * @param reads versions of the keys read, nullable
+     * @return generated keys of the deferred entities
+     * @throws DatastoreException if the commit conflicts or a write is not allowed
+     */
+    List<Key> submit(Map<Key, Long> reads) throws DatastoreException {
+        checkActive();
+        active = false;
+        List<Key> generatedKeys = new ArrayList<>();
+        for (FullEntity<?> entity : deferredAdds) {
+            Entity complete = datastore.complete(entity);
+            mutations.add(Mutation.write(Mutation.Operation.ADD, complete));
+            generatedKeys.add(complete.getKey());
+        }
+        for (FullEntity<?> entity : deferredPuts) {
+            Entity complete = datastore.complete(entity);
+            mutations.add(Mutation.write(Mutation.Operation.PUT, complete));
+            generatedKeys.add(complete.getKey());
+        }
+        datastore.commit(mutations, reads);
+        return generatedKeys;
+    }
+
+    void deactivate() {
+        checkActive();
+        active = false;
+    }
+
+    void checkActive() {
+        if (!active) {
+            throw new DatastoreException(0, getClass().getSimpleName() + " is no longer active", "FAILED_PRECONDITION");
+        }
+    }
+}
@@ -0,0 +1,367 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.NoCredentials;
+import com.google.cloud.datastore.*;
+import com.google.common.base.Strings;
+import com.google.datastore.v1.TransactionOptions;
+import com.google.protobuf.ByteString;
+import com.kramphub.datastore.query.KeyComparator;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process Datastore for tests and benchmarks, starts in milliseconds and needs no emulator.
+ * <p>
+ * Entities are kept in a concurrent sorted map in key order. Lookups and queries read without locking,
+ * commits are applied one at a time and are atomic with respect to other commits.
+ * Structured queries support filters, orders, projections, distinct on, offsets, limits and cursors,
+ * see QueryEngine for the index semantics. Transactions are optimistic, a commit conflicting with
+ * an entity read in the transaction fails with ABORTED and runInTransaction retries it.
+ * Ids are allocated from a sequence skipping ids in use. Read options are ignored and GQL queries are not supported.
+ */
+@SuppressWarnings("unused")
+public class InMemoryDatastore implements Datastore {
+    public static final String DEFAULT_PROJECT_ID = "test-project";
+    static final Comparator<Key> KEY_ORDER = Comparator.comparing(InMemoryDatastore::namespace)
+            .thenComparing(KeyComparator.INSTANCE);
+    private static final int ALREADY_EXISTS = 6;
+    private static final int NOT_FOUND = 5;
+    private static final int ABORTED = 10;
+
+    private final DatastoreOptions options;
+    private final String namespace;
+    private final ConcurrentNavigableMap<Key, Entity> entities = new ConcurrentSkipListMap<>(KEY_ORDER);
+    private final ConcurrentNavigableMap<Key, Long> versions = new ConcurrentSkipListMap<>(KEY_ORDER);
+    private final AtomicLong version = new AtomicLong();
+    private final AtomicLong ids = new AtomicLong();
+    private final AtomicLong transactionIds = new AtomicLong();
+    private final Object commitLock = new Object();
+
+    /**
+     * Init with the default project and namespace
+     */
+    public InMemoryDatastore() {
+        this(DEFAULT_PROJECT_ID, null);
+    }
+
+    /**
+     * Init with custom project and namespace
+     *
+     * @param projectId
+     * @param namespace nullable for the default namespace
+     */
+    public InMemoryDatastore(String projectId, String namespace) {
+        DatastoreOptions.Builder builder = DatastoreOptions.newBuilder()
+                .setProjectId(projectId)
+                .setCredentials(NoCredentials.getInstance());
+        if (!Strings.isNullOrEmpty(namespace)) {
+            builder.setNamespace(namespace);
+        }
+        this.options = builder.build();
+        this.namespace = Strings.nullToEmpty(namespace);
+    }
+
+    /**
+     * This method removes all entities
+     */
+    public void clear() {
+        synchronized (commitLock) {
+            long committed = version.get() + 1;
+            entities.keySet().forEach(key -> versions.put(key, committed));
+            entities.clear();
+            version.set(committed);
+        }
+    }
+
+    /**
+     * This method returns the number of stored entities of all kinds and namespaces
+     *
+     * @return entity count
+     */
+    public int size() {
+        return entities.size();
+    }
+
+    @Override
+    public DatastoreOptions getOptions() {
+        return options;
+    }
+
+    @Override
+    public KeyFactory newKeyFactory() {
+        return new KeyFactory(options.getProjectId(), namespace);
+    }
+
+    @Override
+    public Transaction newTransaction(TransactionOptions options) {
+        return newTransaction();
+    }
+
+    @Override
+    public Transaction newTransaction() {
+        return new InMemoryTransaction(this, ByteString.copyFromUtf8(Long.toString(transactionIds.incrementAndGet())));
+    }
+
+    @Override
+    public <T> T runInTransaction(TransactionCallable<T> callable) {
+        int attempts = Math.max(1, options.getRetrySettings().getMaxAttempts());
+        for (int attempt = 1; ; attempt++) {
+            Transaction transaction = newTransaction();
+            try {
+                T result = callable.run(transaction);
+                transaction.commit();
+                return result;
+            } catch (DatastoreException e) {
+                if (!e.isRetryable() || attempt >= attempts) {
+                    throw e;
+                }
+            } catch (Exception e) {
+                throw DatastoreInternals.propagateUserException(e);
+            } finally {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+            }
+        }
+    }
+
+    @Override
+    public <T> T runInTransaction(TransactionCallable<T> callable, TransactionOptions options) {
+        return runInTransaction(callable);
+    }
+
+    @Override
+    public Batch newBatch() {
+        return new InMemoryBatch(this);
+    }
+
+    @Override
+    public Key allocateId(IncompleteKey key) {
+        Key allocated;
+        do {
+            allocated = Key.newBuilder(key, ids.incrementAndGet()).build();
+        } while (entities.containsKey(allocated));
+        return allocated;
+    }
+
+    @Override
+    public List<Key> allocateId(IncompleteKey... keys) {
+        List<Key> allocated = new ArrayList<>(keys.length);
+        for (IncompleteKey key : keys) {
+            allocated.add(allocateId(key));
+        }
+        return allocated;
+    }
+
+    @Override
+    public Entity add(FullEntity<?> entity) {
+        return add(new FullEntity<?>[]{entity}).get(0);
+    }
+
+    @Override
+    public List<Entity> add(FullEntity<?>... entities) {
+        return write(Mutation.Operation.ADD, entities);
+    }
+
+    @Override
+    public void update(Entity... entities) {
+        write(Mutation.Operation.UPDATE, entities);
+    }
+
+    @Override
+    public Entity put(FullEntity<?> entity) {
+        return put(new FullEntity<?>[]{entity}).get(0);
+    }
+
+    @Override
+    public List<Entity> put(FullEntity<?>... entities) {
+        return write(Mutation.Operation.PUT, entities);
+    }
+
+    @Override
+    public void delete(Key... keys) {
+        List<Mutation> mutations = new ArrayList<>(keys.length);
+        for (Key key : keys) {
+            mutations.add(Mutation.delete(key));
+        }
+        commit(mutations, null);
+    }
+
+    @Override
+    public Entity get(Key key, ReadOption... options) {
+        return entities.get(key);
+    }
+
+    @Override
+    public Entity get(Key key) {
+        return entities.get(key);
+    }
+
+    @Override
+    public Iterator<Entity> get(Iterable<Key> keys, ReadOption... options) {
+        List<Entity> found = new ArrayList<>();
+        for (Key key : keys) {
+            Entity entity = entities.get(key);
+            if (entity != null) {
+                found.add(entity);
+            }
+        }
+        return found.iterator();
+    }
+
+    @Override
+    public Iterator<Entity> get(Key... keys) {
+        return get(Arrays.asList(keys));
+    }
+
+    @Override
+    public List<Entity> fetch(Iterable<Key> keys, ReadOption... options) {
+        List<Entity> fetched = new ArrayList<>();
+        for (Key key : keys) {
+            fetched.add(entities.get(key));
+        }
+        return fetched;
+    }
+
+    @Override
+    public List<Entity> fetch(Key... keys) {
+        return fetch(Arrays.asList(keys));
+    }
+
+    @Override
+    public <T> QueryResults<T> run(Query<T> query, ReadOption... options) {
+        return run(query, (Map<Key, Long>) null);
+    }
+
+    @Override
+    public <T> QueryResults<T> run(Query<T> query) {
+        return run(query, (Map<Key, Long>) null);
+    }
+
+    /**
+     * This method runs the query recording the version of the returned entities in reads
+     *
+     * @param query
+     * @param reads of a transaction, nullable
+     * @return query results
+     */
+    <T> QueryResults<T> run(Query<T> query, Map<Key, Long> reads) {
+        if (!(query instanceof StructuredQuery)) {
+            throw new UnsupportedOperationException("Only structured queries are supported");
+        }
+        StructuredQuery<T> structuredQuery = (StructuredQuery<T>) query;
+        String queryNamespace = query.getNamespace() != null ? query.getNamespace() : namespace;
+        long observed = version.get();
+
+        List<Entity> candidates = new ArrayList<>();
+        for (Entity entity : entities.values()) {
+            if (namespace(entity.getKey()).equals(queryNamespace)) {
+                candidates.add(entity);
+            }
+        }
+        QueryEngine engine = new QueryEngine(structuredQuery);
+        List<QueryEngine.Row> rows = engine.run(candidates);
+
+        int from = Math.min(structuredQuery.getOffset(), rows.size());
+        int to = structuredQuery.getLimit() != null ? Math.min(rows.size(), from + structuredQuery.getLimit()) : rows.size();
+        List<QueryEngine.Row> results = rows.subList(from, to);
+        if (reads != null) {
+            results.forEach(row -> reads.putIfAbsent(row.key, observed));
+        }
+        Class<?> resultClass = query instanceof KeyQuery ? Key.class
+                : query instanceof ProjectionEntityQuery ? ProjectionEntity.class : Entity.class;
+        return new InMemoryQueryResults<>(engine, resultClass, results, from > 0 ? rows.get(from - 1) : null);
+    }
+
+    /**
+     * This method looks up the entity recording the version it was read at
+     *
+     * @param key
+     * @param reads of a transaction
+     * @return entity, null if not found
+     */
+    Entity read(Key key, Map<Key, Long> reads) {
+        reads.putIfAbsent(key, version.get());
+        return entities.get(key);
+    }
+
+    /**
+     * This method returns the entity with a complete key, allocating an id for incomplete keys
+     *
+     * @param entity
+     * @return entity with complete key
+     */
+    Entity complete(FullEntity<?> entity) {
+        IncompleteKey key = entity.getKey();
+        if (key == null) {
+            throw new DatastoreException(3, "Entity has no key", "INVALID_ARGUMENT");
+        }
+        if (key instanceof Key) {
+            return entity instanceof Entity ? (Entity) entity : Entity.newBuilder((Key) key, entity).build();
+        }
+        return Entity.newBuilder(allocateId(key), entity).build();
+    }
+
+    /**
+     * This method applies the mutations at once, after checking the keys read were not written since
+     *
+     * @param mutations
+     * @param reads     key and store version it was read at, nullable
+     * @throws DatastoreException ABORTED on a conflict, ALREADY_EXISTS on adding an existing entity
+     *                            and NOT_FOUND on updating a missing entity, nothing is written then
+     */
+    void commit(List<Mutation> mutations, Map<Key, Long> reads) throws DatastoreException {
+        synchronized (commitLock) {
+            if (reads != null) {
+                for (Map.Entry<Key, Long> read : reads.entrySet()) {
+                    Long written = versions.get(read.getKey());
+                    if (written != null && written > read.getValue()) {
+                        throw new DatastoreException(ABORTED, "Too much contention on " + read.getKey(), "ABORTED", true, null);
+                    }
+                }
+            }
+            Map<Key, Optional<Entity>> pending = new TreeMap<>(KEY_ORDER);
+            for (Mutation mutation : mutations) {
+                Optional<Entity> current = pending.get(mutation.key);
+                boolean exists = current != null ? current.isPresent() : entities.containsKey(mutation.key);
+                if (mutation.operation == Mutation.Operation.ADD && exists) {
+                    throw new DatastoreException(ALREADY_EXISTS, "Entity already exists: " + mutation.key, "ALREADY_EXISTS");
+                }
+                if (mutation.operation == Mutation.Operation.UPDATE && !exists) {
+                    throw new DatastoreException(NOT_FOUND, "No entity to update: " + mutation.key, "NOT_FOUND");
+                }
+                pending.put(mutation.key, Optional.ofNullable(mutation.entity));
+            }
+            // the version is published after the writes, so a read never records a version newer than what it saw
+            long committed = version.get() + 1;
+            pending.forEach((key, entity) -> {
+                versions.put(key, committed);
+                if (entity.isPresent()) {
+                    entities.put(key, entity.get());
+                } else {
+                    entities.remove(key);
+                }
+            });
+            version.set(committed);
+        }
+    }
+
+    static String namespace(Key key) {
+        return Strings.nullToEmpty(key.getNamespace());
+    }
+
+    private List<Entity> write(Mutation.Operation operation, FullEntity<?>[] entities) {
+        List<Entity> written = new ArrayList<>(entities.length);
+        List<Mutation> mutations = new ArrayList<>(entities.length);
+        for (FullEntity<?> entity : entities) {
+            Entity complete = complete(entity);
+            written.add(complete);
+            mutations.add(Mutation.write(operation, complete));
+        }
+        commit(mutations, null);
+        return written;
+    }
+}
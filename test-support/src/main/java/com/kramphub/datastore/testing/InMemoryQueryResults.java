@@ -0,0 +1,55 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.Cursor;
+import com.google.cloud.datastore.QueryResults;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Query results over the rows left after offset and limit, the cursor moves along with the iteration
+ */
+final class InMemoryQueryResults<T> implements QueryResults<T> {
+    private final QueryEngine engine;
+    private final Class<?> resultClass;
+    private final List<QueryEngine.Row> rows;
+    private final QueryEngine.Row skipped;
+    private int position;
+
+    /**
+     * @param engine      of the query
+     * @param resultClass
+     * @param rows        to return
+     * @param skipped     last row skipped by the offset, nullable
+     */
+    InMemoryQueryResults(QueryEngine engine, Class<?> resultClass, List<QueryEngine.Row> rows, QueryEngine.Row skipped) {
+        this.engine = engine;
+        this.resultClass = resultClass;
+        this.rows = rows;
+        this.skipped = skipped;
+    }
+
+    @Override
+    public Class<?> getResultClass() {
+        return resultClass;
+    }
+
+    @Override
+    public Cursor getCursorAfter() {
+        return engine.toCursor(position > 0 ? rows.get(position - 1) : skipped);
+    }
+
+    @Override
+    public boolean hasNext() {
+        return position < rows.size();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return (T) engine.toResult(rows.get(position++));
+    }
+}
@@ -0,0 +1,75 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.*;
+import com.google.protobuf.ByteString;
+
+import java.util.*;
+
+/**
+ * Optimistic transaction: reads record the version of the store they saw and the commit is aborted
+ * if any entity read by the transaction, by lookup or query, was written after it was read.
+ * Like Datastore, reads do not see the uncommitted writes of the transaction.
+ */
+final class InMemoryTransaction extends InMemoryBatchWriter implements Transaction {
+    private final ByteString transactionId;
+    private final Map<Key, Long> reads = new TreeMap<>(InMemoryDatastore.KEY_ORDER);
+
+    InMemoryTransaction(InMemoryDatastore datastore, ByteString transactionId) {
+        super(datastore);
+        this.transactionId = transactionId;
+    }
+
+    @Override
+    public Entity get(Key key) {
+        checkActive();
+        return datastore.read(key, reads);
+    }
+
+    @Override
+    public Iterator<Entity> get(Key... keys) {
+        List<Entity> found = new ArrayList<>();
+        for (Entity entity : fetch(keys)) {
+            if (entity != null) {
+                found.add(entity);
+            }
+        }
+        return found.iterator();
+    }
+
+    @Override
+    public List<Entity> fetch(Key... keys) {
+        checkActive();
+        List<Entity> fetched = new ArrayList<>(keys.length);
+        for (Key key : keys) {
+            fetched.add(datastore.read(key, reads));
+        }
+        return fetched;
+    }
+
+    @Override
+    public <T> QueryResults<T> run(Query<T> query) {
+        checkActive();
+        return datastore.run(query, reads);
+    }
+
+    @Override
+    public Response commit() {
+        List<Key> generatedKeys = submit(reads);
+        return () -> generatedKeys;
+    }
+
+    @Override
+    public void rollback() {
+        deactivate();
+    }
+
+    @Override
+    public Datastore getDatastore() {
+        return datastore;
+    }
+
+    @Override
+    public ByteString getTransactionId() {
+        return transactionId;
+    }
+}
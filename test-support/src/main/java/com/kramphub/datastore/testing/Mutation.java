@@ -0,0 +1,31 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+
+/**
+ * A single write of a commit
+ */
+final class Mutation {
+    enum Operation {
+        ADD, UPDATE, PUT, DELETE
+    }
+
+    final Operation operation;
+    final Key key;
+    final Entity entity;
+
+    private Mutation(Operation operation, Key key, Entity entity) {
+        this.operation = operation;
+        this.key = key;
+        this.entity = entity;
+    }
+
+    static Mutation write(Operation operation, Entity entity) {
+        return new Mutation(operation, entity.getKey(), entity);
+    }
+
+    static Mutation delete(Key key) {
+        return new Mutation(Operation.DELETE, key, null);
+    }
+}
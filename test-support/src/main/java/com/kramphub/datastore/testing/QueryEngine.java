@@ -0,0 +1,298 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.*;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.common.hash.Hashing;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.kramphub.datastore.query.KeyComparator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Evaluates a structured query against a collection of entities: kind, filters, orders, distinct on,
+ * projections and start and end cursors. Offset and limit are applied by the caller while iterating.
+ * <p>
+ * Like the Datastore indexes, entities without an indexed value for a filtered, ordered or projected property
+ * are left out, a filter on a list property matches if any element matches and inequality filters
+ * only match values of the same type. Results are ordered by the given orders and then by key.
+ * Projected list properties are returned as a whole instead of one result per element.
+ */
+final class QueryEngine {
+    static final String KEY_PROPERTY = "__key__";
+    static final String SCATTER_PROPERTY = "__scatter__";
+    private static final Cursor START = Cursor.copyFrom(new byte[0]);
+
+    private final StructuredQuery<?> query;
+    private final List<OrderBy> orders;
+    private final List<String> projection;
+    private final com.google.datastore.v1.Filter filter;
+
+    QueryEngine(StructuredQuery<?> query) {
+        this.query = query;
+        this.orders = query.getOrderBy();
+        this.projection = query.getProjection();
+        this.filter = query.getFilter() != null ? DatastoreInternals.toPb(query.getFilter()) : null;
+    }
+
+    /**
+     * This method returns the matching rows in query order, starting after the start cursor and ending at the end cursor
+     *
+     * @param entities of the namespace of the query
+     * @return rows
+     */
+    List<Row> run(Collection<Entity> entities) {
+        List<Row> rows = new ArrayList<>();
+        for (Entity entity : entities) {
+            if (query.getKind() != null && !query.getKind().equals(entity.getKey().getKind())) {
+                continue;
+            }
+            if (filter != null && !matches(entity, filter)) {
+                continue;
+            }
+            Row row = toRow(entity);
+            if (row != null) {
+                rows.add(row);
+            }
+        }
+        rows.sort(this::compare);
+
+        if (!query.getDistinctOn().isEmpty()) {
+            rows = distinct(rows);
+        }
+        Row start = fromCursor(query.getStartCursor());
+        Row end = fromCursor(query.getEndCursor());
+        if (start == null && end == null) {
+            return rows;
+        }
+        List<Row> range = new ArrayList<>();
+        for (Row row : rows) {
+            if ((start == null || compare(row, start) > 0) && (end == null || compare(row, end) <= 0)) {
+                range.add(row);
+            }
+        }
+        return range;
+    }
+
+    /**
+     * This method returns the result for the row matching the query type: key, projection or entity
+     *
+     * @param row
+     * @return result
+     */
+    Object toResult(Row row) {
+        if (query instanceof KeyQuery) {
+            return row.key;
+        }
+        if (query instanceof ProjectionEntityQuery) {
+            Map<String, Value<?>> properties = new LinkedHashMap<>();
+            for (String property : projection) {
+                properties.put(property, row.entity.getValue(property));
+            }
+            return DatastoreInternals.newProjectionEntity(row.key, properties);
+        }
+        return row.entity;
+    }
+
+    /**
+     * This method returns the cursor pointing after the row, or the start if there is none
+     *
+     * @param row nullable
+     * @return cursor
+     */
+    Cursor toCursor(Row row) {
+        if (row == null) {
+            return query.getStartCursor() != null ? query.getStartCursor() : START;
+        }
+        List<Value<?>> position = new ArrayList<>(row.values);
+        position.add(KeyValue.of(row.key));
+        return Cursor.copyFrom(DatastoreInternals.toPb(ListValue.of(position)).toByteArray());
+    }
+
+    private Row fromCursor(Cursor cursor) {
+        if (cursor == null) {
+            return null;
+        }
+        byte[] bytes = DatastoreInternals.toByteArray(cursor);
+        if (bytes.length == 0) {
+            return null;
+        }
+        try {
+            List<? extends Value<?>> position = ((ListValue) DatastoreInternals.fromPb(
+                    com.google.datastore.v1.Value.parseFrom(bytes))).get();
+            if (position.size() != orders.size() + 1) {
+                throw invalidCursor(cursor);
+            }
+            Key key = (Key) position.get(orders.size()).get();
+            return new Row(null, key, new ArrayList<>(position.subList(0, orders.size())));
+        } catch (InvalidProtocolBufferException | ClassCastException e) {
+            throw invalidCursor(cursor);
+        }
+    }
+
+    private Row toRow(Entity entity) {
+        for (String property : projection) {
+            if (indexedValues(entity, property).isEmpty()) {
+                return null;
+            }
+        }
+        List<Value<?>> values = new ArrayList<>(orders.size());
+        for (OrderBy order : orders) {
+            Value<?> value = sortValue(entity, order);
+            if (value == null) {
+                return null;
+            }
+            values.add(value);
+        }
+        return new Row(entity, entity.getKey(), values);
+    }
+
+    private int compare(Row left, Row right) {
+        for (int i = 0; i < orders.size(); i++) {
+            int result = ValueComparator.INSTANCE.compare(left.values.get(i), right.values.get(i));
+            if (result != 0) {
+                return orders.get(i).getDirection() == OrderBy.Direction.DESCENDING ? -result : result;
+            }
+        }
+        return KeyComparator.INSTANCE.compare(left.key, right.key);
+    }
+
+    private List<Row> distinct(List<Row> rows) {
+        Set<List<Value<?>>> seen = new HashSet<>();
+        List<Row> distinct = new ArrayList<>();
+        for (Row row : rows) {
+            List<Value<?>> values = new ArrayList<>();
+            for (String property : query.getDistinctOn()) {
+                values.add(row.entity.getValue(property));
+            }
+            if (seen.add(values)) {
+                distinct.add(row);
+            }
+        }
+        return distinct;
+    }
+
+    private static Value<?> sortValue(Entity entity, OrderBy order) {
+        Value<?> sortValue = null;
+        for (Value<?> value : indexedValues(entity, order.getProperty())) {
+            // list properties sort by their smallest element ascending and their largest descending
+            int result = sortValue == null ? 0 : ValueComparator.INSTANCE.compare(value, sortValue);
+            if (sortValue == null || (order.getDirection() == OrderBy.Direction.DESCENDING ? result > 0 : result < 0)) {
+                sortValue = value;
+            }
+        }
+        return sortValue;
+    }
+
+    private static boolean matches(Entity entity, com.google.datastore.v1.Filter filter) {
+        switch (filter.getFilterTypeCase()) {
+            case COMPOSITE_FILTER:
+                for (com.google.datastore.v1.Filter subFilter : filter.getCompositeFilter().getFiltersList()) {
+                    if (!matches(entity, subFilter)) {
+                        return false;
+                    }
+                }
+                return true;
+            case PROPERTY_FILTER:
+                return matches(entity, filter.getPropertyFilter());
+            default:
+                return true;
+        }
+    }
+
+    private static boolean matches(Entity entity, com.google.datastore.v1.PropertyFilter filter) {
+        Value<?> operand = DatastoreInternals.fromPb(filter.getValue());
+        if (filter.getOp() == com.google.datastore.v1.PropertyFilter.Operator.HAS_ANCESTOR) {
+            return isAncestor((Key) operand.get(), entity.getKey());
+        }
+        for (Value<?> value : indexedValues(entity, filter.getProperty().getName())) {
+            if (matches(filter.getOp(), value, operand)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(com.google.datastore.v1.PropertyFilter.Operator operator, Value<?> value, Value<?> operand) {
+        if (operator != com.google.datastore.v1.PropertyFilter.Operator.EQUAL
+                && ValueComparator.rank(value) != ValueComparator.rank(operand)) {
+            return false;
+        }
+        int result = ValueComparator.INSTANCE.compare(value, operand);
+        switch (operator) {
+            case EQUAL:
+                return result == 0;
+            case LESS_THAN:
+                return result < 0;
+            case LESS_THAN_OR_EQUAL:
+                return result <= 0;
+            case GREATER_THAN:
+                return result > 0;
+            case GREATER_THAN_OR_EQUAL:
+                return result >= 0;
+            default:
+                throw new UnsupportedOperationException("Operator " + operator + " is not supported");
+        }
+    }
+
+    private static List<Value<?>> indexedValues(Entity entity, String property) {
+        if (KEY_PROPERTY.equals(property)) {
+            return Collections.singletonList(KeyValue.of(entity.getKey()));
+        }
+        if (SCATTER_PROPERTY.equals(property)) {
+            return Collections.singletonList(LongValue.of(scatter(entity.getKey())));
+        }
+        if (!entity.contains(property)) {
+            return Collections.emptyList();
+        }
+        Value<?> value = entity.getValue(property);
+        if (value.getType() == ValueType.LIST) {
+            List<Value<?>> values = new ArrayList<>();
+            for (Value<?> element : ((ListValue) value).get()) {
+                if (!element.excludeFromIndexes()) {
+                    values.add(element);
+                }
+            }
+            return values;
+        }
+        return value.excludeFromIndexes() ? Collections.<Value<?>>emptyList() : Collections.<Value<?>>singletonList(value);
+    }
+
+    private static long scatter(Key key) {
+        return Hashing.murmur3_128().hashString(key.toUrlSafe(), StandardCharsets.UTF_8).asLong();
+    }
+
+    private static boolean isAncestor(Key ancestor, Key key) {
+        if (!InMemoryDatastore.namespace(ancestor).equals(InMemoryDatastore.namespace(key))) {
+            return false;
+        }
+        List<PathElement> ancestorPath = path(ancestor);
+        List<PathElement> keyPath = path(key);
+        return keyPath.size() >= ancestorPath.size() && keyPath.subList(0, ancestorPath.size()).equals(ancestorPath);
+    }
+
+    private static List<PathElement> path(Key key) {
+        List<PathElement> path = new ArrayList<>(key.getAncestors());
+        path.add(key.hasId() ? PathElement.of(key.getKind(), key.getId()) : PathElement.of(key.getKind(), key.getName()));
+        return path;
+    }
+
+    private static DatastoreException invalidCursor(Cursor cursor) {
+        return new DatastoreException(3, "Invalid cursor " + cursor.toUrlSafe(), "INVALID_ARGUMENT");
+    }
+
+    /**
+     * A matching entity with the values it is ordered by
+     */
+    static final class Row {
+        final Entity entity;
+        final Key key;
+        final List<Value<?>> values;
+
+        Row(Entity entity, Key key, List<Value<?>> values) {
+            this.entity = entity;
+            this.key = key;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.LatLng;
+import com.google.cloud.datastore.ListValue;
+import com.google.cloud.datastore.Value;
+import com.kramphub.datastore.query.KeyComparator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders property values the way Datastore indexes do: by type first
+ * (null, boolean, number, timestamp, string, blob, key, geo point, list, entity), then by value.
+ * Integers and doubles are compared as numbers, strings by their UTF-8 bytes.
+ */
+final class ValueComparator implements Comparator<Value<?>> {
+    static final ValueComparator INSTANCE = new ValueComparator();
+
+    private ValueComparator() {
+    }
+
+    /**
+     * This method returns the rank of the type in the index order, integers and doubles share a rank
+     *
+     * @param value
+     * @return rank
+     */
+    static int rank(Value<?> value) {
+        switch (value.getType()) {
+            case NULL:
+                return 0;
+            case BOOLEAN:
+                return 1;
+            case LONG:
+            case DOUBLE:
+                return 2;
+            case TIMESTAMP:
+                return 3;
+            case STRING:
+                return 4;
+            case BLOB:
+                return 5;
+            case KEY:
+                return 6;
+            case LAT_LNG:
+                return 7;
+            case LIST:
+                return 8;
+            case ENTITY:
+                return 9;
+            default:
+                return 10;
+        }
+    }
+
+    @Override
+    public int compare(Value<?> left, Value<?> right) {
+        int result = Integer.compare(rank(left), rank(right));
+        if (result != 0) {
+            return result;
+        }
+        switch (left.getType()) {
+            case NULL:
+                return 0;
+            case BOOLEAN:
+                return Boolean.compare((Boolean) left.get(), (Boolean) right.get());
+            case LONG:
+            case DOUBLE:
+                return compareNumbers((Number) left.get(), (Number) right.get());
+            case TIMESTAMP:
+                return ((Timestamp) left.get()).compareTo((Timestamp) right.get());
+            case STRING:
+                return compareBytes(((String) left.get()).getBytes(StandardCharsets.UTF_8),
+                        ((String) right.get()).getBytes(StandardCharsets.UTF_8));
+            case BLOB:
+                return compareBytes(((Blob) left.get()).toByteArray(), ((Blob) right.get()).toByteArray());
+            case KEY:
+                return KeyComparator.INSTANCE.compare((Key) left.get(), (Key) right.get());
+            case LAT_LNG:
+                return compareLatLng((LatLng) left.get(), (LatLng) right.get());
+            case LIST:
+                return compareLists(((ListValue) left).get(), ((ListValue) right).get());
+            default:
+                return left.equals(right) ? 0 : left.toString().compareTo(right.toString());
+        }
+    }
+
+    private static int compareNumbers(Number left, Number right) {
+        if (left instanceof Long && right instanceof Long) {
+            return Long.compare(left.longValue(), right.longValue());
+        }
+        return Double.compare(left.doubleValue(), right.doubleValue());
+    }
+
+    private static int compareBytes(byte[] left, byte[] right) {
+        int length = Math.min(left.length, right.length);
+        for (int i = 0; i < length; i++) {
+            int result = Integer.compare(left[i] & 0xff, right[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(left.length, right.length);
+    }
+
+    private static int compareLatLng(LatLng left, LatLng right) {
+        int result = Double.compare(left.getLatitude(), right.getLatitude());
+        return result != 0 ? result : Double.compare(left.getLongitude(), right.getLongitude());
+    }
+
+    private int compareLists(List<? extends Value<?>> left, List<? extends Value<?>> right) {
+        int length = Math.min(left.size(), right.size());
+        for (int i = 0; i < length; i++) {
+            int result = compare(left.get(i), right.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(left.size(), right.size());
+    }
+}
@@ -0,0 +1,224 @@
+package com.kramphub.datastore.batch;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
+import com.kramphub.datastore.exception.BatchWriteException;
+import com.kramphub.datastore.metrics.RepositoryMetrics;
+import com.kramphub.datastore.repository.RepositoryOptions;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class BatchWriterTest {
+    private static final long MIB = 1024 * 1024;
+
+    private ExecutorService executor;
+    private BatchWriter batchWriter;
+    private KeyFactory keyFactory;
+
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+        batchWriter = new BatchWriter(NOPLogger.NOP_LOGGER, RepositoryOptions.MAX_BATCH_SIZE, RepositoryOptions.MAX_BATCH_BYTES, executor);
+        keyFactory = new KeyFactory(InMemoryDatastore.DEFAULT_PROJECT_ID).setKind("item");
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void splitsAt500Mutations() {
+        assertEquals(Collections.singletonList(500), sizes(batchWriter.split(range(500), element -> 1)));
+        assertEquals(Arrays.asList(500, 1), sizes(batchWriter.split(range(501), element -> 1)));
+        assertEquals(Arrays.asList(500, 500, 201), sizes(batchWriter.split(range(1201), element -> 1)));
+    }
+
+    @Test
+    public void splitsAt10MiB() {
+        assertEquals(Collections.singletonList(10), sizes(batchWriter.split(range(10), element -> MIB)));
+        assertEquals(Arrays.asList(10, 10, 5), sizes(batchWriter.split(range(25), element -> MIB)));
+        assertEquals(Arrays.asList(9, 1), sizes(batchWriter.split(range(10), element -> element == 0 ? MIB + 1 : MIB)));
+    }
+
+    @Test
+    public void oversizedElementGetsChunkOfItsOwn() {
+        assertEquals(Arrays.asList(1, 1, 1), sizes(batchWriter.split(range(3), element -> element == 1 ? 11 * MIB : MIB)));
+    }
+
+    @Test
+    public void emptyInputWritesNothing() {
+        assertTrue(batchWriter.write("put", Collections.<Integer>emptyList(), element -> 1, chunk -> {
+            throw new AssertionError("no chunk expected");
+        }).isEmpty());
+        assertTrue(batchWriter.split(null, element -> 1).isEmpty());
+    }
+
+    @Test
+    public void writesChunksToDatastoreWithResultsInInputOrder() {
+        AtomicInteger commits = new AtomicInteger();
+        InMemoryDatastore datastore = new InMemoryDatastore() {
+            @Override
+            public List<Entity> put(FullEntity<?>... entities) {
+                commits.incrementAndGet();
+                // earlier chunks finish last
+                sleep(entities.length == 500 && ((Entity) entities[0]).getKey().getName().equals("k0") ? 100 : 0);
+                return super.put(entities);
+            }
+        };
+        List<Entity> entities = entities(1201);
+
+        List<Key> keys = batchWriter.write("put", entities, EntitySizeEstimator::estimate,
+                chunk -> datastore.put(chunk.toArray(new Entity[0])).stream().map(Entity::getKey).collect(Collectors.toList()));
+
+        assertEquals(3, commits.get());
+        assertEquals(1201, datastore.size());
+        assertEquals(entities.stream().map(Entity::getKey).collect(Collectors.toList()), keys);
+    }
+
+    @Test
+    public void failedChunksAreReportedByInputRange() {
+        InMemoryDatastore datastore = failingOn("k600");
+        List<Entity> entities = entities(1201);
+
+        try {
+            batchWriter.write("put", entities, EntitySizeEstimator::estimate,
+                    chunk -> datastore.put(chunk.toArray(new Entity[0])).stream().map(Entity::getKey).collect(Collectors.toList()));
+            fail("a failed chunk must be reported");
+        } catch (BatchWriteException e) {
+            BatchResult<?> result = e.getResult();
+            assertTrue(result.hasFailures());
+            assertEquals(1, result.getFailures().size());
+            ChunkFailure failure = result.getFailures().get(0);
+            assertEquals(1, failure.getChunkIndex());
+            assertEquals(500, failure.getFromIndex());
+            assertEquals(1000, failure.getToIndex());
+            assertTrue(failure.getCause() instanceof DatastoreException);
+
+            assertEquals(1201, result.getResults().size());
+            assertEquals(entities.get(499).getKey(), result.getResults().get(499));
+            assertNull(result.getResults().get(500));
+            assertNull(result.getResults().get(999));
+            assertEquals(entities.get(1000).getKey(), result.getResults().get(1000));
+        }
+        assertEquals(701, datastore.size());
+    }
+
+    @Test
+    public void singleChunkFailureIsPropagatedAsIs() {
+        InMemoryDatastore datastore = failingOn("k1");
+
+        try {
+            batchWriter.write("put", entities(10), EntitySizeEstimator::estimate, chunk -> datastore.put(chunk.toArray(new Entity[0])));
+            fail("the chunk failure must be propagated");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+    }
+
+    @Test
+    public void rateLimitPermitsAreAcquiredOnTheCallingThread() {
+        Thread caller = Thread.currentThread();
+        List<Thread> acquiring = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> writing = Collections.synchronizedList(new ArrayList<>());
+        WriteRateLimiter rateLimiter = new WriteRateLimiter(1_000_000, Duration.ofMinutes(5), Duration.ofSeconds(1)) {
+            @Override
+            public void acquire(int permits) throws InterruptedException {
+                acquiring.add(Thread.currentThread());
+                super.acquire(permits);
+            }
+        };
+        BatchWriter limited = new BatchWriter(NOPLogger.NOP_LOGGER, RepositoryOptions.MAX_BATCH_SIZE, RepositoryOptions.MAX_BATCH_BYTES,
+                executor, RepositoryMetrics.noop(), "item", rateLimiter);
+
+        limited.write("upsert", range(1201), element -> 1, chunk -> {
+            writing.add(Thread.currentThread());
+            return chunk;
+        });
+
+        assertEquals(Arrays.asList(caller, caller, caller), acquiring);
+        assertEquals(3, writing.size());
+        assertFalse(writing.contains(caller));
+    }
+
+    @Test
+    public void interruptedWaitFailsTheChunksNotDispatched() {
+        WriteRateLimiter rateLimiter = new WriteRateLimiter(500, Duration.ofMinutes(5), Duration.ofSeconds(1));
+        BatchWriter limited = new BatchWriter(NOPLogger.NOP_LOGGER, RepositoryOptions.MAX_BATCH_SIZE, RepositoryOptions.MAX_BATCH_BYTES,
+                executor, RepositoryMetrics.noop(), "item", rateLimiter);
+        AtomicInteger written = new AtomicInteger();
+
+        Thread.currentThread().interrupt();
+        try {
+            // the first chunk fits the burst of one second, the others have to wait
+            limited.write("upsert", range(1201), element -> 1, chunk -> {
+                written.addAndGet(chunk.size());
+                return chunk;
+            });
+            fail("the chunks not written must be reported");
+        } catch (BatchWriteException e) {
+            assertEquals(2, e.getResult().getFailures().size());
+            assertEquals(500, e.getResult().getFailures().get(0).getFromIndex());
+            assertEquals(500, written.get());
+        } finally {
+            Thread.interrupted();
+        }
+    }
+
+    private InMemoryDatastore failingOn(String name) {
+        return new InMemoryDatastore() {
+            @Override
+            public List<Entity> put(FullEntity<?>... entities) {
+                for (FullEntity<?> entity : entities) {
+                    if (name.equals(((Key) entity.getKey()).getName())) {
+                        throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+                    }
+                }
+                return super.put(entities);
+            }
+        };
+    }
+
+    private List<Entity> entities(int count) {
+        List<Entity> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entities.add(Entity.newBuilder(keyFactory.newKey("k" + i)).set("n", i).build());
+        }
+        return entities;
+    }
+
+    private static List<Integer> range(int count) {
+        List<Integer> range = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            range.add(i);
+        }
+        return range;
+    }
+
+    private static List<Integer> sizes(List<? extends List<?>> chunks) {
+        return chunks.stream().map(List::size).collect(Collectors.toList());
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
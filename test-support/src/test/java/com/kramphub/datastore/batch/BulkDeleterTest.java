@@ -0,0 +1,160 @@
+package com.kramphub.datastore.batch;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class BulkDeleterTest {
+    private final InMemoryDatastore datastore = new InMemoryDatastore();
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void deletesAllMatchingEntitiesInBatches() {
+        put(250);
+        List<DeleteProgress> progress = new CopyOnWriteArrayList<>();
+
+        DeleteProgress result = new BulkDeleter(datastore, NOPLogger.NOP_LOGGER, 100, 2, executor)
+                .delete(Query.newKeyQueryBuilder().setKind("item").setLimit(10).build(), progress::add);
+
+        assertEquals(250, result.getDeleted());
+        assertEquals(3, result.getBatches());
+        assertEquals(3, progress.size());
+        assertEquals(0, datastore.size());
+    }
+
+    @Test(timeout = 10_000)
+    public void rejectedBatchFailsTheDeleteInsteadOfHanging() {
+        put(250);
+        Executor rejecting = command -> {
+            throw new RejectedExecutionException("shut down");
+        };
+
+        try {
+            new BulkDeleter(datastore, NOPLogger.NOP_LOGGER, 100, 1, rejecting)
+                    .delete(Query.newKeyQueryBuilder().setKind("item").build(), null);
+            fail("the rejected batch must be reported");
+        } catch (RejectedExecutionException e) {
+            assertEquals(250, datastore.size());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failedBatchStopsTheDelete() {
+        put(250);
+        InMemoryDatastore failing = new InMemoryDatastore() {
+            @Override
+            public void delete(Key... keys) {
+                throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+            }
+        };
+        failing.put(datastore.fetch(keys(250)).toArray(new Entity[0]));
+
+        try {
+            new BulkDeleter(failing, NOPLogger.NOP_LOGGER, 100, 1, executor)
+                    .delete(Query.newKeyQueryBuilder().setKind("item").build(), null);
+            fail("the failed batch must be reported");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void batchesWaitForWritePermitsOnTheCallingThread() {
+        put(250);
+        Thread caller = Thread.currentThread();
+        List<Thread> acquiring = new CopyOnWriteArrayList<>();
+        List<Integer> acquired = new CopyOnWriteArrayList<>();
+        WriteRateLimiter limiter = new WriteRateLimiter(1_000_000, Duration.ZERO, Duration.ofMinutes(1)) {
+            @Override
+            public void acquire(int permits) throws InterruptedException {
+                acquiring.add(Thread.currentThread());
+                acquired.add(permits);
+                super.acquire(permits);
+            }
+        };
+        double initialRate = limiter.getRate();
+
+        DeleteProgress result = new BulkDeleter(datastore, NOPLogger.NOP_LOGGER, 100, 2, executor, limiter)
+                .delete(Query.newKeyQueryBuilder().setKind("item").build(), null);
+
+        assertEquals(250, result.getDeleted());
+        assertEquals(0, datastore.size());
+        assertEquals(Arrays.asList(100, 100, 50), acquired);
+        assertTrue(acquiring.stream().allMatch(thread -> thread == caller));
+        assertTrue("successful deletes raise the rate", limiter.getRate() > initialRate);
+    }
+
+    @Test(timeout = 10_000)
+    public void throttledBatchLowersTheWriteRate() {
+        InMemoryDatastore throttled = new InMemoryDatastore() {
+            @Override
+            public void delete(Key... keys) {
+                throw new DatastoreException(8, "too many writes", "RESOURCE_EXHAUSTED");
+            }
+        };
+        throttled.put(Entity.newBuilder(keyFactory.newKey("k0")).build());
+        WriteRateLimiter limiter = new WriteRateLimiter(100, Duration.ZERO, Duration.ofMinutes(1));
+
+        try {
+            new BulkDeleter(throttled, NOPLogger.NOP_LOGGER, 100, 1, executor, limiter)
+                    .delete(Query.newKeyQueryBuilder().setKind("item").build(), null);
+            fail("the throttled batch must be reported");
+        } catch (DatastoreException e) {
+            assertEquals(50, limiter.getRate(), 0.001);
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void interruptedWaitForWritePermitsStopsTheDelete() {
+        put(250);
+        WriteRateLimiter limiter = new WriteRateLimiter(1_000_000, Duration.ZERO, Duration.ofMinutes(1)) {
+            @Override
+            public void acquire(int permits) throws InterruptedException {
+                throw new InterruptedException();
+            }
+        };
+
+        try {
+            new BulkDeleter(datastore, NOPLogger.NOP_LOGGER, 100, 1, executor, limiter)
+                    .delete(Query.newKeyQueryBuilder().setKind("item").build(), null);
+            fail("the interrupt must be reported");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getCause() instanceof InterruptedException);
+            assertTrue(Thread.interrupted());
+            assertEquals(250, datastore.size());
+        }
+    }
+
+    private void put(int count) {
+        List<Entity> entities = new ArrayList<>(count);
+        for (Key key : keys(count)) {
+            entities.add(Entity.newBuilder(key).build());
+        }
+        datastore.put(entities.toArray(new Entity[0]));
+    }
+
+    private List<Key> keys(int count) {
+        List<Key> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(keyFactory.newKey("k" + i));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,73 @@
+package com.kramphub.datastore.cache;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyFactory;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EntityCacheTest {
+    private final KeyFactory keyFactory = new KeyFactory(InMemoryDatastore.DEFAULT_PROJECT_ID).setKind("item");
+    private final EntityCache cache = new EntityCache(100, Duration.ofMinutes(1), Duration.ofMinutes(1));
+
+    @Test
+    public void lookupIsCachedIfTheKeyWasNotWritten() {
+        Key key = keyFactory.newKey("a");
+        long version = cache.version(key);
+
+        assertTrue(cache.putIfUnchanged(item("a", 1), version));
+
+        assertEquals(1, cache.get(key).getLong("n"));
+    }
+
+    @Test
+    public void lookupRacingAWriteIsNotCached() {
+        Key key = keyFactory.newKey("a");
+        long version = cache.version(key);
+        cache.put(item("a", 2));
+
+        assertFalse(cache.putIfUnchanged(item("a", 1), version));
+
+        assertEquals(2, cache.get(key).getLong("n"));
+    }
+
+    @Test
+    public void missingLookupRacingAWriteIsNotCached() {
+        Key key = keyFactory.newKey("a");
+        long version = cache.version(key);
+        cache.put(item("a", 2));
+
+        assertFalse(cache.putMissingIfUnchanged(key, version));
+
+        assertFalse(cache.isMissing(key));
+        assertEquals(2, cache.get(key).getLong("n"));
+    }
+
+    @Test
+    public void lookupRacingADeleteOrInvalidationIsNotCached() {
+        Key key = keyFactory.newKey("a");
+        long version = cache.version(key);
+        cache.putMissing(key);
+        assertFalse(cache.putIfUnchanged(item("a", 1), version));
+        assertTrue(cache.isMissing(key));
+
+        version = cache.version(key);
+        cache.invalidateAll(Collections.singletonList(key));
+        assertFalse(cache.putIfUnchanged(item("a", 1), version));
+
+        version = cache.version(key);
+        cache.invalidateAll();
+        assertFalse(cache.putMissingIfUnchanged(key, version));
+        assertNull(cache.get(key));
+        assertFalse(cache.isMissing(key));
+    }
+
+    private Entity item(String name, long n) {
+        return Entity.newBuilder(keyFactory.newKey(name)).set("n", n).build();
+    }
+}
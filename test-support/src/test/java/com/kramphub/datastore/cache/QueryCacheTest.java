@@ -0,0 +1,181 @@
+package com.kramphub.datastore.cache;
+
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Query;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class QueryCacheTest {
+    private static final EntityQuery QUERY = Query.newEntityQueryBuilder().setKind("item").setLimit(10).build();
+
+    private final AtomicInteger loads = new AtomicInteger();
+    private final List<Runnable> refreshes = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void resultsAreCachedPerQuery() {
+        QueryCache cache = cache(Duration.ofMinutes(1));
+
+        assertEquals(Collections.singletonList(1), cache.get(QUERY, this::load));
+        assertEquals(Collections.singletonList(1), cache.get(QUERY.toBuilder().build(), this::load));
+        assertEquals(Collections.singletonList(2), cache.get(QUERY.toBuilder().setLimit(20).build(), this::load));
+
+        QueryCacheStats stats = cache.stats();
+        assertEquals(1, stats.getHits());
+        assertEquals(2, stats.getMisses());
+        assertEquals(2, stats.getSize());
+    }
+
+    @Test
+    public void queriesWithoutNamespaceShareTheResultsOfTheDefaultNamespace() {
+        QueryCache cache = cache(Duration.ofMinutes(1));
+
+        cache.get(QUERY, this::load);
+        cache.get(QUERY.toBuilder().setNamespace("").build(), this::load);
+        cache.get(QUERY.toBuilder().setNamespace("other").build(), this::load);
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void cachedResultsAreUnmodifiable() {
+        cache(Duration.ofMinutes(1)).get(QUERY, this::load).add(0);
+    }
+
+    @Test
+    public void invalidateAllDropsTheCachedResults() {
+        QueryCache cache = cache(Duration.ofMinutes(1));
+        cache.get(QUERY, this::load);
+
+        cache.invalidateAll();
+
+        assertEquals(Collections.singletonList(2), cache.get(QUERY, this::load));
+    }
+
+    @Test(timeout = 10_000)
+    public void resultsLoadedBeforeAnInvalidationAreNotReturnedAfterIt() throws Exception {
+        QueryCache cache = cache(Duration.ofMinutes(1));
+        CountDownLatch loading = new CountDownLatch(1);
+        Future<List<Integer>> first = executor.submit(() -> cache.get(QUERY, () -> {
+            loading.countDown();
+            await(released);
+            return load();
+        }));
+        loading.await();
+
+        cache.invalidateAll();
+        released.countDown();
+
+        assertEquals(Collections.singletonList(1), first.get());
+        assertEquals(Collections.singletonList(2), cache.get(QUERY, this::load));
+    }
+
+    @Test
+    public void staleResultsAreReturnedWhileTheyAreRefreshed() {
+        QueryCache cache = cache(Duration.ZERO);
+        cache.get(QUERY, this::load);
+
+        assertEquals(Collections.singletonList(1), cache.get(QUERY, this::load));
+        assertEquals(Collections.singletonList(1), cache.get(QUERY, this::load));
+        assertEquals("a refresh in progress is not started again", 1, refreshes.size());
+        refreshes.remove(0).run();
+
+        assertEquals(Collections.singletonList(2), cache.get(QUERY, this::load));
+        assertEquals(3, cache.stats().getStaleHits());
+    }
+
+    @Test
+    public void refreshFinishingAfterAnInvalidationIsNotCached() {
+        QueryCache cache = cache(Duration.ZERO);
+        cache.get(QUERY, this::load);
+        cache.get(QUERY, this::load);
+
+        cache.invalidateAll();
+        refreshes.remove(0).run();
+
+        assertEquals(Collections.singletonList(3), cache.get(QUERY, this::load));
+    }
+
+    @Test
+    public void failedRefreshKeepsTheCachedResults() {
+        QueryCache cache = cache(Duration.ZERO);
+        cache.get(QUERY, this::load);
+        cache.get(QUERY, () -> {
+            throw new IllegalStateException("query failed");
+        });
+
+        refreshes.remove(0).run();
+
+        assertEquals(Collections.singletonList(1), cache.get(QUERY, this::load));
+    }
+
+    @Test
+    public void failedLoadIsThrownAndNotCached() {
+        QueryCache cache = cache(Duration.ofMinutes(1));
+
+        try {
+            cache.get(QUERY, () -> {
+                throw new IllegalStateException("query failed");
+            });
+            fail("the failure must be thrown");
+        } catch (IllegalStateException e) {
+            assertEquals("query failed", e.getMessage());
+        }
+
+        assertEquals(Collections.singletonList(1), cache.get(QUERY, this::load));
+    }
+
+    @Test(timeout = 10_000)
+    public void concurrentMissesLoadOnce() throws Exception {
+        QueryCache cache = cache(Duration.ofMinutes(1));
+        List<Future<List<Integer>>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> cache.get(QUERY, () -> {
+                await(released);
+                return load();
+            })));
+        }
+        Thread.sleep(50);
+        released.countDown();
+
+        for (Future<List<Integer>> future : futures) {
+            assertEquals(Collections.singletonList(1), future.get());
+        }
+        assertEquals(1, loads.get());
+    }
+
+    private QueryCache cache(Duration refreshAfter) {
+        return new QueryCache(NOPLogger.NOP_LOGGER, "",
+                1000, Duration.ofMinutes(1), refreshAfter, refreshes::add);
+    }
+
+    private List<Integer> load() {
+        return Collections.singletonList(loads.incrementAndGet());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.kramphub.datastore.concurrent;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BoundedExecutorTest {
+    private final ExecutorService delegate = Executors.newCachedThreadPool();
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        delegate.shutdownNow();
+    }
+
+    @Test
+    public void tasksOverTheLimitAreQueued() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor(delegate, 2);
+        AtomicInteger maxRunning = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[10];
+
+        for (int i = 0; i < futures.length; i++) {
+            futures[i] = CompletableFuture.runAsync(() -> {
+                maxRunning.accumulateAndGet(executor.getRunning(), Math::max);
+                await(released);
+            }, executor);
+        }
+        assertTrue(await(() -> executor.getRunning() == 2 && executor.getQueued() == 8));
+        released.countDown();
+
+        CompletableFuture.allOf(futures).get(5, TimeUnit.SECONDS);
+        assertEquals(2, maxRunning.get());
+        assertEquals(0, executor.getRunning());
+    }
+
+    @Test
+    public void submitterOfARejectedTaskGetsTheRejection() {
+        BoundedExecutor executor = new BoundedExecutor(command -> {
+            throw new RejectedExecutionException("shut down");
+        }, 2);
+
+        try {
+            CompletableFuture.runAsync(() -> fail("a rejected task must not run"), executor);
+            fail("the rejection must be reported");
+        } catch (RejectedExecutionException e) {
+            assertEquals(0, executor.getRunning());
+            assertEquals(0, executor.getQueued());
+        }
+    }
+
+    @Test
+    public void queuedTaskRejectedLaterStillCompletes() throws Exception {
+        ExecutorService single = Executors.newSingleThreadExecutor();
+        BoundedExecutor executor = new BoundedExecutor(single, 1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        CompletableFuture<Void> running = CompletableFuture.runAsync(() -> {
+            started.countDown();
+            await(released);
+        }, executor);
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> "done", executor);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        single.shutdown();
+        released.countDown();
+
+        running.get(5, TimeUnit.SECONDS);
+        assertEquals("done", queued.get(5, TimeUnit.SECONDS));
+        assertEquals(0, executor.getQueued());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.call()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,30 @@
+package com.kramphub.datastore.concurrent;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RepositoryExecutorsTest {
+
+    @Test
+    public void sharedExecutorsCannotBeShutDown() throws Exception {
+        assertFalse(RepositoryExecutors.shared() instanceof ExecutorService);
+        assertFalse(RepositoryExecutors.async() instanceof ExecutorService);
+
+        assertEquals("shared", CompletableFuture.supplyAsync(() -> "shared", RepositoryExecutors.shared()).get(5, TimeUnit.SECONDS));
+        assertEquals("async", CompletableFuture.supplyAsync(() -> "async", RepositoryExecutors.async()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void daemonThreadsAreNamedWithThePrefix() {
+        Thread thread = RepositoryExecutors.daemonThreadFactory("datastore-test").newThread(() -> {
+        });
+
+        assertTrue(thread.isDaemon());
+        assertEquals("datastore-test-1", thread.getName());
+    }
+}
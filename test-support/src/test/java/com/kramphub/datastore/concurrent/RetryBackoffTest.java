@@ -0,0 +1,49 @@
+package com.kramphub.datastore.concurrent;
+
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RetryBackoffTest {
+
+    @Test
+    public void delayBoundDoublesPerRetry() {
+        RetryBackoff backoff = new RetryBackoff(Duration.ofMillis(100), Duration.ofSeconds(5));
+
+        for (int retry = 1; retry <= 4; retry++) {
+            long bound = TimeUnit.MILLISECONDS.toNanos(100) << (retry - 1);
+            long max = 0;
+            for (int i = 0; i < 1000; i++) {
+                long delay = backoff.delayNanos(retry);
+                assertTrue(delay >= 0 && delay <= bound);
+                max = Math.max(max, delay);
+            }
+            assertTrue("delays are spread up to the bound", max > bound / 2);
+        }
+    }
+
+    @Test
+    public void delayIsCappedAtTheMaxDelay() {
+        RetryBackoff backoff = new RetryBackoff(Duration.ofMillis(100), Duration.ofSeconds(1));
+        long max = TimeUnit.SECONDS.toNanos(1);
+
+        for (int retry : new int[]{5, 10, 63, 64, 1000, Integer.MAX_VALUE}) {
+            for (int i = 0; i < 100; i++) {
+                long delay = backoff.delayNanos(retry);
+                assertTrue(delay >= 0 && delay <= max);
+            }
+        }
+    }
+
+    @Test
+    public void maxDelayBelowTheInitialDelayIsRaised() {
+        RetryBackoff backoff = new RetryBackoff(Duration.ofMillis(100), Duration.ofMillis(10));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(backoff.delayNanos(1) <= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.kramphub.datastore.concurrent;
+
+import com.google.cloud.datastore.DatastoreException;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class WriteRateLimiterTest {
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    @Test
+    public void startsAtTheInitialRate() {
+        WriteRateLimiter limiter = new WriteRateLimiter(WriteRateLimiter.RAMP_UP_INITIAL_RATE, WriteRateLimiter.RAMP_UP_INTERVAL, Duration.ofSeconds(2));
+
+        assertEquals(500, limiter.getRate(), 0);
+    }
+
+    @Test
+    public void burstOfOneSecondIsNotDelayed() throws InterruptedException {
+        WriteRateLimiter limiter = new WriteRateLimiter(500, WriteRateLimiter.RAMP_UP_INTERVAL, Duration.ofSeconds(2));
+
+        long start = System.nanoTime();
+        limiter.acquire(500);
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test
+    public void writesBeyondTheBurstWaitForTheRate() throws InterruptedException {
+        WriteRateLimiter limiter = new WriteRateLimiter(1000, WriteRateLimiter.RAMP_UP_INTERVAL, Duration.ofSeconds(2));
+
+        long start = System.nanoTime();
+        limiter.acquire(1000);
+        limiter.acquire(300);
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(250));
+    }
+
+    @Test
+    public void ceilingGrowsByHalfPerRampUpInterval() throws InterruptedException {
+        WriteRateLimiter limiter = new WriteRateLimiter(100, Duration.ofMillis(100), Duration.ofSeconds(2));
+        limiter.acquire(1);
+        // successes raise the rate up to the ceiling only
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSuccess(100, LATENCY);
+        }
+        assertTrue(limiter.getRate() < 100 * 1.5);
+
+        Thread.sleep(200);
+        for (int i = 0; i < 1000; i++) {
+            limiter.onSuccess(100, LATENCY);
+        }
+
+        assertTrue(limiter.getRate() > 100 * 1.5);
+    }
+
+    @Test
+    public void successesRaiseTheRateAdditively() {
+        WriteRateLimiter limiter = new WriteRateLimiter(100, Duration.ZERO, Duration.ofSeconds(2));
+
+        // a second of writes raises the rate by a tenth of the initial rate
+        limiter.onSuccess(100, LATENCY);
+
+        assertEquals(110, limiter.getRate(), 0.001);
+    }
+
+    @Test
+    public void throttledWriteHalvesTheRateOncePerCooldown() {
+        WriteRateLimiter limiter = new WriteRateLimiter(500, Duration.ZERO, Duration.ofSeconds(2));
+
+        limiter.onFailure(new DatastoreException(8, "quota", "RESOURCE_EXHAUSTED"));
+        limiter.onFailure(new DatastoreException(4, "deadline", "DEADLINE_EXCEEDED"));
+
+        assertEquals(250, limiter.getRate(), 0);
+    }
+
+    @Test
+    public void slowWriteLowersTheRate() {
+        WriteRateLimiter limiter = new WriteRateLimiter(500, Duration.ZERO, Duration.ofMillis(100));
+
+        limiter.onSuccess(10, TimeUnit.SECONDS.toNanos(1));
+
+        assertEquals(250, limiter.getRate(), 0);
+    }
+
+    @Test
+    public void otherFailuresKeepTheRate() {
+        WriteRateLimiter limiter = new WriteRateLimiter(500, Duration.ZERO, Duration.ofSeconds(2));
+
+        limiter.onFailure(new DatastoreException(6, "exists", "ALREADY_EXISTS"));
+        limiter.onFailure(new IllegalStateException());
+
+        assertEquals(500, limiter.getRate(), 0);
+    }
+
+    @Test
+    public void throttlingIsRecognizedByCodeOrReason() {
+        assertTrue(WriteRateLimiter.isThrottled(new DatastoreException(429, "too many requests", null)));
+        assertTrue(WriteRateLimiter.isThrottled(new DatastoreException(504, "gateway timeout", null)));
+        assertTrue(WriteRateLimiter.isThrottled(new DatastoreException(0, "quota", "RESOURCE_EXHAUSTED")));
+        assertFalse(WriteRateLimiter.isThrottled(new DatastoreException(10, "contention", "ABORTED")));
+        assertFalse(WriteRateLimiter.isThrottled(new RuntimeException()));
+    }
+}
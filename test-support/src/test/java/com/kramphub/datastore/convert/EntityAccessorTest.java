@@ -0,0 +1,204 @@
+package com.kramphub.datastore.convert;
+
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.ValueType;
+import com.kramphub.datastore.exception.EntityParseException;
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.mapping.Lazy;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EntityAccessorTest {
+    private static final BaseKind COUNT = field("count");
+    private static final BaseKind NAME = field("name");
+    private static final BaseKind DATA = field("data");
+    private static final byte[] BYTES = "payload".getBytes(StandardCharsets.UTF_8);
+
+    private final KeyFactory keyFactory = new KeyFactory(InMemoryDatastore.DEFAULT_PROJECT_ID).setKind("item");
+    private final EntityReader entityReader = new EntityReader(NOPLogger.NOP_LOGGER);
+
+    @Test
+    public void integerWithinRangeIsRead() {
+        EntityAccessor accessor = entityReader.view(entity(Integer.MIN_VALUE));
+
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), accessor.getInteger(COUNT));
+        assertFalse(accessor.hasErrors());
+    }
+
+    @Test
+    public void integerOverflowIsReportedInsteadOfTruncated() {
+        EntityAccessor accessor = entityReader.view(entity(Integer.MAX_VALUE + 1L));
+
+        assertNull(accessor.getInteger(COUNT));
+        assertEquals(Collections.singletonList("count"), accessor.getErrorFields());
+        try {
+            accessor.throwIfInvalid();
+            fail("the overflow must be reported");
+        } catch (EntityParseException e) {
+            assertEquals(Collections.singletonList("count"), e.getFields());
+            assertTrue(e.getMessage(), e.getMessage().contains("out of range for Integer"));
+        }
+    }
+
+    @Test
+    public void readerKeepsTruncatingIntegers() {
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), entityReader.tryGetInteger(entity(Integer.MAX_VALUE + 1L), COUNT));
+    }
+
+    @Test
+    public void lazyMismatchNamesTheExpectedValueType() {
+        EntityAccessor accessor = entityReader.view(entity(1));
+
+        assertNull(accessor.getLazyString(COUNT).get());
+        accessor.getLazy(NAME, ValueType.LONG, value -> value.get());
+
+        try {
+            accessor.throwIfInvalid();
+            fail("the mismatches must be reported");
+        } catch (EntityParseException e) {
+            assertEquals(Arrays.asList("count", "name"), e.getFields());
+            assertTrue(e.getMessage(), e.getMessage().contains("[count] LONG can not be casted to String"));
+            assertTrue(e.getMessage(), e.getMessage().contains("[name] STRING can not be casted to Long"));
+            assertFalse(e.getMessage(), e.getMessage().contains(Lazy.class.getSimpleName()));
+        }
+    }
+
+    @Test
+    public void blobIsReadAsReadOnlyBufferAndStream() throws IOException {
+        EntityAccessor accessor = entityReader.view(blobEntity());
+
+        ByteBuffer buffer = accessor.getBlobAsByteBuffer(DATA);
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteBuffer.wrap(BYTES), buffer);
+        try (InputStream input = accessor.getBlobAsStream(DATA)) {
+            assertArrayEquals(BYTES, read(input));
+        }
+        assertEquals("payload", accessor.getBlob(DATA, input -> new String(read(input), StandardCharsets.UTF_8)));
+        assertFalse(accessor.hasErrors());
+    }
+
+    @Test(expected = ReadOnlyBufferException.class)
+    public void blobBufferCanNotBeWritten() {
+        entityReader.view(blobEntity()).getBlobAsByteBuffer(DATA).put(0, (byte) 0);
+    }
+
+    @Test
+    public void nullBlobIsNullWithoutError() {
+        EntityAccessor accessor = entityReader.view(Entity.newBuilder(keyFactory.newKey("a")).setNull("data").build());
+
+        assertNull(accessor.getBlobAsByteBuffer(DATA));
+        assertNull(accessor.getBlobAsStream(DATA));
+        assertNull(accessor.getBlob(DATA, input -> {
+            throw new AssertionError("a null blob must not be parsed");
+        }));
+        assertFalse(accessor.hasErrors());
+    }
+
+    @Test
+    public void missingMismatchedAndUnparsableBlobsAreReported() {
+        EntityAccessor accessor = entityReader.view(blobEntity());
+
+        assertNull(accessor.getBlobAsByteBuffer(COUNT));
+        assertNull(accessor.getBlobAsStream(field("missing")));
+        assertNull(accessor.getBlob(DATA, input -> {
+            throw new IOException("truncated");
+        }));
+
+        assertEquals(Arrays.asList("count", "missing", "data"), accessor.getErrorFields());
+        try {
+            accessor.throwIfInvalid();
+            fail("the blob errors must be reported");
+        } catch (EntityParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("[count] LONG can not be casted to Blob"));
+            assertTrue(e.getMessage(), e.getMessage().contains("[missing] is missing"));
+            assertTrue(e.getMessage(), e.getMessage().contains("[data] can not be parsed: truncated"));
+        }
+    }
+
+    @Test
+    public void readerReturnsBlobAsReadOnlyBufferAndStream() throws IOException {
+        Entity entity = blobEntity();
+
+        ByteBuffer buffer = entityReader.tryGetBlobAsByteBuffer(entity, DATA);
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteBuffer.wrap(BYTES), buffer);
+        try (InputStream input = entityReader.tryGetBlobAsStream(entity, DATA)) {
+            assertArrayEquals(BYTES, read(input));
+        }
+        assertEquals(BYTES.length, (int) entityReader.tryGetBlob(entity, DATA, input -> read(input).length));
+    }
+
+    @Test
+    public void readerReturnsNullForNullBlob() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a")).setNull("data").build();
+
+        assertNull(entityReader.tryGetBlobAsByteBuffer(entity, DATA));
+        assertNull(entityReader.tryGetBlobAsStream(entity, DATA));
+    }
+
+    @Test
+    public void readerThrowsOnMismatchedOrUnparsableBlob() {
+        Entity entity = blobEntity();
+
+        try {
+            entityReader.tryGetBlobAsByteBuffer(entity, COUNT);
+            fail("the mismatch must be reported");
+        } catch (EntityParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Field [count]"));
+        }
+        try {
+            entityReader.tryGetBlob(entity, DATA, input -> {
+                throw new IOException("truncated");
+            });
+            fail("the parser failure must be reported");
+        } catch (EntityParseException e) {
+            assertEquals(Collections.singletonList("data"), e.getFields());
+            assertTrue(e.getMessage(), e.getMessage().contains("can not be parsed: truncated"));
+        }
+    }
+
+    private Entity blobEntity() {
+        return Entity.newBuilder(keyFactory.newKey("a")).set("count", 1).set("data", Blob.copyFrom(BYTES)).build();
+    }
+
+    private static byte[] read(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4];
+        for (int n = input.read(chunk); n != -1; n = input.read(chunk)) {
+            output.write(chunk, 0, n);
+        }
+        return output.toByteArray();
+    }
+
+    private Entity entity(long count) {
+        return Entity.newBuilder(keyFactory.newKey("a")).set("count", count).set("name", "a").build();
+    }
+
+    private static BaseKind field(String name) {
+        return new BaseKind() {
+            @Override
+            public String value() {
+                return name;
+            }
+
+            @Override
+            public String getKindIdentifier() {
+                return "item";
+            }
+        };
+    }
+}
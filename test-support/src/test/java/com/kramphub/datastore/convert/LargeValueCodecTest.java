@@ -0,0 +1,188 @@
+package com.kramphub.datastore.convert;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.exception.EntityParseException;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class LargeValueCodecTest {
+    private static final int MAGIC = 0xDA7A_1A26;
+
+    private final KeyFactory keyFactory = new KeyFactory(InMemoryDatastore.DEFAULT_PROJECT_ID).setKind("item");
+    private final Key owner = keyFactory.newKey("a");
+    private final LargeValueCodec codec = new LargeValueCodec(1000, 4000);
+
+    @Test
+    public void smallValuesAreStoredAsTheyAre() {
+        LargeValueCodec.Encoded bytes = codec.encode(owner, "data", new byte[]{1, 2, 3});
+        LargeValueCodec.Encoded text = codec.encode(owner, "text", "small");
+
+        assertEquals(ValueType.BLOB, bytes.getValue().getType());
+        assertArrayEquals(new byte[]{1, 2, 3}, ((Blob) bytes.getValue().get()).toByteArray());
+        assertEquals(ValueType.STRING, text.getValue().getType());
+        assertEquals("small", text.getValue().get());
+        assertTrue(bytes.getChunks().isEmpty());
+        assertTrue(text.getChunks().isEmpty());
+    }
+
+    @Test
+    public void plainBytesLookingLikeAHeaderRoundTrip() {
+        byte[] data = ByteBuffer.allocate(16).putInt(MAGIC).put((byte) 4).array();
+
+        assertArrayEquals(data, roundTrip(codec, "data", data));
+    }
+
+    @Test
+    public void compressibleValueIsDeflatedInline() {
+        byte[] data = new byte[100_000];
+        Arrays.fill(data, (byte) 'x');
+
+        LargeValueCodec.Encoded encoded = codec.encode(owner, "data", data);
+
+        assertTrue(encoded.getChunks().isEmpty());
+        assertTrue(encoded.getStoredBytes() < 4000);
+        assertEquals(data.length, encoded.getRawBytes());
+        assertArrayEquals(data, decode("data", encoded));
+    }
+
+    @Test
+    public void largeValueIsSplitIntoChunksOfTheOwner() {
+        byte[] data = random(10_000);
+
+        LargeValueCodec.Encoded encoded = codec.encode(owner, "data", data);
+        Entity entity = owner("data", encoded);
+
+        assertEquals(3, encoded.getChunks().size());
+        assertTrue(LargeValueCodec.isChunked(encoded.getValue()));
+        List<Key> keys = LargeValueCodec.chunkKeys(entity, "data");
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = encoded.getChunks().get(i).getKey();
+            assertEquals(keys.get(i), key);
+            assertEquals(owner, key.getParent());
+            assertEquals(LargeValueCodec.CHUNK_KIND, key.getKind());
+        }
+        assertArrayEquals(data, decode("data", encoded));
+    }
+
+    @Test
+    public void largeTextRoundTrips() {
+        StringBuilder text = new StringBuilder();
+        Random random = new Random(1);
+        while (text.length() < 20_000) {
+            text.appendCodePoint(0x1F600 + random.nextInt(64)).append(random.nextInt());
+        }
+
+        LargeValueCodec.Encoded encoded = codec.encode(owner, "text", text.toString());
+
+        assertFalse(encoded.getChunks().isEmpty());
+        assertEquals(text.toString(), LargeValueCodec.decodeText(owner("text", encoded), "text", chunks(encoded)));
+    }
+
+    @Test
+    public void everyEncodingHasChunksOfItsOwnVersion() {
+        byte[] data = random(10_000);
+
+        Set<Key> first = new HashSet<>(LargeValueCodec.chunkKeys(owner("data", codec.encode(owner, "data", data)), "data"));
+        Set<Key> second = new HashSet<>(LargeValueCodec.chunkKeys(owner("data", codec.encode(owner, "data", data)), "data"));
+
+        assertTrue(Collections.disjoint(first, second));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void chunkedValueNeedsAnOwner() {
+        codec.encode(null, "data", random(10_000));
+    }
+
+    @Test
+    public void missingChunkIsReported() {
+        LargeValueCodec.Encoded encoded = codec.encode(owner, "data", random(10_000));
+        Map<Key, Entity> chunks = chunks(encoded);
+        chunks.remove(encoded.getChunks().get(1).getKey());
+
+        assertCorrupt("missing", () -> LargeValueCodec.decode(owner("data", encoded), "data", chunks));
+    }
+
+    @Test
+    public void truncatedChunkIsReported() {
+        LargeValueCodec.Encoded encoded = codec.encode(owner, "data", random(10_000));
+        Map<Key, Entity> chunks = chunks(encoded);
+        Key last = encoded.getChunks().get(2).getKey();
+        chunks.put(last, Entity.newBuilder(last).set(LargeValueCodec.CHUNK_PROPERTY, Blob.copyFrom(new byte[1])).build());
+
+        assertCorrupt("corrupt", () -> LargeValueCodec.decode(owner("data", encoded), "data", chunks));
+    }
+
+    @Test
+    public void hugeRawLengthIsReportedWithoutAllocatingIt() {
+        byte[] deflated = ((Blob) codec.encode(owner, "data", new byte[10_000]).getValue().get()).toByteArray();
+        ByteBuffer.wrap(deflated).putInt(5, Integer.MAX_VALUE);
+
+        assertCorrupt("corrupt", () -> LargeValueCodec.decode(entity("data", Blob.copyFrom(deflated)), "data", Collections.emptyMap()));
+    }
+
+    @Test
+    public void corruptDeflatedBytesAreReported() {
+        byte[] blob = ByteBuffer.allocate(9 + 4).putInt(MAGIC).put((byte) 1).putInt(100).putInt(-1).array();
+
+        assertCorrupt("corrupt", () -> LargeValueCodec.decode(entity("data", Blob.copyFrom(blob)), "data", Collections.emptyMap()));
+    }
+
+    @Test
+    public void truncatedChunkHeaderIsReported() {
+        byte[] blob = ByteBuffer.allocate(12).putInt(MAGIC).put((byte) 4).putInt(100).array();
+
+        assertCorrupt("corrupt", () -> LargeValueCodec.decode(entity("data", Blob.copyFrom(blob)), "data", Collections.emptyMap()));
+    }
+
+    @Test
+    public void nonBlobPropertyIsReported() {
+        Entity entity = Entity.newBuilder(owner).set("data", 1L).build();
+
+        assertCorrupt("no large value", () -> LargeValueCodec.decode(entity, "data", Collections.emptyMap()));
+        assertNull(LargeValueCodec.decode(entity, "missing", Collections.emptyMap()));
+    }
+
+    private byte[] roundTrip(LargeValueCodec codec, String property, byte[] data) {
+        return decode(property, codec.encode(owner, property, data));
+    }
+
+    private byte[] decode(String property, LargeValueCodec.Encoded encoded) {
+        return LargeValueCodec.decode(owner(property, encoded), property, chunks(encoded));
+    }
+
+    private Entity owner(String property, LargeValueCodec.Encoded encoded) {
+        return Entity.newBuilder(owner).set(property, encoded.getValue()).build();
+    }
+
+    private Entity entity(String property, Blob blob) {
+        return Entity.newBuilder(owner).set(property, blob).build();
+    }
+
+    private static Map<Key, Entity> chunks(LargeValueCodec.Encoded encoded) {
+        Map<Key, Entity> chunks = new HashMap<>();
+        encoded.getChunks().forEach(chunk -> chunks.put(chunk.getKey(), chunk));
+        return chunks;
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static void assertCorrupt(String message, Runnable decode) {
+        try {
+            decode.run();
+            fail("the value must be reported");
+        } catch (EntityParseException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(message));
+            assertEquals(Collections.singletonList("data"), e.getFields());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.kramphub.datastore.key;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+public class IdAllocatorTest {
+    private final List<Integer> blocks = new CopyOnWriteArrayList<>();
+    private volatile boolean failing;
+    private final InMemoryDatastore datastore = new InMemoryDatastore() {
+        @Override
+        public List<Key> allocateId(IncompleteKey... keys) {
+            blocks.add(keys.length);
+            if (failing) {
+                throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+            }
+            return super.allocateId(keys);
+        }
+    };
+    private final IncompleteKey itemKey = datastore.newKeyFactory().setKind("item").newKey();
+    private final List<Runnable> refills = new CopyOnWriteArrayList<>();
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void idsAreHandedOutFromThePoolAndRefilledBelowHalfABlock() {
+        IdAllocator allocator = new IdAllocator(datastore, NOPLogger.NOP_LOGGER, 10, refills::add);
+
+        Key first = allocator.allocate(itemKey);
+        assertEquals(Collections.singletonList(10), blocks);
+        assertEquals(9, allocator.available(itemKey));
+        assertEquals("item", first.getKind());
+        assertTrue(first.hasId());
+
+        allocator.allocate(itemKey, 3);
+        assertEquals(6, allocator.available(itemKey));
+        assertTrue(refills.isEmpty());
+
+        allocator.allocate(itemKey);
+        assertEquals(1, refills.size());
+        allocator.allocate(itemKey);
+        assertEquals("a refill in progress is not started again", 1, refills.size());
+        refills.remove(0).run();
+
+        assertEquals(Arrays.asList(10, 10), blocks);
+        assertEquals(14, allocator.available(itemKey));
+    }
+
+    @Test
+    public void emptyPoolAllocatesOnTheCallingThread() {
+        IdAllocator allocator = new IdAllocator(datastore, NOPLogger.NOP_LOGGER, 2, refills::add);
+
+        Set<Key> keys = new HashSet<>(allocator.allocate(itemKey, 5));
+
+        assertEquals(5, keys.size());
+        assertEquals(Arrays.asList(2, 2, 2), blocks);
+    }
+
+    @Test
+    public void keysWithAParentUseSmallerBlocksPerParent() {
+        IdAllocator allocator = new IdAllocator(datastore, NOPLogger.NOP_LOGGER, 500, refills::add);
+        Key parent = datastore.newKeyFactory().setKind("order").newKey("o1");
+        IncompleteKey line = IncompleteKey.newBuilder(parent, "line").build();
+
+        Key key = allocator.allocate(line);
+        allocator.allocate(itemKey);
+
+        assertEquals(parent, key.getParent());
+        assertEquals(Arrays.asList(IdAllocator.ANCESTOR_BLOCK_SIZE, 500), blocks);
+        assertEquals(IdAllocator.ANCESTOR_BLOCK_SIZE - 1, allocator.available(line));
+        assertEquals(0, allocator.available(IncompleteKey.newBuilder(datastore.newKeyFactory().setKind("order").newKey("o2"), "line").build()));
+    }
+
+    @Test
+    public void failedRefillFallsBackToAllocatingOnDemand() {
+        IdAllocator allocator = new IdAllocator(datastore, NOPLogger.NOP_LOGGER, 2, refills::add);
+        allocator.allocate(itemKey);
+        failing = true;
+        refills.remove(0).run();
+        failing = false;
+
+        allocator.allocate(itemKey);
+        Key key = allocator.allocate(itemKey);
+
+        assertNotNull(key);
+        assertEquals(Arrays.asList(2, 2, 2), blocks);
+    }
+
+    @Test
+    public void rejectedRefillFallsBackToAllocatingOnDemand() {
+        IdAllocator allocator = new IdAllocator(datastore, NOPLogger.NOP_LOGGER, 2, command -> {
+            throw new RejectedExecutionException("shut down");
+        });
+
+        assertEquals(4, new HashSet<>(allocator.allocate(itemKey, 4)).size());
+    }
+
+    @Test(expected = DatastoreException.class)
+    public void failedAllocationOnDemandIsThrown() {
+        failing = true;
+
+        new IdAllocator(datastore, NOPLogger.NOP_LOGGER, 2, refills::add).allocate(itemKey);
+    }
+
+    @Test(timeout = 10_000)
+    public void concurrentAllocationsGetDistinctIds() throws Exception {
+        IdAllocator allocator = new IdAllocator(datastore, NOPLogger.NOP_LOGGER, 50, executor);
+        Set<Key> keys = ConcurrentHashMap.newKeySet();
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    keys.add(allocator.allocate(itemKey));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        assertEquals(4000, keys.size());
+    }
+}
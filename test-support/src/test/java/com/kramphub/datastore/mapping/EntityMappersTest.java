@@ -0,0 +1,107 @@
+package com.kramphub.datastore.mapping;
+
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.KeyFactory;
+import com.google.cloud.datastore.ValueType;
+import com.kramphub.datastore.exception.EntityParseException;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class EntityMappersTest {
+    private static final String[] NAMES = {"count", "name"};
+    private static final ValueType[] TYPES = {ValueType.LONG, ValueType.STRING};
+
+    private final KeyFactory keyFactory = new KeyFactory(InMemoryDatastore.DEFAULT_PROJECT_ID).setKind("item");
+
+    @Test
+    public void missingAndNullPropertiesMapToDefaults() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a")).setNull("count").build();
+
+        assertNull(EntityMappers.getInteger(entity, "count"));
+        assertEquals(0, EntityMappers.getIntValue(entity, "count"));
+        assertEquals(0L, EntityMappers.getLongValue(entity, "missing"));
+        assertNull(EntityMappers.getString(entity, "missing"));
+    }
+
+    @Test
+    public void integerOverflowIsReportedWithTheField() {
+        Entity entity = entity(1L << 40, "a");
+
+        try {
+            EntityMappers.getIntValue(entity, "count");
+            fail("the overflow must be reported");
+        } catch (ArithmeticException e) {
+            EntityParseException parseException = EntityMappers.parseException(entity, NAMES, TYPES, e);
+
+            assertEquals(Collections.singletonList("count"), parseException.getFields());
+            assertTrue(parseException.getMessage(), parseException.getMessage().contains("out of range for Integer"));
+        }
+    }
+
+    @Test
+    public void typeMismatchesAreListed() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a")).set("count", "one").set("name", "a").build();
+
+        try {
+            EntityMappers.getLong(entity, "count");
+            fail("the mismatch must be reported");
+        } catch (ClassCastException e) {
+            EntityParseException parseException = EntityMappers.parseException(entity, NAMES, TYPES, e);
+
+            assertEquals(Collections.singletonList("count"), parseException.getFields());
+            assertTrue(parseException.getMessage(), parseException.getMessage().contains("count (STRING, expected LONG)"));
+        }
+    }
+
+    @Test
+    public void byteBufferRoundTripsWithoutMovingTheSource() {
+        ByteBuffer source = ByteBuffer.wrap("xpayload".getBytes(StandardCharsets.UTF_8));
+        source.position(1);
+        Entity.Builder builder = Entity.newBuilder(keyFactory.newKey("a"));
+
+        EntityMappers.set(builder, "data", source);
+        source.put(1, (byte) 'P');
+        ByteBuffer buffer = EntityMappers.getBlobAsByteBuffer(builder.build(), "data");
+
+        assertEquals(1, source.position());
+        assertTrue(buffer.isReadOnly());
+        assertEquals(ByteBuffer.wrap("payload".getBytes(StandardCharsets.UTF_8)), buffer);
+    }
+
+    @Test
+    public void nullByteBufferIsStoredAsNull() {
+        Entity.Builder builder = Entity.newBuilder(keyFactory.newKey("a"));
+
+        EntityMappers.set(builder, "data", (ByteBuffer) null);
+        Entity entity = builder.build();
+
+        assertEquals(ValueType.NULL, entity.getValue("data").getType());
+        assertNull(EntityMappers.getBlobAsByteBuffer(entity, "data"));
+        assertNull(EntityMappers.getBlobAsByteBuffer(entity, "missing"));
+    }
+
+    @Test(expected = ClassCastException.class)
+    public void byteBufferOfNonBlobIsAMismatch() {
+        EntityMappers.getBlobAsByteBuffer(entity(1L, "a"), "name");
+    }
+
+    @Test
+    public void blobBufferIsAViewOnTheStoredBytes() {
+        Blob blob = Blob.copyFrom(new byte[]{1, 2, 3});
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a")).set("data", blob).build();
+
+        assertEquals(blob.asReadOnlyByteBuffer(), EntityMappers.getBlobAsByteBuffer(entity, "data"));
+        assertEquals(3, EntityMappers.getBlobAsByteBuffer(entity, "data").remaining());
+    }
+
+    private Entity entity(long count, String name) {
+        return Entity.newBuilder(keyFactory.newKey("a")).set("count", count).set("name", name).build();
+    }
+}
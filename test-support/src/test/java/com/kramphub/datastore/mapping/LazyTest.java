@@ -0,0 +1,182 @@
+package com.kramphub.datastore.mapping;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class LazyTest {
+    private final KeyFactory keyFactory = new KeyFactory(InMemoryDatastore.DEFAULT_PROJECT_ID).setKind("item");
+    private final AtomicInteger decodes = new AtomicInteger();
+
+    @Test
+    public void valueIsDecodedOnceOnFirstAccess() {
+        Lazy<String> lazy = Lazy.of(this::decode);
+
+        assertFalse(lazy.isLoaded());
+        assertEquals("Lazy[not loaded]", lazy.toString());
+        assertEquals(0, decodes.get());
+
+        assertEquals("decoded", lazy.get());
+        assertEquals("decoded", lazy.get());
+        assertTrue(lazy.isLoaded());
+        assertEquals("decoded", lazy.toString());
+        assertEquals(1, decodes.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void concurrentAccessDecodesOnce() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        Lazy<String> lazy = Lazy.of(() -> {
+            await(start);
+            return decode();
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> futures = Arrays.asList(executor.submit(lazy::get), executor.submit(lazy::get),
+                    executor.submit(lazy::get), executor.submit(lazy::get));
+            start.countDown();
+
+            for (Future<String> future : futures) {
+                assertEquals("decoded", future.get());
+            }
+            assertEquals(1, decodes.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void failedDecodeIsRetriedOnNextAccess() {
+        AtomicInteger attempts = new AtomicInteger();
+        Lazy<String> lazy = Lazy.of(() -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("decode failed");
+            }
+            return "decoded";
+        });
+
+        try {
+            lazy.get();
+            fail("the failure must be thrown");
+        } catch (IllegalStateException e) {
+            assertFalse(lazy.isLoaded());
+        }
+        assertEquals("decoded", lazy.get());
+    }
+
+    @Test
+    public void valuesAndEmptyAreLoaded() {
+        assertTrue(Lazy.value("a").isLoaded());
+        assertEquals("a", Lazy.value("a").get());
+        assertSame(Lazy.empty(), Lazy.value(null));
+        assertNull(Lazy.empty().get());
+        assertTrue(Lazy.empty().isLoaded());
+    }
+
+    @Test
+    public void lazyValuesAreEqualByTheirDecodedValues() {
+        assertEquals(Lazy.value("a"), Lazy.of(() -> "a"));
+        assertEquals(Lazy.value("a").hashCode(), Lazy.of(() -> "a").hashCode());
+        assertNotEquals(Lazy.value("a"), Lazy.value("b"));
+    }
+
+    @Test
+    public void propertiesAreCheckedNowAndDecodedOnAccess() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a"))
+                .set("text", "long text")
+                .set("tags", "a", "b")
+                .set("blob", Blob.copyFrom(new byte[]{1, 2}))
+                .set("embedded", FullEntity.newBuilder().set("x", 1).build())
+                .setNull("none")
+                .build();
+
+        Lazy<String> text = EntityMappers.getLazyString(entity, "text");
+        assertFalse(text.isLoaded());
+        assertEquals("long text", text.get());
+        assertEquals(Arrays.asList("a", "b"), EntityMappers.<String>getLazyList(entity, "tags").get());
+        assertArrayEquals(new byte[]{1, 2}, EntityMappers.getLazyBlob(entity, "blob").get().toByteArray());
+        assertEquals(1, EntityMappers.getLazyEntity(entity, "embedded").get().getLong("x"));
+        assertSame(Lazy.empty(), EntityMappers.getLazyString(entity, "none"));
+        assertSame(Lazy.empty(), EntityMappers.getLazyString(entity, "missing"));
+        try {
+            EntityMappers.getLazyBlob(entity, "text");
+            fail("the type mismatch must be reported when the entity is mapped");
+        } catch (ClassCastException e) {
+            assertEquals("text is STRING, expected BLOB", e.getMessage());
+        }
+    }
+
+    @Test
+    public void valueNotAccessedIsWrittenAsItWasRead() {
+        StringValue unindexed = StringValue.newBuilder("long text").setExcludeFromIndexes(true).build();
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a")).set("text", unindexed).build();
+        Lazy<String> text = EntityMappers.getLazyString(entity, "text");
+
+        Entity.Builder builder = Entity.newBuilder(keyFactory.newKey("a"));
+        EntityMappers.set(builder, "text", text);
+
+        assertFalse("writing does not decode", text.isLoaded());
+        assertSame(unindexed, builder.build().getValue("text"));
+    }
+
+    @Test
+    public void accessedAndNewValuesAreWrittenDecoded() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a")).set("text", "long text").build();
+        Lazy<String> text = EntityMappers.getLazyString(entity, "text");
+        text.get();
+
+        Entity.Builder builder = Entity.newBuilder(keyFactory.newKey("a"));
+        EntityMappers.set(builder, "text", text);
+        EntityMappers.set(builder, "number", Lazy.value(5));
+        EntityMappers.set(builder, "empty", Lazy.empty());
+        EntityMappers.set(builder, "null", (Lazy<?>) null);
+        Entity written = builder.build();
+
+        assertEquals("long text", written.getString("text"));
+        assertEquals(5, written.getLong("number"));
+        assertTrue(written.isNull("empty"));
+        assertTrue(written.isNull("null"));
+    }
+
+    @Test
+    public void serializedLazyValueIsDecoded() throws Exception {
+        Lazy<String> lazy = Lazy.of(this::decode);
+
+        Lazy<?> copy = copy(lazy);
+
+        assertTrue(copy.isLoaded());
+        assertEquals("decoded", copy.get());
+        assertEquals(1, decodes.get());
+    }
+
+    private String decode() {
+        decodes.incrementAndGet();
+        return "decoded";
+    }
+
+    private static Lazy<?> copy(Lazy<?> lazy) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(lazy);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (Lazy<?>) in.readObject();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
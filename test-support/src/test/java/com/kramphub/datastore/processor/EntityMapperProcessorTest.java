@@ -0,0 +1,190 @@
+package com.kramphub.datastore.processor;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.KeyFactory;
+import com.kramphub.datastore.exception.EntityNotFoundException;
+import com.kramphub.datastore.exception.EntityParseException;
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.mapping.Lazy;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+
+import javax.tools.*;
+import java.io.File;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class EntityMapperProcessorTest {
+    private final KeyFactory keyFactory = new KeyFactory(InMemoryDatastore.DEFAULT_PROJECT_ID).setKind("product");
+
+    @Test
+    public void generatedMapperMapsBothWays() {
+        Instant updatedAt = Instant.parse("2018-06-01T10:15:30.123456Z");
+        Product product = new Product("bolt", 12, 3, true, updatedAt, Lazy.value("M8 bolt"), "ignored");
+
+        Entity entity = product.toEntity(keyFactory.newKey("bolt"));
+        Product mapped = ProductMapper.INSTANCE.map(entity);
+
+        assertEquals(new HashSet<>(Arrays.asList("name", "stock", "rank", "active", "updatedAt", "description")), entity.getNames());
+        assertEquals(12, entity.getLong("stock"));
+        assertEquals("M8 bolt", entity.getString("description"));
+        assertEquals("bolt", mapped.getName());
+        assertEquals(12, mapped.getStock());
+        assertEquals(Integer.valueOf(3), mapped.getRank());
+        assertTrue(mapped.isActive());
+        assertEquals(updatedAt, mapped.getUpdatedAt());
+        assertEquals("M8 bolt", mapped.getDescription().get());
+        assertNull("ignored fields are not mapped", mapped.getDisplay());
+    }
+
+    @Test
+    public void missingPropertiesMapToDefaultsAndLazyFieldsDecodeOnAccess() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("bolt")).set("name", "bolt").set("description", "M8 bolt").build();
+
+        Product mapped = ProductMapper.INSTANCE.map(entity);
+
+        assertEquals(0, mapped.getStock());
+        assertNull(mapped.getRank());
+        assertFalse(mapped.isActive());
+        assertNull(mapped.getUpdatedAt());
+        assertFalse(mapped.getDescription().isLoaded());
+        assertEquals("M8 bolt", mapped.getDescription().get());
+    }
+
+    @Test
+    public void mismatchedPropertiesAreAllListed() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("bolt"))
+                .set("name", 1)
+                .set("stock", "many")
+                .set("updatedAt", Timestamp.now())
+                .build();
+
+        try {
+            ProductMapper.INSTANCE.map(entity);
+            fail("the mismatches must be reported");
+        } catch (EntityParseException e) {
+            assertEquals(Arrays.asList("name", "stock"), e.getFields());
+        }
+    }
+
+    @Test
+    public void integerOverflowIsAParseError() {
+        Entity entity = Entity.newBuilder(keyFactory.newKey("bolt")).set("rank", 1L << 40).build();
+
+        try {
+            ProductMapper.INSTANCE.map(entity);
+            fail("the overflow must be reported");
+        } catch (EntityParseException e) {
+            assertEquals(Collections.singletonList("rank"), e.getFields());
+        }
+    }
+
+    @Test(expected = EntityNotFoundException.class)
+    public void nullEntityIsNotFound() {
+        ProductMapper.INSTANCE.map(null);
+    }
+
+    @Test
+    public void fieldNamesAreConvertedToUpperSnakeCase() {
+        assertEquals("NAME", EntityMapperProcessor.toUpperSnakeCase("name"));
+        assertEquals("CREATED_AT", EntityMapperProcessor.toUpperSnakeCase("createdAt"));
+        assertEquals("HTML_TEXT", EntityMapperProcessor.toUpperSnakeCase("htmlText"));
+        assertEquals("URL", EntityMapperProcessor.toUpperSnakeCase("URL"));
+    }
+
+    @Test
+    public void unsupportedFieldTypesAreCompileErrors() throws Exception {
+        List<String> errors = compile("Broken", "" +
+                "@DatastoreEntity(kind = Broken.Kind.class)\n" +
+                "public class Broken {\n" +
+                "    private final java.util.Map<String, String> tags;\n" +
+                "    public Broken(java.util.Map<String, String> tags) { this.tags = tags; }\n" +
+                kind("TAGS") +
+                "}\n");
+
+        assertEquals(Collections.singletonList("Unsupported field type java.util.Map<java.lang.String,java.lang.String>, "
+                + "use @DatastoreIgnore and map it by hand"), errors);
+    }
+
+    @Test
+    public void fieldsWithoutAKindConstantAreCompileErrors() throws Exception {
+        List<String> errors = compile("Broken", "" +
+                "@DatastoreEntity(kind = Broken.Kind.class)\n" +
+                "public class Broken {\n" +
+                "    private final String createdBy;\n" +
+                "    public Broken(String createdBy) { this.createdBy = createdBy; }\n" +
+                kind("CREATED") +
+                "}\n");
+
+        assertEquals(Collections.singletonList("No constant CREATED_BY in test.Broken.Kind for field createdBy"), errors);
+    }
+
+    @Test
+    public void constantsMappedTwiceAreCompileErrors() throws Exception {
+        List<String> errors = compile("Broken", "" +
+                "@DatastoreEntity(kind = Broken.Kind.class)\n" +
+                "public class Broken {\n" +
+                "    private final String name;\n" +
+                "    @DatastoreProperty(\"NAME\") private final String label;\n" +
+                "    public Broken(String name, String label) { this.name = name; this.label = label; }\n" +
+                kind("NAME") +
+                "}\n");
+
+        assertEquals(Collections.singletonList("Constant NAME is mapped by more than one field"), errors);
+    }
+
+    @Test
+    public void kindsWhichAreNoEnumAreCompileErrors() throws Exception {
+        List<String> errors = compile("Broken", "" +
+                "@DatastoreEntity(kind = Broken.Kind.class)\n" +
+                "public class Broken {\n" +
+                "    interface Kind extends BaseKind { }\n" +
+                "}\n");
+
+        assertEquals(Collections.singletonList("kind of @DatastoreEntity must be an enum implementing BaseKind"), errors);
+    }
+
+    private static String kind(String constant) {
+        return "    enum Kind implements BaseKind {\n" +
+                "        " + constant + ";\n" +
+                "        public String value() { return name().toLowerCase(); }\n" +
+                "        public String getKindIdentifier() { return \"broken\"; }\n" +
+                "    }\n";
+    }
+
+    /**
+     * Compiles the class with the processor and returns the error messages
+     */
+    private static List<String> compile(String className, String body) throws URISyntaxException {
+        String source = "package test;\n\n" +
+                "import com.kramphub.datastore.kind.BaseKind;\n" +
+                "import com.kramphub.datastore.mapping.*;\n\n" + body;
+        JavaFileObject file = new SimpleJavaFileObject(URI.create("string:///test/" + className + ".java"), JavaFileObject.Kind.SOURCE) {
+            @Override
+            public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+                return source;
+            }
+        };
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        assertNotNull("tests must run on a JDK", compiler);
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<>();
+        List<String> options = Arrays.asList("-classpath", location(BaseKind.class), "-proc:only");
+        JavaCompiler.CompilationTask task = compiler.getTask(null, null, diagnostics, options, null, Collections.singletonList(file));
+        task.setProcessors(Collections.singletonList(new EntityMapperProcessor()));
+        task.call();
+        return diagnostics.getDiagnostics().stream()
+                .filter(diagnostic -> diagnostic.getKind() == Diagnostic.Kind.ERROR)
+                .map(diagnostic -> diagnostic.getMessage(Locale.ROOT))
+                .collect(Collectors.toList());
+    }
+
+    private static String location(Class<?> type) throws URISyntaxException {
+        return new File(type.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath();
+    }
+}
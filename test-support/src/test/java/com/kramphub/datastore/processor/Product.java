@@ -0,0 +1,101 @@
+package com.kramphub.datastore.processor;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.mapping.DatastoreEntity;
+import com.kramphub.datastore.mapping.DatastoreIgnore;
+import com.kramphub.datastore.mapping.DatastoreProperty;
+import com.kramphub.datastore.mapping.Lazy;
+
+import java.time.Instant;
+
+/**
+ * Entity the annotation processor generates ProductMapper for when the tests are compiled
+ */
+@DatastoreEntity(kind = Product.Kind.class)
+public class Product extends BaseEntity {
+    private final String name;
+    private final long stock;
+    private final Integer rank;
+    private final boolean active;
+    private final Instant updatedAt;
+    @DatastoreProperty("TEXT")
+    private final Lazy<String> description;
+    @DatastoreIgnore
+    private final String display;
+
+    public Product(String name, long stock, Integer rank, boolean active, Instant updatedAt, Lazy<String> description, String display) {
+        this.name = name;
+        this.stock = stock;
+        this.rank = rank;
+        this.active = active;
+        this.updatedAt = updatedAt;
+        this.description = description;
+        this.display = display;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getStock() {
+        return stock;
+    }
+
+    public Integer getRank() {
+        return rank;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public Lazy<String> getDescription() {
+        return description;
+    }
+
+    public String getDisplay() {
+        return display;
+    }
+
+    @Override
+    public Entity toEntity(Key key) {
+        return ProductMapper.INSTANCE.toEntity(this, key);
+    }
+
+    @Override
+    public Object getKey() {
+        return name;
+    }
+
+    public enum Kind implements BaseKind {
+        NAME("name"),
+        STOCK("stock"),
+        RANK("rank"),
+        ACTIVE("active"),
+        UPDATED_AT("updatedAt"),
+        TEXT("description");
+
+        private final String value;
+
+        Kind(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+
+        @Override
+        public String getKindIdentifier() {
+            return "product";
+        }
+    }
+}
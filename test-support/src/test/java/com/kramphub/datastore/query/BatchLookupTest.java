@@ -0,0 +1,131 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.*;
+import com.google.common.collect.Lists;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class BatchLookupTest {
+    private final List<Integer> lookupSizes = new CopyOnWriteArrayList<>();
+    private final List<Thread> lookupThreads = new CopyOnWriteArrayList<>();
+    private volatile String failingName;
+    private final InMemoryDatastore datastore = new InMemoryDatastore() {
+        @Override
+        public Iterator<Entity> get(Iterable<Key> keys, ReadOption... options) {
+            List<Key> chunk = Lists.newArrayList(keys);
+            lookupSizes.add(chunk.size());
+            lookupThreads.add(Thread.currentThread());
+            for (Key key : chunk) {
+                if (key.getName().equals(failingName)) {
+                    throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+                }
+            }
+            return super.get(chunk, options);
+        }
+    };
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void keysAreLookedUpInChunksAndReturnedInInputOrder() {
+        put(2500);
+        List<Key> keys = new ArrayList<>(keys(2500));
+        Collections.reverse(keys);
+
+        LookupResult<String> result = new BatchLookup(datastore, 1000, executor).lookup(keys, entity -> entity.getKey().getName());
+
+        assertEquals(Arrays.asList(500, 1000, 1000), sorted(lookupSizes));
+        assertEquals(2500, result.getResults().size());
+        assertEquals("k2499", result.getResults().get(0));
+        assertEquals("k0", result.getResults().get(2499));
+        assertTrue(result.isComplete());
+    }
+
+    @Test
+    public void batchSizeIsCappedAtTheLookupLimit() {
+        put(1500);
+
+        new BatchLookup(datastore, 5000, executor).fetch(keys(1500), Entity::getKey);
+
+        assertEquals(Arrays.asList(500, 1000), sorted(lookupSizes));
+    }
+
+    @Test
+    public void singleChunkIsLookedUpOnTheCallingThread() {
+        put(10);
+
+        new BatchLookup(datastore, 1000, executor).fetch(keys(10), Entity::getKey);
+
+        assertEquals(Collections.singletonList(Thread.currentThread()), lookupThreads);
+    }
+
+    @Test
+    public void duplicatesAreLookedUpOnceAndMissingKeysReported() {
+        put(2);
+        Key missing = keyFactory.newKey("missing");
+        List<Key> keys = Arrays.asList(keyFactory.newKey("k1"), missing, keyFactory.newKey("k0"), keyFactory.newKey("k1"));
+
+        LookupResult<String> result = new BatchLookup(datastore, 1000, executor).lookup(keys, entity -> entity.getKey().getName());
+
+        assertEquals(Collections.singletonList(3), lookupSizes);
+        assertEquals(Arrays.asList("k1", "k0", "k1"), result.getResults());
+        assertEquals(Collections.singleton(missing), result.getMissingKeys());
+        assertFalse(result.isComplete());
+    }
+
+    @Test
+    public void failedChunkIsThrownUnwrapped() {
+        put(2500);
+        failingName = "k2400";
+
+        try {
+            new BatchLookup(datastore, 1000, executor).fetch(keys(2500), Entity::getKey);
+            fail("the failed chunk must be reported");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+    }
+
+    @Test
+    public void emptyInputDoesNotLookUp() {
+        LookupResult<Key> result = new BatchLookup(datastore, 1000, executor).lookup(Collections.emptyList(), Entity::getKey);
+
+        assertTrue(result.getResults().isEmpty());
+        assertTrue(lookupSizes.isEmpty());
+    }
+
+    private void put(int count) {
+        List<Entity> entities = new ArrayList<>(count);
+        for (Key key : keys(count)) {
+            entities.add(Entity.newBuilder(key).build());
+        }
+        datastore.put(entities.toArray(new Entity[0]));
+    }
+
+    private List<Key> keys(int count) {
+        List<Key> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(keyFactory.newKey("k" + i));
+        }
+        return keys;
+    }
+
+    private static List<Integer> sorted(List<Integer> sizes) {
+        List<Integer> sorted = new ArrayList<>(sizes);
+        Collections.sort(sorted);
+        return sorted;
+    }
+}
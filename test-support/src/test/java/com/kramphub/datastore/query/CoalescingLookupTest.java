@@ -0,0 +1,184 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class CoalescingLookupTest {
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger lookedUpKeys = new AtomicInteger();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile boolean blocking;
+    private final InMemoryDatastore datastore = new InMemoryDatastore() {
+        @Override
+        public Entity get(Key key) {
+            lookup(1);
+            return super.get(key);
+        }
+
+        @Override
+        public Iterator<Entity> get(Iterable<Key> keys, ReadOption... options) {
+            int count = 0;
+            for (Key ignored : keys) {
+                count++;
+            }
+            lookup(count);
+            return super.get(keys, options);
+        }
+    };
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentLookupsOfTheSameKeyShareOneLookup() throws Exception {
+        datastore.put(item("a"));
+        CoalescingLookup coalescingLookup = new CoalescingLookup(datastore, Duration.ZERO, 100);
+        blocking = true;
+
+        List<Future<Entity>> results = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            results.add(executor.submit(() -> coalescingLookup.get(keyFactory.newKey("a"))));
+        }
+        Thread.sleep(100);
+        released.countDown();
+
+        for (Future<Entity> result : results) {
+            assertEquals("a", result.get(5, TimeUnit.SECONDS).getKey().getName());
+        }
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void lookupsWithinTheWindowAreMerged() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            datastore.put(item("k" + i));
+        }
+        CoalescingLookup coalescingLookup = new CoalescingLookup(datastore, Duration.ofMillis(200), 100);
+        CyclicBarrier start = new CyclicBarrier(10);
+
+        List<Future<Entity>> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            String name = "k" + i;
+            results.add(executor.submit(() -> {
+                start.await();
+                return coalescingLookup.get(keyFactory.newKey(name));
+            }));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals("k" + i, results.get(i).get(5, TimeUnit.SECONDS).getKey().getName());
+        }
+        assertEquals(10, lookedUpKeys.get());
+        assertTrue("lookups " + lookups.get(), lookups.get() < 10);
+    }
+
+    @Test
+    public void fullBatchIsLookedUpWithoutWaitingForTheWindow() throws Exception {
+        datastore.put(item("a"), item("b"));
+        CoalescingLookup coalescingLookup = new CoalescingLookup(datastore, Duration.ofSeconds(1), 2);
+        Entity[] first = new Entity[1];
+        Thread leader = new Thread(() -> first[0] = coalescingLookup.get(keyFactory.newKey("a")));
+
+        leader.start();
+        assertTrue(await(() -> leader.getState() == Thread.State.TIMED_WAITING));
+        long start = System.nanoTime();
+        Entity second = coalescingLookup.get(keyFactory.newKey("b"));
+
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals("b", second.getKey().getName());
+        assertEquals(1, lookups.get());
+        leader.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals("a", first[0].getKey().getName());
+    }
+
+    @Test
+    public void missingKeyIsNull() {
+        CoalescingLookup coalescingLookup = new CoalescingLookup(datastore, Duration.ZERO, 100);
+
+        assertNull(coalescingLookup.get(keyFactory.newKey("a")));
+    }
+
+    @Test
+    public void failureIsPropagatedToAllWaitingCallers() {
+        InMemoryDatastore failing = new InMemoryDatastore() {
+            @Override
+            public Entity get(Key key) {
+                throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+            }
+        };
+        CoalescingLookup coalescingLookup = new CoalescingLookup(failing, Duration.ZERO, 100);
+
+        try {
+            coalescingLookup.get(keyFactory.newKey("a"));
+            fail("the lookup failure must be propagated");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+        failing.put(item("a"));
+        try {
+            coalescingLookup.get(keyFactory.newKey("a"));
+            fail("a failed lookup must not be shared with later callers");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+    }
+
+    @Test
+    public void forgottenLookupIsNotSharedWithLaterCallers() throws Exception {
+        CoalescingLookup coalescingLookup = new CoalescingLookup(datastore, Duration.ZERO, 100);
+        blocking = true;
+
+        Future<Entity> before = executor.submit(() -> coalescingLookup.get(keyFactory.newKey("a")));
+        assertTrue(await(() -> lookups.get() == 1));
+        datastore.put(item("a"));
+        coalescingLookup.forget(Collections.singletonList(keyFactory.newKey("a")));
+        blocking = false;
+        Entity after = coalescingLookup.get(keyFactory.newKey("a"));
+        released.countDown();
+
+        assertEquals("a", after.getKey().getName());
+        assertEquals(2, lookups.get());
+        before.get(5, TimeUnit.SECONDS);
+    }
+
+    private void lookup(int keys) {
+        lookups.incrementAndGet();
+        lookedUpKeys.addAndGet(keys);
+        if (blocking) {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Entity item(String name) {
+        return Entity.newBuilder(keyFactory.newKey(name)).build();
+    }
+
+    private static boolean await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.call()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,51 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.PathElement;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyComparatorTest {
+    private static final String PROJECT = "project";
+
+    @Test
+    public void namesAreOrderedByTheirUtf8Bytes() {
+        // U+1F600 is a surrogate pair in UTF-16 (0xD83D...) but a 4 byte sequence (0xF0...) in UTF-8,
+        // so it sorts before U+FF21 by String.compareTo and after it by bytes.
+        Key supplementary = name("item", "😀");
+        Key fullWidth = name("item", "Ａ");
+
+        assertTrue("😀".compareTo("Ａ") < 0);
+        assertTrue(KeyComparator.INSTANCE.compare(fullWidth, supplementary) < 0);
+        assertTrue(KeyComparator.INSTANCE.compare(supplementary, fullWidth) > 0);
+    }
+
+    @Test
+    public void kindsAreOrderedByTheirUtf8Bytes() {
+        assertTrue(KeyComparator.INSTANCE.compare(Key.newBuilder(PROJECT, "Ａ", 1).build(),
+                Key.newBuilder(PROJECT, "😀", 1).build()) < 0);
+    }
+
+    @Test
+    public void prefixesSortFirstAndIdsBeforeNames() {
+        assertTrue(KeyComparator.INSTANCE.compare(name("item", "a"), name("item", "ab")) < 0);
+        assertTrue(KeyComparator.INSTANCE.compare(Key.newBuilder(PROJECT, "item", 2).build(), name("item", "a")) < 0);
+        assertTrue(KeyComparator.INSTANCE.compare(Key.newBuilder(PROJECT, "item", 2).build(),
+                Key.newBuilder(PROJECT, "item", 10).build()) < 0);
+        assertEquals(0, KeyComparator.INSTANCE.compare(name("item", "é"), name("item", "é")));
+    }
+
+    @Test
+    public void ancestorsSortBeforeTheirDescendants() {
+        Key parent = name("item", "a");
+        Key child = Key.newBuilder(PROJECT, "part", "b").addAncestor(PathElement.of("item", "a")).build();
+
+        assertTrue(KeyComparator.INSTANCE.compare(parent, child) < 0);
+        assertTrue(KeyComparator.INSTANCE.compare(child, name("item", "b")) < 0);
+    }
+
+    private static Key name(String kind, String name) {
+        return Key.newBuilder(PROJECT, kind, name).build();
+    }
+}
@@ -0,0 +1,102 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class KeyExistenceTest {
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final AtomicInteger queries = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private final InMemoryDatastore datastore = new InMemoryDatastore() {
+        @Override
+        public Iterator<Entity> get(Iterable<Key> keys, ReadOption... options) {
+            lookups.incrementAndGet();
+            return super.get(keys, options);
+        }
+
+        @Override
+        public <T> QueryResults<T> run(Query<T> query) {
+            queries.incrementAndGet();
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+                return super.run(query);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    };
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final KeyExistence keyExistence = new KeyExistence(datastore, executor);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void singleKeyIsCheckedWithAQuery() {
+        datastore.put(Entity.newBuilder(keyFactory.newKey("a")).build());
+
+        assertTrue(keyExistence.exists(keyFactory.newKey("a")));
+        assertEquals(Collections.singleton(keyFactory.newKey("b")),
+                keyExistence.findMissing(Arrays.asList(keyFactory.newKey("b"), keyFactory.newKey("b"))));
+        assertEquals(2, queries.get());
+        assertEquals(0, lookups.get());
+    }
+
+    @Test
+    public void manyKeysAreCheckedWithBoundedKeysOnlyQueries() {
+        List<Key> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            Key key = keyFactory.newKey("k" + i);
+            keys.add(key);
+            if (i % 3 != 0) {
+                datastore.put(Entity.newBuilder(key).build());
+            }
+        }
+        keys.add(keys.get(0));
+
+        Set<Key> missing = keyExistence.findMissing(keys);
+
+        assertEquals(300, queries.get());
+        assertEquals(0, lookups.get());
+        assertTrue("in flight " + maxInFlight.get(), maxInFlight.get() <= KeyExistence.MAX_CONCURRENT_CHECKS);
+        assertEquals(100, missing.size());
+        Iterator<Key> iterator = missing.iterator();
+        for (int i = 0; i < 300; i += 3) {
+            assertEquals(keyFactory.newKey("k" + i), iterator.next());
+        }
+    }
+
+    @Test
+    public void failedQueryFailsTheCheck() {
+        KeyExistence failing = new KeyExistence(new InMemoryDatastore() {
+            @Override
+            public <T> QueryResults<T> run(Query<T> query) {
+                throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+            }
+        }, executor);
+
+        try {
+            failing.findMissing(Arrays.asList(keyFactory.newKey("a"), keyFactory.newKey("b")));
+            fail("the failed query must be reported");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+    }
+}
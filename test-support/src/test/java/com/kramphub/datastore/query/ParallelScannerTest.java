@@ -0,0 +1,146 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ParallelScannerTest {
+    private final InMemoryDatastore datastore = new InMemoryDatastore();
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void everyEntityIsScannedOnceAcrossTheRanges() {
+        put(1000);
+        Map<String, Integer> seen = new ConcurrentHashMap<>();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        long count = new ParallelScanner(datastore, NOPLogger.NOP_LOGGER, 50).scan("item", 4, entity -> entity.getKey().getName(), name -> {
+            seen.merge(name, 1, Integer::sum);
+            threads.add(Thread.currentThread());
+        });
+
+        assertEquals(1000, count);
+        assertEquals(1000, seen.size());
+        assertTrue(seen.values().stream().allMatch(times -> times == 1));
+        assertTrue("the ranges run on their own threads", threads.size() > 1);
+        assertFalse(threads.contains(Thread.currentThread()));
+    }
+
+    @Test
+    public void singleShardScansTheKindInOneRange() {
+        put(120);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        long count = new ParallelScanner(datastore, NOPLogger.NOP_LOGGER, 50).scan("item", 1, entity -> entity,
+                entity -> threads.add(Thread.currentThread()));
+
+        assertEquals(120, count);
+        assertEquals(1, threads.size());
+    }
+
+    @Test
+    public void emptyKindScansNothing() {
+        AtomicInteger consumed = new AtomicInteger();
+
+        long count = new ParallelScanner(datastore, NOPLogger.NOP_LOGGER, 50).scan("item", 8, entity -> entity,
+                entity -> consumed.incrementAndGet());
+
+        assertEquals(0, count);
+        assertEquals(0, consumed.get());
+    }
+
+    @Test
+    public void rangesRunOnTheGivenExecutor() {
+        put(500);
+        Set<String> threadNames = ConcurrentHashMap.newKeySet();
+        ExecutorService named = Executors.newFixedThreadPool(4, runnable -> new Thread(runnable, "scan-test"));
+        try {
+            long count = new ParallelScanner(datastore, NOPLogger.NOP_LOGGER, 50, named).scan("item", 4, entity -> entity,
+                    entity -> threadNames.add(Thread.currentThread().getName()));
+
+            assertEquals(500, count);
+            assertEquals(Collections.singleton("scan-test"), threadNames);
+        } finally {
+            named.shutdownNow();
+        }
+    }
+
+    @Test
+    public void threadsStartedForTheScanAreStoppedWhenItReturns() throws Exception {
+        put(500);
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        new ParallelScanner(datastore, NOPLogger.NOP_LOGGER, 50).scan("item", 4, entity -> entity,
+                entity -> threads.add(Thread.currentThread()));
+
+        for (Thread thread : threads) {
+            thread.join(5_000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test(timeout = 10_000)
+    public void failedRangeStopsTheOthersAndIsRethrown() {
+        put(1000);
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicBoolean returned = new AtomicBoolean();
+        AtomicBoolean calledAfterReturn = new AtomicBoolean();
+
+        try {
+            new ParallelScanner(datastore, NOPLogger.NOP_LOGGER, 10, executor).scan("item", 4, entity -> entity.getKey().getName(), name -> {
+                if (returned.get()) {
+                    calledAfterReturn.set(true);
+                }
+                if (consumed.incrementAndGet() == 1) {
+                    throw new IllegalStateException("consumer failed");
+                }
+            });
+            fail("the failure must be rethrown");
+        } catch (IllegalStateException e) {
+            returned.set(true);
+            assertEquals("consumer failed", e.getMessage());
+        }
+        int consumedAtReturn = consumed.get();
+
+        assertTrue("the other ranges stop after their current page", consumedAtReturn < 1000);
+        assertEquals(consumedAtReturn, consumed.get());
+        assertFalse(calledAfterReturn.get());
+    }
+
+    @Test(timeout = 10_000)
+    public void failedMapperIsRethrown() {
+        put(100);
+
+        try {
+            new ParallelScanner(datastore, NOPLogger.NOP_LOGGER, 10, executor).scan("item", 2, entity -> {
+                throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+            }, entity -> fail("nothing is mapped"));
+            fail("the failure must be rethrown");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+    }
+
+    private void put(int count) {
+        List<Entity> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entities.add(Entity.newBuilder(keyFactory.newKey("k" + i)).set("n", i).build());
+        }
+        datastore.put(entities.toArray(new Entity[0]));
+    }
+}
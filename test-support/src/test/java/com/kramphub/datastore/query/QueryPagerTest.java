@@ -0,0 +1,110 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class QueryPagerTest {
+    private final InMemoryDatastore datastore = new InMemoryDatastore();
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 25; i++) {
+            datastore.put(Entity.newBuilder(keyFactory.newKey(String.format("k%02d", i))).set("n", i).build());
+        }
+    }
+
+    @Test
+    public void fetchPageReadsAllPages() {
+        List<QueryPage<Long>> pages = fetchAll(pager(null));
+
+        assertEquals(3, pages.size());
+        assertEquals(10, pages.get(0).getResults().size());
+        assertEquals(5, pages.get(2).getResults().size());
+        assertFalse(pages.get(2).hasMore());
+    }
+
+    @Test
+    public void fetchPageStopsAtTheTotalLimit() {
+        List<QueryPage<Long>> pages = fetchAll(pager(12));
+
+        assertEquals(2, pages.size());
+        assertEquals(10, pages.get(0).getResults().size());
+        assertTrue(pages.get(0).hasMore());
+        assertEquals(2, pages.get(1).getResults().size());
+        assertFalse(pages.get(1).hasMore());
+        assertEquals(Long.valueOf(11), pages.get(1).getResults().get(1));
+    }
+
+    @Test
+    public void fetchPageAfterTheLimitIsEmpty() {
+        QueryPager<Entity, Long> pager = pager(10);
+        QueryPage<Long> first = pager.fetchPage(null);
+        assertFalse(first.hasMore());
+
+        QueryPage<Long> after = pager.fetchPage(first.getCursorToken());
+
+        assertTrue(after.getResults().isEmpty());
+        assertFalse(after.hasMore());
+    }
+
+    @Test
+    public void plainCursorTokenResumesWithTheFullLimit() {
+        String cursor = pager(null).fetchPage(null).getCursorToken();
+
+        QueryPage<Long> page = pager(3).fetchPage(cursor);
+
+        assertEquals(3, page.getResults().size());
+        assertEquals(Long.valueOf(10), page.getResults().get(0));
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    public void forEachPageTokensResumeWithTheRemainingLimit() {
+        List<QueryPage<Long>> pages = new ArrayList<>();
+        pager(15).forEachPage(null, pages::add);
+        assertEquals(2, pages.size());
+
+        String resumed = fetchAll(pager(15)).get(0).getCursorToken();
+        List<Long> rest = pager(15).stream(resumed).collect(Collectors.toList());
+
+        assertEquals(pages.get(1).getResults(), rest);
+    }
+
+    @Test
+    public void streamHonoursTheLimit() {
+        assertEquals(7, pager(7).stream(null).count());
+        assertEquals(25, pager(null).stream(null).count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidCursorTokenIsRejected() {
+        pager(5).fetchPage("not a cursor.x");
+    }
+
+    private QueryPager<Entity, Long> pager(Integer limit) {
+        EntityQuery query = Query.newEntityQueryBuilder().setKind("item").setLimit(limit).build();
+        return new QueryPager<>(datastore, query, 10, entity -> entity.getLong("n"));
+    }
+
+    private static List<QueryPage<Long>> fetchAll(QueryPager<Entity, Long> pager) {
+        List<QueryPage<Long>> pages = new ArrayList<>();
+        String cursorToken = null;
+        while (true) {
+            QueryPage<Long> page = pager.fetchPage(cursorToken);
+            pages.add(page);
+            if (!page.hasMore()) {
+                return pages;
+            }
+            cursorToken = page.getCursorToken();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.exception.InvalidEntityException;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class AsyncDatastoreRepositoryTest {
+    private final AtomicInteger writing = new AtomicInteger();
+    private final AtomicInteger maxWriting = new AtomicInteger();
+    private final List<Thread> writers = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch released;
+    private final InMemoryDatastore datastore = new InMemoryDatastore() {
+        @Override
+        public List<Entity> put(FullEntity<?>... entities) {
+            writers.add(Thread.currentThread());
+            maxWriting.accumulateAndGet(writing.incrementAndGet(), Math::max);
+            try {
+                if (released != null) {
+                    released.await();
+                }
+                return super.put(entities);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DatastoreException(1, "interrupted", "CANCELLED", e);
+            } finally {
+                writing.decrementAndGet();
+            }
+        }
+    };
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final ExecutorService asyncExecutor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() {
+        if (released != null) {
+            released.countDown();
+        }
+        asyncExecutor.shutdownNow();
+    }
+
+    @Test
+    public void operationsRunOnTheAsyncExecutor() throws Exception {
+        ItemRepository repository = repository(4);
+
+        String id = repository.async().upsert(item("k1", 1)).get(5, TimeUnit.SECONDS);
+        ItemRepository.Item item = repository.async().findById(id).get(5, TimeUnit.SECONDS);
+
+        assertEquals("k1", id);
+        assertEquals(1, item.n);
+        assertEquals(1, writers.size());
+        assertNotSame(Thread.currentThread(), writers.get(0));
+    }
+
+    @Test
+    public void exceptionsCompleteTheFuture() throws Exception {
+        CompletableFuture<?> future = repository(4).async().findByIds(Collections.singletonList(1));
+
+        try {
+            future.get(5, TimeUnit.SECONDS);
+            fail("the invalid id must be reported");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof InvalidEntityException);
+        }
+    }
+
+    @Test
+    public void operationsOverTheConcurrencyAreQueued() throws Exception {
+        ItemRepository repository = repository(2);
+        released = new CountDownLatch(1);
+        List<CompletableFuture<String>> futures = new ArrayList<>();
+
+        for (int i = 0; i < 6; i++) {
+            futures.add(repository.async().upsert(item("k" + i, i)));
+        }
+        assertTrue(await(() -> writing.get() == 2));
+        Thread.sleep(50);
+        assertEquals(2, writing.get());
+        assertTrue(futures.stream().noneMatch(CompletableFuture::isDone));
+        released.countDown();
+
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(2, maxWriting.get());
+        assertEquals(6, datastore.size());
+    }
+
+    private ItemRepository repository(int concurrency) {
+        return new ItemRepository(datastore, RepositoryOptions.newBuilder()
+                .setAsyncExecutor(asyncExecutor)
+                .setAsyncConcurrency(concurrency)
+                .build());
+    }
+
+    private Entity item(String name, long n) {
+        return Entity.newBuilder(keyFactory.newKey(name)).set("n", n).build();
+    }
+
+    private static boolean await(Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.call()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,247 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.batch.WriteBufferStats;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BufferedDatastoreRepositoryTest {
+    private final AtomicInteger commits = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final CountDownLatch released = new CountDownLatch(1);
+    private volatile boolean blocking;
+    private final InMemoryDatastore datastore = new InMemoryDatastore() {
+        @Override
+        public List<Entity> put(FullEntity<?>... entities) {
+            commit();
+            return super.put(entities);
+        }
+
+        @Override
+        public void delete(Key... keys) {
+            commit();
+            super.delete(keys);
+        }
+    };
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private BufferedDatastoreRepository<ItemRepository.Item> buffer;
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        if (buffer != null) {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void writesAreQueuedUntilFlush() {
+        buffer = buffer(500, 1000);
+
+        buffer.upsert(Arrays.asList(item("a", 1), item("b", 1)));
+        buffer.delete(keyFactory.newKey("c"));
+        datastore.put(item("c", 1));
+        assertNull(datastore.get(keyFactory.newKey("a")));
+
+        buffer.flush();
+
+        assertEquals(1, datastore.get(keyFactory.newKey("a")).getLong("n"));
+        assertEquals(1, datastore.get(keyFactory.newKey("b")).getLong("n"));
+        assertNull(datastore.get(keyFactory.newKey("c")));
+        WriteBufferStats stats = buffer.getStats();
+        assertEquals(3, stats.getReceived());
+        assertEquals(3, stats.getWritten());
+        assertEquals(1, stats.getFlushes());
+        assertEquals(0, stats.getPending());
+    }
+
+    @Test
+    public void writesOfTheSameKeyAreCoalesced() {
+        buffer = buffer(500, 1000);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.upsert(item("a", i));
+        }
+        buffer.upsert(item("b", 1));
+        buffer.delete(keyFactory.newKey("b"));
+        int before = commits.get();
+        buffer.flush();
+
+        assertEquals(9, datastore.get(keyFactory.newKey("a")).getLong("n"));
+        assertNull(datastore.get(keyFactory.newKey("b")));
+        assertEquals(2, commits.get() - before);
+        assertEquals(10, buffer.getStats().getCoalesced());
+        assertEquals(2, buffer.getStats().getWritten());
+    }
+
+    @Test
+    public void queuedDeleteWinsUntilFlushed() {
+        buffer = buffer(500, 1000);
+        datastore.put(item("a", 1));
+
+        buffer.delete(keyFactory.newKey("a"));
+        buffer.upsert(item("a", 2));
+        buffer.flush();
+
+        assertNull(datastore.get(keyFactory.newKey("a")));
+        assertEquals(1, buffer.getStats().getCoalesced());
+
+        buffer.upsert(item("a", 3));
+        buffer.flush();
+
+        assertEquals(3, datastore.get(keyFactory.newKey("a")).getLong("n"));
+    }
+
+    @Test
+    public void reachingFlushSizeFlushesInBackground() throws InterruptedException {
+        buffer = buffer(10, 1000);
+
+        for (int i = 0; i < 10; i++) {
+            buffer.upsert(item("k" + i, i));
+        }
+
+        assertTrue(await(() -> datastore.size() == 10));
+    }
+
+    @Test
+    public void flushIntervalFlushesInBackground() throws InterruptedException {
+        buffer = new ItemRepository(datastore, RepositoryOptions.newBuilder()
+                .setBufferFlushInterval(Duration.ofMillis(20)).build()).buffered();
+
+        buffer.upsert(item("a", 1));
+
+        assertTrue(await(() -> datastore.size() == 1));
+    }
+
+    @Test
+    public void fullBufferBlocksWritesOfNewKeys() throws InterruptedException {
+        blocking = true;
+        buffer = buffer(2, 2);
+        Thread writer = new Thread(() -> {
+            for (String name : Arrays.asList("a", "b", "c", "d", "e")) {
+                buffer.upsert(item(name, 1));
+            }
+        });
+
+        writer.start();
+        // a and b are being flushed, c and d fill the buffer and e waits for room
+        assertTrue(await(() -> writer.getState() == Thread.State.WAITING && buffer.getStats().getPending() == 2));
+        buffer.upsert(item("c", 2));
+        assertTrue(writer.isAlive());
+
+        released.countDown();
+        writer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(writer.isAlive());
+        buffer.flush();
+
+        assertEquals(5, datastore.size());
+        assertEquals(2, datastore.get(keyFactory.newKey("c")).getLong("n"));
+    }
+
+    @Test
+    public void failedMutationsAreRetriedOnNextFlush() {
+        buffer = buffer(500, 1000);
+        failures.set(1);
+
+        buffer.upsert(item("a", 1));
+        try {
+            buffer.flush();
+            fail("the failed flush must be reported");
+        } catch (DatastoreException e) {
+            assertEquals("UNAVAILABLE", e.getReason());
+        }
+        assertEquals(1, buffer.getStats().getPending());
+
+        buffer.flush();
+
+        assertEquals(1, datastore.get(keyFactory.newKey("a")).getLong("n"));
+        assertEquals(0, buffer.getStats().getPending());
+    }
+
+    @Test
+    public void mutationsAreDroppedAfterMaxFlushAttempts() {
+        buffer = buffer(500, 1000);
+        failures.set(BufferedDatastoreRepository.MAX_FLUSH_ATTEMPTS);
+
+        buffer.upsert(item("a", 1));
+        for (int i = 0; i < BufferedDatastoreRepository.MAX_FLUSH_ATTEMPTS; i++) {
+            try {
+                buffer.flush();
+                fail("the failed flush must be reported");
+            } catch (DatastoreException e) {
+                assertEquals("UNAVAILABLE", e.getReason());
+            }
+        }
+
+        assertEquals(0, buffer.getStats().getPending());
+        assertEquals(1, buffer.getStats().getDropped());
+        assertNull(datastore.get(keyFactory.newKey("a")));
+    }
+
+    @Test
+    public void closeFlushesAndRejectsWrites() {
+        buffer = buffer(500, 1000);
+        buffer.upsert(item("a", 1));
+
+        buffer.close();
+
+        assertEquals(1, datastore.size());
+        try {
+            buffer.upsert(item("b", 1));
+            fail("a closed buffer must reject writes");
+        } catch (IllegalStateException e) {
+            assertNull(datastore.get(keyFactory.newKey("b")));
+        }
+    }
+
+    private BufferedDatastoreRepository<ItemRepository.Item> buffer(int flushSize, int capacity) {
+        return new ItemRepository(datastore, RepositoryOptions.newBuilder()
+                .setBufferFlushSize(flushSize)
+                .setBufferCapacity(capacity)
+                .setBufferFlushInterval(Duration.ofHours(1))
+                .build()).buffered();
+    }
+
+    private void commit() {
+        commits.incrementAndGet();
+        if (failures.getAndUpdate(remaining -> Math.max(0, remaining - 1)) > 0) {
+            throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+        }
+        if (blocking) {
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Entity item(String name, long n) {
+        return Entity.newBuilder(keyFactory.newKey(name)).set("n", n).build();
+    }
+
+    private static boolean await(Condition condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.met()) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(5);
+        }
+        return true;
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+}
@@ -0,0 +1,284 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.batch.ChunkFailure;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
+import com.kramphub.datastore.exception.BatchWriteException;
+import com.kramphub.datastore.exception.EntityNotFoundException;
+import com.kramphub.datastore.exception.InvalidEntityException;
+import com.kramphub.datastore.metrics.RepositoryMetrics;
+import com.kramphub.datastore.metrics.RepositoryOperation;
+import com.kramphub.datastore.query.LookupResult;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class DatastoreRepositoryTest {
+    private final AtomicInteger commits = new AtomicInteger();
+    private volatile String failingName;
+    private volatile CountDownLatch lookedUp;
+    private final CountDownLatch released = new CountDownLatch(1);
+    private final InMemoryDatastore datastore = new InMemoryDatastore() {
+        @Override
+        public List<Entity> put(FullEntity<?>... entities) {
+            commits.incrementAndGet();
+            for (FullEntity<?> entity : entities) {
+                if (((Key) entity.getKey()).getName().equals(failingName)) {
+                    throw new DatastoreException(14, "unavailable", "UNAVAILABLE");
+                }
+            }
+            return super.put(entities);
+        }
+
+        @Override
+        public Entity get(Key key) {
+            Entity entity = super.get(key);
+            if (lookedUp != null) {
+                lookedUp.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return entity;
+        }
+    };
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+
+    @Test
+    public void upsertWritesChunksOf500WithIdsInInputOrder() {
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.defaults());
+        List<Entity> entities = items(1201);
+
+        List<String> ids = repository.upsert(entities);
+
+        assertEquals(3, commits.get());
+        assertEquals(1201, datastore.size());
+        for (int i = 0; i < entities.size(); i++) {
+            assertEquals("k" + i, ids.get(i));
+        }
+    }
+
+    @Test
+    public void upsertReportsFailedChunks() {
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.defaults());
+        failingName = "k1100";
+
+        try {
+            repository.upsert(items(1201));
+            fail("the failed chunk must be reported");
+        } catch (BatchWriteException e) {
+            ChunkFailure failure = e.getResult().getFailures().get(0);
+            assertEquals(1, e.getResult().getFailures().size());
+            assertEquals(1000, failure.getFromIndex());
+            assertEquals(1201, failure.getToIndex());
+            assertEquals("k999", e.getResult().getResults().get(999));
+        }
+        assertEquals(1000, datastore.size());
+    }
+
+    @Test
+    public void rateLimitedUpsertLearnsFromWrites() {
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.newBuilder()
+                .setWriteInitialRate(WriteRateLimiter.RAMP_UP_INITIAL_RATE)
+                .build());
+
+        assertEquals(Optional.of(WriteRateLimiter.RAMP_UP_INITIAL_RATE), repository.getWriteRate());
+        repository.upsert(items(400));
+
+        assertEquals(400, datastore.size());
+        assertTrue(repository.getWriteRate().get() >= WriteRateLimiter.RAMP_UP_INITIAL_RATE);
+        assertFalse(new ItemRepository(datastore, RepositoryOptions.defaults()).getWriteRate().isPresent());
+    }
+
+    @Test
+    public void lookupRacingAnUpsertDoesNotCacheTheKeyAsMissing() throws InterruptedException {
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.newBuilder()
+                .setEntityCacheSize(100)
+                .build());
+        lookedUp = new CountDownLatch(1);
+        AtomicReference<ItemRepository.Item> found = new AtomicReference<>(new ItemRepository.Item("none", 0));
+
+        Thread reader = new Thread(() -> found.set(repository.findById("a")));
+        reader.start();
+        assertTrue(lookedUp.await(5, TimeUnit.SECONDS));
+        lookedUp = null;
+        repository.upsert(Entity.newBuilder(keyFactory.newKey("a")).set("n", 1).build());
+        released.countDown();
+        reader.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertNull(found.get());
+        assertEquals(1, repository.findById("a").n);
+    }
+
+    @Test
+    public void checkByIdLooksUpTheKeyWhichQueriesMayNotSeeYet() {
+        // keys only queries are eventually consistent, this one never sees a write
+        InMemoryDatastore stale = new InMemoryDatastore() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <R> QueryResults<R> run(Query<R> query) {
+                return (QueryResults<R>) super.run(Query.newKeyQueryBuilder().setKind("none").build());
+            }
+        };
+        ItemRepository repository = new ItemRepository(stale, RepositoryOptions.defaults());
+        repository.upsert(Entity.newBuilder(keyFactory.newKey("a")).set("n", 1).build());
+
+        repository.checkById("a");
+        assertFalse(repository.existsById("a"));
+        try {
+            repository.checkById("b");
+            fail("the missing entity must be reported");
+        } catch (EntityNotFoundException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+
+    @Test
+    public void largeValuesAreChunkedAndReplacedChunksDeleted() {
+        List<RepositoryOperation> operations = new CopyOnWriteArrayList<>();
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.newBuilder()
+                .setLargeValueMaxInlineBytes(1000)
+                .setMetrics(new RepositoryMetrics() {
+                    @Override
+                    public void recordOperation(String kind, RepositoryOperation operation, long durationNanos, int entities) {
+                        operations.add(operation);
+                    }
+
+                    @Override
+                    public void recordBatch(String kind, RepositoryOperation operation, int entities, long bytes) {
+                    }
+
+                    @Override
+                    public void recordError(String kind, RepositoryOperation operation, Throwable error) {
+                    }
+                })
+                .build());
+        Entity entity = Entity.newBuilder(keyFactory.newKey("a")).set("n", 1).build();
+        byte[] first = random(5000);
+        byte[] second = random(3000);
+
+        assertEquals("a", repository.upsertWithLargeValues(entity, Collections.singletonMap(ItemRepository.Field.DATA, first)));
+        assertEquals(6, datastore.size());
+        repository.upsertWithLargeValues(entity, Collections.singletonMap(ItemRepository.Field.DATA, second));
+
+        Entity stored = datastore.get(keyFactory.newKey("a"));
+        assertArrayEquals(second, repository.readLargeValue(stored, ItemRepository.Field.DATA));
+        assertEquals(1 + 3, datastore.size());
+        assertTrue(operations.contains(RepositoryOperation.UPSERT_LARGE_VALUE_CHUNKS));
+        assertTrue(operations.contains(RepositoryOperation.DELETE_LARGE_VALUE_CHUNKS));
+
+        repository.deleteWithLargeValues(keyFactory.newKey("a"));
+        assertEquals(0, datastore.size());
+    }
+
+    @Test
+    public void nullLargeValuesUpsertTheEntityAsItIs() {
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.defaults());
+
+        repository.upsertWithLargeValues(Entity.newBuilder(keyFactory.newKey("a")).set("n", 1).build(), null);
+
+        assertEquals(1, datastore.get(keyFactory.newKey("a")).getLong("n"));
+    }
+
+    @Test(timeout = 30_000)
+    public void parallelScanConsumerCanWriteChunkedBatches() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.newBuilder()
+                    .setExecutor(executor)
+                    .setQueryPageSize(50)
+                    .build());
+            repository.upsert(items(1000));
+            KeyFactory copies = datastore.newKeyFactory().setKind("copy");
+            AtomicInteger written = new AtomicInteger();
+
+            // every upsert is split into two chunks, written in parallel on the repository executor
+            long scanned = repository.parallelScan(8, item -> {
+                if (item.n % 100 == 0) {
+                    List<Entity> batch = new ArrayList<>(501);
+                    for (int i = 0; i < 501; i++) {
+                        batch.add(Entity.newBuilder(copies.newKey(item.name + "-" + i)).build());
+                    }
+                    written.addAndGet(repository.upsert(batch).size());
+                }
+            });
+
+            assertEquals(1000, scanned);
+            assertEquals(10 * 501, written.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    @Test
+    public void findByIdsMapsNamesAndKeysInInputOrderAndReportsMissingKeys() throws InvalidEntityException {
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.defaults());
+        datastore.put(items(1500).toArray(new Entity[0]));
+
+        List<Object> ids = new ArrayList<>();
+        ids.add(keyFactory.newKey("k1499"));
+        ids.add("missing");
+        for (int i = 0; i < 1200; i++) {
+            ids.add("k" + i);
+        }
+        LookupResult<ItemRepository.Item> result = repository.findByIds(ids);
+
+        assertEquals(1201, result.getResults().size());
+        assertEquals(1499, result.getResults().get(0).n);
+        assertEquals(1199, result.getResults().get(1200).n);
+        assertEquals(Collections.singleton(keyFactory.newKey("missing")), result.getMissingKeys());
+    }
+
+    @Test(expected = InvalidEntityException.class)
+    public void findByIdsRejectsIdsWhichAreNoLongStringOrKey() throws InvalidEntityException {
+        new ItemRepository(datastore, RepositoryOptions.defaults()).findByIds(Collections.singletonList(1));
+    }
+
+    @Test
+    public void writesInvalidateCachedQueryResults() {
+        ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.newBuilder().setQueryCacheSize(100).build());
+        EntityQuery query = Query.newEntityQueryBuilder().setKind("item").build();
+        repository.upsert(items(2));
+        assertEquals(2, repository.executeQuery(query).size());
+
+        datastore.put(Entity.newBuilder(keyFactory.newKey("outside")).build());
+        assertEquals("writes outside the repository are not seen until the ttl", 2, repository.executeQuery(query).size());
+
+        repository.add(Collections.singletonList(Entity.newBuilder(keyFactory.newKey("added")).build()));
+        assertEquals(4, repository.executeQuery(query).size());
+        repository.delete(Collections.singletonList(keyFactory.newKey("added")));
+        assertEquals(3, repository.executeQuery(query).size());
+        repository.runInTransaction(transaction -> {
+            transaction.upsert(Entity.newBuilder(keyFactory.newKey("committed")).build());
+            return null;
+        });
+        assertEquals(4, repository.executeQuery(query).size());
+        assertEquals(1, repository.getQueryCacheStats().get().getHits());
+    }
+
+    private List<Entity> items(int count) {
+        List<Entity> entities = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entities.add(Entity.newBuilder(keyFactory.newKey("k" + i)).set("n", i).build());
+        }
+        return entities;
+    }
+}
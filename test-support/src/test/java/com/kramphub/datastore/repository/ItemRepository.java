@@ -0,0 +1,81 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.kind.BaseKind;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * Repository of the item kind for tests, items are named entities with a number n
+ */
+class ItemRepository extends DatastoreRepository<ItemRepository.Item> {
+    static final BaseKind ITEM = new BaseKind() {
+        @Override
+        public String value() {
+            return "item";
+        }
+
+        @Override
+        public String getKindIdentifier() {
+            return "item";
+        }
+    };
+
+    ItemRepository(Datastore datastore, RepositoryOptions options) {
+        super(datastore, NOPLogger.NOP_LOGGER, 500, options);
+    }
+
+    @Override
+    public BaseKind getKind() {
+        return ITEM;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected <T> T map(Entity entity) {
+        return entity == null ? null : (T) new Item(entity.getKey().getName(), entity.contains("n") ? entity.getLong("n") : 0);
+    }
+
+    enum Field implements BaseKind {
+        N("n"),
+        DATA("data");
+
+        private final String value;
+
+        Field(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String value() {
+            return value;
+        }
+
+        @Override
+        public String getKindIdentifier() {
+            return "item";
+        }
+    }
+
+    static class Item extends BaseEntity {
+        final String name;
+        final long n;
+
+        Item(String name, long n) {
+            this.name = name;
+            this.n = n;
+        }
+
+        @Override
+        public Entity toEntity(Key key) {
+            return Entity.newBuilder(key).set("n", n).build();
+        }
+
+        @Override
+        public Object getKey() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.query.QueryParameter;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class RepositoryQueryTest {
+    private static final BaseKind OTHER_KIND_FIELD = new BaseKind() {
+        @Override
+        public String value() {
+            return "n";
+        }
+
+        @Override
+        public String getKindIdentifier() {
+            return "other";
+        }
+    };
+
+    private final InMemoryDatastore datastore = new InMemoryDatastore();
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final ItemRepository repository = new ItemRepository(datastore, RepositoryOptions.defaults());
+
+    @Before
+    public void setUp() {
+        List<Entity> entities = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            entities.add(Entity.newBuilder(keyFactory.newKey("k" + i)).set("n", i).set("data", i % 2 == 0 ? "even" : "odd").build());
+        }
+        datastore.put(entities.toArray(new Entity[0]));
+    }
+
+    @Test
+    public void filtersOrdersAndLimitAreApplied() {
+        List<ItemRepository.Item> items = repository.query()
+                .where(ItemRepository.Field.N).ge(5)
+                .where(ItemRepository.Field.N).lt(9)
+                .orderByDesc(ItemRepository.Field.N)
+                .limit(3)
+                .list();
+
+        assertEquals(Arrays.asList(8L, 7L, 6L), numbers(items));
+    }
+
+    @Test
+    public void equalityFiltersAreCombined() {
+        List<ItemRepository.Item> items = repository.query()
+                .where(ItemRepository.Field.DATA).eq("even")
+                .where(ItemRepository.Field.N).le(4)
+                .orderBy(ItemRepository.Field.N)
+                .list();
+
+        assertEquals(Arrays.asList(0L, 2L, 4L), numbers(items));
+    }
+
+    @Test
+    public void queriesHaveTheDefaultLimitOfTheRepository() {
+        assertEquals(Integer.valueOf(500), repository.query().build().getLimit());
+        assertNull(repository.query().limit(null).build().getLimit());
+    }
+
+    @Test
+    public void keyAndAncestorFiltersAreApplied() {
+        Key parent = keyFactory.newKey("k3");
+        Key child = Key.newBuilder(parent, "item", "child").build();
+        datastore.put(Entity.newBuilder(child).set("n", 100).build());
+
+        assertEquals(Arrays.asList(child), repository.query().ancestor(parent).whereKey().gt(parent).keys());
+        assertEquals(Arrays.asList(keyFactory.newKey("k1")), repository.query().whereKey().eq(keyFactory.newKey("k1")).keys());
+    }
+
+    @Test
+    public void propertiesOfOtherKindsAreRejected() {
+        try {
+            repository.query().where(OTHER_KIND_FIELD);
+            fail("the property of another kind must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Property n belongs to kind other, not to item", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullPropertiesAreRejected() {
+        repository.query().orderBy(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void valuesWithoutDatastoreTypeAreRejected() {
+        repository.query().where(ItemRepository.Field.DATA).eq(new Object());
+    }
+
+    @Test
+    public void inequalitiesOnMoreThanOnePropertyAreRejected() {
+        try {
+            repository.query().where(ItemRepository.Field.N).gt(1).where(ItemRepository.Field.DATA).lt("x").template();
+            fail("the second inequality property must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Inequality filters are only supported on a single property, found n and data", e.getMessage());
+        }
+    }
+
+    @Test
+    public void firstOrderMustBeOnTheInequalityProperty() {
+        try {
+            repository.query().where(ItemRepository.Field.N).gt(1).orderBy(ItemRepository.Field.DATA).template();
+            fail("the order must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("The first order must be on the inequality property n, found data", e.getMessage());
+        }
+    }
+
+    @Test
+    public void templateBindsParametersInTheOrderTheyWereAdded() {
+        QueryTemplate<ItemRepository.Item> template = repository.query()
+                .where(ItemRepository.Field.N).ge(QueryParameter.named("min"))
+                .where(ItemRepository.Field.N).lt(QueryParameter.named("max"))
+                .orderBy(ItemRepository.Field.N)
+                .template();
+
+        assertEquals(2, template.getParameterCount());
+        assertEquals(Arrays.asList(2L, 3L), numbers(template.list(2, 4)));
+        assertEquals(Arrays.asList(7L, 8L, 9L), numbers(template.list(7L, 100)));
+        assertEquals(Arrays.asList(keyFactory.newKey("k0")), template.keys(0, 1));
+    }
+
+    @Test
+    public void templateRejectsAWrongNumberOfValues() {
+        QueryTemplate<ItemRepository.Item> template = repository.query()
+                .where(ItemRepository.Field.N).ge(QueryParameter.named("min"))
+                .where(ItemRepository.Field.N).lt(QueryParameter.named("max"))
+                .template();
+
+        try {
+            template.bind(1);
+            fail("the missing value must be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Expected 2 values for parameters [:min, :max] but got 1", e.getMessage());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queryWithParametersCannotBeBuiltWithoutValues() {
+        repository.query().where(ItemRepository.Field.N).eq(QueryParameter.named("n")).build();
+    }
+
+    @Test
+    public void templateWithoutParametersReusesItsQueries() {
+        QueryTemplate<ItemRepository.Item> template = repository.query().where(ItemRepository.Field.DATA).eq("odd").template();
+
+        assertSame(template.bind(), template.bind());
+        assertSame(template.bindKeys(), template.bindKeys());
+        assertEquals(5, template.list().size());
+    }
+
+    @Test
+    public void templateIsNotChangedByTheQueryItWasCompiledFrom() {
+        RepositoryQuery<ItemRepository.Item> query = repository.query().where(ItemRepository.Field.DATA).eq("odd");
+        QueryTemplate<ItemRepository.Item> template = query.template();
+
+        query.where(ItemRepository.Field.N).eq(1).limit(1);
+
+        assertEquals(5, template.list().size());
+        assertEquals(1, query.list().size());
+    }
+
+    private static List<Long> numbers(List<ItemRepository.Item> items) {
+        return items.stream().map(item -> item.n).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,177 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.metrics.RepositoryMetrics;
+import com.kramphub.datastore.metrics.RepositoryOperation;
+import com.kramphub.datastore.testing.InMemoryDatastore;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.*;
+
+public class TransactionalRepositoryTest {
+    private final InMemoryDatastore datastore = new InMemoryDatastore();
+    private final KeyFactory keyFactory = datastore.newKeyFactory().setKind("item");
+    private final Key key = keyFactory.newKey("a");
+    private final List<Integer> retries = new CopyOnWriteArrayList<>();
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+    private final RepositoryMetrics metrics = new RepositoryMetrics() {
+        @Override
+        public void recordOperation(String kind, RepositoryOperation operation, long durationNanos, int entities) {
+        }
+
+        @Override
+        public void recordBatch(String kind, RepositoryOperation operation, int entities, long bytes) {
+        }
+
+        @Override
+        public void recordError(String kind, RepositoryOperation operation, Throwable error) {
+            errors.add(error);
+        }
+
+        @Override
+        public void recordRetries(String kind, RepositoryOperation operation, int retries) {
+            TransactionalRepositoryTest.this.retries.add(retries);
+        }
+    };
+
+    @Test
+    public void attemptAbortedByContentionIsRetried() {
+        ItemRepository repository = repository(RepositoryOptions.newBuilder());
+        datastore.put(item(1));
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+
+        long result = repository.runInTransaction(transaction -> {
+            attempts.add(transaction.getAttempt());
+            long n = transaction.get(key).getLong("n");
+            if (transaction.getAttempt() == 1) {
+                // a concurrent writer changes the entity read by the first attempt
+                datastore.put(item(10));
+            }
+            transaction.upsert(item(n + 1));
+            return n + 1;
+        });
+
+        assertEquals(11, result);
+        assertEquals(11, datastore.get(key).getLong("n"));
+        assertEquals(Arrays.asList(1, 2), attempts);
+        assertEquals(Collections.singletonList(1), retries);
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    public void contentionIsRetriedUpToTheMaxAttempts() {
+        ItemRepository repository = repository(RepositoryOptions.newBuilder().setTransactionMaxAttempts(3));
+        datastore.put(item(1));
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+
+        try {
+            repository.runInTransaction(transaction -> {
+                attempts.add(transaction.getAttempt());
+                long n = transaction.get(key).getLong("n");
+                datastore.put(item(n + 100));
+                transaction.upsert(item(n + 1));
+                return n;
+            });
+            fail("the last abort must be thrown");
+        } catch (DatastoreException e) {
+            assertEquals("ABORTED", e.getReason());
+        }
+
+        assertEquals(Arrays.asList(1, 2, 3), attempts);
+        assertEquals(301, datastore.get(key).getLong("n"));
+        assertEquals(Collections.singletonList(2), retries);
+        assertEquals(1, errors.size());
+    }
+
+    @Test
+    public void otherFailuresAreNotRetried() {
+        ItemRepository repository = repository(RepositoryOptions.newBuilder());
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+
+        try {
+            repository.runInTransaction(transaction -> {
+                attempts.add(transaction.getAttempt());
+                throw new DatastoreException(3, "invalid", "INVALID_ARGUMENT");
+            });
+            fail("the failure must be thrown");
+        } catch (DatastoreException e) {
+            assertEquals("INVALID_ARGUMENT", e.getReason());
+        }
+
+        assertEquals(Collections.singletonList(1), attempts);
+        assertEquals(Collections.singletonList(0), retries);
+    }
+
+    @Test
+    public void noAttemptStartsAfterTheDeadline() {
+        ItemRepository repository = repository(RepositoryOptions.newBuilder().setTransactionDeadline(Duration.ZERO));
+        datastore.put(item(1));
+        List<Integer> attempts = new CopyOnWriteArrayList<>();
+
+        try {
+            repository.runInTransaction(transaction -> {
+                attempts.add(transaction.getAttempt());
+                datastore.put(item(transaction.get(key).getLong("n") + 1));
+                transaction.upsert(item(0));
+                return null;
+            });
+            fail("the abort must be thrown");
+        } catch (DatastoreException e) {
+            assertEquals("ABORTED", e.getReason());
+        }
+
+        assertEquals(Collections.singletonList(1), attempts);
+    }
+
+    @Test
+    public void abortedTransactionWritesNothing() {
+        ItemRepository repository = repository(RepositoryOptions.newBuilder().setTransactionMaxAttempts(1));
+        datastore.put(item(1));
+
+        try {
+            repository.runInTransaction(transaction -> {
+                transaction.get(key);
+                datastore.put(item(2));
+                transaction.upsert(Entity.newBuilder(keyFactory.newKey("b")).set("n", 1).build());
+                return null;
+            });
+            fail("the abort must be thrown");
+        } catch (DatastoreException e) {
+            assertNull(datastore.get(keyFactory.newKey("b")));
+        }
+    }
+
+    @Test
+    public void readOnlyTransactionRejectsWrites() {
+        ItemRepository repository = repository(RepositoryOptions.newBuilder());
+        datastore.put(item(1));
+
+        assertEquals(1, (long) repository.runInReadOnlyTransaction(transaction -> transaction.findByKey(key).n));
+        try {
+            repository.runInReadOnlyTransaction(transaction -> {
+                transaction.upsert(item(2));
+                return null;
+            });
+            fail("the write must be rejected");
+        } catch (IllegalStateException e) {
+            assertEquals(1, datastore.get(key).getLong("n"));
+        }
+    }
+
+    private ItemRepository repository(RepositoryOptions.Builder options) {
+        return new ItemRepository(datastore, options
+                .setTransactionInitialBackoff(Duration.ofMillis(1))
+                .setMetrics(metrics)
+                .build());
+    }
+
+    private Entity item(long n) {
+        return Entity.newBuilder(key).set("n", n).build();
+    }
+}
@@ -0,0 +1,192 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class InMemoryDatastoreTest {
+    private InMemoryDatastore datastore;
+    private KeyFactory keyFactory;
+
+    @Before
+    public void setUp() {
+        datastore = new InMemoryDatastore();
+        keyFactory = datastore.newKeyFactory().setKind("item");
+    }
+
+    @Test
+    public void putGetAndDelete() {
+        Key key = keyFactory.newKey("a");
+        datastore.put(Entity.newBuilder(key).set("n", 1).build());
+
+        assertEquals(1, datastore.get(key).getLong("n"));
+        assertEquals(1, datastore.size());
+
+        datastore.delete(key);
+        assertNull(datastore.get(key));
+        assertEquals(0, datastore.size());
+    }
+
+    @Test
+    public void fetchKeepsKeyOrderWithNullsForMissingKeys() {
+        datastore.put(entity("a", 1), entity("c", 3));
+
+        List<Entity> fetched = datastore.fetch(keyFactory.newKey("c"), keyFactory.newKey("b"), keyFactory.newKey("a"));
+
+        assertEquals(3, fetched.get(0).getLong("n"));
+        assertNull(fetched.get(1));
+        assertEquals(1, fetched.get(2).getLong("n"));
+    }
+
+    @Test
+    public void addFailsForExistingEntityAndWritesNothing() {
+        datastore.put(entity("a", 1));
+        try {
+            datastore.add(entity("b", 2), entity("a", 3));
+            fail("add of an existing entity must fail");
+        } catch (DatastoreException e) {
+            assertEquals("ALREADY_EXISTS", e.getReason());
+        }
+        assertNull(datastore.get(keyFactory.newKey("b")));
+        assertEquals(1, datastore.get(keyFactory.newKey("a")).getLong("n"));
+    }
+
+    @Test
+    public void updateFailsForMissingEntity() {
+        try {
+            datastore.update(entity("a", 1));
+            fail("update of a missing entity must fail");
+        } catch (DatastoreException e) {
+            assertEquals("NOT_FOUND", e.getReason());
+        }
+        assertEquals(0, datastore.size());
+    }
+
+    @Test
+    public void incompleteKeysGetDistinctIds() {
+        IncompleteKey incompleteKey = keyFactory.newKey();
+
+        List<Entity> added = datastore.add(FullEntity.newBuilder(incompleteKey).build(), FullEntity.newBuilder(incompleteKey).build());
+        Key allocated = datastore.allocateId(incompleteKey);
+
+        assertNotNull(added.get(0).getKey().getId());
+        assertNotEquals(added.get(0).getKey(), added.get(1).getKey());
+        assertNull(datastore.get(allocated));
+        assertFalse(Arrays.asList(added.get(0).getKey(), added.get(1).getKey()).contains(allocated));
+    }
+
+    @Test
+    public void namespacesAreSeparate() {
+        Key other = Key.newBuilder(InMemoryDatastore.DEFAULT_PROJECT_ID, "item", "a").setNamespace("other").build();
+        datastore.put(entity("a", 1), Entity.newBuilder(other).set("n", 2).build());
+
+        QueryResults<Entity> results = datastore.run(Query.newEntityQueryBuilder().setKind("item").build());
+
+        assertEquals(1, results.next().getLong("n"));
+        assertFalse(results.hasNext());
+        assertEquals(2, datastore.get(other).getLong("n"));
+    }
+
+    @Test
+    public void transactionCommitsItsWrites() {
+        Transaction transaction = datastore.newTransaction();
+        transaction.put(entity("a", 1));
+        assertNull(datastore.get(keyFactory.newKey("a")));
+
+        transaction.commit();
+
+        assertEquals(1, datastore.get(keyFactory.newKey("a")).getLong("n"));
+        assertFalse(transaction.isActive());
+    }
+
+    @Test
+    public void rolledBackTransactionWritesNothing() {
+        Transaction transaction = datastore.newTransaction();
+        transaction.put(entity("a", 1));
+
+        transaction.rollback();
+
+        assertNull(datastore.get(keyFactory.newKey("a")));
+    }
+
+    @Test
+    public void conflictingCommitIsAborted() {
+        datastore.put(entity("a", 1));
+        Transaction first = datastore.newTransaction();
+        Transaction second = datastore.newTransaction();
+        Entity readByFirst = first.get(keyFactory.newKey("a"));
+        second.get(keyFactory.newKey("a"));
+
+        second.put(entity("a", 2));
+        second.commit();
+        first.put(Entity.newBuilder(readByFirst).set("n", readByFirst.getLong("n") + 10).build());
+        try {
+            first.commit();
+            fail("commit after a conflicting write must be aborted");
+        } catch (DatastoreException e) {
+            assertEquals("ABORTED", e.getReason());
+            assertTrue(e.isRetryable());
+        }
+        assertEquals(2, datastore.get(keyFactory.newKey("a")).getLong("n"));
+    }
+
+    @Test
+    public void queryReadInTransactionConflictsWithLaterWrite() {
+        datastore.put(entity("a", 1));
+        Transaction transaction = datastore.newTransaction();
+        QueryResults<Entity> results = transaction.run(Query.newEntityQueryBuilder().setKind("item").build());
+        results.forEachRemaining(entity -> {
+        });
+
+        datastore.put(entity("a", 2));
+        transaction.put(entity("b", 1));
+        try {
+            transaction.commit();
+            fail("commit after a write to a queried entity must be aborted");
+        } catch (DatastoreException e) {
+            assertEquals("ABORTED", e.getReason());
+        }
+        assertNull(datastore.get(keyFactory.newKey("b")));
+    }
+
+    @Test
+    public void writesToOtherKeysDoNotConflict() {
+        datastore.put(entity("a", 1));
+        Transaction transaction = datastore.newTransaction();
+        transaction.get(keyFactory.newKey("a"));
+
+        datastore.put(entity("b", 1));
+        transaction.put(entity("a", 2));
+        transaction.commit();
+
+        assertEquals(2, datastore.get(keyFactory.newKey("a")).getLong("n"));
+    }
+
+    @Test
+    public void runInTransactionRetriesAbortedAttempt() {
+        datastore.put(entity("a", 1));
+        int[] attempts = {0};
+
+        long result = datastore.runInTransaction(transaction -> {
+            Entity current = transaction.get(keyFactory.newKey("a"));
+            if (attempts[0]++ == 0) {
+                datastore.put(entity("a", 5));
+            }
+            transaction.put(Entity.newBuilder(current).set("n", current.getLong("n") + 1).build());
+            return current.getLong("n") + 1;
+        });
+
+        assertEquals(2, attempts[0]);
+        assertEquals(6, result);
+        assertEquals(6, datastore.get(keyFactory.newKey("a")).getLong("n"));
+    }
+
+    private Entity entity(String name, long n) {
+        return Entity.newBuilder(keyFactory.newKey(name)).set("n", n).build();
+    }
+}
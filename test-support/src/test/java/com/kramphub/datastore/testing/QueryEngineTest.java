@@ -0,0 +1,203 @@
+package com.kramphub.datastore.testing;
+
+import com.google.cloud.datastore.*;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class QueryEngineTest {
+    private InMemoryDatastore datastore;
+    private KeyFactory keyFactory;
+
+    @Before
+    public void setUp() {
+        datastore = new InMemoryDatastore();
+        keyFactory = datastore.newKeyFactory().setKind("item");
+        datastore.put(
+                item("a", "tools", 3, "red", "blue"),
+                item("b", "tools", 1, "green"),
+                item("c", "garden", 2, "red"),
+                item("d", "garden", 5),
+                item("e", "tools", 3, "blue"));
+        datastore.put(Entity.newBuilder(datastore.newKeyFactory().setKind("other").newKey("a"))
+                .set("category", "tools").build());
+    }
+
+    @Test
+    public void kindQueryReturnsKindOnlyInKeyOrder() {
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), names(query().build()));
+    }
+
+    @Test
+    public void equalityFilter() {
+        assertEquals(Arrays.asList("a", "b", "e"), names(query().setFilter(PropertyFilter.eq("category", "tools")).build()));
+    }
+
+    @Test
+    public void inequalityFilters() {
+        assertEquals(Arrays.asList("a", "d", "e"), names(query().setFilter(PropertyFilter.gt("quantity", 2)).build()));
+        assertEquals(Arrays.asList("a", "c", "e"), names(query().setFilter(CompositeFilter.and(
+                PropertyFilter.ge("quantity", 2), PropertyFilter.lt("quantity", 5))).build()));
+    }
+
+    @Test
+    public void inequalityOnlyMatchesSameType() {
+        assertEquals(Arrays.asList(), names(query().setFilter(PropertyFilter.gt("quantity", "0")).build()));
+    }
+
+    @Test
+    public void listPropertyMatchesAnyElement() {
+        assertEquals(Arrays.asList("a", "c"), names(query().setFilter(PropertyFilter.eq("colors", "red")).build()));
+        assertEquals(Arrays.asList("a", "e"), names(query().setFilter(PropertyFilter.eq("colors", "blue")).build()));
+    }
+
+    @Test
+    public void compositeFilter() {
+        assertEquals(Arrays.asList("a", "e"), names(query().setFilter(CompositeFilter.and(
+                PropertyFilter.eq("category", "tools"), PropertyFilter.eq("quantity", 3))).build()));
+    }
+
+    @Test
+    public void keyFilter() {
+        assertEquals(Arrays.asList("d", "e"), names(query().setFilter(
+                PropertyFilter.gt("__key__", keyFactory.newKey("c"))).build()));
+    }
+
+    @Test
+    public void ancestorFilter() {
+        Key parent = keyFactory.newKey("a");
+        Key child = Key.newBuilder(parent, "child", "x").build();
+        datastore.put(Entity.newBuilder(child).build(), Entity.newBuilder(datastore.newKeyFactory().setKind("child").newKey("y")).build());
+
+        QueryResults<Key> results = datastore.run(Query.newKeyQueryBuilder().setKind("child")
+                .setFilter(PropertyFilter.hasAncestor(parent)).build());
+
+        assertEquals(child, results.next());
+        assertFalse(results.hasNext());
+    }
+
+    @Test
+    public void ordersWithKeyTiebreak() {
+        assertEquals(Arrays.asList("b", "c", "a", "e", "d"), names(query().setOrderBy(OrderBy.asc("quantity")).build()));
+        assertEquals(Arrays.asList("d", "a", "e", "c", "b"), names(query().setOrderBy(OrderBy.desc("quantity")).build()));
+        assertEquals(Arrays.asList("d", "c", "e", "b", "a"), names(query()
+                .setOrderBy(OrderBy.asc("category"), OrderBy.desc("name")).build()));
+    }
+
+    @Test
+    public void orderLeavesOutEntitiesWithoutProperty() {
+        datastore.put(Entity.newBuilder(keyFactory.newKey("f")).set("category", "tools").build());
+
+        assertEquals(Arrays.asList("b", "c", "a", "e", "d"), names(query().setOrderBy(OrderBy.asc("quantity")).build()));
+        assertEquals(6, names(query().build()).size());
+    }
+
+    @Test
+    public void offsetAndLimit() {
+        assertEquals(Arrays.asList("c", "a"), names(query().setOrderBy(OrderBy.asc("quantity")).setOffset(1).setLimit(2).build()));
+    }
+
+    @Test
+    public void cursorsPageThroughResults() {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = null;
+        int pages = 0;
+        while (true) {
+            EntityQuery.Builder builder = query().setOrderBy(OrderBy.asc("quantity")).setLimit(2);
+            if (cursor != null) {
+                builder.setStartCursor(cursor);
+            }
+            QueryResults<Entity> results = datastore.run(builder.build());
+            int count = 0;
+            while (results.hasNext()) {
+                names.add(results.next().getKey().getName());
+                count++;
+            }
+            if (count == 0) {
+                break;
+            }
+            cursor = results.getCursorAfter();
+            pages++;
+        }
+
+        assertEquals(Arrays.asList("b", "c", "a", "e", "d"), names);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    public void endCursorStopsResults() {
+        QueryResults<Entity> first = datastore.run(query().setOrderBy(OrderBy.asc("quantity")).setLimit(3).build());
+        while (first.hasNext()) {
+            first.next();
+        }
+
+        assertEquals(Arrays.asList("b", "c", "a"), names(query().setOrderBy(OrderBy.asc("quantity"))
+                .setEndCursor(first.getCursorAfter()).build()));
+    }
+
+    @Test
+    public void cursorSurvivesWriteOfLaterEntity() {
+        QueryResults<Entity> first = datastore.run(query().setLimit(2).build());
+        while (first.hasNext()) {
+            first.next();
+        }
+        datastore.delete(keyFactory.newKey("c"));
+
+        assertEquals(Arrays.asList("d", "e"), names(query().setStartCursor(first.getCursorAfter()).build()));
+    }
+
+    @Test
+    public void keysOnlyQuery() {
+        QueryResults<Key> results = datastore.run(Query.newKeyQueryBuilder().setKind("item")
+                .setFilter(PropertyFilter.eq("category", "garden")).build());
+
+        assertEquals(keyFactory.newKey("c"), results.next());
+        assertEquals(keyFactory.newKey("d"), results.next());
+        assertFalse(results.hasNext());
+    }
+
+    @Test
+    public void projectionAndDistinct() {
+        QueryResults<ProjectionEntity> results = datastore.run(Query.newProjectionEntityQueryBuilder().setKind("item")
+                .setProjection("category").setDistinctOn("category").setOrderBy(OrderBy.asc("category")).build());
+
+        ProjectionEntity garden = results.next();
+        assertEquals("garden", garden.getString("category"));
+        assertFalse(garden.contains("quantity"));
+        assertEquals("tools", results.next().getString("category"));
+        assertFalse(results.hasNext());
+    }
+
+    private EntityQuery.Builder query() {
+        return Query.newEntityQueryBuilder().setKind("item");
+    }
+
+    private List<String> names(EntityQuery query) {
+        List<String> names = new ArrayList<>();
+        datastore.run(query).forEachRemaining(entity -> names.add(entity.getKey().getName()));
+        return names;
+    }
+
+    private Entity item(String name, String category, long quantity, String... colors) {
+        Entity.Builder builder = Entity.newBuilder(keyFactory.newKey(name))
+                .set("name", name)
+                .set("category", category)
+                .set("quantity", quantity);
+        if (colors.length > 0) {
+            List<Value<String>> values = new ArrayList<>();
+            for (String color : colors) {
+                values.add(StringValue.of(color));
+            }
+            builder.set("colors", values);
+        }
+        return builder.build();
+    }
+}
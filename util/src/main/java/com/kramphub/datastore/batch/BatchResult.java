@@ -0,0 +1,39 @@
+package com.kramphub.datastore.batch;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Result of a chunked batch write. Results are kept in input order,
+ * positions covered by a failed chunk are null and the chunk is listed in failures.
+ *
+ * @param <O> result type per input element
+ */
+@SuppressWarnings("unused")
+public class BatchResult<O> {
+    private final List<O> results;
+    private final List<ChunkFailure> failures;
+
+    public BatchResult(List<O> results, List<ChunkFailure> failures) {
+        this.results = Collections.unmodifiableList(results);
+        this.failures = Collections.unmodifiableList(failures);
+    }
+
+    /**
+     * @return results in input order, null for elements of failed chunks
+     */
+    public List<O> getResults() {
+        return results;
+    }
+
+    /**
+     * @return failed chunks, empty if all chunks succeeded
+     */
+    public List<ChunkFailure> getFailures() {
+        return failures;
+    }
+
+    public boolean hasFailures() {
+        return !failures.isEmpty();
+    }
+}
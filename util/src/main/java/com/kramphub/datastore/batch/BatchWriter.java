@@ -0,0 +1,220 @@
+package com.kramphub.datastore.batch;
+
+import com.google.cloud.datastore.DatastoreException;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
+import com.kramphub.datastore.exception.BatchWriteException;
+import com.kramphub.datastore.metrics.RepositoryMetrics;
+import com.kramphub.datastore.metrics.RepositoryOperation;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Splits batch writes into chunks which respect the Datastore mutation count and commit size limits
+ * and writes the chunks in parallel on the given executor.
+ * With a rate limiter the calling thread waits for the permits of each chunk before dispatching it,
+ * so throttled writes never hold executor threads while they wait.
+ */
+@SuppressWarnings("unused")
+public class BatchWriter {
+    private final Logger log;
+    private final int batchSize;
+    private final long batchBytes;
+    private final Executor executor;
+    private final RepositoryMetrics metrics;
+    private final String kind;
+    private final WriteRateLimiter rateLimiter;
+
+    /**
+     * @param log
+     * @param batchSize  max elements per chunk
+     * @param batchBytes max estimated bytes per chunk
+     * @param executor   executor the chunks are written on
+     */
+    public BatchWriter(Logger log, int batchSize, long batchBytes, Executor executor) {
+        this(log, batchSize, batchBytes, executor, RepositoryMetrics.noop(), null);
+    }
+
+    /**
+     * @param log
+     * @param batchSize  max elements per chunk
+     * @param batchBytes max estimated bytes per chunk
+     * @param executor   executor the chunks are written on
+     * @param metrics    receives the size of every chunk
+     * @param kind       kind identifier reported to the metrics
+     */
+    public BatchWriter(Logger log, int batchSize, long batchBytes, Executor executor, RepositoryMetrics metrics, String kind) {
+        this(log, batchSize, batchBytes, executor, metrics, kind, null);
+    }
+
+    /**
+     * @param log
+     * @param batchSize   max elements per chunk
+     * @param batchBytes  max estimated bytes per chunk
+     * @param executor    executor the chunks are written on
+     * @param metrics     receives the size of every chunk
+     * @param kind        kind identifier reported to the metrics
+     * @param rateLimiter paces the chunks on the calling thread and learns from their latency and failures, null to write at full speed
+     */
+    public BatchWriter(Logger log, int batchSize, long batchBytes, Executor executor, RepositoryMetrics metrics, String kind,
+                       WriteRateLimiter rateLimiter) {
+        this.log = log;
+        this.batchSize = batchSize;
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.metrics = metrics;
+        this.kind = kind;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * This method splits the input into chunks, reports their sizes to the metrics and writes them in parallel.
+     *
+     * @param operation reported to the metrics and used for error reporting
+     * @param input     elements to write
+     * @param sizer     estimates the size of an element in bytes
+     * @param writer    writes a chunk and returns one result per element in the same order
+     * @return results in input order
+     * @throws BatchWriteException if any of multiple chunks fails, with the per chunk report
+     */
+    public <I, O> List<O> write(RepositoryOperation operation, List<I> input, ToLongFunction<? super I> sizer,
+                                Function<List<I>, List<O>> writer) throws BatchWriteException {
+        return write(operation.value(), split(input, sizer, operation), input.size(), writer);
+    }
+
+    /**
+     * This method splits the input into chunks and writes them in parallel.
+     * A single chunk is written on the calling thread and its exceptions are propagated as is.
+     *
+     * @param operation name of the operation for error reporting
+     * @param input     elements to write
+     * @param sizer     estimates the size of an element in bytes
+     * @param writer    writes a chunk and returns one result per element in the same order
+     * @return results in input order
+     * @throws BatchWriteException if any of multiple chunks fails, with the per chunk report
+     */
+    public <I, O> List<O> write(String operation, List<I> input, ToLongFunction<? super I> sizer,
+                                Function<List<I>, List<O>> writer) throws BatchWriteException {
+        return write(operation, split(input, sizer, null), input == null ? 0 : input.size(), writer);
+    }
+
+    private <I, O> List<O> write(String operation, List<List<I>> chunks, int inputSize,
+                                 Function<List<I>, List<O>> writer) throws BatchWriteException {
+        if (chunks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        if (chunks.size() == 1) {
+            acquire(chunks.get(0).size());
+            return writeChunk(chunks.get(0), writer);
+        }
+
+        List<CompletableFuture<List<O>>> futures = new ArrayList<>(chunks.size());
+        for (List<I> chunk : chunks) {
+            CompletableFuture<List<O>> future;
+            try {
+                acquire(chunk.size());
+                future = CompletableFuture.supplyAsync(() -> writeChunk(chunk, writer), executor);
+            } catch (RuntimeException e) {
+                // reported with the chunk, like a failed write
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            futures.add(future);
+        }
+
+        List<O> results = new ArrayList<>(inputSize);
+        List<ChunkFailure> failures = new ArrayList<>();
+        int fromIndex = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int chunkSize = chunks.get(i).size();
+            try {
+                results.addAll(futures.get(i).join());
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                log.error("Chunk {} of {} operation failed for elements [{}, {})", i, operation, fromIndex, fromIndex + chunkSize, cause);
+                failures.add(new ChunkFailure(i, fromIndex, fromIndex + chunkSize, cause));
+                results.addAll(Collections.nCopies(chunkSize, null));
+            }
+            fromIndex += chunkSize;
+        }
+
+        if (!failures.isEmpty()) {
+            throw new BatchWriteException(String.format("%s failed for %d of %d chunks", operation, failures.size(), chunks.size()),
+                    new BatchResult<>(results, failures));
+        }
+        return results;
+    }
+
+    private void acquire(int permits) {
+        if (rateLimiter == null) {
+            return;
+        }
+        try {
+            rateLimiter.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DatastoreException(1, "Interrupted while waiting for write capacity", "CANCELLED", e);
+        }
+    }
+
+    private <I, O> List<O> writeChunk(List<I> chunk, Function<List<I>, List<O>> writer) {
+        if (rateLimiter == null) {
+            return writer.apply(chunk);
+        }
+        long start = System.nanoTime();
+        try {
+            List<O> results = writer.apply(chunk);
+            rateLimiter.onSuccess(chunk.size(), System.nanoTime() - start);
+            return results;
+        } catch (RuntimeException e) {
+            rateLimiter.onFailure(e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method splits the input into consecutive chunks bounded by element count and estimated bytes.
+     * An element larger than the byte bound gets a chunk of its own.
+     *
+     * @param input
+     * @param sizer estimates the size of an element in bytes
+     * @return chunks as views of the input
+     */
+    public <I> List<List<I>> split(List<I> input, ToLongFunction<? super I> sizer) {
+        return split(input, sizer, null);
+    }
+
+    private <I> List<List<I>> split(List<I> input, ToLongFunction<? super I> sizer, RepositoryOperation operation) {
+        if (input == null || input.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<I>> chunks = new ArrayList<>(input.size() / batchSize + 1);
+        int fromIndex = 0;
+        long bytes = 0;
+        for (int i = 0; i < input.size(); i++) {
+            long size = sizer.applyAsLong(input.get(i));
+            if (i > fromIndex && (i - fromIndex == batchSize || bytes + size > batchBytes)) {
+                chunks.add(input.subList(fromIndex, i));
+                if (operation != null) {
+                    metrics.recordBatch(kind, operation, i - fromIndex, bytes);
+                }
+                fromIndex = i;
+                bytes = 0;
+            }
+            bytes += size;
+        }
+        chunks.add(input.subList(fromIndex, input.size()));
+        if (operation != null) {
+            metrics.recordBatch(kind, operation, input.size() - fromIndex, bytes);
+        }
+        return chunks;
+    }
+}
@@ -0,0 +1,166 @@
+package com.kramphub.datastore.batch;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.StructuredQuery;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
+import com.kramphub.datastore.query.QueryPage;
+import com.kramphub.datastore.query.QueryPager;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Deletes all entities matching a keys only query as a pipeline:
+ * the calling thread pages through the keys with a cursor while up to N delete batches run on the executor.
+ * Deletes are writes, with a rate limiter the calling thread waits for its permits before dispatching each batch.
+ */
+@SuppressWarnings("unused")
+public class BulkDeleter {
+    private final Datastore datastore;
+    private final Logger log;
+    private final int batchSize;
+    private final int concurrency;
+    private final Executor executor;
+    private final WriteRateLimiter rateLimiter;
+
+    /**
+     * @param datastore
+     * @param log
+     * @param batchSize   keys per delete batch, max 500
+     * @param concurrency max delete batches in flight
+     * @param executor    executor the delete batches run on
+     */
+    public BulkDeleter(Datastore datastore, Logger log, int batchSize, int concurrency, Executor executor) {
+        this(datastore, log, batchSize, concurrency, executor, null);
+    }
+
+    /**
+     * @param datastore
+     * @param log
+     * @param batchSize   keys per delete batch, max 500
+     * @param concurrency max delete batches in flight
+     * @param executor    executor the delete batches run on
+     * @param rateLimiter paces the batches on the calling thread and learns from their latency and failures, null to delete at full speed
+     */
+    public BulkDeleter(Datastore datastore, Logger log, int batchSize, int concurrency, Executor executor, WriteRateLimiter rateLimiter) {
+        this.datastore = datastore;
+        this.log = log;
+        this.batchSize = batchSize;
+        this.concurrency = concurrency;
+        this.executor = executor;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * This method deletes all entities matching the query, the limit of the query is ignored.
+     * No new batches are started after a batch fails; in flight batches are awaited and the failure is thrown.
+     *
+     * @param query    keys only query selecting the entities to delete
+     * @param listener called from worker threads after every committed batch, nullable
+     * @return final progress
+     */
+    public DeleteProgress delete(StructuredQuery<Key> query, Consumer<DeleteProgress> listener) {
+        long startNanos = System.nanoTime();
+        AtomicLong deleted = new AtomicLong();
+        AtomicLong batches = new AtomicLong();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Semaphore permits = new Semaphore(concurrency);
+        QueryPager<Key, Key> pager = new QueryPager<>(datastore, query.toBuilder().setLimit(null).build(), batchSize, Function.identity());
+
+        try {
+            String cursorToken = null;
+            QueryPage<Key> page;
+            do {
+                page = pager.fetchPage(cursorToken);
+                List<Key> keys = page.getResults();
+                if (keys.isEmpty()) {
+                    break;
+                }
+                permits.acquire();
+                if (failure.get() != null) {
+                    permits.release();
+                    break;
+                }
+                CompletableFuture<Void> batch;
+                try {
+                    if (rateLimiter != null) {
+                        rateLimiter.acquire(keys.size());
+                    }
+                    batch = CompletableFuture.runAsync(() -> {
+                        deleteBatch(keys);
+                        DeleteProgress progress = new DeleteProgress(deleted.addAndGet(keys.size()), batches.incrementAndGet(),
+                                Duration.ofNanos(System.nanoTime() - startNanos));
+                        notify(listener, progress);
+                    }, executor);
+                } catch (InterruptedException | RuntimeException e) {
+                    // interrupted while waiting for write capacity or the executor rejected the batch, it never releases its permit
+                    permits.release();
+                    throw e;
+                }
+                batch.whenComplete((result, e) -> {
+                    if (e != null) {
+                        failure.compareAndSet(null, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                    }
+                    permits.release();
+                });
+                cursorToken = page.getCursorToken();
+            } while (page.hasMore() && failure.get() == null);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+        // wait for the batches in flight
+        permits.acquireUninterruptibly(concurrency);
+        permits.release(concurrency);
+
+        DeleteProgress progress = new DeleteProgress(deleted.get(), batches.get(), Duration.ofNanos(System.nanoTime() - startNanos));
+        Throwable cause = failure.get();
+        if (cause != null) {
+            log.error("Bulk delete of {} failed after {}", query.getKind(), progress, cause);
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+        log.debug("Bulk delete of {} finished, {}", query.getKind(), progress);
+        return progress;
+    }
+
+    private void deleteBatch(List<Key> keys) {
+        if (rateLimiter == null) {
+            datastore.delete(keys.toArray(new Key[0]));
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            datastore.delete(keys.toArray(new Key[0]));
+            rateLimiter.onSuccess(keys.size(), System.nanoTime() - start);
+        } catch (RuntimeException e) {
+            rateLimiter.onFailure(e);
+            throw e;
+        }
+    }
+
+    private void notify(Consumer<DeleteProgress> listener, DeleteProgress progress) {
+        if (listener == null) {
+            return;
+        }
+        try {
+            listener.accept(progress);
+        } catch (RuntimeException e) {
+            log.warn("Delete progress listener failed", e);
+        }
+    }
+}
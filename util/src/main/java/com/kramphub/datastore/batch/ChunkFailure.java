@@ -0,0 +1,52 @@
+package com.kramphub.datastore.batch;
+
+/**
+ * Describes a chunk of a batch write which failed, by its position in the original input
+ */
+@SuppressWarnings("unused")
+public class ChunkFailure {
+    private final int chunkIndex;
+    private final int fromIndex;
+    private final int toIndex;
+    private final Throwable cause;
+
+    public ChunkFailure(int chunkIndex, int fromIndex, int toIndex, Throwable cause) {
+        this.chunkIndex = chunkIndex;
+        this.fromIndex = fromIndex;
+        this.toIndex = toIndex;
+        this.cause = cause;
+    }
+
+    /**
+     * @return index of the chunk in the order it was split
+     */
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    /**
+     * @return index of the first input element of the chunk, inclusive
+     */
+    public int getFromIndex() {
+        return fromIndex;
+    }
+
+    /**
+     * @return index of the last input element of the chunk, exclusive
+     */
+    public int getToIndex() {
+        return toIndex;
+    }
+
+    /**
+     * @return the exception thrown by Datastore for this chunk
+     */
+    public Throwable getCause() {
+        return cause;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("chunk %d [%d, %d): %s", chunkIndex, fromIndex, toIndex, cause);
+    }
+}
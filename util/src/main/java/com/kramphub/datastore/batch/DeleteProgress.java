@@ -0,0 +1,53 @@
+package com.kramphub.datastore.batch;
+
+import java.time.Duration;
+
+/**
+ * Progress of a bulk delete
+ */
+@SuppressWarnings("unused")
+public class DeleteProgress {
+    private final long deleted;
+    private final long batches;
+    private final Duration elapsed;
+
+    public DeleteProgress(long deleted, long batches, Duration elapsed) {
+        this.deleted = deleted;
+        this.batches = batches;
+        this.elapsed = elapsed;
+    }
+
+    /**
+     * @return number of entities deleted so far
+     */
+    public long getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * @return number of delete batches committed so far
+     */
+    public long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return time since the bulk delete started
+     */
+    public Duration getElapsed() {
+        return elapsed;
+    }
+
+    /**
+     * @return deleted entities per second
+     */
+    public double getThroughput() {
+        long millis = elapsed.toMillis();
+        return millis == 0 ? 0 : deleted * 1000d / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d entities in %d batches, %s, %.1f entities/s", deleted, batches, elapsed, getThroughput());
+    }
+}
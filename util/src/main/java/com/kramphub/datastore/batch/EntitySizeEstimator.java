@@ -0,0 +1,102 @@
+package com.kramphub.datastore.batch;
+
+import com.google.cloud.datastore.*;
+
+import java.util.List;
+
+/**
+ * Estimates the serialized size of entities, so that batch writes can be kept below the Datastore commit size limit.
+ * The estimate is close to the protobuf size without serializing the entity.
+ */
+@SuppressWarnings("unused")
+public final class EntitySizeEstimator {
+    private static final int FIELD_OVERHEAD = 4;
+    private static final int FIXED_VALUE_SIZE = 9;
+    private static final int LAT_LNG_SIZE = 18;
+
+    private EntitySizeEstimator() {
+    }
+
+    /**
+     * This method estimates the serialized size of the entity in bytes
+     *
+     * @param entity
+     * @return estimated size in bytes, 0 for null
+     */
+    public static long estimate(FullEntity<?> entity) {
+        if (entity == null) {
+            return 0;
+        }
+        long size = entity.hasKey() ? estimate(entity.getKey()) : 0;
+        for (String name : entity.getNames()) {
+            size += FIELD_OVERHEAD + utf8Length(name) + estimate(entity.getValue(name));
+        }
+        return size;
+    }
+
+    /**
+     * This method estimates the serialized size of the key in bytes
+     *
+     * @param key
+     * @return estimated size in bytes, 0 for null
+     */
+    public static long estimate(IncompleteKey key) {
+        if (key == null) {
+            return 0;
+        }
+        long size = FIELD_OVERHEAD + utf8Length(key.getProjectId()) + utf8Length(key.getNamespace());
+        for (PathElement element : key.getAncestors()) {
+            size += estimate(element);
+        }
+        size += FIELD_OVERHEAD + utf8Length(key.getKind());
+        if (key instanceof Key) {
+            Key completeKey = (Key) key;
+            size += completeKey.hasName() ? utf8Length(completeKey.getName()) : FIXED_VALUE_SIZE;
+        }
+        return size;
+    }
+
+    private static long estimate(PathElement element) {
+        long size = FIELD_OVERHEAD + utf8Length(element.getKind());
+        return size + (element.hasName() ? utf8Length(element.getName()) : FIXED_VALUE_SIZE);
+    }
+
+    private static long estimate(Value<?> value) {
+        switch (value.getType()) {
+            case STRING:
+                return FIELD_OVERHEAD + utf8Length((String) value.get());
+            case BLOB:
+                return FIELD_OVERHEAD + ((Blob) value.get()).getLength();
+            case KEY:
+                return FIELD_OVERHEAD + estimate((Key) value.get());
+            case ENTITY:
+                return FIELD_OVERHEAD + estimate((FullEntity<?>) value.get());
+            case LIST:
+                long size = FIELD_OVERHEAD;
+                for (Object element : (List<?>) value.get()) {
+                    size += estimate((Value<?>) element);
+                }
+                return size;
+            case LAT_LNG:
+                return FIELD_OVERHEAD + LAT_LNG_SIZE;
+            default:
+                return FIELD_OVERHEAD + FIXED_VALUE_SIZE;
+        }
+    }
+
+    private static int utf8Length(String value) {
+        if (value == null) {
+            return 0;
+        }
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 0x80) {
+                // surrogate pairs encode to 4 bytes, one extra per char; other chars to 2 or 3 bytes
+                bytes += c < 0x800 || Character.isSurrogate(c) ? 1 : 2;
+            }
+        }
+        return bytes;
+    }
+}
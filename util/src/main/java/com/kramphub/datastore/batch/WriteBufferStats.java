@@ -0,0 +1,78 @@
+package com.kramphub.datastore.batch;
+
+/**
+ * Snapshot of write buffer statistics
+ */
+@SuppressWarnings("unused")
+public class WriteBufferStats {
+    private final long received;
+    private final long coalesced;
+    private final long written;
+    private final long dropped;
+    private final long flushes;
+    private final int pending;
+
+    public WriteBufferStats(long received, long coalesced, long written, long dropped, long flushes, int pending) {
+        this.received = received;
+        this.coalesced = coalesced;
+        this.written = written;
+        this.dropped = dropped;
+        this.flushes = flushes;
+        this.pending = pending;
+    }
+
+    /**
+     * @return writes and deletes accepted by the buffer
+     */
+    public long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return writes and deletes replaced by a later one for the same key before they were flushed
+     */
+    public long getCoalesced() {
+        return coalesced;
+    }
+
+    /**
+     * @return mutations written to Datastore
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return mutations given up on after failing every flush attempt
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return flushes which wrote at least one mutation
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * @return keys with a write or delete waiting to be flushed
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return received writes per mutation written, 1.0 if nothing was coalesced
+     */
+    public double getCoalescingRatio() {
+        return written == 0 ? 1.0 : (double) received / written;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("received=%d, coalesced=%d, written=%d, dropped=%d, flushes=%d, pending=%d, coalescingRatio=%.3f",
+                received, coalesced, written, dropped, flushes, pending, getCoalescingRatio());
+    }
+}
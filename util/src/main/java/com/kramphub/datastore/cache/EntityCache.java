@@ -0,0 +1,217 @@
+package com.kramphub.datastore.cache;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Read through cache of Datastore entities keyed by Key, bounded by size and ttl with LRU eviction.
+ * Keys known to be missing are cached separately with their own, usually shorter, ttl.
+ * <p>
+ * Every write bumps the version of the stripe of its key before it is cached. Read through callers take the version
+ * before the lookup and cache its result with putIfUnchanged, which drops it if a write of the stripe came in between,
+ * so a lookup racing a write never caches the state before the write.
+ */
+@SuppressWarnings("unused")
+public class EntityCache {
+    private static final int VERSION_STRIPES = 1024;
+
+    private final Cache<Key, Entity> entities;
+    private final Cache<Key, Boolean> missing;
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLongArray versions = new AtomicLongArray(VERSION_STRIPES);
+    private final Object[] locks = new Object[VERSION_STRIPES];
+
+    /**
+     * @param maximumSize max cached entities, the same bound applies to missing keys
+     * @param ttl         time an entity is cached after it was read or written
+     * @param negativeTtl time a missing key is cached, zero disables negative caching
+     */
+    public EntityCache(long maximumSize, Duration ttl, Duration negativeTtl) {
+        this.entities = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .recordStats()
+                .build();
+        this.missing = CacheBuilder.newBuilder()
+                .maximumSize(negativeTtl.isZero() ? 0 : maximumSize)
+                .expireAfterWrite(negativeTtl.toNanos(), TimeUnit.NANOSECONDS)
+                .build();
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * This method returns the write version of the key, take it before a lookup and pass it to putIfUnchanged
+     *
+     * @param key
+     * @return version, changed by every write of the key and some writes of other keys
+     */
+    public long version(Key key) {
+        return versions.get(stripe(key));
+    }
+
+    /**
+     * This method returns the cached entity, check isMissing first so negative hits are not counted as misses
+     *
+     * @param key
+     * @return entity, null if not cached
+     */
+    public Entity get(Key key) {
+        return entities.getIfPresent(key);
+    }
+
+    /**
+     * This method checks if the key is cached as missing, counted as a negative hit
+     *
+     * @param key
+     * @return true if the key is known to be missing
+     */
+    public boolean isMissing(Key key) {
+        if (missing.getIfPresent(key) != null) {
+            negativeHits.incrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * This method caches the entity and clears a missing mark of its key
+     *
+     * @param entity
+     */
+    public void put(Entity entity) {
+        int stripe = stripe(entity.getKey());
+        synchronized (locks[stripe]) {
+            versions.incrementAndGet(stripe);
+            missing.invalidate(entity.getKey());
+            entities.put(entity.getKey(), entity);
+        }
+    }
+
+    /**
+     * This method caches a looked up entity unless its key was written since the version was taken
+     *
+     * @param entity
+     * @param version version of the key taken before the lookup
+     * @return false if the entity was not cached
+     */
+    public boolean putIfUnchanged(Entity entity, long version) {
+        int stripe = stripe(entity.getKey());
+        synchronized (locks[stripe]) {
+            if (versions.get(stripe) != version) {
+                return false;
+            }
+            missing.invalidate(entity.getKey());
+            entities.put(entity.getKey(), entity);
+            return true;
+        }
+    }
+
+    /**
+     * This method caches the entities and clears missing marks of their keys
+     *
+     * @param entities
+     */
+    public void putAll(Collection<Entity> entities) {
+        for (Entity entity : entities) {
+            put(entity);
+        }
+    }
+
+    /**
+     * This method caches the key as missing and drops a cached entity for it
+     *
+     * @param key
+     */
+    public void putMissing(Key key) {
+        int stripe = stripe(key);
+        synchronized (locks[stripe]) {
+            versions.incrementAndGet(stripe);
+            entities.invalidate(key);
+            missing.put(key, Boolean.TRUE);
+        }
+    }
+
+    /**
+     * This method caches a looked up key as missing unless it was written since the version was taken
+     *
+     * @param key
+     * @param version version of the key taken before the lookup
+     * @return false if the key was not cached
+     */
+    public boolean putMissingIfUnchanged(Key key, long version) {
+        int stripe = stripe(key);
+        synchronized (locks[stripe]) {
+            if (versions.get(stripe) != version) {
+                return false;
+            }
+            entities.invalidate(key);
+            missing.put(key, Boolean.TRUE);
+            return true;
+        }
+    }
+
+    /**
+     * This method drops the cached entity and missing mark of the key
+     *
+     * @param key
+     */
+    public void invalidate(Key key) {
+        int stripe = stripe(key);
+        synchronized (locks[stripe]) {
+            versions.incrementAndGet(stripe);
+            entities.invalidate(key);
+            missing.invalidate(key);
+        }
+    }
+
+    /**
+     * This method drops the cached entities and missing marks of the keys
+     *
+     * @param keys
+     */
+    public void invalidateAll(Collection<Key> keys) {
+        for (Key key : keys) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * This method drops all cached entities and missing marks
+     */
+    public void invalidateAll() {
+        for (int i = 0; i < VERSION_STRIPES; i++) {
+            synchronized (locks[i]) {
+                versions.incrementAndGet(i);
+            }
+        }
+        entities.invalidateAll();
+        missing.invalidateAll();
+    }
+
+    /**
+     * This method returns the cache statistics
+     *
+     * @return EntityCacheStats
+     */
+    public EntityCacheStats stats() {
+        CacheStats stats = entities.stats();
+        return new EntityCacheStats(stats.hitCount(), negativeHits.get(), stats.missCount(),
+                stats.evictionCount(), entities.size());
+    }
+
+    private static int stripe(Key key) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & (VERSION_STRIPES - 1);
+    }
+}
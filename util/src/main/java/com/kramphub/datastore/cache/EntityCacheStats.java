@@ -0,0 +1,70 @@
+package com.kramphub.datastore.cache;
+
+/**
+ * Snapshot of entity cache statistics
+ */
+@SuppressWarnings("unused")
+public class EntityCacheStats {
+    private final long hits;
+    private final long negativeHits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+
+    public EntityCacheStats(long hits, long negativeHits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.negativeHits = negativeHits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /**
+     * @return lookups served with a cached entity
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return lookups served with a cached missing key
+     */
+    public long getNegativeHits() {
+        return negativeHits;
+    }
+
+    /**
+     * @return lookups which had to go to Datastore
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return entities evicted because of the size bound, expired entries are not counted
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return approximate number of cached entities
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return ratio of lookups served from the cache, positive or negative
+     */
+    public double getHitRate() {
+        long requests = hits + negativeHits + misses;
+        return requests == 0 ? 1.0 : (double) (hits + negativeHits) / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, negativeHits=%d, misses=%d, evictions=%d, size=%d, hitRate=%.3f",
+                hits, negativeHits, misses, evictions, size, getHitRate());
+    }
+}
@@ -0,0 +1,198 @@
+package com.kramphub.datastore.cache;
+
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of mapped query results keyed by the query and its namespace, bounded by the total number of cached results and ttl.
+ * <p>
+ * Results older than the refresh time are still returned while they are reloaded in the background,
+ * so callers only wait for a query on a miss. Concurrent misses of the same query load it once.
+ * <p>
+ * invalidateAll starts a new generation: results loaded before it are never returned afterwards,
+ * also when their load finishes after the invalidation.
+ */
+@SuppressWarnings("unused")
+public class QueryCache {
+    private final Logger log;
+    private final String namespace;
+    private final long refreshAfterNanos;
+    private final Executor executor;
+    private final Cache<CacheKey, Results> results;
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param log
+     * @param namespace    default namespace of queries without one, nullable
+     * @param maximumSize  max results cached over all queries
+     * @param ttl          time results are cached after they were loaded
+     * @param refreshAfter time after which cached results are reloaded in the background, at least the ttl disables refreshes
+     * @param executor     executor the refreshes run on
+     */
+    public QueryCache(Logger log, String namespace, long maximumSize, Duration ttl, Duration refreshAfter, Executor executor) {
+        this.log = log;
+        this.namespace = Strings.nullToEmpty(namespace);
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.executor = executor;
+        this.results = CacheBuilder.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher((CacheKey key, Results value) -> value.results.size() + 1)
+                .expireAfterWrite(ttl.toNanos(), TimeUnit.NANOSECONDS)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * This method returns the cached results of the query, loading them on a miss
+     * The returned list is shared by all callers and unmodifiable.
+     *
+     * @param query
+     * @param loader runs the query and maps the results
+     * @return results
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> get(StructuredQuery<?> query, Supplier<List<T>> loader) {
+        CacheKey key = new CacheKey(query.getNamespace() != null ? query.getNamespace() : namespace, query);
+        Results cached = results.getIfPresent(key);
+        if (cached != null && cached.generation == generation.get()) {
+            hits.incrementAndGet();
+            if (System.nanoTime() - cached.loadedAt >= refreshAfterNanos) {
+                staleHits.incrementAndGet();
+                refresh(key, cached, loader);
+            }
+            return (List<T>) cached.results;
+        }
+        misses.incrementAndGet();
+        if (cached != null) {
+            results.asMap().remove(key, cached);
+        }
+        try {
+            return (List<T>) results.get(key, () -> load(loader)).results;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * This method drops all cached results, results of loads in progress are not cached
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        results.invalidateAll();
+    }
+
+    /**
+     * This method returns the cache statistics
+     *
+     * @return QueryCacheStats
+     */
+    public QueryCacheStats stats() {
+        return new QueryCacheStats(hits.get(), staleHits.get(), misses.get(), results.stats().evictionCount(), results.size());
+    }
+
+    private <T> Results load(Supplier<List<T>> loader) {
+        long loadGeneration = generation.get();
+        long loadedAt = System.nanoTime();
+        return new Results(Collections.unmodifiableList(loader.get()), loadedAt, loadGeneration);
+    }
+
+    private <T> void refresh(CacheKey key, Results cached, Supplier<List<T>> loader) {
+        if (!cached.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    Results loaded = load(loader);
+                    if (loaded.generation == generation.get()) {
+                        results.asMap().replace(key, cached, loaded);
+                    }
+                } catch (RuntimeException e) {
+                    log.warn("Refresh of cached query results failed, serving the cached results until they expire", e);
+                } finally {
+                    cached.refreshing.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            cached.refreshing.set(false);
+            log.warn("Refresh of cached query results could not be started", e);
+        }
+    }
+
+    private static final class CacheKey {
+        private final String namespace;
+        private final StructuredQuery<?> query;
+        private final int hash;
+
+        private CacheKey(String namespace, StructuredQuery<?> query) {
+            this.namespace = namespace;
+            this.query = query;
+            this.hash = Objects.hash(namespace, query.getKind(), query.getFilter(), query.getOrderBy(), query.getProjection(),
+                    query.getDistinctOn(), query.getStartCursor(), query.getEndCursor(), query.getOffset(), query.getLimit(),
+                    query.getClass());
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            // the query namespace is left out, it is normalized into namespace
+            return hash == other.hash
+                    && namespace.equals(other.namespace)
+                    && query.getClass() == other.query.getClass()
+                    && Objects.equals(query.getKind(), other.query.getKind())
+                    && Objects.equals(query.getFilter(), other.query.getFilter())
+                    && query.getOrderBy().equals(other.query.getOrderBy())
+                    && query.getProjection().equals(other.query.getProjection())
+                    && query.getDistinctOn().equals(other.query.getDistinctOn())
+                    && Objects.equals(query.getStartCursor(), other.query.getStartCursor())
+                    && Objects.equals(query.getEndCursor(), other.query.getEndCursor())
+                    && query.getOffset() == other.query.getOffset()
+                    && Objects.equals(query.getLimit(), other.query.getLimit());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Results {
+        private final List<?> results;
+        private final long loadedAt;
+        private final long generation;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        private Results(List<?> results, long loadedAt, long generation) {
+            this.results = results;
+            this.loadedAt = loadedAt;
+            this.generation = generation;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.kramphub.datastore.cache;
+
+/**
+ * Snapshot of query cache statistics
+ */
+@SuppressWarnings("unused")
+public class QueryCacheStats {
+    private final long hits;
+    private final long staleHits;
+    private final long misses;
+    private final long evictions;
+    private final long size;
+
+    public QueryCacheStats(long hits, long staleHits, long misses, long evictions, long size) {
+        this.hits = hits;
+        this.staleHits = staleHits;
+        this.misses = misses;
+        this.evictions = evictions;
+        this.size = size;
+    }
+
+    /**
+     * @return queries served from the cache, including stale hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return queries served from the cache while the results were refreshed in the background
+     */
+    public long getStaleHits() {
+        return staleHits;
+    }
+
+    /**
+     * @return queries which had to wait for Datastore
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return results evicted because of the size bound, expired and invalidated results are not counted
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return approximate number of cached queries
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return ratio of queries served from the cache
+     */
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 1.0 : (double) hits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("hits=%d, staleHits=%d, misses=%d, evictions=%d, size=%d, hitRate=%.3f",
+                hits, staleHits, misses, evictions, size, getHitRate());
+    }
+}
@@ -0,0 +1,96 @@
+package com.kramphub.datastore.concurrent;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Limits the number of tasks running concurrently on the delegate executor.
+ * Tasks over the limit are queued without blocking the submitter and start as running tasks complete.
+ * Only the concurrency is bounded, the queue is not: submitters have to bound the work they queue themselves.
+ * <p>
+ * A task the delegate rejects is never dropped. The submitter of the task gets the RejectedExecutionException,
+ * a queued task of another submitter is run on the thread which tried to start it instead.
+ */
+@SuppressWarnings("unused")
+public class BoundedExecutor implements Executor {
+    private final Executor delegate;
+    private final int maxConcurrency;
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * @param delegate       executor the tasks run on
+     * @param maxConcurrency max tasks running at the same time
+     */
+    public BoundedExecutor(Executor delegate, int maxConcurrency) {
+        this.delegate = delegate;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        queue.add(task);
+        drain(task);
+    }
+
+    /**
+     * @return number of tasks running
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return number of tasks waiting for a slot
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    private void drain(Runnable submitted) {
+        while (!queue.isEmpty()) {
+            int current = running.get();
+            if (current >= maxConcurrency) {
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            Runnable task = queue.poll();
+            if (task == null) {
+                running.decrementAndGet();
+                continue;
+            }
+            try {
+                delegate.execute(() -> {
+                    try {
+                        task.run();
+                    } finally {
+                        running.decrementAndGet();
+                        drain(null);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                if (task == submitted) {
+                    running.decrementAndGet();
+                    throw e;
+                }
+                runRejected(task);
+            }
+        }
+    }
+
+    private void runRejected(Runnable task) {
+        // its submitter has returned already, the task holds the slot taken for it and runs here
+        try {
+            task.run();
+        } catch (RuntimeException | Error e) {
+            Thread.currentThread().getUncaughtExceptionHandler().uncaughtException(Thread.currentThread(), e);
+        } finally {
+            running.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.kramphub.datastore.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors used by repositories to run Datastore calls in parallel
+ */
+@SuppressWarnings("unused")
+public final class RepositoryExecutors {
+
+    private RepositoryExecutors() {
+    }
+
+    /**
+     * This method returns the executor shared by all repositories which are not configured with their own executor.
+     * It is a bounded pool of daemon threads, sized for IO bound Datastore calls.
+     * The pool lives as long as the JVM, the returned view only runs tasks and cannot shut it down.
+     *
+     * @return shared executor
+     */
+    public static Executor shared() {
+        return SharedHolder.EXECUTOR;
+    }
+
+    /**
+     * This method returns the executor async repository operations run on by default.
+     * On JDK 21+ it starts a virtual thread per operation, on older JDKs it is a bounded pool of daemon threads.
+     * It is separate from the shared executor, so blocked async operations never starve their own batch chunks.
+     * Like the shared executor it cannot be shut down through the returned view.
+     *
+     * @return default async executor
+     */
+    public static Executor async() {
+        return AsyncHolder.EXECUTOR;
+    }
+
+    /**
+     * This method creates a virtual thread per task executor if the running JDK supports virtual threads
+     *
+     * @return executor, empty before JDK 21
+     */
+    public static Optional<ExecutorService> newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return Optional.of((ExecutorService) factory.invoke(null));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * This method creates a fixed size pool of daemon threads
+     *
+     * @param threads     pool size
+     * @param namePrefix  thread name prefix
+     * @return ExecutorService
+     */
+    public static ExecutorService newBoundedExecutor(int threads, String namePrefix) {
+        return Executors.newFixedThreadPool(threads, daemonThreadFactory(namePrefix));
+    }
+
+    /**
+     * This method creates a thread factory for daemon threads named with the given prefix and a sequence
+     *
+     * @param namePrefix
+     * @return ThreadFactory
+     */
+    public static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger sequence = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + "-" + sequence.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class AsyncHolder {
+        private static final ExecutorService POOL = newVirtualThreadExecutor().orElseGet(() ->
+                newBoundedExecutor(Math.max(8, Runtime.getRuntime().availableProcessors() * 4), "datastore-async"));
+        private static final Executor EXECUTOR = POOL::execute;
+    }
+
+    private static class SharedHolder {
+        private static final ExecutorService POOL =
+                newBoundedExecutor(Math.max(4, Runtime.getRuntime().availableProcessors() * 2), "datastore-repository");
+        private static final Executor EXECUTOR = POOL::execute;
+    }
+}
@@ -0,0 +1,36 @@
+package com.kramphub.datastore.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Exponential backoff with full jitter: the delay before retry n is random between zero and
+ * the initial delay doubled n - 1 times, capped at the max delay. The jitter spreads out retries
+ * of concurrent callers which failed on the same contention.
+ */
+@SuppressWarnings("unused")
+public class RetryBackoff {
+    private final long initialDelayNanos;
+    private final long maxDelayNanos;
+
+    /**
+     * @param initialDelay upper bound of the delay before the first retry
+     * @param maxDelay     upper bound of the delay before any retry
+     */
+    public RetryBackoff(Duration initialDelay, Duration maxDelay) {
+        this.initialDelayNanos = Math.max(1, initialDelay.toNanos());
+        this.maxDelayNanos = Math.max(initialDelayNanos, maxDelay.toNanos());
+    }
+
+    /**
+     * This method returns a random delay before the given retry
+     *
+     * @param retry 1 for the first retry
+     * @return delay in nanos
+     */
+    public long delayNanos(int retry) {
+        int doublings = Math.min(Math.max(retry - 1, 0), 62);
+        long bound = initialDelayNanos > maxDelayNanos >> doublings ? maxDelayNanos : initialDelayNanos << doublings;
+        return ThreadLocalRandom.current().nextLong(bound + 1);
+    }
+}
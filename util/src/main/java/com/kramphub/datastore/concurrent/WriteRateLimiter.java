@@ -0,0 +1,169 @@
+package com.kramphub.datastore.concurrent;
+
+import com.google.cloud.datastore.DatastoreException;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the rate of entity writes to a kind following the 500/50/5 rule: start with at most 500 writes per second
+ * and raise the limit by 50% every 5 minutes, so Datastore can split the key ranges of a new or cold kind before they turn into hotspots.
+ * Below that ceiling the rate adapts AIMD style: it grows by a tenth of the initial rate per second of writes within the latency target
+ * and is halved when a write is throttled with RESOURCE_EXHAUSTED or DEADLINE_EXCEEDED or takes longer than the target.
+ * <p>
+ * Permits come from a token bucket holding one second of writes, shared by all threads writing through the limiter.
+ * Taking permits is a compare and set on the time the bucket is empty, a caller which took more than the bucket holds
+ * sleeps until its permits are due, so callers are served in the order they asked and none of them holds a lock while waiting.
+ */
+@SuppressWarnings("unused")
+public class WriteRateLimiter {
+    /**
+     * Writes per second a new kind should start with
+     */
+    public static final double RAMP_UP_INITIAL_RATE = 500;
+    /**
+     * Time after which the ceiling grows by half
+     */
+    public static final Duration RAMP_UP_INTERVAL = Duration.ofMinutes(5);
+    private static final double RAMP_UP_GROWTH = 1.5;
+    private static final double DECREASE_FACTOR = 0.5;
+    private static final double MIN_RATE = 1;
+    private static final long BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final double initialRate;
+    private final long rampUpIntervalNanos;
+    private final long latencyTargetNanos;
+    private final AtomicLong rate;
+    private final AtomicLong emptyAtNanos;
+    private final AtomicLong startNanos = new AtomicLong(NOT_STARTED);
+    private final AtomicLong lastDecreaseNanos = new AtomicLong(NOT_STARTED);
+
+    /**
+     * @param initialRate    writes per second before any ramp up, e.g. RAMP_UP_INITIAL_RATE
+     * @param rampUpInterval time after which the ceiling grows by half, zero for no ceiling
+     * @param latencyTarget  writes taking longer lower the rate like throttled writes
+     */
+    public WriteRateLimiter(double initialRate, Duration rampUpInterval, Duration latencyTarget) {
+        this.initialRate = Math.max(MIN_RATE, initialRate);
+        this.rampUpIntervalNanos = rampUpInterval.toNanos();
+        this.latencyTargetNanos = Math.max(1, latencyTarget.toNanos());
+        this.rate = new AtomicLong(Double.doubleToLongBits(this.initialRate));
+        this.emptyAtNanos = new AtomicLong(System.nanoTime() - BURST_NANOS);
+    }
+
+    /**
+     * This method takes permits for the given number of writes, waiting until they are due
+     * The ramp up starts with the first call.
+     *
+     * @param permits writes about to be made
+     * @throws InterruptedException if interrupted while waiting, the permits stay taken
+     */
+    public void acquire(int permits) throws InterruptedException {
+        long now = System.nanoTime();
+        startNanos.compareAndSet(NOT_STARTED, now);
+        long cost = (long) (permits * (BURST_NANOS / getRate(now)));
+        long previous;
+        long emptyAt;
+        do {
+            now = System.nanoTime();
+            previous = emptyAtNanos.get();
+            // a bucket idle for longer than a second is full, it holds no more than a second of writes
+            emptyAt = Math.max(previous, now - BURST_NANOS) + cost;
+        } while (!emptyAtNanos.compareAndSet(previous, emptyAt));
+        long wait = emptyAt - now;
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+    }
+
+    /**
+     * This method records a completed write, raising the rate if it was within the latency target
+     *
+     * @param permits      writes made
+     * @param latencyNanos time the write took
+     */
+    public void onSuccess(int permits, long latencyNanos) {
+        if (latencyNanos > latencyTargetNanos) {
+            decrease();
+            return;
+        }
+        long now = System.nanoTime();
+        long previous;
+        double current;
+        double increased;
+        do {
+            previous = rate.get();
+            current = Double.longBitsToDouble(previous);
+            double ceiling = ceiling(now);
+            if (current >= ceiling) {
+                return;
+            }
+            // permits / current is the share of a second of writes, a full second raises the rate by a tenth of the initial rate
+            increased = Math.min(ceiling, current + permits / current * initialRate / 10);
+        } while (!rate.compareAndSet(previous, Double.doubleToLongBits(increased)));
+    }
+
+    /**
+     * This method records a failed write, halving the rate if Datastore throttled it
+     *
+     * @param failure
+     */
+    public void onFailure(Throwable failure) {
+        if (isThrottled(failure)) {
+            decrease();
+        }
+    }
+
+    /**
+     * @return writes per second currently allowed
+     */
+    public double getRate() {
+        return getRate(System.nanoTime());
+    }
+
+    /**
+     * @param failure
+     * @return true if the failure is Datastore pushing back on the write rate
+     */
+    public static boolean isThrottled(Throwable failure) {
+        if (!(failure instanceof DatastoreException)) {
+            return false;
+        }
+        DatastoreException e = (DatastoreException) failure;
+        // gRPC codes and their HTTP counterparts
+        return e.getCode() == 8 || e.getCode() == 4 || e.getCode() == 429 || e.getCode() == 504
+                || "RESOURCE_EXHAUSTED".equals(e.getReason()) || "DEADLINE_EXCEEDED".equals(e.getReason());
+    }
+
+    private double getRate(long now) {
+        return Math.min(Double.longBitsToDouble(rate.get()), ceiling(now));
+    }
+
+    private double ceiling(long now) {
+        long start = startNanos.get();
+        if (rampUpIntervalNanos <= 0) {
+            return Double.MAX_VALUE;
+        }
+        if (start == NOT_STARTED || now <= start) {
+            return initialRate;
+        }
+        return initialRate * Math.pow(RAMP_UP_GROWTH, (double) (now - start) / rampUpIntervalNanos);
+    }
+
+    private void decrease() {
+        long now = System.nanoTime();
+        long last = lastDecreaseNanos.get();
+        // writes in flight when the first one was throttled fail too, they lower the rate once
+        if (last != NOT_STARTED && now - last < Math.max(latencyTargetNanos, BURST_NANOS) || !lastDecreaseNanos.compareAndSet(last, now)) {
+            return;
+        }
+        long previous;
+        double decreased;
+        do {
+            previous = rate.get();
+            decreased = Math.max(MIN_RATE, Math.min(Double.longBitsToDouble(previous), ceiling(now)) * DECREASE_FACTOR);
+        } while (!rate.compareAndSet(previous, Double.doubleToLongBits(decreased)));
+    }
+}
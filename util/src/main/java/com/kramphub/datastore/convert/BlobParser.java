@@ -0,0 +1,20 @@
+package com.kramphub.datastore.convert;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses a blob straight from a stream over its bytes, without copying them into an intermediate array first,
+ * e.g. {@code ExampleProto::parseFrom} for protobuf messages or {@code input -> objectMapper.readValue(input, Example.class)} for Jackson.
+ *
+ * @param <T> parsed type
+ */
+@FunctionalInterface
+public interface BlobParser<T> {
+    /**
+     * @param input stream over the blob bytes, closed by the caller
+     * @return parsed value
+     * @throws IOException if the bytes can not be parsed
+     */
+    T parse(InputStream input) throws IOException;
+}
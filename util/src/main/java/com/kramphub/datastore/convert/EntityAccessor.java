@@ -0,0 +1,348 @@
+package com.kramphub.datastore.convert;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.exception.EntityParseException;
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.mapping.EntityMappers;
+import com.kramphub.datastore.mapping.Lazy;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Function;
+
+import static com.kramphub.datastore.util.ValidationUtil.getEntityClassName;
+
+/**
+ * Typed view on an entity which was validated once by EntityReader.view.
+ * Getters check the value type instead of catching exceptions; a missing or mismatched field returns null
+ * (or the default for primitives) and is recorded, so all problems are reported at once by throwIfInvalid.
+ */
+@SuppressWarnings("unused")
+public class EntityAccessor {
+    private final Entity entity;
+    private final Logger log;
+    private List<String> errorFields;
+    private List<String> errors;
+
+    EntityAccessor(Entity entity, Logger log) {
+        this.entity = entity;
+        this.log = log;
+    }
+
+    /**
+     * @return the underlying entity
+     */
+    public Entity getEntity() {
+        return entity;
+    }
+
+    /**
+     * @param field
+     * @return true if the entity has the field, with any value including null
+     */
+    public boolean has(BaseKind field) {
+        return entity.contains(field.value());
+    }
+
+    /**
+     * @return id of the key if exists
+     */
+    public Optional<Long> getKeyId() {
+        return entity.getKey().hasId() ? Optional.of(entity.getKey().getId()) : Optional.empty();
+    }
+
+    /**
+     * @return name of the key if exists
+     */
+    public Optional<String> getKeyName() {
+        return entity.getKey().hasName() ? Optional.of(entity.getKey().getName()) : Optional.empty();
+    }
+
+    public String getString(BaseKind field) {
+        Value<?> value = value(field, ValueType.STRING, String.class);
+        return value == null ? null : (String) value.get();
+    }
+
+    public LatLng getLatLng(BaseKind field) {
+        Value<?> value = value(field, ValueType.LAT_LNG, LatLng.class);
+        return value == null ? null : (LatLng) value.get();
+    }
+
+    public Integer getInteger(BaseKind field) {
+        Value<?> value = value(field, ValueType.LONG, Integer.class);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Math.toIntExact((Long) value.get());
+        } catch (ArithmeticException e) {
+            error(field.value(), String.format("[%s] %s is out of range for Integer", field.value(), value.get()));
+            return null;
+        }
+    }
+
+    public Long getLong(BaseKind field) {
+        Value<?> value = value(field, ValueType.LONG, Long.class);
+        return value == null ? null : (Long) value.get();
+    }
+
+    public Timestamp getTimestamp(BaseKind field) {
+        Value<?> value = value(field, ValueType.TIMESTAMP, Timestamp.class);
+        return value == null ? null : (Timestamp) value.get();
+    }
+
+    public Instant getInstant(BaseKind field) {
+        Value<?> value = value(field, ValueType.TIMESTAMP, Timestamp.class);
+        if (value == null) {
+            return null;
+        }
+        Timestamp timestamp = (Timestamp) value.get();
+        return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+    }
+
+    public Boolean getBoolean(BaseKind field) {
+        Value<?> value = value(field, ValueType.BOOLEAN, Boolean.class);
+        return value == null ? null : (Boolean) value.get();
+    }
+
+    public Double getDouble(BaseKind field) {
+        Value<?> value = value(field, ValueType.DOUBLE, Double.class);
+        return value == null ? null : (Double) value.get();
+    }
+
+    public Blob getBlob(BaseKind field) {
+        Value<?> value = value(field, ValueType.BLOB, Blob.class);
+        return value == null ? null : (Blob) value.get();
+    }
+
+    /**
+     * This method returns a read only view on the bytes of the blob field, without copying them
+     *
+     * @param field
+     * @return field value
+     */
+    public ByteBuffer getBlobAsByteBuffer(BaseKind field) {
+        Blob blob = getBlob(field);
+        return blob == null ? null : blob.asReadOnlyByteBuffer();
+    }
+
+    /**
+     * This method returns a stream over the bytes of the blob field, without copying them
+     *
+     * @param field
+     * @return field value
+     */
+    public InputStream getBlobAsStream(BaseKind field) {
+        Blob blob = getBlob(field);
+        return blob == null ? null : blob.asInputStream();
+    }
+
+    /**
+     * This method parses the blob field straight from its bytes, a failing parser is recorded like a mismatched field
+     *
+     * @param field
+     * @param parser e.g. ExampleProto::parseFrom
+     * @return parsed field value
+     */
+    public <T> T getBlob(BaseKind field, BlobParser<T> parser) {
+        Blob blob = getBlob(field);
+        if (blob == null) {
+            return null;
+        }
+        try (InputStream input = blob.asInputStream()) {
+            return parser.parse(input);
+        } catch (IOException e) {
+            error(field.value(), String.format("[%s] can not be parsed: %s", field.value(), e.getMessage()));
+            return null;
+        }
+    }
+
+    public Key getKey(BaseKind field) {
+        Value<?> value = value(field, ValueType.KEY, Key.class);
+        return value == null ? null : (Key) value.get();
+    }
+
+    /**
+     * This generic method returns the value of the field of any type, the caller is responsible for the type
+     *
+     * @param field
+     * @return field value
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getValue(BaseKind field) {
+        String name = field.value();
+        if (!entity.contains(name)) {
+            missing(name);
+            return null;
+        }
+        return (T) entity.getValue(name).get();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> getList(BaseKind field) {
+        Value<?> value = value(field, ValueType.LIST, List.class);
+        if (value == null) {
+            return null;
+        }
+        List<? extends Value<?>> values = (List<? extends Value<?>>) value.get();
+        List<T> list = new ArrayList<>(values.size());
+        for (Value<?> element : values) {
+            list.add((T) element.get());
+        }
+        return list;
+    }
+
+    @SuppressWarnings("unchecked")
+    public FullEntity<IncompleteKey> getEntity(BaseKind field) {
+        Value<?> value = value(field, ValueType.ENTITY, FullEntity.class);
+        return value == null ? null : (FullEntity<IncompleteKey>) value.get();
+    }
+
+    /**
+     * This method checks the field now and decodes it on first access, for long texts
+     *
+     * @param field
+     * @return Lazy, empty if the field is missing or mismatched
+     */
+    public Lazy<String> getLazyString(BaseKind field) {
+        return getLazy(field, ValueType.STRING, value -> (String) value.get());
+    }
+
+    /**
+     * This method checks the field now and decodes it on first access
+     *
+     * @param field
+     * @return Lazy, empty if the field is missing or mismatched
+     */
+    public Lazy<Blob> getLazyBlob(BaseKind field) {
+        return getLazy(field, ValueType.BLOB, value -> (Blob) value.get());
+    }
+
+    /**
+     * This method checks the field now and decodes the list on first access
+     *
+     * @param field
+     * @return Lazy, empty if the field is missing or mismatched
+     */
+    public <T> Lazy<List<T>> getLazyList(BaseKind field) {
+        return getLazy(field, ValueType.LIST, EntityMappers::toList);
+    }
+
+    /**
+     * This method checks the field now and returns the embedded entity on first access
+     *
+     * @param field
+     * @return Lazy, empty if the field is missing or mismatched
+     */
+    @SuppressWarnings("unchecked")
+    public Lazy<FullEntity<IncompleteKey>> getLazyEntity(BaseKind field) {
+        return getLazy(field, ValueType.ENTITY, value -> (FullEntity<IncompleteKey>) value.get());
+    }
+
+    /**
+     * This method checks the field type now and maps it with the decoder on first access,
+     * e.g. to parse a blob or map an embedded entity only when it is read
+     *
+     * @param field
+     * @param type    expected value type
+     * @param decoder maps the field value
+     * @return Lazy, empty if the field is missing or mismatched
+     */
+    public <V> Lazy<V> getLazy(BaseKind field, ValueType type, Function<Value<?>, ? extends V> decoder) {
+        Value<?> value = value(field, type, valueClass(type));
+        return value == null ? Lazy.empty() : Lazy.of(value, decoder);
+    }
+
+    /**
+     * @return true if any getter found a missing or mismatched field
+     */
+    public boolean hasErrors() {
+        return errors != null;
+    }
+
+    /**
+     * @return names of the missing or mismatched fields
+     */
+    public List<String> getErrorFields() {
+        return errorFields == null ? Collections.emptyList() : Collections.unmodifiableList(errorFields);
+    }
+
+    /**
+     * This method throws if any getter found a missing or mismatched field
+     *
+     * @throws EntityParseException listing all missing and mismatched fields
+     */
+    public void throwIfInvalid() throws EntityParseException {
+        if (errors == null) {
+            return;
+        }
+        String message = String.format("Fields of %s can not be read: %s", getEntityClassName(entity), String.join(", ", errors));
+        log.error(message);
+        throw new EntityParseException(message, errorFields);
+    }
+
+    private Value<?> value(BaseKind field, ValueType expected, Class<?> target) {
+        String name = field.value();
+        if (!entity.contains(name)) {
+            missing(name);
+            return null;
+        }
+        Value<?> value = entity.getValue(name);
+        ValueType type = value.getType();
+        if (type == expected) {
+            return value;
+        }
+        if (type != ValueType.NULL) {
+            error(name, String.format("[%s] %s can not be casted to %s", name, type, target.getSimpleName()));
+        }
+        return null;
+    }
+
+    private static Class<?> valueClass(ValueType type) {
+        switch (type) {
+            case STRING:
+                return String.class;
+            case LONG:
+                return Long.class;
+            case DOUBLE:
+                return Double.class;
+            case BOOLEAN:
+                return Boolean.class;
+            case TIMESTAMP:
+                return Timestamp.class;
+            case BLOB:
+                return Blob.class;
+            case KEY:
+                return Key.class;
+            case LAT_LNG:
+                return LatLng.class;
+            case LIST:
+                return List.class;
+            case ENTITY:
+                return FullEntity.class;
+            default:
+                return Object.class;
+        }
+    }
+
+    private void missing(String name) {
+        error(name, String.format("[%s] is missing", name));
+    }
+
+    private void error(String name, String error) {
+        if (errors == null) {
+            errors = new ArrayList<>();
+            errorFields = new ArrayList<>();
+        }
+        errorFields.add(name);
+        errors.add(error);
+    }
+}
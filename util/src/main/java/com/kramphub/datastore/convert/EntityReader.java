@@ -7,9 +7,15 @@ import com.kramphub.datastore.exception.EntityParseException;
 import com.kramphub.datastore.kind.BaseKind;
 import org.slf4j.Logger;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.kramphub.datastore.util.ValidationUtil.getEntityClassName;
@@ -24,6 +30,36 @@ public class EntityReader {
         this.log = log;
     }
 
+    /**
+     * This method validates the entity once and returns a typed view on it
+     * Use it when mapping several fields, the tryGet methods validate the entity on every call.
+     * Call throwIfInvalid on the view after reading the fields.
+     *
+     * @param entity
+     * @return EntityAccessor
+     * @throws EntityNotFoundException if entity is null or has no key
+     */
+    public EntityAccessor view(Entity entity) throws EntityNotFoundException {
+        validateEntityOrThrow(entity);
+        return new EntityAccessor(entity, log);
+    }
+
+    /**
+     * This method validates the entity once and maps it with the given function
+     *
+     * @param entity
+     * @param mapper reads the fields from the view
+     * @return mapped object
+     * @throws EntityNotFoundException if entity is null or has no key
+     * @throws EntityParseException    listing all missing and mismatched fields read by the mapper
+     */
+    public <T> T read(Entity entity, Function<EntityAccessor, T> mapper) throws EntityNotFoundException, EntityParseException {
+        EntityAccessor accessor = view(entity);
+        T result = mapper.apply(accessor);
+        accessor.throwIfInvalid();
+        return result;
+    }
+
     /**
      * This method returns id if exists
      *
@@ -106,6 +142,7 @@ public class EntityReader {
 
     /**
      * This method returns entity value of the field
+     * A long outside the int range is truncated to its low 32 bits, use view(entity).getInteger to have it reported.
      *
      * @param entity
      * @param field
@@ -266,6 +303,126 @@ public class EntityReader {
         }
     }
 
+    /**
+     * This method returns a read only view on the bytes of the blob field, without copying them
+     *
+     * @param entity
+     * @param field
+     * @return field value, null if the field is null
+     * @throws EntityNotFoundException
+     * @throws EntityParseException
+     */
+    public ByteBuffer tryGetBlobAsByteBuffer(Entity entity, BaseKind field) throws EntityNotFoundException, EntityParseException {
+        Blob blob = tryGetBlob(entity, field);
+        return blob == null ? null : blob.asReadOnlyByteBuffer();
+    }
+
+    /**
+     * This method returns a stream over the bytes of the blob field, without copying them
+     *
+     * @param entity
+     * @param field
+     * @return field value, null if the field is null
+     * @throws EntityNotFoundException
+     * @throws EntityParseException
+     */
+    public InputStream tryGetBlobAsStream(Entity entity, BaseKind field) throws EntityNotFoundException, EntityParseException {
+        Blob blob = tryGetBlob(entity, field);
+        return blob == null ? null : blob.asInputStream();
+    }
+
+    /**
+     * This method parses the blob field straight from its bytes, without copying them into an array first
+     *
+     * @param entity
+     * @param field
+     * @param parser e.g. ExampleProto::parseFrom
+     * @return parsed field value, null if the field is null
+     * @throws EntityNotFoundException
+     * @throws EntityParseException if the field is no blob or the parser fails
+     */
+    public <T> T tryGetBlob(Entity entity, BaseKind field, BlobParser<T> parser) throws EntityNotFoundException, EntityParseException {
+        Blob blob = tryGetBlob(entity, field);
+        if (blob == null) {
+            return null;
+        }
+        try (InputStream input = blob.asInputStream()) {
+            return parser.parse(input);
+        } catch (IOException e) {
+            String message = String.format("Field [%s] of %s can not be parsed: %s", field.value(), getEntityClassName(entity), e.getMessage());
+            log.error(message, e);
+            throw new EntityParseException(message, Collections.singletonList(field.value()));
+        }
+    }
+
+    /**
+     * This method returns the bytes of a field written with LargeValueCodec, decompressed if they were stored compressed
+     * Plain blob and string fields are returned as they are. Values split into chunk entities need the chunks,
+     * DatastoreRepository#readLargeValue fetches them.
+     *
+     * @param entity
+     * @param field
+     * @return field value
+     * @throws EntityNotFoundException
+     * @throws EntityParseException if the field is no large value or its chunks are needed
+     */
+    public byte[] tryGetLargeValue(Entity entity, BaseKind field) throws EntityNotFoundException, EntityParseException {
+        return tryGetLargeValue(entity, field, Collections.emptyMap());
+    }
+
+    /**
+     * This method returns the bytes of a field written with LargeValueCodec, joined from the given chunk entities if it was split
+     *
+     * @param entity
+     * @param field
+     * @param chunks chunk entities by key, see LargeValueCodec#chunkKeys
+     * @return field value
+     * @throws EntityNotFoundException
+     * @throws EntityParseException if the field is no large value, is corrupt or a chunk is missing
+     */
+    public byte[] tryGetLargeValue(Entity entity, BaseKind field, Map<Key, Entity> chunks) throws EntityNotFoundException, EntityParseException {
+        validateEntityOrThrow(entity);
+        try {
+            return LargeValueCodec.decode(entity, field.value(), chunks);
+        } catch (EntityParseException e) {
+            log.error("Large value of field [{}] of {} can not be read", field.value(), getEntityClassName(entity), e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method returns the text of a field written with LargeValueCodec, decompressed if it was stored compressed
+     *
+     * @param entity
+     * @param field
+     * @return field value
+     * @throws EntityNotFoundException
+     * @throws EntityParseException if the field is no large value or its chunks are needed
+     */
+    public String tryGetLargeText(Entity entity, BaseKind field) throws EntityNotFoundException, EntityParseException {
+        return tryGetLargeText(entity, field, Collections.emptyMap());
+    }
+
+    /**
+     * This method returns the text of a field written with LargeValueCodec, joined from the given chunk entities if it was split
+     *
+     * @param entity
+     * @param field
+     * @param chunks chunk entities by key, see LargeValueCodec#chunkKeys
+     * @return field value
+     * @throws EntityNotFoundException
+     * @throws EntityParseException if the field is no large value, is corrupt or a chunk is missing
+     */
+    public String tryGetLargeText(Entity entity, BaseKind field, Map<Key, Entity> chunks) throws EntityNotFoundException, EntityParseException {
+        validateEntityOrThrow(entity);
+        try {
+            return LargeValueCodec.decodeText(entity, field.value(), chunks);
+        } catch (EntityParseException e) {
+            log.error("Large value of field [{}] of {} can not be read", field.value(), getEntityClassName(entity), e);
+            throw e;
+        }
+    }
+
     /**
      * This generıc method returns entity value of the field
      *
@@ -0,0 +1,378 @@
+package com.kramphub.datastore.convert;
+
+import com.google.cloud.datastore.Blob;
+import com.google.cloud.datastore.BlobValue;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.FullEntity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.StringValue;
+import com.google.cloud.datastore.Value;
+import com.google.cloud.datastore.ValueType;
+import com.kramphub.datastore.exception.EntityParseException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes blob and text properties which may grow beyond what fits an entity.
+ * Values from the compression threshold on are deflated when that makes them smaller,
+ * values still larger than the max inline size are split into chunk entities, children of the owning entity.
+ * <p>
+ * Encoded values are blobs starting with a header which tells how to decode them, values below
+ * the threshold are stored as they are, so existing plain properties stay readable.
+ * Chunks of a value carry a random version in their key, a rewrite never overwrites the chunks
+ * the entity currently points to and readers never see a mix of two versions.
+ */
+@SuppressWarnings("unused")
+public class LargeValueCodec {
+    /**
+     * Kind of the chunk entities
+     */
+    public static final String CHUNK_KIND = "_LargeValueChunk";
+    /**
+     * Blob property holding the bytes of a chunk
+     */
+    public static final String CHUNK_PROPERTY = "data";
+
+    private static final int MAGIC = 0xDA7A_1A26;
+    private static final int FLAG_DEFLATED = 1;
+    private static final int FLAG_TEXT = 2;
+    private static final int FLAG_CHUNKED = 4;
+    // magic, flags, raw length
+    private static final int HEADER_BYTES = 4 + 1 + 4;
+    // version, chunk count, stored length
+    private static final int CHUNKED_HEADER_BYTES = HEADER_BYTES + 8 + 4 + 4;
+    private static final int MIN_INLINE_BYTES = 64;
+    // deflate cannot expand more than about 1032 times, a larger raw length in the header is corrupt
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private final int compressionThreshold;
+    private final int maxInlineBytes;
+
+    /**
+     * @param compressionThreshold size from which values are compressed
+     * @param maxInlineBytes       max bytes stored in the entity itself and per chunk entity
+     */
+    public LargeValueCodec(int compressionThreshold, int maxInlineBytes) {
+        this.compressionThreshold = Math.max(0, compressionThreshold);
+        this.maxInlineBytes = Math.max(MIN_INLINE_BYTES, maxInlineBytes);
+    }
+
+    /**
+     * This method encodes the bytes of a property
+     *
+     * @param owner    key of the entity the property belongs to, parent of the chunks
+     * @param property property name
+     * @param data
+     * @return Encoded property value and the chunk entities to write with it
+     */
+    public Encoded encode(Key owner, String property, byte[] data) {
+        // plain bytes starting like an encoded value get a header, so they are not mistaken for one when read
+        if (data.length < compressionThreshold && data.length <= maxInlineBytes && !hasHeader(ByteBuffer.wrap(data))) {
+            return new Encoded(BlobValue.newBuilder(Blob.copyFrom(data)).setExcludeFromIndexes(true).build(),
+                    Collections.emptyList(), data.length);
+        }
+        return encode(owner, property, data, 0);
+    }
+
+    /**
+     * This method encodes the text of a property, text below the threshold is stored as a string property
+     *
+     * @param owner    key of the entity the property belongs to, parent of the chunks
+     * @param property property name
+     * @param text
+     * @return Encoded property value and the chunk entities to write with it
+     */
+    public Encoded encode(Key owner, String property, String text) {
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        if (data.length < compressionThreshold && data.length <= maxInlineBytes) {
+            return new Encoded(StringValue.newBuilder(text).setExcludeFromIndexes(true).build(),
+                    Collections.emptyList(), data.length);
+        }
+        return encode(owner, property, data, FLAG_TEXT);
+    }
+
+    /**
+     * @param value property value
+     * @return true if the value points to chunk entities
+     */
+    public static boolean isChunked(Value<?> value) {
+        if (value == null || value.getType() != ValueType.BLOB) {
+            return false;
+        }
+        ByteBuffer header = ((Blob) value.get()).asReadOnlyByteBuffer();
+        return hasHeader(header) && (header.get(4) & FLAG_CHUNKED) != 0;
+    }
+
+    /**
+     * This method returns the keys of the chunks the property points to, to fetch them in one batch
+     *
+     * @param entity   owning entity
+     * @param property property name
+     * @return chunk keys, empty if the property is missing or stored inline
+     * @throws EntityParseException if the chunk header is corrupt
+     */
+    public static List<Key> chunkKeys(FullEntity<Key> entity, String property) throws EntityParseException {
+        if (!entity.contains(property) || !isChunked(entity.getValue(property))) {
+            return Collections.emptyList();
+        }
+        ByteBuffer header = ((Blob) entity.getValue(property).get()).asReadOnlyByteBuffer();
+        if (header.remaining() < CHUNKED_HEADER_BYTES) {
+            throw corrupt(property);
+        }
+        long version = header.getLong(HEADER_BYTES);
+        int count = header.getInt(HEADER_BYTES + 8);
+        int storedLength = header.getInt(HEADER_BYTES + 12);
+        // every chunk holds at least one byte
+        if (count <= 0 || storedLength < count) {
+            throw corrupt(property);
+        }
+        List<Key> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(chunkKey(entity.getKey(), property, version, i));
+        }
+        return keys;
+    }
+
+    /**
+     * This method decodes the bytes of a property
+     *
+     * @param entity   owning entity
+     * @param property property name
+     * @param chunks   fetched chunk entities by key, may be empty for values stored inline
+     * @return decoded bytes, null if the property is missing or null
+     * @throws EntityParseException if the property is no blob or string, is corrupt or a chunk is missing
+     */
+    public static byte[] decode(FullEntity<Key> entity, String property, Map<Key, Entity> chunks) throws EntityParseException {
+        if (!entity.contains(property)) {
+            return null;
+        }
+        Value<?> value = entity.getValue(property);
+        switch (value.getType()) {
+            case NULL:
+                return null;
+            case STRING:
+                return ((String) value.get()).getBytes(StandardCharsets.UTF_8);
+            case BLOB:
+                return decodeBlob(entity, property, (Blob) value.get(), chunks);
+            default:
+                throw new EntityParseException(String.format("Field [%s] is no large value but %s", property, value.getType()),
+                        Collections.singletonList(property));
+        }
+    }
+
+    /**
+     * This method decodes the text of a property
+     *
+     * @param entity   owning entity
+     * @param property property name
+     * @param chunks   fetched chunk entities by key, may be empty for values stored inline
+     * @return decoded text, null if the property is missing or null
+     * @throws EntityParseException if the property is no blob or string, is corrupt or a chunk is missing
+     */
+    public static String decodeText(FullEntity<Key> entity, String property, Map<Key, Entity> chunks) throws EntityParseException {
+        Value<?> value = entity.contains(property) ? entity.getValue(property) : null;
+        if (value != null && value.getType() == ValueType.STRING) {
+            return (String) value.get();
+        }
+        byte[] data = decode(entity, property, chunks);
+        return data == null ? null : new String(data, StandardCharsets.UTF_8);
+    }
+
+    private Encoded encode(Key owner, String property, byte[] data, int flags) {
+        byte[] stored = data;
+        if (data.length >= compressionThreshold) {
+            byte[] deflated = deflate(data);
+            if (deflated.length < data.length) {
+                stored = deflated;
+                flags |= FLAG_DEFLATED;
+            }
+        }
+        if (HEADER_BYTES + stored.length <= maxInlineBytes) {
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + stored.length);
+            buffer.putInt(MAGIC).put((byte) flags).putInt(data.length).put(stored);
+            return new Encoded(blobValue(buffer.array()), Collections.emptyList(), data.length);
+        }
+        if (owner == null) {
+            throw new IllegalArgumentException("Value of " + property + " needs chunk entities, the owner key is required");
+        }
+        long version = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        int count = (stored.length + maxInlineBytes - 1) / maxInlineBytes;
+        List<Entity> chunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int from = i * maxInlineBytes;
+            chunks.add(Entity.newBuilder(chunkKey(owner, property, version, i))
+                    .set(CHUNK_PROPERTY, BlobValue.newBuilder(Blob.copyFrom(ByteBuffer.wrap(stored, from, Math.min(maxInlineBytes, stored.length - from))))
+                            .setExcludeFromIndexes(true).build())
+                    .build());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(CHUNKED_HEADER_BYTES);
+        buffer.putInt(MAGIC).put((byte) (flags | FLAG_CHUNKED)).putInt(data.length)
+                .putLong(version).putInt(count).putInt(stored.length);
+        return new Encoded(blobValue(buffer.array()), chunks, data.length);
+    }
+
+    private static byte[] decodeBlob(FullEntity<Key> entity, String property, Blob blob, Map<Key, Entity> chunks) {
+        ByteBuffer buffer = blob.asReadOnlyByteBuffer();
+        if (!hasHeader(buffer)) {
+            return blob.toByteArray();
+        }
+        int flags = buffer.get(4);
+        int rawLength = buffer.getInt(5);
+        byte[] stored;
+        if ((flags & FLAG_CHUNKED) == 0) {
+            stored = new byte[buffer.remaining() - HEADER_BYTES];
+            buffer.position(HEADER_BYTES);
+            buffer.get(stored);
+        } else {
+            stored = joinChunks(entity, property, buffer, chunks);
+        }
+        if ((flags & FLAG_DEFLATED) == 0) {
+            if (rawLength != stored.length) {
+                throw corrupt(property);
+            }
+            return stored;
+        }
+        // bounds the allocation for the inflated bytes, stored is bounded by the chunks actually read
+        if (rawLength < 0 || rawLength > (long) stored.length * MAX_DEFLATE_RATIO) {
+            throw corrupt(property);
+        }
+        return inflate(stored, rawLength, property);
+    }
+
+    private static byte[] joinChunks(FullEntity<Key> entity, String property, ByteBuffer header, Map<Key, Entity> chunks) {
+        List<Key> keys = chunkKeys(entity, property);
+        int storedLength = header.getInt(HEADER_BYTES + 12);
+        List<ByteBuffer> parts = new ArrayList<>(keys.size());
+        long length = 0;
+        for (Key key : keys) {
+            Entity chunk = chunks.get(key);
+            if (chunk == null || !chunk.contains(CHUNK_PROPERTY)) {
+                throw new EntityParseException(String.format("Chunk %s of field [%s] is missing", key.getName(), property),
+                        Collections.singletonList(property));
+            }
+            ByteBuffer data = chunk.getBlob(CHUNK_PROPERTY).asReadOnlyByteBuffer();
+            parts.add(data);
+            length += data.remaining();
+        }
+        // the header length is checked against the chunks before it sizes the buffer
+        if (length != storedLength) {
+            throw corrupt(property);
+        }
+        ByteBuffer stored = ByteBuffer.allocate(storedLength);
+        parts.forEach(stored::put);
+        return stored.array();
+    }
+
+    private static boolean hasHeader(ByteBuffer buffer) {
+        return buffer.remaining() >= HEADER_BYTES && buffer.getInt(0) == MAGIC;
+    }
+
+    private static Key chunkKey(Key owner, String property, long version, int index) {
+        return Key.newBuilder(owner, CHUNK_KIND, property + "@" + version + "#" + index).build();
+    }
+
+    private static BlobValue blobValue(byte[] bytes) {
+        return BlobValue.newBuilder(Blob.copyFrom(bytes)).setExcludeFromIndexes(true).build();
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] stored, int rawLength, String property) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(stored);
+            byte[] data = new byte[rawLength];
+            int length = 0;
+            while (length < rawLength && !inflater.finished()) {
+                int inflated = inflater.inflate(data, length, rawLength - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                length += inflated;
+            }
+            if (length != rawLength) {
+                throw corrupt(property);
+            }
+            return data;
+        } catch (DataFormatException e) {
+            throw corrupt(property);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static EntityParseException corrupt(String property) {
+        return new EntityParseException(String.format("Large value of field [%s] is corrupt", property), Collections.singletonList(property));
+    }
+
+    /**
+     * Encoded property value with the chunk entities it points to
+     */
+    public static final class Encoded {
+        private final Value<?> value;
+        private final List<Entity> chunks;
+        private final int rawBytes;
+
+        private Encoded(Value<?> value, List<Entity> chunks, int rawBytes) {
+            this.value = value;
+            this.chunks = Collections.unmodifiableList(chunks);
+            this.rawBytes = rawBytes;
+        }
+
+        /**
+         * @return property value to set on the entity
+         */
+        public Value<?> getValue() {
+            return value;
+        }
+
+        /**
+         * @return chunk entities to write before the entity, empty for values stored inline
+         */
+        public List<Entity> getChunks() {
+            return chunks;
+        }
+
+        /**
+         * @return size of the value before encoding
+         */
+        public int getRawBytes() {
+            return rawBytes;
+        }
+
+        /**
+         * @return bytes stored in the entity and its chunks
+         */
+        public long getStoredBytes() {
+            long stored = value.getType() == ValueType.BLOB ? ((Blob) value.get()).getLength() : rawBytes;
+            for (Entity chunk : chunks) {
+                stored += chunk.getBlob(CHUNK_PROPERTY).getLength();
+            }
+            return stored;
+        }
+    }
+}
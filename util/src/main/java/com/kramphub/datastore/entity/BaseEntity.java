@@ -21,8 +21,9 @@ public abstract class BaseEntity implements Serializable {
      * Ex: You can use an unique filed as id or
      * combination of fields that makes it to be retrieved without query later on or just UUID
      * Keep in mind that keys must be unique for the kind
+     * A Key can be returned for keys with ancestors, null lets the repository allocate an id.
      *
-     * @return String as name or Long as id
+     * @return String as name, Long as id, Key or null
      */
     public abstract Object getKey();
 }
@@ -0,0 +1,32 @@
+package com.kramphub.datastore.exception;
+
+import com.kramphub.datastore.batch.BatchResult;
+
+public class BatchWriteException extends RuntimeException {
+    private static final ErrorMessages errorMessage = ErrorMessages.BATCH_WRITE_FAILED;
+
+    private final transient BatchResult<?> result;
+
+    public BatchWriteException(String arg, BatchResult<?> result) {
+        super(String.format(errorMessage.getMessage(), arg));
+        this.result = result;
+    }
+
+    /**
+     * This method returns the partial result of the batch write,
+     * successful positions carry their result and failed chunks are listed with their input range
+     *
+     * @return BatchResult
+     */
+    public BatchResult<?> getResult() {
+        return result;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage.getMessage();
+    }
+
+    public String getErrorCode() {
+        return errorMessage.getCode();
+    }
+}
@@ -1,10 +1,27 @@
 package com.kramphub.datastore.exception;
 
+import java.util.Collections;
+import java.util.List;
+
 public class EntityParseException extends RuntimeException {
     private static final ErrorMessages errorMessage = ErrorMessages.UNABLE_TO_PARSE_ENTITY_FROM_DATASTORE;
 
+    private final List<String> fields;
+
     public EntityParseException(String arg) {
+        this(arg, Collections.emptyList());
+    }
+
+    public EntityParseException(String arg, List<String> fields) {
         super(String.format(errorMessage.getMessage(), arg));
+        this.fields = Collections.unmodifiableList(fields);
+    }
+
+    /**
+     * @return names of the fields which could not be parsed, empty if not known
+     */
+    public List<String> getFields() {
+        return fields;
     }
 
     public String getErrorMessage() {
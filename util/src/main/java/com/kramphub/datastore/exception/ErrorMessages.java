@@ -3,7 +3,8 @@ package com.kramphub.datastore.exception;
 public enum ErrorMessages {
     ENTITY_NOT_FOUND("Entity not found for given criteria: %s"),
     UNABLE_TO_PARSE_ENTITY_FROM_DATASTORE("Unable to parse entity from Datastore: %s"),
-    INVALID_ENTITY("Unable to process entity: %s");
+    INVALID_ENTITY("Unable to process entity: %s"),
+    BATCH_WRITE_FAILED("Unable to write batch: %s");
 
     private String message;
 
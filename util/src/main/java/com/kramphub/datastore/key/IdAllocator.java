@@ -0,0 +1,171 @@
+package com.kramphub.datastore.key;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.IncompleteKey;
+import com.google.cloud.datastore.Key;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out Datastore allocated ids from local pools, one per kind, namespace and parent path.
+ * Pools are refilled with blocks of ids in the background once they run below half a block,
+ * so after the first block allocations do not wait on a Datastore round trip. Taking an id is lock free.
+ * <p>
+ * Keys with a parent usually get few ids per parent, their pools are filled with smaller blocks and
+ * dropped after a while without use. Ids of dropped pools are never used, Datastore does not reuse them.
+ */
+@SuppressWarnings("unused")
+public class IdAllocator {
+    /**
+     * Ids per block of pools for keys with a parent
+     */
+    public static final int ANCESTOR_BLOCK_SIZE = 16;
+    private static final int MAX_POOLS = 10_000;
+    private static final long POOL_EXPIRY_MINUTES = 10;
+
+    private final Datastore datastore;
+    private final Logger log;
+    private final int blockSize;
+    private final Executor executor;
+    private final Cache<IncompleteKey, Pool> pools;
+
+    /**
+     * @param datastore
+     * @param log
+     * @param blockSize ids allocated at once for keys without a parent
+     * @param executor  executor the background refills run on
+     */
+    public IdAllocator(Datastore datastore, Logger log, int blockSize, Executor executor) {
+        this.datastore = datastore;
+        this.log = log;
+        this.blockSize = Math.max(1, blockSize);
+        this.executor = executor;
+        this.pools = CacheBuilder.newBuilder()
+                .maximumSize(MAX_POOLS)
+                .expireAfterAccess(POOL_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                .build();
+    }
+
+    /**
+     * This method completes the key with an allocated id
+     *
+     * @param incompleteKey kind, namespace and parent path of the key
+     * @return Key with an id unique for the kind and parent path
+     */
+    public Key allocate(IncompleteKey incompleteKey) {
+        Pool pool = pool(incompleteKey);
+        Key key = pool.poll();
+        if (key == null) {
+            key = allocateNow(pool);
+        }
+        if (pool.available.get() <= pool.blockSize / 2) {
+            refill(pool);
+        }
+        return key;
+    }
+
+    /**
+     * This method completes the key with allocated ids
+     *
+     * @param incompleteKey kind, namespace and parent path of the keys
+     * @param count
+     * @return Keys with distinct ids
+     */
+    public List<Key> allocate(IncompleteKey incompleteKey, int count) {
+        List<Key> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(allocate(incompleteKey));
+        }
+        return keys;
+    }
+
+    /**
+     * @param incompleteKey kind, namespace and parent path of the pool
+     * @return ids ready to hand out without allocating
+     */
+    public int available(IncompleteKey incompleteKey) {
+        Pool pool = pools.getIfPresent(incompleteKey);
+        return pool == null ? 0 : pool.available.get();
+    }
+
+    private Pool pool(IncompleteKey incompleteKey) {
+        try {
+            return pools.get(incompleteKey, () -> new Pool(incompleteKey,
+                    incompleteKey.getParent() != null ? Math.min(blockSize, ANCESTOR_BLOCK_SIZE) : blockSize));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private Key allocateNow(Pool pool) {
+        List<Key> block = allocateBlock(pool);
+        // hand out the first id, pool the rest
+        pool.offer(block.subList(1, block.size()));
+        return block.get(0);
+    }
+
+    private void refill(Pool pool) {
+        if (!pool.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    pool.offer(allocateBlock(pool));
+                } catch (RuntimeException e) {
+                    log.warn("Background id allocation for {} failed, ids are allocated on demand", pool.template.getKind(), e);
+                } finally {
+                    pool.refilling.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            pool.refilling.set(false);
+            log.warn("Background id allocation for {} could not be started", pool.template.getKind(), e);
+        }
+    }
+
+    private List<Key> allocateBlock(Pool pool) {
+        IncompleteKey[] keys = new IncompleteKey[pool.blockSize];
+        Arrays.fill(keys, pool.template);
+        return datastore.allocateId(keys);
+    }
+
+    private static final class Pool {
+        private final IncompleteKey template;
+        private final int blockSize;
+        private final Queue<Key> keys = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger available = new AtomicInteger();
+        private final AtomicBoolean refilling = new AtomicBoolean();
+
+        private Pool(IncompleteKey template, int blockSize) {
+            this.template = template;
+            this.blockSize = blockSize;
+        }
+
+        private Key poll() {
+            Key key = keys.poll();
+            if (key != null) {
+                available.decrementAndGet();
+            }
+            return key;
+        }
+
+        private void offer(List<Key> block) {
+            keys.addAll(block);
+            available.addAndGet(block.size());
+        }
+    }
+}
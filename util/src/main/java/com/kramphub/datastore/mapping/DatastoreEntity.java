@@ -0,0 +1,25 @@
+package com.kramphub.datastore.mapping;
+
+import com.kramphub.datastore.kind.BaseKind;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a BaseEntity for which the annotation processor generates an EntityMapper named {@code <Entity>Mapper}
+ * in the same package. Every field is mapped to the constant of the kind enum with the upper snake case name of the field,
+ * e.g. {@code createdAt} to {@code CREATED_AT}, unless overridden with DatastoreProperty.
+ * <p>
+ * The entity needs a constructor taking all fields in declaration order and getters for the mapped fields,
+ * as generated by lombok {@code @Value} or {@code @AllArgsConstructor} with {@code @Getter}.
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.TYPE)
+public @interface DatastoreEntity {
+    /**
+     * @return enum implementing BaseKind which holds the property names of the entity
+     */
+    Class<? extends BaseKind> kind();
+}
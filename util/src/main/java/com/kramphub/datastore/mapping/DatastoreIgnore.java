@@ -0,0 +1,14 @@
+package com.kramphub.datastore.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Excludes a field of a DatastoreEntity from mapping, it is passed as null or the primitive default on map
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface DatastoreIgnore {
+}
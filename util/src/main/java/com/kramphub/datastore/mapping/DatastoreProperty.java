@@ -0,0 +1,18 @@
+package com.kramphub.datastore.mapping;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Maps a field of a DatastoreEntity to the kind enum constant with the given name
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.FIELD)
+public @interface DatastoreProperty {
+    /**
+     * @return name of the kind enum constant
+     */
+    String value();
+}
@@ -0,0 +1,33 @@
+package com.kramphub.datastore.mapping;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.kramphub.datastore.exception.EntityNotFoundException;
+import com.kramphub.datastore.exception.EntityParseException;
+
+/**
+ * Maps between Datastore entities and data objects in both directions, implemented by generated mappers
+ *
+ * @param <T> data object type
+ */
+public interface EntityMapper<T> {
+
+    /**
+     * This method maps the Datastore entity to the data object
+     *
+     * @param entity
+     * @return data object
+     * @throws EntityNotFoundException if entity is null or has no key
+     * @throws EntityParseException    if property types do not match the fields, listing all mismatched properties
+     */
+    T map(Entity entity) throws EntityNotFoundException, EntityParseException;
+
+    /**
+     * This method maps the data object to a Datastore entity with the given key
+     *
+     * @param source
+     * @param key
+     * @return Datastore entity
+     */
+    Entity toEntity(T source, Key key);
+}
@@ -0,0 +1,323 @@
+package com.kramphub.datastore.mapping;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.*;
+import com.kramphub.datastore.exception.EntityParseException;
+import com.kramphub.datastore.query.QueryValues;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Property accessors used by generated mappers. Missing and null properties map to null, or the default for primitives.
+ * The accessors are small static methods so that the JIT can inline them into the generated code.
+ */
+@SuppressWarnings("unused")
+public final class EntityMappers {
+
+    private EntityMappers() {
+    }
+
+    public static String getString(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (String) value.get();
+    }
+
+    public static Long getLong(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (Long) value.get();
+    }
+
+    public static long getLongValue(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? 0L : (Long) value.get();
+    }
+
+    public static Integer getInteger(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : toInt(name, value);
+    }
+
+    public static int getIntValue(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? 0 : toInt(name, value);
+    }
+
+    public static Double getDouble(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (Double) value.get();
+    }
+
+    public static double getDoubleValue(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? 0d : (Double) value.get();
+    }
+
+    public static Boolean getBoolean(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (Boolean) value.get();
+    }
+
+    public static boolean getBooleanValue(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value != null && (Boolean) value.get();
+    }
+
+    public static Timestamp getTimestamp(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (Timestamp) value.get();
+    }
+
+    public static Instant getInstant(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        if (value == null) {
+            return null;
+        }
+        Timestamp timestamp = (Timestamp) value.get();
+        return Instant.ofEpochSecond(timestamp.getSeconds(), timestamp.getNanos());
+    }
+
+    public static LatLng getLatLng(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (LatLng) value.get();
+    }
+
+    public static Blob getBlob(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (Blob) value.get();
+    }
+
+    /**
+     * @param entity
+     * @param name
+     * @return read only view on the blob bytes, not copied
+     */
+    public static ByteBuffer getBlobAsByteBuffer(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : ((Blob) value.get()).asReadOnlyByteBuffer();
+    }
+
+    public static Key getKey(FullEntity<?> entity, String name) {
+        Value<?> value = value(entity, name);
+        return value == null ? null : (Key) value.get();
+    }
+
+    public static Lazy<String> getLazyString(FullEntity<?> entity, String name) {
+        return getLazy(entity, name, ValueType.STRING, value -> (String) value.get());
+    }
+
+    public static Lazy<Blob> getLazyBlob(FullEntity<?> entity, String name) {
+        return getLazy(entity, name, ValueType.BLOB, value -> (Blob) value.get());
+    }
+
+    public static <T> Lazy<List<T>> getLazyList(FullEntity<?> entity, String name) {
+        return getLazy(entity, name, ValueType.LIST, EntityMappers::toList);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Lazy<FullEntity<IncompleteKey>> getLazyEntity(FullEntity<?> entity, String name) {
+        return getLazy(entity, name, ValueType.ENTITY, value -> (FullEntity<IncompleteKey>) value.get());
+    }
+
+    /**
+     * This method checks the property type now and decodes the property on first access of the returned value
+     *
+     * @param entity
+     * @param name
+     * @param type    expected value type
+     * @param decoder maps the property value
+     * @return Lazy, empty for missing and null properties
+     * @throws ClassCastException if the property has another type
+     */
+    public static <V> Lazy<V> getLazy(FullEntity<?> entity, String name, ValueType type, Function<Value<?>, ? extends V> decoder) {
+        Value<?> value = value(entity, name);
+        if (value == null) {
+            return Lazy.empty();
+        }
+        if (value.getType() != type) {
+            throw new ClassCastException(name + " is " + value.getType() + ", expected " + type);
+        }
+        return Lazy.of(value, decoder);
+    }
+
+    /**
+     * This method decodes a list value to the plain values of its elements
+     *
+     * @param value list value
+     * @return List
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> toList(Value<?> value) {
+        List<? extends Value<?>> values = (List<? extends Value<?>>) value.get();
+        List<T> list = new ArrayList<>(values.size());
+        for (Value<?> element : values) {
+            list.add((T) element.get());
+        }
+        return list;
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, String value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Long value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, long value) {
+        builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Integer value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value.longValue());
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Double value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, double value) {
+        builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Boolean value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, boolean value) {
+        builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Timestamp value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Instant value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, Timestamp.ofTimeSecondsAndNanos(value.getEpochSecond(), value.getNano()));
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, LatLng value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Blob value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    /**
+     * This method sets the remaining bytes of the buffer as blob, without changing its position
+     *
+     * @param builder
+     * @param name
+     * @param value
+     */
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, ByteBuffer value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, Blob.copyFrom(value.duplicate()));
+    }
+
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Key value) {
+        if (value == null) builder.setNull(name);
+        else builder.set(name, value);
+    }
+
+    /**
+     * This method sets the lazy value, a value which was read and not decoded is written as it was read
+     *
+     * @param builder
+     * @param name
+     * @param value   decoded value of a String, Blob, List or FullEntity or any type QueryValues converts
+     */
+    public static void set(BaseEntity.Builder<?, ?> builder, String name, Lazy<?> value) {
+        Value<?> source = value == null ? null : value.source();
+        if (source != null) {
+            builder.set(name, source);
+            return;
+        }
+        Object decoded = value == null ? null : value.get();
+        if (decoded == null) builder.setNull(name);
+        else builder.set(name, toValue(decoded));
+    }
+
+    /**
+     * This method builds the parse exception after a failed mapping, listing every property whose type does not match.
+     * It runs only on the failure path, so the mapping itself needs no per property checks.
+     *
+     * @param entity
+     * @param names  mapped property names
+     * @param types  expected value types, in the order of the names
+     * @param cause
+     * @return EntityParseException
+     */
+    public static EntityParseException parseException(FullEntity<?> entity, String[] names, ValueType[] types, RuntimeException cause) {
+        List<String> fields = new ArrayList<>();
+        List<String> mismatches = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            Value<?> value = value(entity, names[i]);
+            if (value != null && value.getType() != types[i]) {
+                fields.add(names[i]);
+                mismatches.add(String.format("%s (%s, expected %s)", names[i], value.getType(), types[i]));
+            }
+        }
+        if (cause instanceof OutOfRangeException) {
+            fields.add(((OutOfRangeException) cause).name);
+            mismatches.add(cause.getMessage());
+        }
+        String detail = mismatches.isEmpty() ? String.valueOf(cause.getMessage()) : String.join(", ", mismatches);
+        return new EntityParseException(String.format("Fields of %s can not be casted: %s", entity.getClass().getSimpleName(), detail), fields);
+    }
+
+    private static int toInt(String name, Value<?> value) {
+        long number = (Long) value.get();
+        if (number < Integer.MIN_VALUE || number > Integer.MAX_VALUE) {
+            throw new OutOfRangeException(name, String.format("%s (%s, out of range for Integer)", name, number));
+        }
+        return (int) number;
+    }
+
+    private static Value<?> toValue(Object decoded) {
+        if (decoded instanceof List) {
+            ListValue.Builder list = ListValue.newBuilder();
+            for (Object element : (List<?>) decoded) {
+                list.addValue(toValue(element));
+            }
+            return list.build();
+        }
+        if (decoded instanceof FullEntity) {
+            return EntityValue.of((FullEntity<?>) decoded);
+        }
+        return QueryValues.toValue(decoded);
+    }
+
+    private static Value<?> value(FullEntity<?> entity, String name) {
+        if (!entity.contains(name)) {
+            return null;
+        }
+        Value<?> value = entity.getValue(name);
+        return value.getType() == ValueType.NULL ? null : value;
+    }
+
+    /**
+     * Thrown by the int accessors for a long outside the int range, names the property for the parse exception
+     */
+    static final class OutOfRangeException extends ArithmeticException {
+        private final String name;
+
+        OutOfRangeException(String name, String message) {
+            super(message);
+            this.name = name;
+        }
+    }
+}
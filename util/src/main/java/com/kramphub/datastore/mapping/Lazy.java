@@ -0,0 +1,131 @@
+package com.kramphub.datastore.mapping;
+
+import com.google.cloud.datastore.Value;
+
+import java.io.Serializable;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Field value which is decoded on first access and memoized, for properties which are costly to map
+ * such as blobs, long texts, lists and embedded entities. Entities read for list views which never touch
+ * such a field do not pay for decoding it.
+ * <p>
+ * A lazy value read from an entity and written back without being accessed is written as the original
+ * property value, without decoding and encoding it again. Decoding is thread safe and runs at most once.
+ *
+ * @param <V> decoded value type
+ */
+@SuppressWarnings("unused")
+public final class Lazy<V> implements Supplier<V>, Serializable {
+    private static final long serialVersionUID = 1L;
+    private static final Lazy<?> EMPTY = new Lazy<>(null, null, null);
+
+    private transient volatile Supplier<? extends V> decoder;
+    private transient Value<?> source;
+    private V value;
+
+    private Lazy(Supplier<? extends V> decoder, Value<?> source, V value) {
+        this.value = value;
+        this.source = source;
+        this.decoder = decoder;
+    }
+
+    /**
+     * @param decoder called once on first access
+     * @return Lazy decoding its value with the decoder
+     */
+    public static <V> Lazy<V> of(Supplier<? extends V> decoder) {
+        return new Lazy<>(Objects.requireNonNull(decoder, "decoder"), null, null);
+    }
+
+    /**
+     * @param value
+     * @return Lazy holding the already decoded value, e.g. to build an entity to write
+     */
+    public static <V> Lazy<V> value(V value) {
+        return value == null ? empty() : new Lazy<>(null, null, value);
+    }
+
+    /**
+     * @return Lazy holding null, for missing and null properties
+     */
+    @SuppressWarnings("unchecked")
+    public static <V> Lazy<V> empty() {
+        return (Lazy<V>) EMPTY;
+    }
+
+    /**
+     * @param source  property value
+     * @param decoder maps the property value on first access
+     * @return Lazy decoding the property value, written back as the property value while not decoded
+     */
+    public static <V> Lazy<V> of(Value<?> source, Function<Value<?>, ? extends V> decoder) {
+        return new Lazy<>(() -> decoder.apply(source), source, null);
+    }
+
+    /**
+     * This method returns the value, decoding it on the first call
+     *
+     * @return decoded value, nullable
+     */
+    @Override
+    public V get() {
+        if (decoder != null) {
+            synchronized (this) {
+                Supplier<? extends V> pending = decoder;
+                if (pending != null) {
+                    value = pending.get();
+                    source = null;
+                    // publishes the value to readers which see the decoder cleared
+                    decoder = null;
+                }
+            }
+        }
+        return value;
+    }
+
+    /**
+     * @return true if the value is decoded
+     */
+    public boolean isLoaded() {
+        return decoder == null;
+    }
+
+    /**
+     * @return the property value the lazy value was read from while it is not decoded, null once decoded
+     */
+    Value<?> source() {
+        Value<?> pending = source;
+        return decoder != null ? pending : null;
+    }
+
+    /**
+     * Compares the decoded values, decoding both
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof Lazy && Objects.equals(get(), ((Lazy<?>) o).get());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(get());
+    }
+
+    /**
+     * Does not decode the value
+     */
+    @Override
+    public String toString() {
+        return isLoaded() ? String.valueOf(value) : "Lazy[not loaded]";
+    }
+
+    private Object writeReplace() {
+        return isLoaded() ? this : value(get());
+    }
+}
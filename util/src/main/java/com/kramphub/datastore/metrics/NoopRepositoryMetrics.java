@@ -0,0 +1,24 @@
+package com.kramphub.datastore.metrics;
+
+/**
+ * Discards all metrics
+ */
+enum NoopRepositoryMetrics implements RepositoryMetrics {
+    INSTANCE;
+
+    @Override
+    public void recordOperation(String kind, RepositoryOperation operation, long durationNanos, int entities) {
+    }
+
+    @Override
+    public void recordBatch(String kind, RepositoryOperation operation, int entities, long bytes) {
+    }
+
+    @Override
+    public void recordError(String kind, RepositoryOperation operation, Throwable error) {
+    }
+
+    @Override
+    public void recordRetries(String kind, RepositoryOperation operation, int retries) {
+    }
+}
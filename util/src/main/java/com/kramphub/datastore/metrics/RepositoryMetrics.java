@@ -0,0 +1,58 @@
+package com.kramphub.datastore.metrics;
+
+/**
+ * Receives per kind, per operation timings, entity counts, batch sizes and errors from DatastoreRepository.
+ * Called on the hot path from any thread, implementations must be thread safe and should not block.
+ * The arguments are primitives, enums and the kind identifier held by the repository, so reporting allocates nothing.
+ */
+public interface RepositoryMetrics {
+
+    /**
+     * This method returns the implementation which discards everything, the default of the repository
+     *
+     * @return RepositoryMetrics
+     */
+    static RepositoryMetrics noop() {
+        return NoopRepositoryMetrics.INSTANCE;
+    }
+
+    /**
+     * This method records a completed operation
+     *
+     * @param kind          kind identifier of the repository
+     * @param operation
+     * @param durationNanos wall clock time of the operation
+     * @param entities      number of entities or keys read or written
+     */
+    void recordOperation(String kind, RepositoryOperation operation, long durationNanos, int entities);
+
+    /**
+     * This method records a commit batch of a write operation
+     *
+     * @param kind      kind identifier of the repository
+     * @param operation
+     * @param entities  number of entities or keys in the batch
+     * @param bytes     estimated size of the batch
+     */
+    void recordBatch(String kind, RepositoryOperation operation, int entities, long bytes);
+
+    /**
+     * This method records a failed operation, e.g. EntityNotFoundException, InvalidEntityException or DatastoreException
+     *
+     * @param kind      kind identifier of the repository
+     * @param operation
+     * @param error     exception thrown to the caller
+     */
+    void recordError(String kind, RepositoryOperation operation, Throwable error);
+
+    /**
+     * This method records the retries an operation needed, e.g. transactions aborted by contention.
+     * Called once per operation, also when it succeeded without retries or ran out of attempts.
+     *
+     * @param kind      kind identifier of the repository
+     * @param operation
+     * @param retries   attempts after the first one
+     */
+    default void recordRetries(String kind, RepositoryOperation operation, int retries) {
+    }
+}
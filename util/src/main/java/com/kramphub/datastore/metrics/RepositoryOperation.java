@@ -0,0 +1,42 @@
+package com.kramphub.datastore.metrics;
+
+/**
+ * Operations of DatastoreRepository reported to RepositoryMetrics
+ */
+public enum RepositoryOperation {
+    ADD("add"),
+    UPSERT("upsert"),
+    UPDATE("update"),
+    DELETE("delete"),
+    FIND_BY_ID("find_by_id"),
+    FIND_BY_IDS("find_by_ids"),
+    CHECK_BY_ID("check_by_id"),
+    CHECK_BY_IDS("check_by_ids"),
+    QUERY("query"),
+    KEY_QUERY("key_query"),
+    PROJECTION_QUERY("projection_query"),
+    FETCH_PAGE("fetch_page"),
+    SCAN("scan"),
+    TRANSACTION("transaction"),
+    READ_ONLY_TRANSACTION("read_only_transaction"),
+    COUNT("count"),
+    DELETE_ALL("delete_all"),
+    DELETE_BY_FILTER("delete_by_filter"),
+    UPSERT_LARGE_VALUE_CHUNKS("upsert_large_value_chunks"),
+    DELETE_LARGE_VALUE_CHUNKS("delete_large_value_chunks");
+
+    private final String value;
+
+    RepositoryOperation(String value) {
+        this.value = value;
+    }
+
+    /**
+     * This method returns the name of the operation as used in metric tags and log messages
+     *
+     * @return String operation name
+     */
+    public String value() {
+        return value;
+    }
+}
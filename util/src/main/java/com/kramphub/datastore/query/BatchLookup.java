@@ -0,0 +1,99 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.common.collect.Lists;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+
+/**
+ * Looks up keys with batched multi gets, chunked to the Datastore lookup limit and fanned out concurrently
+ */
+@SuppressWarnings("unused")
+public class BatchLookup {
+    /**
+     * Max keys per lookup accepted by Datastore
+     */
+    public static final int MAX_LOOKUP_SIZE = 1000;
+
+    private final Datastore datastore;
+    private final int batchSize;
+    private final Executor executor;
+
+    /**
+     * @param datastore
+     * @param batchSize keys per lookup, max 1000
+     * @param executor  executor the chunks are looked up on
+     */
+    public BatchLookup(Datastore datastore, int batchSize, Executor executor) {
+        this.datastore = datastore;
+        this.batchSize = Math.min(batchSize, MAX_LOOKUP_SIZE);
+        this.executor = executor;
+    }
+
+    /**
+     * This method looks up the keys and maps the found entities
+     * Deferred keys are followed up by the client while the lookup results are iterated.
+     *
+     * @param keys   keys to look up, duplicates are looked up once
+     * @param mapper maps found entities, called on the lookup threads
+     * @return mapped entities in key order and missing keys
+     */
+    public <T> LookupResult<T> lookup(List<Key> keys, Function<Entity, T> mapper) {
+        if (keys.isEmpty()) {
+            return new LookupResult<>(Collections.emptyList(), Collections.emptySet());
+        }
+        return LookupResult.of(keys, fetch(keys, mapper));
+    }
+
+    /**
+     * This method looks up the keys and maps the found entities
+     *
+     * @param keys   keys to look up, duplicates are looked up once
+     * @param mapper maps found entities, called on the lookup threads
+     * @return mapped entities by key, missing keys are absent
+     */
+    public <T> Map<Key, T> fetch(Collection<Key> keys, Function<Entity, T> mapper) {
+        if (keys.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        List<Key> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        List<List<Key>> chunks = Lists.partition(distinctKeys, batchSize);
+
+        Map<Key, T> found = new HashMap<>(distinctKeys.size() * 2);
+        if (chunks.size() == 1) {
+            found.putAll(lookupChunk(chunks.get(0), mapper));
+        } else {
+            List<CompletableFuture<Map<Key, T>>> futures = new ArrayList<>(chunks.size());
+            for (List<Key> chunk : chunks) {
+                futures.add(CompletableFuture.supplyAsync(() -> lookupChunk(chunk, mapper), executor));
+            }
+            try {
+                for (CompletableFuture<Map<Key, T>> future : futures) {
+                    found.putAll(future.join());
+                }
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return found;
+    }
+
+    private <T> Map<Key, T> lookupChunk(List<Key> chunk, Function<Entity, T> mapper) {
+        Map<Key, T> found = new HashMap<>(chunk.size() * 2);
+        Iterator<Entity> entities = datastore.get(chunk);
+        while (entities.hasNext()) {
+            Entity entity = entities.next();
+            found.put(entity.getKey(), mapper.apply(entity));
+        }
+        return found;
+    }
+}
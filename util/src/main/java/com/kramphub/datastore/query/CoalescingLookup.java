@@ -0,0 +1,161 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Looks up single keys for many threads at once.
+ * Concurrent lookups of the same key share one in flight lookup instead of each issuing their own.
+ * With a batch window, lookups of different keys arriving within the window are merged into one multi get:
+ * the first lookup of a window waits for it to pass and then looks up all keys collected meanwhile,
+ * a batch reaching the max size is looked up right away by the thread that filled it.
+ * No threads are started, lookups run on the calling threads.
+ */
+@SuppressWarnings("unused")
+public class CoalescingLookup {
+    private final Datastore datastore;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final Map<Key, CompletableFuture<Entity>> inFlight = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+    private List<Lookup> batch;
+
+    /**
+     * @param datastore
+     * @param window       time lookups are collected into one multi get, zero only shares lookups of the same key
+     * @param maxBatchSize max keys per multi get, max 1000
+     */
+    public CoalescingLookup(Datastore datastore, Duration window, int maxBatchSize) {
+        this.datastore = datastore;
+        this.windowNanos = window.toNanos();
+        this.maxBatchSize = Math.max(1, Math.min(maxBatchSize, BatchLookup.MAX_LOOKUP_SIZE));
+    }
+
+    /**
+     * This method looks up the entity, sharing the lookup with concurrent callers
+     *
+     * @param key
+     * @return Entity, null if not found
+     */
+    public Entity get(Key key) {
+        CompletableFuture<Entity> created = new CompletableFuture<>();
+        CompletableFuture<Entity> existing = inFlight.putIfAbsent(key, created);
+        if (existing != null) {
+            return join(existing);
+        }
+        if (windowNanos <= 0) {
+            lookup(Collections.singletonList(new Lookup(key, created)));
+            return join(created);
+        }
+
+        List<Lookup> joined;
+        List<Lookup> full = null;
+        boolean leader;
+        synchronized (lock) {
+            leader = batch == null;
+            if (leader) {
+                batch = new ArrayList<>();
+            }
+            joined = batch;
+            joined.add(new Lookup(key, created));
+            if (joined.size() >= maxBatchSize) {
+                batch = null;
+                full = joined;
+            }
+        }
+        if (full == null && leader) {
+            long deadline = System.nanoTime() + windowNanos;
+            for (long remaining = windowNanos; remaining > 0; remaining = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(this, remaining);
+            }
+            synchronized (lock) {
+                if (batch == joined) {
+                    batch = null;
+                    full = joined;
+                }
+            }
+        }
+        if (full != null) {
+            lookup(full);
+        }
+        return join(created);
+    }
+
+    /**
+     * This method detaches in flight lookups of the keys, so later callers look them up again.
+     * Called after writes, callers which joined a lookup before may still see the state before the write.
+     *
+     * @param keys
+     */
+    public void forget(Collection<Key> keys) {
+        keys.forEach(inFlight::remove);
+    }
+
+    /**
+     * This method detaches all in flight lookups, so later callers look them up again
+     */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    private void lookup(List<Lookup> lookups) {
+        Map<Key, Entity> found = new HashMap<>(lookups.size() * 2);
+        try {
+            if (lookups.size() == 1) {
+                Key key = lookups.get(0).key;
+                found.put(key, datastore.get(key));
+            } else {
+                // a forgotten key can be in the batch twice
+                Set<Key> keys = new LinkedHashSet<>(lookups.size() * 2);
+                lookups.forEach(lookup -> keys.add(lookup.key));
+                Iterator<Entity> entities = datastore.get(keys);
+                while (entities.hasNext()) {
+                    Entity entity = entities.next();
+                    found.put(entity.getKey(), entity);
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            for (Lookup lookup : lookups) {
+                inFlight.remove(lookup.key, lookup.future);
+                lookup.future.completeExceptionally(e);
+            }
+            return;
+        }
+        for (Lookup lookup : lookups) {
+            inFlight.remove(lookup.key, lookup.future);
+            lookup.future.complete(found.get(lookup.key));
+        }
+    }
+
+    private static Entity join(CompletableFuture<Entity> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Lookup {
+        private final Key key;
+        private final CompletableFuture<Entity> future;
+
+        private Lookup(Key key, CompletableFuture<Entity> future) {
+            this.key = key;
+            this.future = future;
+        }
+    }
+}
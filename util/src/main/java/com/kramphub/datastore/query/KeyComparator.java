@@ -0,0 +1,70 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.PathElement;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Orders keys the way Datastore orders __key__: path element by element,
+ * by kind first, ids before names, ids numerically and kinds and names by their unsigned UTF-8 bytes;
+ * ancestors before descendants. String.compareTo compares UTF-16 units, which orders supplementary
+ * characters before U+E000..U+FFFF where Datastore orders them after.
+ */
+@SuppressWarnings("unused")
+public final class KeyComparator implements Comparator<Key> {
+    public static final KeyComparator INSTANCE = new KeyComparator();
+
+    private KeyComparator() {
+    }
+
+    @Override
+    public int compare(Key left, Key right) {
+        List<PathElement> leftPath = path(left);
+        List<PathElement> rightPath = path(right);
+        int length = Math.min(leftPath.size(), rightPath.size());
+        for (int i = 0; i < length; i++) {
+            int result = compare(leftPath.get(i), rightPath.get(i));
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(leftPath.size(), rightPath.size());
+    }
+
+    private static List<PathElement> path(Key key) {
+        List<PathElement> path = new ArrayList<>(key.getAncestors());
+        path.add(key.hasName() ? PathElement.of(key.getKind(), key.getName()) : PathElement.of(key.getKind(), key.getId()));
+        return path;
+    }
+
+    private static int compare(PathElement left, PathElement right) {
+        int result = compareUtf8(left.getKind(), right.getKind());
+        if (result != 0) {
+            return result;
+        }
+        if (left.hasId() && right.hasId()) {
+            return Long.compare(left.getId(), right.getId());
+        }
+        if (left.hasName() && right.hasName()) {
+            return compareUtf8(left.getName(), right.getName());
+        }
+        return left.hasId() ? -1 : 1;
+    }
+
+    static int compareUtf8(String left, String right) {
+        byte[] leftBytes = left.getBytes(StandardCharsets.UTF_8);
+        byte[] rightBytes = right.getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(leftBytes.length, rightBytes.length);
+        for (int i = 0; i < length; i++) {
+            int result = Integer.compare(leftBytes[i] & 0xff, rightBytes[i] & 0xff);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(leftBytes.length, rightBytes.length);
+    }
+}
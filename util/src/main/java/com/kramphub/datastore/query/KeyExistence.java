@@ -0,0 +1,99 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.KeyQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Checks if keys exist with keys only queries on __key__, so no entity properties are transferred or decoded.
+ * Queries are eventually consistent on Datastore in legacy mode, an entity written just before may not be found yet.
+ * Bulk checks split the keys over at most MAX_CONCURRENT_CHECKS groups, each group is queried key by key,
+ * the first group on the calling thread and the others on the executor.
+ */
+@SuppressWarnings("unused")
+public class KeyExistence {
+    /**
+     * Max keys only queries in flight for one bulk check
+     */
+    public static final int MAX_CONCURRENT_CHECKS = 16;
+
+    private final Datastore datastore;
+    private final Executor executor;
+
+    /**
+     * @param datastore
+     * @param executor executor bulk checks run on
+     */
+    public KeyExistence(Datastore datastore, Executor executor) {
+        this.datastore = datastore;
+        this.executor = executor;
+    }
+
+    /**
+     * This method checks if an entity with the key exists
+     *
+     * @param key
+     * @return true if the entity exists
+     */
+    public boolean exists(Key key) {
+        KeyQuery query = Query.newKeyQueryBuilder()
+                .setNamespace(key.getNamespace())
+                .setKind(key.getKind())
+                .setFilter(PropertyFilter.eq(KeyRange.KEY_PROPERTY, key))
+                .setLimit(1)
+                .build();
+        return datastore.run(query).hasNext();
+    }
+
+    /**
+     * This method checks the keys with at most MAX_CONCURRENT_CHECKS queries in flight and returns the ones without an entity
+     *
+     * @param keys duplicates are checked once
+     * @return missing keys in input order
+     */
+    public Set<Key> findMissing(Collection<Key> keys) {
+        List<Key> distinctKeys = new ArrayList<>(new LinkedHashSet<>(keys));
+        int groups = Math.min(MAX_CONCURRENT_CHECKS, distinctKeys.size());
+        boolean[] found = new boolean[distinctKeys.size()];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(groups);
+        for (int group = 1; group < groups; group++) {
+            int first = group;
+            futures.add(CompletableFuture.runAsync(() -> check(distinctKeys, first, groups, found), executor));
+        }
+        try {
+            if (groups > 0) {
+                check(distinctKeys, 0, groups, found);
+            }
+            for (CompletableFuture<Void> future : futures) {
+                future.join();
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        } finally {
+            futures.forEach(future -> future.cancel(false));
+        }
+        Set<Key> missing = new LinkedHashSet<>();
+        for (int i = 0; i < distinctKeys.size(); i++) {
+            if (!found[i]) {
+                missing.add(distinctKeys.get(i));
+            }
+        }
+        return missing;
+    }
+
+    private void check(List<Key> keys, int first, int step, boolean[] found) {
+        for (int i = first; i < keys.size(); i += step) {
+            found[i] = exists(keys.get(i));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+
+/**
+ * Range of keys, start inclusive and end exclusive, null bounds are open
+ */
+@SuppressWarnings("unused")
+public class KeyRange {
+    public static final String KEY_PROPERTY = "__key__";
+
+    private final Key start;
+    private final Key end;
+
+    public KeyRange(Key start, Key end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public Key getStart() {
+        return start;
+    }
+
+    public Key getEnd() {
+        return end;
+    }
+
+    /**
+     * This method returns the __key__ filter of the range
+     *
+     * @return Filter, null if the range is unbounded
+     */
+    public Filter toFilter() {
+        if (start != null && end != null) {
+            return CompositeFilter.and(PropertyFilter.ge(KEY_PROPERTY, start), PropertyFilter.lt(KEY_PROPERTY, end));
+        } else if (start != null) {
+            return PropertyFilter.ge(KEY_PROPERTY, start);
+        } else if (end != null) {
+            return PropertyFilter.lt(KEY_PROPERTY, end);
+        }
+        return null;
+    }
+
+    /**
+     * This method restricts the query builder to the range, combined with the given filter
+     *
+     * @param builder
+     * @param filter  additional filter, nullable
+     * @return the builder
+     */
+    public <V, B extends StructuredQuery.Builder<V>> B restrict(B builder, Filter filter) {
+        Filter rangeFilter = toFilter();
+        if (rangeFilter != null && filter != null) {
+            builder.setFilter(CompositeFilter.and(filter, rangeFilter));
+        } else if (rangeFilter != null) {
+            builder.setFilter(rangeFilter);
+        } else if (filter != null) {
+            builder.setFilter(filter);
+        }
+        return builder;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + start + ", " + end + ")";
+    }
+}
@@ -0,0 +1,78 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.*;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.common.collect.Lists;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits a kind into key ranges of similar size by sampling the __scatter__ property,
+ * which Datastore sets on a random subset of entities.
+ */
+@SuppressWarnings("unused")
+public class KeyRangeSplitter {
+    public static final String SCATTER_PROPERTY = "__scatter__";
+    private static final int OVERSAMPLING = 32;
+
+    private final Datastore datastore;
+
+    public KeyRangeSplitter(Datastore datastore) {
+        this.datastore = datastore;
+    }
+
+    /**
+     * This method splits the kind into at most the given number of consecutive key ranges.
+     * Fewer ranges are returned if the kind is too small to sample enough split points.
+     *
+     * @param kind
+     * @param shards wanted number of ranges
+     * @return ranges covering the whole kind, in key order
+     */
+    public List<KeyRange> split(String kind, int shards) {
+        List<Key> splitPoints = splitPoints(kind, shards);
+        List<KeyRange> ranges = new ArrayList<>(splitPoints.size() + 1);
+        Key start = null;
+        for (Key splitPoint : splitPoints) {
+            ranges.add(new KeyRange(start, splitPoint));
+            start = splitPoint;
+        }
+        ranges.add(new KeyRange(start, null));
+        return ranges;
+    }
+
+    /**
+     * This method samples __scatter__ keys and returns evenly spaced split points in key order
+     *
+     * @param kind
+     * @param shards wanted number of ranges
+     * @return at most shards - 1 distinct keys
+     */
+    public List<Key> splitPoints(String kind, int shards) {
+        if (shards < 2) {
+            return Collections.emptyList();
+        }
+        KeyQuery query = Query.newKeyQueryBuilder()
+                .setKind(kind)
+                .setOrderBy(OrderBy.asc(SCATTER_PROPERTY))
+                .setLimit((shards - 1) * OVERSAMPLING)
+                .build();
+        List<Key> samples = Lists.newArrayList(datastore.run(query));
+        if (samples.isEmpty()) {
+            return Collections.emptyList();
+        }
+        samples.sort(KeyComparator.INSTANCE);
+
+        int splits = Math.min(shards - 1, samples.size());
+        List<Key> splitPoints = new ArrayList<>(splits);
+        for (int i = 1; i <= splits; i++) {
+            Key splitPoint = samples.get(i * samples.size() / (splits + 1));
+            if (splitPoints.isEmpty() || !splitPoints.get(splitPoints.size() - 1).equals(splitPoint)) {
+                splitPoints.add(splitPoint);
+            }
+        }
+        return splitPoints;
+    }
+}
@@ -0,0 +1,129 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.KeyQuery;
+import com.google.cloud.datastore.Query;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.google.common.collect.Iterators;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Counts entities of a kind with parallel keys only scans over key range shards.
+ * The pinned google-cloud-datastore client has no aggregation queries, so a count reads every key, O(N) in the kind size.
+ */
+@SuppressWarnings("unused")
+public class KindCounter {
+    private final Datastore datastore;
+    private final Logger log;
+    private final String kind;
+    private final int shards;
+    private final long cacheTtlNanos;
+    private final Executor executor;
+    private final KeyRangeSplitter splitter;
+
+    private volatile long cachedCount;
+    private volatile long cachedAt;
+    private volatile boolean cached;
+
+    /**
+     * @param datastore
+     * @param log
+     * @param kind
+     * @param shards    number of parallel scans
+     * @param cacheTtl  time an approximate count is reused
+     * @param executor  executor the parallel scans run on
+     */
+    public KindCounter(Datastore datastore, Logger log, String kind, int shards, Duration cacheTtl, Executor executor) {
+        this.datastore = datastore;
+        this.log = log;
+        this.kind = kind;
+        this.shards = shards;
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.executor = executor;
+        this.splitter = new KeyRangeSplitter(datastore);
+    }
+
+    /**
+     * This method counts the entities of the kind matching the filter
+     * Filtered counts run as a single keys only scan,
+     * since key range shards can not be combined with arbitrary inequality filters.
+     *
+     * @param filter nullable
+     * @return count
+     */
+    public long count(Filter filter) {
+        KeyQuery.Builder builder = Query.newKeyQueryBuilder().setKind(kind);
+        if (filter != null) {
+            builder.setFilter(filter);
+        }
+        if (filter != null || shards < 2) {
+            return scan(builder.build());
+        }
+        return shardedCount();
+    }
+
+    /**
+     * This method returns the count of all entities of the kind, cached for the configured ttl
+     * The result may be stale by up to the ttl and is meant for dashboards and estimates.
+     *
+     * @return approximate count
+     */
+    public long approximateCount() {
+        if (cached && System.nanoTime() - cachedAt < cacheTtlNanos) {
+            return cachedCount;
+        }
+        synchronized (this) {
+            if (cached && System.nanoTime() - cachedAt < cacheTtlNanos) {
+                return cachedCount;
+            }
+            cachedCount = count(null);
+            cachedAt = System.nanoTime();
+            cached = true;
+            return cachedCount;
+        }
+    }
+
+    /**
+     * This method drops the cached approximate count
+     */
+    public void invalidate() {
+        cached = false;
+    }
+
+    private long shardedCount() {
+        List<KeyRange> ranges = splitter.split(kind, shards);
+        if (ranges.size() == 1) {
+            return scan(Query.newKeyQueryBuilder().setKind(kind).build());
+        }
+        log.debug("Counting {} in {} key ranges", kind, ranges.size());
+
+        List<CompletableFuture<Long>> futures = new ArrayList<>(ranges.size());
+        for (KeyRange range : ranges) {
+            KeyQuery query = range.restrict(Query.newKeyQueryBuilder().setKind(kind), null).build();
+            futures.add(CompletableFuture.supplyAsync(() -> scan(query), executor));
+        }
+        long count = 0;
+        try {
+            for (CompletableFuture<Long> future : futures) {
+                count += future.join();
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return count;
+    }
+
+    private long scan(KeyQuery query) {
+        return Iterators.size(datastore.run(query));
+    }
+}
@@ -0,0 +1,63 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Key;
+
+import java.util.*;
+
+/**
+ * Result of a batched lookup: mapped entities in input order and the keys which were not found
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class LookupResult<T> {
+    private final List<T> results;
+    private final Set<Key> missingKeys;
+
+    public LookupResult(List<T> results, Set<Key> missingKeys) {
+        this.results = Collections.unmodifiableList(results);
+        this.missingKeys = Collections.unmodifiableSet(missingKeys);
+    }
+
+    /**
+     * This method assembles the result in the order of the requested keys
+     *
+     * @param keys  requested keys, may contain duplicates
+     * @param found mapped entities by key
+     * @return LookupResult
+     */
+    public static <T> LookupResult<T> of(List<Key> keys, Map<Key, T> found) {
+        List<T> results = new ArrayList<>(keys.size());
+        Set<Key> missingKeys = new LinkedHashSet<>();
+        for (Key key : keys) {
+            T result = found.get(key);
+            if (result != null) {
+                results.add(result);
+            } else {
+                missingKeys.add(key);
+            }
+        }
+        return new LookupResult<>(results, missingKeys);
+    }
+
+    /**
+     * @return mapped entities which were found, in the order of the requested ids
+     */
+    public List<T> getResults() {
+        return results;
+    }
+
+    /**
+     * @return keys which do not exist in Datastore, in the order of the requested ids
+     */
+    public Set<Key> getMissingKeys() {
+        return missingKeys;
+    }
+
+    /**
+     * @return true if all requested keys were found
+     */
+    public boolean isComplete() {
+        return missingKeys.isEmpty();
+    }
+}
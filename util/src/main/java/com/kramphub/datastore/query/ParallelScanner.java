@@ -0,0 +1,144 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.Datastore;
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Query;
+import com.kramphub.datastore.concurrent.RepositoryExecutors;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Scans all entities of a kind in parallel. The kind is split into key ranges by sampling __scatter__
+ * and every range is paged through with its own cursor on a worker thread.
+ * Results are mapped and passed to the consumer on the worker threads as the pages arrive, in no particular order.
+ * <p>
+ * Without an executor every scan starts a thread per range and stops them when it returns. The ranges hold their threads
+ * for the whole scan, so the consumer may write through a repository whose chunks run on the shared executor.
+ * A given executor must not be one the consumer waits on.
+ */
+@SuppressWarnings("unused")
+public class ParallelScanner {
+    private final Datastore datastore;
+    private final Logger log;
+    private final int pageSize;
+    private final Executor executor;
+    private final KeyRangeSplitter splitter;
+
+    /**
+     * @param datastore
+     * @param log
+     * @param pageSize max entities fetched per page of a range
+     */
+    public ParallelScanner(Datastore datastore, Logger log, int pageSize) {
+        this(datastore, log, pageSize, null);
+    }
+
+    /**
+     * @param datastore
+     * @param log
+     * @param pageSize max entities fetched per page of a range
+     * @param executor executor the ranges are scanned on, null for a thread per range and scan
+     */
+    public ParallelScanner(Datastore datastore, Logger log, int pageSize, Executor executor) {
+        this.datastore = datastore;
+        this.log = log;
+        this.pageSize = pageSize;
+        this.executor = executor;
+        this.splitter = new KeyRangeSplitter(datastore);
+    }
+
+    /**
+     * This method scans the kind in at most the given number of parallel key ranges.
+     * The consumer is called concurrently from the worker threads and has to be thread safe.
+     * If a range fails, the other ranges stop after their current page and the exception is rethrown.
+     *
+     * @param kind
+     * @param shards   wanted number of parallel ranges
+     * @param mapper   maps every entity as it is read
+     * @param consumer receives every mapped entity
+     * @return number of scanned entities
+     */
+    public <T> long scan(String kind, int shards, Function<Entity, T> mapper, Consumer<T> consumer) {
+        return scan(kind, shards, mapper, consumer, executor);
+    }
+
+    /**
+     * This method scans the kind in at most the given number of parallel key ranges on the given executor.
+     * The consumer is called concurrently from the worker threads and has to be thread safe.
+     * If a range fails, the other ranges stop after their current page and the exception is rethrown.
+     *
+     * @param kind
+     * @param shards   wanted number of parallel ranges
+     * @param mapper   maps every entity as it is read
+     * @param consumer receives every mapped entity
+     * @param executor executor the ranges are scanned on, null for a thread per range
+     * @return number of scanned entities
+     */
+    public <T> long scan(String kind, int shards, Function<Entity, T> mapper, Consumer<T> consumer, Executor executor) {
+        List<KeyRange> ranges = splitter.split(kind, shards);
+        log.debug("Scanning {} in {} key ranges", kind, ranges.size());
+        if (executor != null) {
+            return scan(kind, ranges, mapper, consumer, executor);
+        }
+        ExecutorService workers = RepositoryExecutors.newBoundedExecutor(Math.max(1, ranges.size()), "datastore-scan-" + kind);
+        try {
+            return scan(kind, ranges, mapper, consumer, workers);
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    private <T> long scan(String kind, List<KeyRange> ranges, Function<Entity, T> mapper, Consumer<T> consumer, Executor executor) {
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<Long>> futures = new ArrayList<>(ranges.size());
+        for (KeyRange range : ranges) {
+            EntityQuery query = range.restrict(Query.newEntityQueryBuilder().setKind(kind), null).build();
+            futures.add(CompletableFuture.supplyAsync(() -> scan(query, mapper, consumer, failed), executor)
+                    .whenComplete((count, e) -> {
+                        if (e != null) {
+                            failed.set(true);
+                        }
+                    }));
+        }
+        long count = 0;
+        try {
+            for (CompletableFuture<Long> future : futures) {
+                count += future.join();
+            }
+        } catch (CompletionException e) {
+            // wait for the other ranges, so the consumer is not called after the scan returned
+            futures.forEach(future -> future.handle((result, ignored) -> null).join());
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+        return count;
+    }
+
+    private <T> long scan(EntityQuery query, Function<Entity, T> mapper, Consumer<T> consumer, AtomicBoolean failed) {
+        QueryPager<Entity, T> pager = new QueryPager<>(datastore, query, pageSize, mapper);
+        long count = 0;
+        String cursorToken = null;
+        while (!failed.get()) {
+            QueryPage<T> page = pager.fetchPage(cursorToken);
+            page.getResults().forEach(consumer);
+            count += page.getResults().size();
+            if (!page.hasMore()) {
+                break;
+            }
+            cursorToken = page.getCursorToken();
+        }
+        return count;
+    }
+}
@@ -0,0 +1,45 @@
+package com.kramphub.datastore.query;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of mapped query results with the cursor token to continue after it
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class QueryPage<T> {
+    private final List<T> results;
+    private final String cursorToken;
+    private final boolean hasMore;
+
+    public QueryPage(List<T> results, String cursorToken, boolean hasMore) {
+        this.results = Collections.unmodifiableList(results);
+        this.cursorToken = cursorToken;
+        this.hasMore = hasMore;
+    }
+
+    /**
+     * @return mapped results of the page
+     */
+    public List<T> getResults() {
+        return results;
+    }
+
+    /**
+     * The token can be stored as a checkpoint and passed back to resume the query after this page
+     *
+     * @return url safe cursor after the last result of the page
+     */
+    public String getCursorToken() {
+        return cursorToken;
+    }
+
+    /**
+     * @return false if the query is exhausted after this page
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+}
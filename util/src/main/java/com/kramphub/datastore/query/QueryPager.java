@@ -0,0 +1,183 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.datastore.*;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Pages through a query with cursors, so that results of any size can be read with bounded memory.
+ * The limit of the query is the total limit over all pages, the offset is applied to the first page only.
+ * Cursor tokens of a limited query carry the number of results left, so paging with fetchPage stops at the limit too.
+ * A plain cursor token resumes with the full limit.
+ *
+ * @param <V> query result type, Entity or Key
+ * @param <T> mapped result type
+ */
+@SuppressWarnings("unused")
+public class QueryPager<V, T> {
+    private static final char REMAINING_SEPARATOR = '.';
+
+    private final Datastore datastore;
+    private final StructuredQuery<V> query;
+    private final int pageSize;
+    private final Function<V, T> mapper;
+
+    /**
+     * @param datastore
+     * @param query    query to page through
+     * @param pageSize max results fetched per page
+     * @param mapper   maps every result as it is read
+     */
+    public QueryPager(Datastore datastore, StructuredQuery<V> query, int pageSize, Function<V, T> mapper) {
+        this.datastore = datastore;
+        this.query = query;
+        this.pageSize = pageSize;
+        this.mapper = mapper;
+    }
+
+    /**
+     * This method fetches a single page
+     *
+     * @param cursorToken cursor token of the previous page, null to start from the beginning
+     * @return QueryPage
+     */
+    public QueryPage<T> fetchPage(String cursorToken) {
+        int remaining = toRemaining(cursorToken);
+        if (remaining <= 0) {
+            return new QueryPage<>(Collections.emptyList(), cursorToken, false);
+        }
+        int pageLimit = Math.min(pageSize, remaining);
+        QueryResults<V> queryResults = datastore.run(pageQuery(toCursor(cursorToken), pageLimit));
+        List<T> results = new ArrayList<>(pageLimit);
+        while (queryResults.hasNext()) {
+            results.add(mapper.apply(queryResults.next()));
+        }
+        remaining -= results.size();
+        return new QueryPage<>(results, toCursorToken(queryResults.getCursorAfter(), remaining), results.size() == pageLimit && remaining > 0);
+    }
+
+    /**
+     * This method fetches pages one after the other and passes each to the consumer,
+     * so the consumer can checkpoint the cursor token of every page
+     *
+     * @param cursorToken cursor token to resume from, null to start from the beginning
+     * @param consumer
+     */
+    public void forEachPage(String cursorToken, Consumer<QueryPage<T>> consumer) {
+        int remaining = toRemaining(cursorToken);
+        Cursor cursor = toCursor(cursorToken);
+        while (remaining > 0) {
+            int pageLimit = Math.min(pageSize, remaining);
+            QueryResults<V> queryResults = datastore.run(pageQuery(cursor, pageLimit));
+            List<T> results = new ArrayList<>(pageLimit);
+            while (queryResults.hasNext()) {
+                results.add(mapper.apply(queryResults.next()));
+            }
+            remaining -= results.size();
+            cursor = queryResults.getCursorAfter();
+            boolean hasMore = results.size() == pageLimit && remaining > 0;
+            consumer.accept(new QueryPage<>(results, toCursorToken(cursor, remaining), hasMore));
+            if (!hasMore) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * This method returns a lazy stream over all results, pages are fetched as the stream is consumed
+     *
+     * @param cursorToken cursor token to resume from, null to start from the beginning
+     * @return Stream of mapped results
+     */
+    public Stream<T> stream(String cursorToken) {
+        Iterator<T> iterator = new PageIterator(toCursor(cursorToken), toRemaining(cursorToken));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false);
+    }
+
+    private StructuredQuery<V> pageQuery(Cursor cursor, int pageLimit) {
+        StructuredQuery.Builder<V> builder = query.toBuilder().setLimit(pageLimit);
+        if (cursor != null) {
+            builder.setStartCursor(cursor).setOffset(0);
+        }
+        return builder.build();
+    }
+
+    private String toCursorToken(Cursor cursor, int remaining) {
+        return query.getLimit() == null ? cursor.toUrlSafe() : cursor.toUrlSafe() + REMAINING_SEPARATOR + remaining;
+    }
+
+    private int toRemaining(String cursorToken) {
+        Integer limit = query.getLimit();
+        if (limit == null) {
+            return Integer.MAX_VALUE;
+        }
+        int separator = cursorToken == null ? -1 : cursorToken.lastIndexOf(REMAINING_SEPARATOR);
+        if (separator < 0) {
+            return limit;
+        }
+        try {
+            return Math.min(limit, Integer.parseInt(cursorToken.substring(separator + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor token: " + cursorToken, e);
+        }
+    }
+
+    private static Cursor toCursor(String cursorToken) {
+        if (cursorToken == null || cursorToken.isEmpty()) {
+            return null;
+        }
+        int separator = cursorToken.lastIndexOf(REMAINING_SEPARATOR);
+        try {
+            return Cursor.fromUrlSafe(separator < 0 ? cursorToken : cursorToken.substring(0, separator));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor token: " + cursorToken, e);
+        }
+    }
+
+    private class PageIterator implements Iterator<T> {
+        private Cursor cursor;
+        private QueryResults<V> queryResults;
+        private int remaining;
+        private int pageLimit;
+        private int pageCount;
+
+        private PageIterator(Cursor cursor, int remaining) {
+            this.cursor = cursor;
+            this.remaining = remaining;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (queryResults != null && queryResults.hasNext()) {
+                return true;
+            }
+            if (queryResults != null) {
+                if (pageCount < pageLimit) {
+                    return false;
+                }
+                cursor = queryResults.getCursorAfter();
+            }
+            if (remaining <= 0) {
+                return false;
+            }
+            pageLimit = Math.min(pageSize, remaining);
+            pageCount = 0;
+            queryResults = datastore.run(pageQuery(cursor, pageLimit));
+            return queryResults.hasNext();
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            pageCount++;
+            remaining--;
+            return mapper.apply(queryResults.next());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.kramphub.datastore.query;
+
+/**
+ * Placeholder for a filter value of a query template, bound when the template is executed
+ */
+@SuppressWarnings("unused")
+public final class QueryParameter {
+    private final String name;
+
+    private QueryParameter(String name) {
+        this.name = name;
+    }
+
+    /**
+     * This method creates a parameter, the name is only used in error messages
+     *
+     * @param name
+     * @return QueryParameter
+     */
+    public static QueryParameter named(String name) {
+        return new QueryParameter(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return ":" + name;
+    }
+}
@@ -0,0 +1,54 @@
+package com.kramphub.datastore.query;
+
+import com.google.cloud.Timestamp;
+import com.google.cloud.datastore.*;
+
+import java.time.Instant;
+
+/**
+ * Converts plain Java objects to Datastore values for query filters
+ */
+@SuppressWarnings("unused")
+public final class QueryValues {
+
+    private QueryValues() {
+    }
+
+    /**
+     * This method converts the object to the Datastore value of the matching type.
+     * Integral numbers become long values and floating point numbers double values, like properties are stored.
+     *
+     * @param value String, Number, Boolean, Timestamp, Instant, Key, Blob, LatLng, Enum or Value, nullable
+     * @return Value
+     * @throws IllegalArgumentException if the type has no Datastore value
+     */
+    public static Value<?> toValue(Object value) {
+        if (value == null) {
+            return NullValue.of();
+        } else if (value instanceof Value) {
+            return (Value<?>) value;
+        } else if (value instanceof String) {
+            return StringValue.of((String) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return LongValue.of(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+            return DoubleValue.of(((Number) value).doubleValue());
+        } else if (value instanceof Boolean) {
+            return BooleanValue.of((Boolean) value);
+        } else if (value instanceof Timestamp) {
+            return TimestampValue.of((Timestamp) value);
+        } else if (value instanceof Instant) {
+            Instant instant = (Instant) value;
+            return TimestampValue.of(Timestamp.ofTimeSecondsAndNanos(instant.getEpochSecond(), instant.getNano()));
+        } else if (value instanceof Key) {
+            return KeyValue.of((Key) value);
+        } else if (value instanceof Blob) {
+            return BlobValue.of((Blob) value);
+        } else if (value instanceof LatLng) {
+            return LatLngValue.of((LatLng) value);
+        } else if (value instanceof Enum) {
+            return StringValue.of(((Enum<?>) value).name());
+        }
+        throw new IllegalArgumentException("No Datastore value type for " + value.getClass().getName());
+    }
+}
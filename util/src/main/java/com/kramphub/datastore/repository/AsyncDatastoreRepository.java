@@ -0,0 +1,145 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.query.LookupResult;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous view of a DatastoreRepository. Every operation runs on the async executor of the repository options
+ * and completes the returned future with the result or the exception of the blocking operation.
+ * The number of operations running at the same time is bounded by the async concurrency of the repository options.
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class AsyncDatastoreRepository<T extends BaseEntity> {
+    private final DatastoreRepository<T> repository;
+    private final Executor executor;
+
+    AsyncDatastoreRepository(DatastoreRepository<T> repository, Executor executor) {
+        this.repository = repository;
+        this.executor = executor;
+    }
+
+    /**
+     * @see DatastoreRepository#add(Entity)
+     */
+    public CompletableFuture<String> add(Entity entity) {
+        return supply(() -> repository.add(entity));
+    }
+
+    /**
+     * @see DatastoreRepository#add(Collection)
+     */
+    public CompletableFuture<List<String>> add(Collection<Entity> entities) {
+        return supply(() -> repository.add(entities));
+    }
+
+    /**
+     * @see DatastoreRepository#upsert(Entity)
+     */
+    public CompletableFuture<String> upsert(Entity entity) {
+        return supply(() -> repository.upsert(entity));
+    }
+
+    /**
+     * @see DatastoreRepository#upsert(Collection)
+     */
+    public CompletableFuture<List<String>> upsert(Collection<Entity> entities) {
+        return supply(() -> repository.upsert(entities));
+    }
+
+    /**
+     * @see DatastoreRepository#update(Entity)
+     */
+    public CompletableFuture<Void> update(Entity entity) {
+        return run(() -> repository.update(entity));
+    }
+
+    /**
+     * @see DatastoreRepository#update(Collection)
+     */
+    public CompletableFuture<Void> update(Collection<Entity> entities) {
+        return run(() -> repository.update(entities));
+    }
+
+    /**
+     * @see DatastoreRepository#delete(Key)
+     */
+    public CompletableFuture<Void> delete(Key key) {
+        return run(() -> repository.delete(key));
+    }
+
+    /**
+     * @see DatastoreRepository#delete(Collection)
+     */
+    public CompletableFuture<Void> delete(Collection<Key> keys) {
+        return run(() -> repository.delete(keys));
+    }
+
+    /**
+     * @see DatastoreRepository#findById(Long)
+     */
+    public CompletableFuture<T> findById(Long id) {
+        return supply(() -> repository.findById(id));
+    }
+
+    /**
+     * @see DatastoreRepository#findById(String)
+     */
+    public CompletableFuture<T> findById(String name) {
+        return supply(() -> repository.findById(name));
+    }
+
+    /**
+     * @see DatastoreRepository#findByIds(Collection)
+     */
+    public CompletableFuture<LookupResult<T>> findByIds(Collection<?> ids) {
+        return supply(() -> repository.findByIds(ids));
+    }
+
+    /**
+     * @see DatastoreRepository#executeQuery(StructuredQuery)
+     */
+    public CompletableFuture<List<T>> executeQuery(StructuredQuery<Entity> structuredQuery) {
+        return supply(() -> repository.executeQuery(structuredQuery));
+    }
+
+    /**
+     * @see DatastoreRepository#executeKeyQuery(StructuredQuery)
+     */
+    public CompletableFuture<List<Key>> executeKeyQuery(StructuredQuery<Key> structuredQuery) {
+        return supply(() -> repository.executeKeyQuery(structuredQuery));
+    }
+
+    /**
+     * @see DatastoreRepository#count()
+     */
+    public CompletableFuture<Long> count() {
+        return supply(repository::count);
+    }
+
+    /**
+     * @see DatastoreRepository#count(Filter)
+     */
+    public CompletableFuture<Long> count(Filter filter) {
+        return supply(() -> repository.count(filter));
+    }
+
+    private <R> CompletableFuture<R> supply(Supplier<R> operation) {
+        return CompletableFuture.supplyAsync(operation, executor);
+    }
+
+    private CompletableFuture<Void> run(Runnable operation) {
+        return CompletableFuture.runAsync(operation, executor);
+    }
+}
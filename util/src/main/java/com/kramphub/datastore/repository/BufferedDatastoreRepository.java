@@ -0,0 +1,328 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.kramphub.datastore.batch.ChunkFailure;
+import com.kramphub.datastore.batch.WriteBufferStats;
+import com.kramphub.datastore.concurrent.RepositoryExecutors;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.exception.BatchWriteException;
+import com.kramphub.datastore.exception.EntityNotFoundException;
+import org.slf4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static com.kramphub.datastore.util.ValidationUtil.validateEntitiesOrThrow;
+import static com.kramphub.datastore.util.ValidationUtil.validateEntityOrThrow;
+
+/**
+ * Write behind view of a DatastoreRepository. Upserts and deletes are queued and return immediately,
+ * a background thread writes them through the repository once the flush size is reached or the flush interval passed.
+ * <p>
+ * Writes are coalesced per key, at most one mutation of a key is written per flush: a delete discards the upserts queued
+ * before it and dominates the rest of the flush window, upserts of a key with a queued delete are dropped.
+ * A later upsert replaces a queued upsert, since a put overwrites the whole entity.
+ * Writes of new keys block while the buffer holds the buffer capacity of keys, writes of queued keys never block.
+ * Mutations of a failed flush are queued again unless their key was written since, after MAX_FLUSH_ATTEMPTS flushes they are dropped.
+ * Flushes run one at a time, so a mutation is never overtaken by an older one of the same key.
+ * <p>
+ * close flushes everything pending and is also run on JVM shutdown.
+ * Reads go to the repository and only see buffered writes once they are flushed, call flush first where that matters.
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class BufferedDatastoreRepository<T extends BaseEntity> implements AutoCloseable {
+    /**
+     * Flushes a mutation is written in before it is dropped
+     */
+    public static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    private final DatastoreRepository<T> repository;
+    private final Logger log;
+    private final String kind;
+    private final int flushSize;
+    private final int capacity;
+    private final Object lock = new Object();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+    // guarded by lock
+    private Map<Key, PendingWrite> pending = new LinkedHashMap<>();
+    private boolean closed;
+    private long received;
+    private long coalesced;
+    private long written;
+    private long dropped;
+    private long flushes;
+
+    BufferedDatastoreRepository(DatastoreRepository<T> repository, RepositoryOptions options) {
+        this.repository = repository;
+        this.log = repository.log;
+        this.kind = repository.kindIdentifier;
+        this.flushSize = options.getBufferFlushSize();
+        this.capacity = options.getBufferCapacity();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(RepositoryExecutors.daemonThreadFactory("datastore-buffer-" + kind));
+        this.shutdownHook = new Thread(this::close, "datastore-buffer-shutdown-" + kind);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+        long interval = options.getBufferFlushInterval().toNanos();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, interval, interval, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * This method queues the entity to be saved or updated, replacing a queued upsert of the same key.
+     * It is dropped if a delete of the key is queued.
+     *
+     * @param entity
+     * @throws EntityNotFoundException if entity is null or has no key
+     * @throws IllegalStateException   if the buffer is closed or the thread is interrupted while the buffer is full
+     */
+    public void upsert(Entity entity) throws EntityNotFoundException {
+        validateEntityOrThrow(entity);
+        enqueue(entity.getKey(), entity);
+    }
+
+    /**
+     * This method queues the entities to be saved or updated, replacing queued upserts of the same keys.
+     * Entities whose key has a queued delete are dropped.
+     *
+     * @param entities
+     * @throws EntityNotFoundException if entity is null or has no key
+     * @throws IllegalStateException   if the buffer is closed or the thread is interrupted while the buffer is full
+     */
+    public void upsert(Collection<Entity> entities) throws EntityNotFoundException {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        validateEntitiesOrThrow(entities);
+        for (Entity entity : entities) {
+            enqueue(entity.getKey(), entity);
+        }
+    }
+
+    /**
+     * This method queues the key to be deleted, replacing a queued write of the same key
+     *
+     * @param key
+     * @throws EntityNotFoundException if key is null or has no key
+     * @throws IllegalStateException   if the buffer is closed or the thread is interrupted while the buffer is full
+     */
+    public void delete(Key key) throws EntityNotFoundException {
+        delete(Collections.singletonList(key));
+    }
+
+    /**
+     * This method queues the keys to be deleted, replacing queued writes of the same keys
+     *
+     * @param keys
+     * @throws EntityNotFoundException if key is null or has no key
+     * @throws IllegalStateException   if the buffer is closed or the thread is interrupted while the buffer is full
+     */
+    public void delete(Collection<Key> keys) throws EntityNotFoundException {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        for (Key key : keys) {
+            if (key == null || key.getNameOrId() == null || ("" + key.getNameOrId()).isEmpty())
+                throw new EntityNotFoundException("key");
+        }
+        for (Key key : keys) {
+            enqueue(key, null);
+        }
+    }
+
+    /**
+     * This method writes everything queued so far, waiting for a flush in progress first.
+     * Failed mutations stay queued for the next flush.
+     *
+     * @throws BatchWriteException if any chunk fails, with the per chunk report of the upserts or deletes
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            Map<Key, PendingWrite> batch;
+            synchronized (lock) {
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                lock.notifyAll();
+            }
+            if (!batch.isEmpty()) {
+                write(batch.values());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * This method returns the statistics of the buffer since it was created
+     *
+     * @return WriteBufferStats
+     */
+    public WriteBufferStats getStats() {
+        synchronized (lock) {
+            return new WriteBufferStats(received, coalesced, written, dropped, flushes, pending.size());
+        }
+    }
+
+    /**
+     * This method stops accepting writes and flushes everything pending, retrying failed mutations
+     * until they are written or dropped. Writers blocked on a full buffer fail with an IllegalStateException.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        scheduler.shutdown();
+        while (true) {
+            synchronized (lock) {
+                if (pending.isEmpty()) {
+                    break;
+                }
+            }
+            flushQuietly();
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // closed by the shutdown hook itself
+        }
+        log.debug("Closed write buffer of {}, {}", kind, getStats());
+    }
+
+    private void enqueue(Key key, Entity entity) {
+        synchronized (lock) {
+            while (true) {
+                if (closed) {
+                    throw new IllegalStateException("Write buffer of " + kind + " is closed");
+                }
+                if (pending.size() < capacity || pending.containsKey(key)) {
+                    break;
+                }
+                requestFlush();
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted while waiting for the write buffer of " + kind, e);
+                }
+            }
+            received++;
+            PendingWrite queued = pending.get(key);
+            if (queued != null) {
+                coalesced++;
+                if (queued.entity == null && entity != null) {
+                    // the queued delete wins until it is flushed
+                    return;
+                }
+            }
+            pending.put(key, new PendingWrite(key, entity, 0));
+            if (pending.size() >= flushSize) {
+                requestFlush();
+            }
+        }
+    }
+
+    private void requestFlush() {
+        if (flushRequested.compareAndSet(false, true)) {
+            scheduler.execute(this::flushQuietly);
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.warn("Flush of the write buffer of {} failed, failed mutations are retried", kind, e);
+        }
+    }
+
+    private void write(Collection<PendingWrite> batch) {
+        List<PendingWrite> upserts = new ArrayList<>();
+        List<PendingWrite> deletes = new ArrayList<>();
+        for (PendingWrite write : batch) {
+            (write.entity != null ? upserts : deletes).add(write);
+        }
+
+        List<PendingWrite> failed = new ArrayList<>();
+        RuntimeException upsertFailure = write(upserts, failed, writes -> repository.upsert(
+                writes.stream().map(write -> write.entity).collect(Collectors.toList())));
+        RuntimeException deleteFailure = write(deletes, failed, writes -> repository.delete(
+                writes.stream().map(write -> write.key).collect(Collectors.toList())));
+
+        int given = 0;
+        synchronized (lock) {
+            written += batch.size() - failed.size();
+            flushes++;
+            for (PendingWrite write : failed) {
+                if (pending.containsKey(write.key)) {
+                    coalesced++;
+                } else if (write.attempts + 1 >= MAX_FLUSH_ATTEMPTS) {
+                    given++;
+                } else {
+                    pending.put(write.key, new PendingWrite(write.key, write.entity, write.attempts + 1));
+                }
+            }
+            dropped += given;
+        }
+
+        RuntimeException failure = upsertFailure != null ? upsertFailure : deleteFailure;
+        if (given > 0) {
+            log.error("Dropped {} buffered mutations of {} after {} failed flushes", given, kind, MAX_FLUSH_ATTEMPTS, failure);
+        }
+        if (failure != null) {
+            if (upsertFailure != null && deleteFailure != null) {
+                failure.addSuppressed(deleteFailure);
+            }
+            throw failure;
+        }
+    }
+
+    private RuntimeException write(List<PendingWrite> writes, List<PendingWrite> failed, Consumer<List<PendingWrite>> writer) {
+        if (writes.isEmpty()) {
+            return null;
+        }
+        try {
+            writer.accept(writes);
+            return null;
+        } catch (BatchWriteException e) {
+            for (ChunkFailure chunk : e.getResult().getFailures()) {
+                failed.addAll(writes.subList(chunk.getFromIndex(), chunk.getToIndex()));
+            }
+            return e;
+        } catch (RuntimeException e) {
+            failed.addAll(writes);
+            return e;
+        }
+    }
+
+    /**
+     * Latest mutation of a key, an upsert of the entity or a delete if the entity is null
+     */
+    private static final class PendingWrite {
+        private final Key key;
+        private final Entity entity;
+        private final int attempts;
+
+        private PendingWrite(Key key, Entity entity, int attempts) {
+            this.key = key;
+            this.entity = entity;
+            this.attempts = attempts;
+        }
+    }
+}
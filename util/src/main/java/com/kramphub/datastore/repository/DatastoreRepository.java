@@ -1,17 +1,50 @@
 package com.kramphub.datastore.repository;
 
 import com.google.cloud.datastore.*;
-import com.google.common.collect.Iterators;
+import com.google.cloud.datastore.StructuredQuery.Filter;
 import com.google.common.collect.Lists;
+import com.kramphub.datastore.batch.BatchWriter;
+import com.kramphub.datastore.batch.BulkDeleter;
+import com.kramphub.datastore.batch.DeleteProgress;
+import com.kramphub.datastore.cache.EntityCache;
+import com.kramphub.datastore.cache.EntityCacheStats;
+import com.kramphub.datastore.cache.QueryCache;
+import com.kramphub.datastore.cache.QueryCacheStats;
+import com.kramphub.datastore.concurrent.BoundedExecutor;
+import com.kramphub.datastore.concurrent.RetryBackoff;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
+import com.kramphub.datastore.batch.EntitySizeEstimator;
 import com.kramphub.datastore.convert.EntityReader;
+import com.kramphub.datastore.convert.LargeValueCodec;
 import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.exception.BatchWriteException;
 import com.kramphub.datastore.exception.EntityNotFoundException;
+import com.kramphub.datastore.exception.EntityParseException;
 import com.kramphub.datastore.exception.InvalidEntityException;
+import com.kramphub.datastore.key.IdAllocator;
 import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.metrics.RepositoryMetrics;
+import com.kramphub.datastore.metrics.RepositoryOperation;
+import com.kramphub.datastore.query.BatchLookup;
+import com.kramphub.datastore.query.CoalescingLookup;
+import com.kramphub.datastore.query.KeyExistence;
+import com.kramphub.datastore.query.KindCounter;
+import com.kramphub.datastore.query.LookupResult;
+import com.kramphub.datastore.query.ParallelScanner;
+import com.kramphub.datastore.query.QueryPage;
+import com.kramphub.datastore.query.QueryPager;
+import com.google.datastore.v1.TransactionOptions;
+import com.google.protobuf.ByteString;
 import org.slf4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.kramphub.datastore.util.ValidationUtil.validateEntitiesOrThrow;
 import static com.kramphub.datastore.util.ValidationUtil.validateEntityOrThrow;
@@ -23,22 +56,77 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
     final Datastore datastore;
     final KeyFactory keyFactory;
     final Integer defaultQueryLimit;
-    private final int MAX_QUERY_LIMIT = 5000;
-    private final int DEFAULT_QUERY_LIMIT = 500;
+    final RepositoryOptions options;
+    final BatchWriter batchWriter;
+    final WriteRateLimiter writeRateLimiter;
+    final KindCounter kindCounter;
+    final BulkDeleter bulkDeleter;
+    final BatchLookup batchLookup;
+    final CoalescingLookup coalescingLookup;
+    final KeyExistence keyExistence;
+    final IdAllocator idAllocator;
+    final ParallelScanner parallelScanner;
+    final EntityCache entityCache;
+    final QueryCache queryCache;
+    final LargeValueCodec largeValueCodec;
+    final RepositoryMetrics metrics;
+    final String kindIdentifier;
+    final RetryBackoff transactionBackoff;
+    private final AsyncDatastoreRepository<T> async;
+    private volatile BufferedDatastoreRepository<T> buffered;
+    private static final int MAX_QUERY_LIMIT = 5000;
+    private static final int DEFAULT_QUERY_LIMIT = 500;
 
     /**
-     * Init with custom query limit max 5000
+     * Init with custom query limit max 5000 and custom options
      *
      * @param datastore
      * @param log
      * @param defaultQueryLimit max 5000
+     * @param options
      */
-    public DatastoreRepository(Datastore datastore, Logger log, int defaultQueryLimit) {
+    public DatastoreRepository(Datastore datastore, Logger log, int defaultQueryLimit, RepositoryOptions options) {
         this.datastore = datastore;
         this.log = log;
-        this.keyFactory = datastore.newKeyFactory().setKind(getKind().getKindIdentifier());
+        this.kindIdentifier = getKind().getKindIdentifier();
+        this.keyFactory = datastore.newKeyFactory().setKind(kindIdentifier);
         this.defaultQueryLimit = defaultQueryLimit > MAX_QUERY_LIMIT ? MAX_QUERY_LIMIT : defaultQueryLimit < 1 ? DEFAULT_QUERY_LIMIT : defaultQueryLimit;
         this.entityReader = new EntityReader(log);
+        this.options = options != null ? options : RepositoryOptions.defaults();
+        this.metrics = this.options.getMetrics();
+        this.writeRateLimiter = this.options.getWriteInitialRate() > 0 ? new WriteRateLimiter(this.options.getWriteInitialRate(),
+                this.options.getWriteRampUpInterval(), this.options.getWriteLatencyTarget()) : null;
+        this.batchWriter = new BatchWriter(log, this.options.getBatchSize(), this.options.getBatchBytes(), this.options.getExecutor(),
+                metrics, kindIdentifier, writeRateLimiter);
+        this.kindCounter = new KindCounter(datastore, log, getKind().getKindIdentifier(),
+                this.options.getCountShards(), this.options.getCountCacheTtl(), this.options.getExecutor());
+        this.bulkDeleter = new BulkDeleter(datastore, log, this.options.getBatchSize(),
+                this.options.getDeleteConcurrency(), this.options.getExecutor(), writeRateLimiter);
+        this.batchLookup = new BatchLookup(datastore, this.options.getLookupBatchSize(), this.options.getExecutor());
+        this.coalescingLookup = new CoalescingLookup(datastore, this.options.getLookupBatchWindow(), this.options.getLookupBatchSize());
+        this.keyExistence = new KeyExistence(datastore, this.options.getExecutor());
+        this.idAllocator = new IdAllocator(datastore, log, this.options.getIdBlockSize(), this.options.getExecutor());
+        this.parallelScanner = new ParallelScanner(datastore, log, this.options.getQueryPageSize());
+        this.entityCache = this.options.getEntityCacheSize() > 0 ? new EntityCache(this.options.getEntityCacheSize(),
+                this.options.getEntityCacheTtl(), this.options.getEntityCacheNegativeTtl()) : null;
+        this.queryCache = this.options.getQueryCacheSize() > 0 ? new QueryCache(log, datastore.getOptions().getNamespace(),
+                this.options.getQueryCacheSize(), this.options.getQueryCacheTtl(), this.options.getQueryCacheRefreshAfter(),
+                this.options.getExecutor()) : null;
+        this.largeValueCodec = new LargeValueCodec(this.options.getLargeValueThreshold(), this.options.getLargeValueMaxInlineBytes());
+        this.transactionBackoff = new RetryBackoff(this.options.getTransactionInitialBackoff(), this.options.getTransactionMaxBackoff());
+        this.async = new AsyncDatastoreRepository<>(this,
+                new BoundedExecutor(this.options.getAsyncExecutor(), this.options.getAsyncConcurrency()));
+    }
+
+    /**
+     * Init with custom query limit max 5000
+     *
+     * @param datastore
+     * @param log
+     * @param defaultQueryLimit max 5000
+     */
+    public DatastoreRepository(Datastore datastore, Logger log, int defaultQueryLimit) {
+        this(datastore, log, defaultQueryLimit, RepositoryOptions.defaults());
     }
 
     /**
@@ -48,11 +136,36 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
      * @param log
      */
     public DatastoreRepository(Datastore datastore, Logger log) {
-        this.datastore = datastore;
-        this.log = log;
-        this.keyFactory = datastore.newKeyFactory().setKind(getKind().getKindIdentifier());
-        this.defaultQueryLimit = DEFAULT_QUERY_LIMIT;
-        this.entityReader = new EntityReader(log);
+        this(datastore, log, DEFAULT_QUERY_LIMIT, RepositoryOptions.defaults());
+    }
+
+    /**
+     * This method returns the asynchronous view of the repository, operations return CompletableFutures
+     *
+     * @return AsyncDatastoreRepository
+     */
+    public AsyncDatastoreRepository<T> async() {
+        return async;
+    }
+
+    /**
+     * This method returns the write behind view of the repository, created with the buffer options on first use.
+     * Upserts and deletes are queued, coalesced per key and written in batches by a background thread.
+     *
+     * @return BufferedDatastoreRepository
+     */
+    public BufferedDatastoreRepository<T> buffered() {
+        BufferedDatastoreRepository<T> current = buffered;
+        if (current == null) {
+            synchronized (this) {
+                current = buffered;
+                if (current == null) {
+                    current = new BufferedDatastoreRepository<>(this, options);
+                    buffered = current;
+                }
+            }
+        }
+        return current;
     }
 
     /**
@@ -69,25 +182,56 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
 
     /**
      * This method saves the given entities to datastore if entity ids does not already exists in datastore
+     * Entities are written in parallel chunks within the Datastore commit limits
      *
      * @param entities
-     * @return Entity id, if not exists entity name
+     * @return Entity id, if not exists entity name, in input order
      * @throws EntityNotFoundException if entity is null or has no key
+     * @throws BatchWriteException     if any chunk fails, with the per chunk report
      */
-    public List<String> add(Collection<Entity> entities) throws EntityNotFoundException {
+    public List<String> add(Collection<Entity> entities) throws EntityNotFoundException, BatchWriteException {
         if (entities == null || entities.isEmpty()) {
             return Collections.emptyList();
         }
 
-        validateEntitiesOrThrow(entities);
+        long start = System.nanoTime();
+        try {
+            validateEntitiesOrThrow(entities);
 
-        List<Entity> add = datastore.add(entities.toArray(new Entity[0]));
+            List<String> ids = batchWriter.write(RepositoryOperation.ADD, new ArrayList<>(entities), EntitySizeEstimator::estimate,
+                    chunk -> toIds(cacheWritten(chunk, () -> datastore.add(chunk.toArray(new Entity[0])))));
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.ADD, System.nanoTime() - start, ids.size());
+            return ids;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.ADD, e);
+            throw e;
+        } finally {
+            invalidateQueries();
+        }
+    }
 
-        return add.stream()
-                .map(Entity::getKey)
-                .map(Key::getNameOrId)
-                .map(Object::toString)
-                .collect(Collectors.toList());
+    /**
+     * This method saves the given entities to datastore, entities with an incomplete key get an id from the id pool
+     * The ids are taken from blocks allocated ahead in the background, so adding does not wait on id allocation.
+     *
+     * @param entities entities with complete or incomplete keys, e.g. with ancestors
+     * @return keys of the added entities in input order
+     * @throws EntityNotFoundException if entity is null or has no key
+     * @throws BatchWriteException     if any chunk fails, with the per chunk report
+     */
+    public List<Key> addWithAllocatedIds(Collection<? extends FullEntity<?>> entities) throws EntityNotFoundException, BatchWriteException {
+        if (entities == null || entities.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Entity> completed = new ArrayList<>(entities.size());
+        for (FullEntity<?> entity : entities) {
+            if (entity == null || entity.getKey() == null) {
+                throw new EntityNotFoundException(entity == null ? "" : entity.getClass().getSimpleName());
+            }
+            completed.add(complete(entity));
+        }
+        add(completed);
+        return completed.stream().map(Entity::getKey).collect(Collectors.toList());
     }
 
     /**
@@ -104,25 +248,32 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
 
     /**
      * This method saves or updates the given entities to datastore
+     * Entities are written in parallel chunks within the Datastore commit limits
      *
      * @param entities
-     * @return Entity id, if not exists entity name
+     * @return Entity id, if not exists entity name, in input order
      * @throws EntityNotFoundException if entity is null or has no key
+     * @throws BatchWriteException     if any chunk fails, with the per chunk report
      */
-    public List<String> upsert(Collection<Entity> entities) throws EntityNotFoundException {
+    public List<String> upsert(Collection<Entity> entities) throws EntityNotFoundException, BatchWriteException {
         if (entities == null || entities.isEmpty()) {
             return Collections.emptyList();
         }
 
-        validateEntitiesOrThrow(entities);
-
-        List<Entity> put = datastore.put(entities.toArray(new Entity[0]));
+        long start = System.nanoTime();
+        try {
+            validateEntitiesOrThrow(entities);
 
-        return put.stream()
-                .map(Entity::getKey)
-                .map(Key::getNameOrId)
-                .map(Object::toString)
-                .collect(Collectors.toList());
+            List<String> ids = batchWriter.write(RepositoryOperation.UPSERT, new ArrayList<>(entities), EntitySizeEstimator::estimate,
+                    chunk -> toIds(cacheWritten(chunk, () -> datastore.put(chunk.toArray(new Entity[0])))));
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.UPSERT, System.nanoTime() - start, ids.size());
+            return ids;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.UPSERT, e);
+            throw e;
+        } finally {
+            invalidateQueries();
+        }
     }
 
     /**
@@ -138,18 +289,32 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
 
     /**
      * This method updates the given entities in datastore
+     * Entities are written in parallel chunks within the Datastore commit limits
      *
      * @param entities
      * @throws EntityNotFoundException if entity is null or has no key
+     * @throws BatchWriteException     if any chunk fails, with the per chunk report
      */
-    public void update(Collection<Entity> entities) throws EntityNotFoundException {
+    public void update(Collection<Entity> entities) throws EntityNotFoundException, BatchWriteException {
         if (entities == null || entities.isEmpty()) {
             return;
         }
 
-        validateEntitiesOrThrow(entities);
+        long start = System.nanoTime();
+        try {
+            validateEntitiesOrThrow(entities);
 
-        datastore.update(entities.toArray(new Entity[0]));
+            batchWriter.write(RepositoryOperation.UPDATE, new ArrayList<>(entities), EntitySizeEstimator::estimate, chunk -> cacheWritten(chunk, () -> {
+                datastore.update(chunk.toArray(new Entity[0]));
+                return chunk;
+            }));
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.UPDATE, System.nanoTime() - start, entities.size());
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.UPDATE, e);
+            throw e;
+        } finally {
+            invalidateQueries();
+        }
     }
 
     /**
@@ -164,25 +329,195 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
 
     /**
      * This method deletes entities by their given keys from datastore
+     * Keys are deleted in parallel chunks within the Datastore commit limits
      *
      * @param keys
      * @throws EntityNotFoundException if key is null or has no key
+     * @throws BatchWriteException     if any chunk fails, with the per chunk report
      */
-    public void delete(Collection<Key> keys) throws EntityNotFoundException {
+    public void delete(Collection<Key> keys) throws EntityNotFoundException, BatchWriteException {
         if (keys == null || keys.isEmpty()) {
             return;
         }
 
-        for (Key key : keys) {
-            if (key == null || key.getNameOrId() == null || ("" + key.getNameOrId()).isEmpty())
-                throw new EntityNotFoundException("key");
+        long start = System.nanoTime();
+        try {
+            for (Key key : keys) {
+                if (key == null || key.getNameOrId() == null || ("" + key.getNameOrId()).isEmpty())
+                    throw new EntityNotFoundException("key");
+            }
+
+            batchWriter.write(RepositoryOperation.DELETE, new ArrayList<>(keys), EntitySizeEstimator::estimate, chunk -> {
+                try {
+                    datastore.delete(chunk.toArray(new Key[0]));
+                } catch (RuntimeException e) {
+                    if (entityCache != null) {
+                        entityCache.invalidateAll(chunk);
+                    }
+                    throw e;
+                } finally {
+                    coalescingLookup.forget(chunk);
+                }
+                if (entityCache != null) {
+                    chunk.forEach(entityCache::putMissing);
+                }
+                return chunk;
+            });
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.DELETE, System.nanoTime() - start, keys.size());
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.DELETE, e);
+            throw e;
+        } finally {
+            invalidateQueries();
         }
+    }
 
-        datastore.delete(keys.toArray(new Key[0]));
+    /**
+     * This method saves or updates the entity with the given large values set on it
+     * Values from the large value threshold on are compressed, values still too large for the entity are split
+     * into chunk entities below it. The chunks are written before the entity, the entity is read and written in a transaction
+     * and chunks of the values it replaced are deleted after the commit. Read the values with readLargeValue or readLargeText,
+     * delete the entity with deleteWithLargeValues.
+     *
+     * @param entity      entity without the large values
+     * @param largeValues String, byte[] or Blob values by field, null values are set as null, null for none
+     * @return Entity id, if not exists entity name
+     * @throws EntityNotFoundException  if entity is null or has no key
+     * @throws IllegalArgumentException if a value is of another type
+     */
+    public String upsertWithLargeValues(Entity entity, Map<? extends BaseKind, ?> largeValues) throws EntityNotFoundException {
+        validateEntityOrThrow(entity);
+        if (largeValues == null) {
+            largeValues = Collections.emptyMap();
+        }
+        Key key = entity.getKey();
+        Entity.Builder builder = Entity.newBuilder(entity);
+        // by property, a field given twice keeps the chunks of its last value only
+        Map<String, List<Entity>> chunks = new HashMap<>();
+        for (Map.Entry<? extends BaseKind, ?> largeValue : largeValues.entrySet()) {
+            String property = largeValue.getKey().value();
+            Object value = largeValue.getValue();
+            LargeValueCodec.Encoded encoded;
+            if (value == null) {
+                builder.setNull(property);
+                chunks.remove(property);
+                continue;
+            } else if (value instanceof String) {
+                encoded = largeValueCodec.encode(key, property, (String) value);
+            } else if (value instanceof byte[]) {
+                encoded = largeValueCodec.encode(key, property, (byte[]) value);
+            } else if (value instanceof Blob) {
+                encoded = largeValueCodec.encode(key, property, ((Blob) value).toByteArray());
+            } else {
+                throw new IllegalArgumentException("Large value of " + property + " must be a String, byte[] or Blob, not " + value.getClass().getName());
+            }
+            builder.set(property, encoded.getValue());
+            chunks.put(property, encoded.getChunks());
+        }
+        Entity encodedEntity = builder.build();
+
+        List<Entity> allChunks = chunks.values().stream().flatMap(List::stream).collect(Collectors.toList());
+        if (!allChunks.isEmpty()) {
+            writeLargeValueChunks(RepositoryOperation.UPSERT_LARGE_VALUE_CHUNKS, allChunks, EntitySizeEstimator::estimate,
+                    chunk -> datastore.put(chunk.toArray(new Entity[0])));
+        }
+        // a concurrent writer then either replaced the previous value before this read or writes after this commit
+        Entity previous = runInTransaction(repository -> {
+            Entity current = repository.get(key);
+            repository.upsert(encodedEntity);
+            return current;
+        });
+        if (previous != null) {
+            deleteChunks(previous, encodedEntity);
+        }
+        return String.valueOf(key.getNameOrId());
+    }
+
+    /**
+     * This method returns the bytes of a field written with upsertWithLargeValues
+     * Chunks of a split value are fetched with one batched lookup.
+     *
+     * @param entity
+     * @param field
+     * @return field value, null if missing
+     * @throws EntityNotFoundException if entity is null or has no key
+     * @throws EntityParseException    if the field is no large value, is corrupt or a chunk is missing
+     */
+    public byte[] readLargeValue(Entity entity, BaseKind field) throws EntityNotFoundException, EntityParseException {
+        validateEntityOrThrow(entity);
+        return entityReader.tryGetLargeValue(entity, field, fetchChunks(entity, field));
+    }
+
+    /**
+     * This method returns the text of a field written with upsertWithLargeValues
+     * Chunks of a split value are fetched with one batched lookup.
+     *
+     * @param entity
+     * @param field
+     * @return field value, null if missing
+     * @throws EntityNotFoundException if entity is null or has no key
+     * @throws EntityParseException    if the field is no large value, is corrupt or a chunk is missing
+     */
+    public String readLargeText(Entity entity, BaseKind field) throws EntityNotFoundException, EntityParseException {
+        validateEntityOrThrow(entity);
+        return entityReader.tryGetLargeText(entity, field, fetchChunks(entity, field));
+    }
+
+    /**
+     * This method deletes the entity with the chunk entities of its large values
+     * Chunks are found with an ancestor query, including chunks left behind by failed writes.
+     *
+     * @param key
+     * @throws EntityNotFoundException if key is null or has no key
+     */
+    public void deleteWithLargeValues(Key key) throws EntityNotFoundException {
+        if (key == null || key.getNameOrId() == null) {
+            throw new EntityNotFoundException("key");
+        }
+        List<Key> keys = new ArrayList<>();
+        datastore.run(Query.newKeyQueryBuilder()
+                .setNamespace(key.getNamespace())
+                .setKind(LargeValueCodec.CHUNK_KIND)
+                .setFilter(StructuredQuery.PropertyFilter.hasAncestor(key))
+                .build()).forEachRemaining(keys::add);
+        if (!keys.isEmpty()) {
+            writeLargeValueChunks(RepositoryOperation.DELETE_LARGE_VALUE_CHUNKS, keys, EntitySizeEstimator::estimate, chunk -> {
+                datastore.delete(chunk.toArray(new Key[0]));
+                return chunk;
+            });
+        }
+        delete(key);
+    }
+
+    /**
+     * This method runs the work in a read write transaction and commits it
+     * A transaction aborted by contention is rolled back and the work runs again in a new transaction
+     * after a jittered exponential backoff, until it commits, the max attempts are used or the deadline passed.
+     * The work should not have side effects outside of the transaction, since it may run more than once.
+     *
+     * @param work reads and writes through the TransactionalRepository and returns the result
+     * @return result of the committed attempt
+     * @throws DatastoreException if the last attempt failed
+     */
+    public <R> R runInTransaction(Function<TransactionalRepository<T>, R> work) throws DatastoreException {
+        return runInTransaction(work, false);
+    }
+
+    /**
+     * This method runs the work in a read only transaction, all reads see the same consistent snapshot
+     * Retries work the same as for runInTransaction.
+     *
+     * @param work reads through the TransactionalRepository and returns the result
+     * @return result of the successful attempt
+     * @throws DatastoreException if the last attempt failed
+     */
+    public <R> R runInReadOnlyTransaction(Function<TransactionalRepository<T>, R> work) throws DatastoreException {
+        return runInTransaction(work, true);
     }
 
     /**
      * This method finds entity by their given keyId from datastore and maps it
+     * Concurrent lookups of the same key share one lookup, see RepositoryOptions#getLookupBatchWindow for merging lookups of different keys.
      *
      * @param id
      * @return Mapped entity if found
@@ -194,6 +529,7 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
 
     /**
      * This method finds entity by their given keyName from datastore and maps it
+     * Concurrent lookups of the same key share one lookup, see RepositoryOptions#getLookupBatchWindow for merging lookups of different keys.
      *
      * @param name
      * @return Mapped entity if found
@@ -205,8 +541,77 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
 
     }
 
+    /**
+     * This method finds entities by their given ids or names with batched lookups and maps them
+     * Lookups are chunked to 1000 keys and the chunks run in parallel.
+     *
+     * @param ids Long ids, String names or Keys
+     * @return Mapped entities in input order and the keys which were not found
+     * @throws InvalidEntityException if an id is not a Long, String or Key, or mapping failed
+     */
+    public LookupResult<T> findByIds(Collection<?> ids) throws InvalidEntityException {
+        if (ids == null || ids.isEmpty()) {
+            return new LookupResult<>(Collections.emptyList(), Collections.emptySet());
+        }
+        List<Key> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            keys.add(toKey(id));
+        }
+        return findByKeys(keys);
+    }
+
+    /**
+     * This method finds entities by their given keys with batched lookups and maps them
+     *
+     * @param keys
+     * @return Mapped entities in input order and the keys which were not found
+     * @throws InvalidEntityException mapping failed
+     */
+    public LookupResult<T> findByKeys(List<Key> keys) throws InvalidEntityException {
+        if (keys == null || keys.isEmpty()) {
+            return new LookupResult<>(Collections.emptyList(), Collections.emptySet());
+        }
+        long start = System.nanoTime();
+        try {
+            LookupResult<T> result = lookup(keys);
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.FIND_BY_IDS, System.nanoTime() - start, result.getResults().size());
+            return result;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.FIND_BY_IDS, e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method returns the statistics of the entity cache
+     *
+     * @return stats, empty if the entity cache is disabled
+     */
+    public Optional<EntityCacheStats> getEntityCacheStats() {
+        return entityCache == null ? Optional.empty() : Optional.of(entityCache.stats());
+    }
+
+    /**
+     * This method returns the statistics of the query cache
+     *
+     * @return stats, empty if the query cache is disabled
+     */
+    public Optional<QueryCacheStats> getQueryCacheStats() {
+        return queryCache == null ? Optional.empty() : Optional.of(queryCache.stats());
+    }
+
+    /**
+     * This method returns the writes per second the write rate limit currently allows
+     *
+     * @return rate, empty if the write rate limit is disabled
+     */
+    public Optional<Double> getWriteRate() {
+        return writeRateLimiter == null ? Optional.empty() : Optional.of(writeRateLimiter.getRate());
+    }
+
     /**
      * This method checks if the entity exists in data store by its name.
+     * Looks the entity up by key, which is strongly consistent, served from the entity cache when it is enabled.
      *
      * @param name
      * @throws EntityNotFoundException if entity does not exist
@@ -217,6 +622,7 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
 
     /**
      * This method checks if the entity exists in data store by its id.
+     * Looks the entity up by key, which is strongly consistent, served from the entity cache when it is enabled.
      *
      * @param id
      * @throws EntityNotFoundException if entity does not exist
@@ -225,51 +631,315 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
         checkByKey(keyFactory.newKey(id));
     }
 
+    /**
+     * This method checks if the entity exists in data store by its name with a keys only query
+     * No properties are transferred, but the query is eventually consistent on Datastore in legacy mode,
+     * an entity written just before may not be found yet. Use checkById for a strongly consistent check.
+     *
+     * @param name
+     * @return true if the entity exists
+     */
+    public boolean existsById(String name) {
+        return existsByKey(keyFactory.newKey(name));
+    }
+
+    /**
+     * This method checks if the entity exists in data store by its id with a keys only query
+     * No properties are transferred, but the query is eventually consistent on Datastore in legacy mode,
+     * an entity written just before may not be found yet. Use checkById for a strongly consistent check.
+     *
+     * @param id
+     * @return true if the entity exists
+     */
+    public boolean existsById(Long id) {
+        return existsByKey(keyFactory.newKey(id));
+    }
+
+    /**
+     * This method checks if all entities exist in data store by their ids or names.
+     * Uses keys only queries, eventually consistent like existsById.
+     *
+     * @param ids Long ids, String names or Keys
+     * @throws EntityNotFoundException if any entity does not exist, listing the missing keys
+     * @throws InvalidEntityException  if an id is not a Long, String or Key
+     */
+    public void checkByIds(Collection<?> ids) throws EntityNotFoundException, InvalidEntityException {
+        Set<Key> missing = findMissingKeys(ids);
+        if (!missing.isEmpty()) {
+            throw new EntityNotFoundException(missing.stream()
+                    .map(key -> String.valueOf(key.getNameOrId()))
+                    .collect(Collectors.joining(", ")));
+        }
+    }
+
+    /**
+     * This method returns the keys of the given ids or names which have no entity in data store
+     * Every key is checked with a keys only query, with at most KeyExistence.MAX_CONCURRENT_CHECKS in flight. The queries are eventually
+     * consistent like existsById, use findByIds for a strongly consistent check.
+     *
+     * @param ids Long ids, String names or Keys
+     * @return missing keys in input order
+     * @throws InvalidEntityException if an id is not a Long, String or Key
+     */
+    public Set<Key> findMissingKeys(Collection<?> ids) throws InvalidEntityException {
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Key> keys = new ArrayList<>(ids.size());
+        for (Object id : ids) {
+            keys.add(toKey(id));
+        }
+        long start = System.nanoTime();
+        try {
+            Set<Key> missing = new HashSet<>();
+            List<Key> unknown = new ArrayList<>(keys.size());
+            for (Key key : new LinkedHashSet<>(keys)) {
+                Boolean cached = existsInCache(key);
+                if (cached == null) {
+                    unknown.add(key);
+                } else if (!cached) {
+                    missing.add(key);
+                }
+            }
+            Map<Key, Long> versions = cacheVersions(unknown);
+            for (Key key : keyExistence.findMissing(unknown)) {
+                missing.add(key);
+                if (entityCache != null) {
+                    entityCache.putMissingIfUnchanged(key, versions.get(key));
+                }
+            }
+            Set<Key> ordered = keys.stream().filter(missing::contains).collect(Collectors.toCollection(LinkedHashSet::new));
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.CHECK_BY_IDS, System.nanoTime() - start, keys.size());
+            return ordered;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.CHECK_BY_IDS, e);
+            throw e;
+        }
+    }
+
     /**
      * This method returns all mapped entities for the kind
-     * The query is limited to max 5000 entities which is the actual limit of Datastore
+     * The entities are fetched page by page with cursors, use stream() to avoid holding all of them in memory
      *
      * @return List of mapped entities
      */
     public List<T> findAll() {
-        StructuredQuery<Entity> query = Query.newEntityQueryBuilder()
+        return stream().collect(Collectors.toList());
+    }
+
+    /**
+     * This method returns a lazy stream over all mapped entities of the kind
+     *
+     * @return Stream of mapped entities
+     */
+    public Stream<T> stream() {
+        return stream(Query.newEntityQueryBuilder()
                 .setKind(getKind().getKindIdentifier())
-                .setLimit(MAX_QUERY_LIMIT)
-                .build();
+                .build(), null);
+    }
+
+    /**
+     * This method returns a lazy stream over the mapped query results
+     * Results are fetched page by page with cursors and mapped as they are consumed.
+     * The query limit is the total limit of the stream, null for no limit.
+     *
+     * @param structuredQuery
+     * @return Stream of mapped entities
+     */
+    public Stream<T> stream(StructuredQuery<Entity> structuredQuery) {
+        return stream(structuredQuery, null);
+    }
+
+    /**
+     * This method returns a lazy stream over the mapped query results, resumed after the given cursor token
+     *
+     * @param structuredQuery
+     * @param cursorToken     cursor token of a QueryPage, null to start from the beginning
+     * @return Stream of mapped entities
+     */
+    public Stream<T> stream(StructuredQuery<Entity> structuredQuery, String cursorToken) {
+        return newPager(structuredQuery).stream(cursorToken);
+    }
+
+    /**
+     * This method fetches one page of mapped query results
+     * The limit of the query applies over all pages, the cursor token carries the results left.
+     *
+     * @param structuredQuery
+     * @param cursorToken     cursor token of the previous page, null for the first page
+     * @return QueryPage with the cursor token of the next page
+     */
+    public QueryPage<T> fetchPage(StructuredQuery<Entity> structuredQuery, String cursorToken) {
+        long start = System.nanoTime();
+        try {
+            QueryPage<T> page = newPager(structuredQuery).fetchPage(cursorToken);
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.FETCH_PAGE, System.nanoTime() - start, page.getResults().size());
+            return page;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.FETCH_PAGE, e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method pages through the query results and passes every page to the consumer
+     * The cursor token of each page can be stored to resume a long scan after a restart.
+     *
+     * @param structuredQuery
+     * @param cursorToken     cursor token to resume from, null to start from the beginning
+     * @param consumer
+     */
+    public void forEachPage(StructuredQuery<Entity> structuredQuery, String cursorToken, Consumer<QueryPage<T>> consumer) {
+        newPager(structuredQuery).forEachPage(cursorToken, consumer);
+    }
+
+    /**
+     * This method scans all entities of the kind in parallel key ranges and passes every mapped entity to the consumer
+     * The ranges are split by sampling __scatter__ keys and paged through with their own cursors, on a thread per range
+     * started for the scan, so the consumer can write and look up through the repository.
+     * The consumer is called concurrently from the worker threads, in no particular order, and has to be thread safe.
+     *
+     * @param shards   wanted number of parallel ranges, fewer are used for small kinds
+     * @param consumer
+     * @return number of scanned entities
+     */
+    public long parallelScan(int shards, Consumer<T> consumer) {
+        return parallelScan(shards, null, consumer);
+    }
 
-        return executeQuery(query);
+    /**
+     * This method scans all entities of the kind in parallel key ranges on the given executor and passes every mapped entity to the consumer
+     * The consumer must not wait for work queued to the same executor, e.g. the repository executor when it writes or looks up in batches.
+     *
+     * @param shards   wanted number of parallel ranges, fewer are used for small kinds
+     * @param executor executor the ranges are scanned on, null for a thread per range
+     * @param consumer
+     * @return number of scanned entities
+     */
+    public long parallelScan(int shards, Executor executor, Consumer<T> consumer) {
+        long start = System.nanoTime();
+        try {
+            long count = parallelScanner.scan(kindIdentifier, shards, entity -> {
+                validateEntityOrThrow(entity);
+                return this.<T>map(entity);
+            }, consumer, executor);
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.SCAN, System.nanoTime() - start, (int) Math.min(count, Integer.MAX_VALUE));
+            return count;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.SCAN, e);
+            throw e;
+        }
     }
 
     /**
      * This method returns count of entities
+     * Runs parallel keys only scans over key range shards, so it reads every key of the kind.
+     * Use approximateCount where a cached count will do.
      *
      * @return count
      */
     public long count() {
-        return Iterators.size(datastore.run(Query.newKeyQueryBuilder()
-                .setKind(getKind().getKindIdentifier()).build()));
+        return count(null);
+    }
+
+    /**
+     * This method returns count of entities matching the filter
+     * Runs a single keys only scan over the matching keys
+     *
+     * @param filter
+     * @return count
+     */
+    public long count(Filter filter) {
+        long start = System.nanoTime();
+        try {
+            long count = kindCounter.count(filter);
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.COUNT, System.nanoTime() - start, 0);
+            return count;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.COUNT, e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method returns count of entities, cached for the count cache ttl of the repository options
+     * Meant for dashboards, the result may be stale by up to the ttl
+     *
+     * @return approximate count
+     */
+    public long approximateCount() {
+        return kindCounter.approximateCount();
     }
 
     /**
      * This method deletes all entities for the kind
+     * Use truncate to get progress reports and the exception on failure
      *
+     * @return true if all entities are deleted, false if the operation failed
      */
     public boolean deleteAll() {
         try {
-            StructuredQuery<Key> query = getKeyQueryBuilder().build();
-            List<Key> keys = parseKeyQueryResult(datastore.run(query));
-            if (!keys.isEmpty()) {
-                delete(keys);
-                return deleteAll();
-            } else {
-                return true;
-            }
+            truncate(null);
+            return true;
         } catch (Exception e) {
             log.error("Exception on deleteAll operation!", e);
             return false;
         }
     }
 
+    /**
+     * This method deletes all entities for the kind
+     * Keys are fetched page by page while delete batches run in parallel
+     *
+     * @param listener called from worker threads after every deleted batch, nullable
+     * @return final progress with deleted count and throughput
+     */
+    public DeleteProgress truncate(Consumer<DeleteProgress> listener) {
+        return deleteByFilter(null, listener);
+    }
+
+    /**
+     * This method deletes all entities for the kind matching the filter
+     * Keys are fetched page by page while delete batches run in parallel
+     *
+     * @param filter   nullable for all entities
+     * @param listener called from worker threads after every deleted batch, nullable
+     * @return final progress with deleted count and throughput
+     */
+    public DeleteProgress deleteByFilter(Filter filter, Consumer<DeleteProgress> listener) {
+        RepositoryOperation operation = filter == null ? RepositoryOperation.DELETE_ALL : RepositoryOperation.DELETE_BY_FILTER;
+        KeyQuery.Builder builder = Query.newKeyQueryBuilder().setKind(getKind().getKindIdentifier());
+        if (filter != null) {
+            builder.setFilter(filter);
+        }
+        long start = System.nanoTime();
+        try {
+            DeleteProgress progress = bulkDeleter.delete(builder.build(), listener);
+            metrics.recordOperation(kindIdentifier, operation, System.nanoTime() - start, (int) progress.getDeleted());
+            return progress;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, operation, e);
+            throw e;
+        } finally {
+            kindCounter.invalidate();
+            coalescingLookup.forgetAll();
+            if (entityCache != null) {
+                entityCache.invalidateAll();
+            }
+            invalidateQueries();
+        }
+    }
+
+
+    /**
+     * This method starts a fluent query on the kind with the default limit
+     * Properties are validated against the kind, queries with QueryParameters can be compiled into a QueryTemplate.
+     *
+     * @return RepositoryQuery
+     */
+    public RepositoryQuery<T> query() {
+        return new RepositoryQuery<>(this, defaultQueryLimit);
+    }
 
     /**
      * This method return a query builder with given limit
@@ -305,6 +975,27 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
                 .setLimit(MAX_QUERY_LIMIT);
     }
 
+    /**
+     * This method return a projection query builder for the given fields with default limit
+     * Only indexed properties can be projected, entities without an indexed value for every field are not returned.
+     *
+     * @param fields projected properties
+     * @return ProjectionEntityQuery.Builder
+     */
+    public ProjectionEntityQuery.Builder getProjectionQueryBuilder(BaseKind... fields) {
+        String[] properties = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            properties[i] = fields[i].value();
+        }
+        ProjectionEntityQuery.Builder builder = Query.newProjectionEntityQueryBuilder()
+                .setKind(getKind().getKindIdentifier())
+                .setLimit(defaultQueryLimit);
+        if (properties.length > 0) {
+            builder.setProjection(properties[0], Arrays.copyOfRange(properties, 1, properties.length));
+        }
+        return builder;
+    }
+
     /**
      * This method needs to be implemented to determine the kind for repository.
      *
@@ -321,16 +1012,70 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
      */
     protected abstract <T> T map(Entity entity) throws InvalidEntityException;
 
+    /**
+     * This method creates the key of the entity from its BaseEntity#getKey
+     * Long ids and String names become keys of the kind, Keys are used as they are
+     * and null gets an id from the id pool of the kind.
+     *
+     * @param baseEntity
+     * @return Key, null if the key type is not supported
+     */
     public Key createKey(BaseEntity baseEntity) {
+        return createKey(null, baseEntity);
+    }
+
+    /**
+     * This method creates the key of the entity below the parent from its BaseEntity#getKey
+     * Long ids and String names become keys of the kind below the parent, Keys are used as they are
+     * and null gets an id from the id pool of the parent.
+     *
+     * @param parent     nullable for a key without parent
+     * @param baseEntity
+     * @return Key, null if the key type is not supported
+     */
+    public Key createKey(Key parent, BaseEntity baseEntity) {
         Object key = baseEntity.getKey();
-        if (key instanceof Long)
-            return keyFactory.newKey((Long) key);
+        if (key instanceof Key)
+            return (Key) key;
+        else if (key == null)
+            return newKey(parent);
+        else if (key instanceof Long)
+            return parent == null ? keyFactory.newKey((Long) key) : Key.newBuilder(parent, kindIdentifier, (Long) key).build();
         else if (key instanceof String)
-            return keyFactory.newKey((String) key);
+            return parent == null ? keyFactory.newKey((String) key) : Key.newBuilder(parent, kindIdentifier, (String) key).build();
         else
             return null;
     }
 
+    /**
+     * This method returns a key of the kind with an id from the id pool
+     *
+     * @return Key
+     */
+    public Key newKey() {
+        return newKey(null);
+    }
+
+    /**
+     * This method returns a key of the kind below the parent with an id from the id pool of the parent
+     *
+     * @param parent nullable for a key without parent
+     * @return Key
+     */
+    public Key newKey(Key parent) {
+        return idAllocator.allocate(incompleteKey(parent));
+    }
+
+    /**
+     * This method returns keys of the kind with ids from the id pool
+     *
+     * @param count
+     * @return Keys with distinct ids
+     */
+    public List<Key> newKeys(int count) {
+        return idAllocator.allocate(incompleteKey(null), count);
+    }
+
     /**
      * This is the generic method which parse the query result returned from Datastore
      *
@@ -364,22 +1109,393 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
         return Lists.newArrayList(queryResults);
     }
 
+    private Key toKey(Object id) throws InvalidEntityException {
+        if (id instanceof Key)
+            return (Key) id;
+        else if (id instanceof Long)
+            return keyFactory.newKey((Long) id);
+        else if (id instanceof String)
+            return keyFactory.newKey((String) id);
+        else
+            throw new InvalidEntityException("id " + id + " is not a Long, String or Key");
+    }
+
+    private QueryPager<Entity, T> newPager(StructuredQuery<Entity> structuredQuery) {
+        return new QueryPager<>(datastore, structuredQuery, options.getQueryPageSize(), entity -> {
+            validateEntityOrThrow(entity);
+            return this.<T>map(entity);
+        });
+    }
+
+    private IncompleteKey incompleteKey(Key parent) {
+        return parent == null ? keyFactory.newKey() : IncompleteKey.newBuilder(parent, kindIdentifier).build();
+    }
+
+    private Entity complete(FullEntity<?> entity) {
+        if (entity instanceof Entity) {
+            return (Entity) entity;
+        }
+        IncompleteKey key = entity.getKey();
+        return Entity.newBuilder(key instanceof Key ? (Key) key : idAllocator.allocate(key), entity).build();
+    }
+
+    private Map<Key, Entity> fetchChunks(Entity entity, BaseKind field) {
+        List<Key> keys = LargeValueCodec.chunkKeys(entity, field.value());
+        return keys.isEmpty() ? Collections.emptyMap() : batchLookup.fetch(keys, Function.identity());
+    }
+
+    private void deleteChunks(Entity previous, Entity current) {
+        Set<Key> stale = new LinkedHashSet<>();
+        for (String property : previous.getNames()) {
+            stale.addAll(LargeValueCodec.chunkKeys(previous, property));
+        }
+        for (String property : current.getNames()) {
+            stale.removeAll(LargeValueCodec.chunkKeys(current, property));
+        }
+        if (stale.isEmpty()) {
+            return;
+        }
+        try {
+            writeLargeValueChunks(RepositoryOperation.DELETE_LARGE_VALUE_CHUNKS, new ArrayList<>(stale), EntitySizeEstimator::estimate, chunk -> {
+                datastore.delete(chunk.toArray(new Key[0]));
+                return chunk;
+            });
+        } catch (RuntimeException e) {
+            // the entity does not point to them anymore, deleteWithLargeValues removes them with the entity
+            log.warn("Replaced large value chunks of {} could not be deleted", previous.getKey(), e);
+        }
+    }
+
+    private <I, O> void writeLargeValueChunks(RepositoryOperation operation, List<I> input, ToLongFunction<? super I> sizer,
+                                              Function<List<I>, List<O>> writer) {
+        long start = System.nanoTime();
+        try {
+            batchWriter.write(operation, input, sizer, writer);
+            metrics.recordOperation(kindIdentifier, operation, System.nanoTime() - start, input.size());
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, operation, e);
+            throw e;
+        }
+    }
+
+    private List<String> toIds(List<Entity> entities) {
+        return entities.stream()
+                .map(Entity::getKey)
+                .map(Key::getNameOrId)
+                .map(Object::toString)
+                .collect(Collectors.toList());
+    }
+
+    private List<Entity> cacheWritten(List<Entity> chunk, Supplier<List<Entity>> write) {
+        List<Entity> written;
+        try {
+            written = write.get();
+        } catch (RuntimeException e) {
+            if (entityCache != null) {
+                // the outcome of a failed commit is unknown
+                chunk.forEach(entity -> entityCache.invalidate(entity.getKey()));
+            }
+            throw e;
+        } finally {
+            // lookups started before the write must not be shared with later callers, nor be cached after it
+            coalescingLookup.forget(Lists.transform(chunk, Entity::getKey));
+        }
+        if (entityCache != null) {
+            entityCache.putAll(written);
+        }
+        return written;
+    }
+
+    private Entity getEntity(Key key) {
+        if (entityCache == null) {
+            return coalescingLookup.get(key);
+        }
+        if (entityCache.isMissing(key)) {
+            return null;
+        }
+        Entity entity = entityCache.get(key);
+        if (entity == null) {
+            // a write racing the lookup changes the version, the result is then returned but not cached
+            long version = entityCache.version(key);
+            entity = coalescingLookup.get(key);
+            if (entity != null) {
+                entityCache.putIfUnchanged(entity, version);
+            } else {
+                entityCache.putMissingIfUnchanged(key, version);
+            }
+        }
+        return entity;
+    }
+
+    private LookupResult<T> lookup(List<Key> keys) throws InvalidEntityException {
+        Function<Entity, T> mapper = entity -> {
+            validateEntityOrThrow(entity);
+            return this.<T>map(entity);
+        };
+        if (entityCache == null) {
+            return batchLookup.lookup(keys, mapper);
+        }
+
+        Map<Key, T> found = new HashMap<>(keys.size() * 2);
+        Set<Key> misses = new LinkedHashSet<>();
+        for (Key key : new LinkedHashSet<>(keys)) {
+            if (entityCache.isMissing(key)) {
+                continue;
+            }
+            Entity entity = entityCache.get(key);
+            if (entity != null) {
+                found.put(key, mapper.apply(entity));
+            } else {
+                misses.add(key);
+            }
+        }
+        Map<Key, Long> versions = cacheVersions(misses);
+        Map<Key, T> fetched = batchLookup.fetch(misses, entity -> {
+            entityCache.putIfUnchanged(entity, versions.get(entity.getKey()));
+            return mapper.apply(entity);
+        });
+        for (Key key : misses) {
+            if (!fetched.containsKey(key)) {
+                entityCache.putMissingIfUnchanged(key, versions.get(key));
+            }
+        }
+        found.putAll(fetched);
+        return LookupResult.of(keys, found);
+    }
+
+    private <R> R runInTransaction(Function<TransactionalRepository<T>, R> work, boolean readOnly) {
+        RepositoryOperation operation = readOnly ? RepositoryOperation.READ_ONLY_TRANSACTION : RepositoryOperation.TRANSACTION;
+        long start = System.nanoTime();
+        long deadline = start + options.getTransactionDeadline().toNanos();
+        ByteString previousTransaction = null;
+        for (int attempt = 1; ; attempt++) {
+            Transaction transaction = datastore.newTransaction(transactionOptions(readOnly, previousTransaction));
+            TransactionalRepository<T> repository = new TransactionalRepository<>(this, transaction, readOnly, attempt);
+            try {
+                R result = work.apply(repository);
+                boolean committed = false;
+                try {
+                    transaction.commit();
+                    committed = true;
+                } finally {
+                    cacheCommitted(repository.getMutations(), committed);
+                }
+                metrics.recordRetries(kindIdentifier, operation, attempt - 1);
+                metrics.recordOperation(kindIdentifier, operation, System.nanoTime() - start, repository.getMutations().size());
+                return result;
+            } catch (DatastoreException e) {
+                long delay = transactionBackoff.delayNanos(attempt);
+                if (!isContention(e) || attempt >= options.getTransactionMaxAttempts() || System.nanoTime() + delay > deadline) {
+                    metrics.recordRetries(kindIdentifier, operation, attempt - 1);
+                    metrics.recordError(kindIdentifier, operation, e);
+                    throw e;
+                }
+                log.debug("Transaction on {} aborted on attempt {}, retrying in {} ms: {}",
+                        kindIdentifier, attempt, delay / 1_000_000, e.getMessage());
+                previousTransaction = readOnly ? null : transaction.getTransactionId();
+                rollback(transaction);
+                try {
+                    Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    metrics.recordRetries(kindIdentifier, operation, attempt - 1);
+                    metrics.recordError(kindIdentifier, operation, e);
+                    throw e;
+                }
+            } catch (RuntimeException e) {
+                metrics.recordRetries(kindIdentifier, operation, attempt - 1);
+                metrics.recordError(kindIdentifier, operation, e);
+                throw e;
+            } finally {
+                rollback(transaction);
+            }
+        }
+    }
+
+    private static TransactionOptions transactionOptions(boolean readOnly, ByteString previousTransaction) {
+        if (readOnly) {
+            return TransactionOptions.newBuilder()
+                    .setReadOnly(TransactionOptions.ReadOnly.getDefaultInstance())
+                    .build();
+        }
+        TransactionOptions.ReadWrite.Builder readWrite = TransactionOptions.ReadWrite.newBuilder();
+        if (previousTransaction != null) {
+            // lets Datastore give the retry the locks of the aborted transaction
+            readWrite.setPreviousTransaction(previousTransaction);
+        }
+        return TransactionOptions.newBuilder().setReadWrite(readWrite).build();
+    }
+
+    private static boolean isContention(DatastoreException e) {
+        return e.isRetryable() || e.getCode() == 10 || "ABORTED".equals(e.getReason());
+    }
+
+    private void rollback(Transaction transaction) {
+        if (!transaction.isActive()) {
+            return;
+        }
+        try {
+            transaction.rollback();
+        } catch (RuntimeException e) {
+            log.warn("Rollback of transaction on {} failed", kindIdentifier, e);
+        }
+    }
+
+    private void cacheCommitted(Map<Key, Entity> mutations, boolean committed) {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        coalescingLookup.forget(mutations.keySet());
+        invalidateQueries();
+        if (entityCache == null) {
+            return;
+        }
+        if (!committed) {
+            // the outcome of a failed commit is unknown
+            entityCache.invalidateAll(mutations.keySet());
+            return;
+        }
+        mutations.forEach((key, entity) -> {
+            if (entity != null) {
+                entityCache.put(entity);
+            } else {
+                entityCache.putMissing(key);
+            }
+        });
+    }
+
+    private void invalidateQueries() {
+        if (queryCache != null) {
+            queryCache.invalidateAll();
+        }
+    }
+
     private T findByKey(Key key) throws InvalidEntityException {
-        return map(datastore.get(key));
+        long start = System.nanoTime();
+        try {
+            T result = map(getEntity(key));
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.FIND_BY_ID, System.nanoTime() - start, result != null ? 1 : 0);
+            return result;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.FIND_BY_ID, e);
+            throw e;
+        }
     }
 
     private void checkByKey(Key key) throws EntityNotFoundException {
-        final Entity entity = datastore.get(key);
+        long start = System.nanoTime();
+        Entity entity;
+        try {
+            entity = getEntity(key);
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.CHECK_BY_ID, System.nanoTime() - start, entity != null ? 1 : 0);
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.CHECK_BY_ID, e);
+            throw e;
+        }
         validateEntityOrThrow(entity);
     }
 
+    private boolean existsByKey(Key key) {
+        long start = System.nanoTime();
+        try {
+            Boolean exists = existsInCache(key);
+            if (exists == null) {
+                long version = entityCache != null ? entityCache.version(key) : 0;
+                exists = keyExistence.exists(key);
+                if (!exists && entityCache != null) {
+                    entityCache.putMissingIfUnchanged(key, version);
+                }
+            }
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.CHECK_BY_ID, System.nanoTime() - start, exists ? 1 : 0);
+            return exists;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.CHECK_BY_ID, e);
+            throw e;
+        }
+    }
+
+    private Map<Key, Long> cacheVersions(Collection<Key> keys) {
+        if (entityCache == null) {
+            return Collections.emptyMap();
+        }
+        Map<Key, Long> versions = new HashMap<>(keys.size() * 2);
+        keys.forEach(key -> versions.put(key, entityCache.version(key)));
+        return versions;
+    }
+
+    private Boolean existsInCache(Key key) {
+        if (entityCache == null) {
+            return null;
+        }
+        if (entityCache.isMissing(key)) {
+            return false;
+        }
+        return entityCache.get(key) != null ? Boolean.TRUE : null;
+    }
+
     /**
      * This is the generic method which executes the entity queries and maps the results
+     * With the query cache enabled the results are cached per query and the returned list is unmodifiable.
      * @param structuredQuery<Entity>
      * @return Mapped entity list
      */
     public List<T> executeQuery(StructuredQuery<Entity> structuredQuery) {
-        return parseQueryResult(datastore.run(structuredQuery));
+        long start = System.nanoTime();
+        try {
+            List<T> results = queryCache != null
+                    ? queryCache.get(structuredQuery, () -> parseQueryResult(datastore.run(structuredQuery)))
+                    : parseQueryResult(datastore.run(structuredQuery));
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.QUERY, System.nanoTime() - start, results.size());
+            return results;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.QUERY, e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method executes the projection query and maps the results with the given mapper
+     * Only the projected properties are transferred, the mapper reads them directly from the ProjectionEntity.
+     *
+     * @param structuredQuery
+     * @param mapper          maps every result, e.g. to a list view object
+     * @return Mapped result list
+     */
+    public <R> List<R> executeProjectionQuery(StructuredQuery<ProjectionEntity> structuredQuery, Function<ProjectionEntity, R> mapper) {
+        long start = System.nanoTime();
+        try {
+            List<R> results = new ArrayList<>();
+            QueryResults<ProjectionEntity> queryResults = datastore.run(structuredQuery);
+            while (queryResults.hasNext()) {
+                results.add(mapper.apply(queryResults.next()));
+            }
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.PROJECTION_QUERY, System.nanoTime() - start, results.size());
+            return results;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.PROJECTION_QUERY, e);
+            throw e;
+        }
+    }
+
+    /**
+     * This method fetches one page of projection query results mapped with the given mapper
+     *
+     * @param structuredQuery
+     * @param cursorToken     cursor token of the previous page, null for the first page
+     * @param mapper          maps every result, e.g. to a list view object
+     * @return QueryPage with the cursor token of the next page
+     */
+    public <R> QueryPage<R> fetchProjectionPage(StructuredQuery<ProjectionEntity> structuredQuery, String cursorToken,
+                                                Function<ProjectionEntity, R> mapper) {
+        long start = System.nanoTime();
+        try {
+            QueryPage<R> page = new QueryPager<>(datastore, structuredQuery, options.getQueryPageSize(), mapper).fetchPage(cursorToken);
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.FETCH_PAGE, System.nanoTime() - start, page.getResults().size());
+            return page;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.FETCH_PAGE, e);
+            throw e;
+        }
     }
 
     /**
@@ -388,6 +1504,14 @@ public abstract class DatastoreRepository<T extends BaseEntity> {
      * @return Key list
      */
     public List<Key> executeKeyQuery(StructuredQuery<Key> structuredQuery) {
-        return parseKeyQueryResult(datastore.run(structuredQuery));
+        long start = System.nanoTime();
+        try {
+            List<Key> results = parseKeyQueryResult(datastore.run(structuredQuery));
+            metrics.recordOperation(kindIdentifier, RepositoryOperation.KEY_QUERY, System.nanoTime() - start, results.size());
+            return results;
+        } catch (RuntimeException e) {
+            metrics.recordError(kindIdentifier, RepositoryOperation.KEY_QUERY, e);
+            throw e;
+        }
     }
 }
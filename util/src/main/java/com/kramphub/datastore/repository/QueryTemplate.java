@@ -0,0 +1,188 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.*;
+import com.google.cloud.datastore.StructuredQuery.CompositeFilter;
+import com.google.cloud.datastore.StructuredQuery.Filter;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.google.cloud.datastore.StructuredQuery.PropertyFilter;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.query.QueryPage;
+import com.kramphub.datastore.query.QueryParameter;
+import com.kramphub.datastore.query.QueryValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compiled RepositoryQuery, immutable and safe to share between threads, e.g. as a field of a service.
+ * The query, its orders and all filters without parameters are built once.
+ * Executing the template with parameter values only builds the parameterized filters,
+ * a template without parameters executes the same query object every time.
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class QueryTemplate<T extends BaseEntity> {
+    private final DatastoreRepository<T> repository;
+    private final EntityQuery query;
+    private final KeyQuery keyQuery;
+    private final List<Filter> staticFilters;
+    private final List<RepositoryQuery.Condition> parameterized;
+
+    QueryTemplate(DatastoreRepository<T> repository, List<RepositoryQuery.Condition> conditions, List<OrderBy> orders,
+                  Key ancestor, Integer limit) {
+        validate(conditions, orders);
+        this.repository = repository;
+        this.staticFilters = new ArrayList<>();
+        this.parameterized = new ArrayList<>();
+        if (ancestor != null) {
+            staticFilters.add(PropertyFilter.hasAncestor(ancestor));
+        }
+        for (RepositoryQuery.Condition condition : conditions) {
+            if (condition.value instanceof QueryParameter) {
+                parameterized.add(condition);
+            } else {
+                staticFilters.add(toFilter(condition, (Value<?>) condition.value));
+            }
+        }
+        Filter filter = parameterized.isEmpty() ? and(staticFilters) : null;
+        this.query = configure(Query.newEntityQueryBuilder(), repository.kindIdentifier, filter, orders, limit).build();
+        this.keyQuery = configure(Query.newKeyQueryBuilder(), repository.kindIdentifier, filter, orders, limit).build();
+    }
+
+    /**
+     * This method returns the query with the parameter values applied
+     *
+     * @param values one per parameter, in the order the parameters were added
+     * @return EntityQuery
+     * @throws IllegalArgumentException if the number of values does not match the parameters
+     */
+    public EntityQuery bind(Object... values) {
+        if (parameterized.isEmpty() && values.length == 0) {
+            return query;
+        }
+        return query.toBuilder().setFilter(filter(values)).build();
+    }
+
+    /**
+     * This method returns the keys only query with the parameter values applied
+     *
+     * @param values one per parameter, in the order the parameters were added
+     * @return KeyQuery
+     * @throws IllegalArgumentException if the number of values does not match the parameters
+     */
+    public KeyQuery bindKeys(Object... values) {
+        if (parameterized.isEmpty() && values.length == 0) {
+            return keyQuery;
+        }
+        return keyQuery.toBuilder().setFilter(filter(values)).build();
+    }
+
+    /**
+     * @see DatastoreRepository#executeQuery
+     */
+    public List<T> list(Object... values) {
+        return repository.executeQuery(bind(values));
+    }
+
+    /**
+     * @see DatastoreRepository#stream
+     */
+    public Stream<T> stream(Object... values) {
+        return repository.stream(bind(values));
+    }
+
+    /**
+     * @see DatastoreRepository#fetchPage
+     */
+    public QueryPage<T> fetchPage(String cursorToken, Object... values) {
+        return repository.fetchPage(bind(values), cursorToken);
+    }
+
+    /**
+     * @see DatastoreRepository#executeKeyQuery
+     */
+    public List<Key> keys(Object... values) {
+        return repository.executeKeyQuery(bindKeys(values));
+    }
+
+    /**
+     * @return number of values expected by bind
+     */
+    public int getParameterCount() {
+        return parameterized.size();
+    }
+
+    private Filter filter(Object... values) {
+        if (values.length != parameterized.size()) {
+            throw new IllegalArgumentException("Expected " + parameterized.size() + " values for parameters ["
+                    + parameterized.stream().map(condition -> condition.value.toString()).collect(Collectors.joining(", "))
+                    + "] but got " + values.length);
+        }
+        List<Filter> filters = new ArrayList<>(staticFilters.size() + values.length);
+        filters.addAll(staticFilters);
+        for (int i = 0; i < values.length; i++) {
+            filters.add(toFilter(parameterized.get(i), QueryValues.toValue(values[i])));
+        }
+        return and(filters);
+    }
+
+    private static <V, B extends StructuredQuery.Builder<V>> B configure(B builder, String kind, Filter filter,
+                                                                         List<OrderBy> orders, Integer limit) {
+        builder.setKind(kind).setLimit(limit);
+        if (filter != null) {
+            builder.setFilter(filter);
+        }
+        for (OrderBy order : orders) {
+            builder.addOrderBy(order);
+        }
+        return builder;
+    }
+
+    private static Filter and(List<Filter> filters) {
+        if (filters.isEmpty()) {
+            return null;
+        }
+        if (filters.size() == 1) {
+            return filters.get(0);
+        }
+        return CompositeFilter.and(filters.get(0), filters.subList(1, filters.size()).toArray(new Filter[0]));
+    }
+
+    private static Filter toFilter(RepositoryQuery.Condition condition, Value<?> value) {
+        switch (condition.operator) {
+            case EQUAL:
+                return PropertyFilter.eq(condition.property, value);
+            case LESS_THAN:
+                return PropertyFilter.lt(condition.property, value);
+            case LESS_THAN_OR_EQUAL:
+                return PropertyFilter.le(condition.property, value);
+            case GREATER_THAN:
+                return PropertyFilter.gt(condition.property, value);
+            case GREATER_THAN_OR_EQUAL:
+                return PropertyFilter.ge(condition.property, value);
+            default:
+                throw new IllegalArgumentException("Unsupported operator " + condition.operator);
+        }
+    }
+
+    private static void validate(List<RepositoryQuery.Condition> conditions, List<OrderBy> orders) {
+        String inequalityProperty = null;
+        for (RepositoryQuery.Condition condition : conditions) {
+            if (!condition.operator.isInequality()) {
+                continue;
+            }
+            if (inequalityProperty != null && !inequalityProperty.equals(condition.property)) {
+                throw new IllegalArgumentException("Inequality filters are only supported on a single property, found "
+                        + inequalityProperty + " and " + condition.property);
+            }
+            inequalityProperty = condition.property;
+        }
+        if (inequalityProperty != null && !orders.isEmpty() && !inequalityProperty.equals(orders.get(0).getProperty())) {
+            throw new IllegalArgumentException("The first order must be on the inequality property " + inequalityProperty
+                    + ", found " + orders.get(0).getProperty());
+        }
+    }
+}
@@ -0,0 +1,709 @@
+package com.kramphub.datastore.repository;
+
+import com.kramphub.datastore.concurrent.RepositoryExecutors;
+import com.kramphub.datastore.concurrent.WriteRateLimiter;
+import com.kramphub.datastore.metrics.RepositoryMetrics;
+import com.kramphub.datastore.query.BatchLookup;
+
+import java.time.Duration;
+import java.util.concurrent.Executor;
+
+/**
+ * Tuning options for DatastoreRepository
+ */
+@SuppressWarnings("unused")
+public class RepositoryOptions {
+    /**
+     * Max mutations per commit accepted by Datastore
+     */
+    public static final int MAX_BATCH_SIZE = 500;
+    /**
+     * Max commit size accepted by Datastore
+     */
+    public static final long MAX_BATCH_BYTES = 10L * 1024 * 1024;
+    /**
+     * Default chunk size, leaves headroom below MAX_BATCH_BYTES for the size estimation error
+     */
+    public static final long DEFAULT_BATCH_BYTES = 9L * 1024 * 1024;
+    /**
+     * Default number of entities fetched per page by cursor based queries
+     */
+    public static final int DEFAULT_QUERY_PAGE_SIZE = 500;
+    /**
+     * Default number of parallel key range scans of count
+     */
+    public static final int DEFAULT_COUNT_SHARDS = 8;
+    /**
+     * Default time an approximate count is reused
+     */
+    public static final Duration DEFAULT_COUNT_CACHE_TTL = Duration.ofMinutes(1);
+    /**
+     * Default number of delete batches in flight during bulk deletes
+     */
+    public static final int DEFAULT_DELETE_CONCURRENCY = 4;
+    /**
+     * Default number of async operations running at the same time
+     */
+    public static final int DEFAULT_ASYNC_CONCURRENCY = 64;
+    /**
+     * Default time an entity is cached
+     */
+    public static final Duration DEFAULT_ENTITY_CACHE_TTL = Duration.ofMinutes(5);
+    /**
+     * Default time a missing key is cached
+     */
+    public static final Duration DEFAULT_ENTITY_CACHE_NEGATIVE_TTL = Duration.ofSeconds(30);
+    /**
+     * Default time buffered writes wait before they are flushed
+     */
+    public static final Duration DEFAULT_BUFFER_FLUSH_INTERVAL = Duration.ofMillis(500);
+    /**
+     * Default max keys with a pending buffered write, further writers block until a flush makes room
+     */
+    public static final int DEFAULT_BUFFER_CAPACITY = 10_000;
+    /**
+     * Default max attempts of a transaction aborted by contention
+     */
+    public static final int DEFAULT_TRANSACTION_MAX_ATTEMPTS = 5;
+    /**
+     * Default upper bound of the backoff before the first transaction retry
+     */
+    public static final Duration DEFAULT_TRANSACTION_INITIAL_BACKOFF = Duration.ofMillis(100);
+    /**
+     * Default upper bound of the backoff before any transaction retry
+     */
+    public static final Duration DEFAULT_TRANSACTION_MAX_BACKOFF = Duration.ofSeconds(5);
+    /**
+     * Default time after which a transaction is not retried anymore
+     */
+    public static final Duration DEFAULT_TRANSACTION_DEADLINE = Duration.ofSeconds(60);
+    /**
+     * Default time single key lookups are collected into one multi get, zero only shares lookups of the same key
+     */
+    public static final Duration DEFAULT_LOOKUP_BATCH_WINDOW = Duration.ZERO;
+    /**
+     * Default ids allocated at once for keys created by the repository
+     */
+    public static final int DEFAULT_ID_BLOCK_SIZE = 100;
+    /**
+     * Default time query results are cached after they were loaded
+     */
+    public static final Duration DEFAULT_QUERY_CACHE_TTL = Duration.ofSeconds(30);
+    /**
+     * Default time after which cached query results are reloaded in the background
+     */
+    public static final Duration DEFAULT_QUERY_CACHE_REFRESH_AFTER = Duration.ofSeconds(10);
+    /**
+     * Max bytes of a large value stored in the entity itself, leaves headroom below the 1 MiB entity limit for the other properties
+     */
+    public static final int MAX_LARGE_VALUE_INLINE_BYTES = 1_000_000;
+    /**
+     * Default size from which large values are compressed
+     */
+    public static final int DEFAULT_LARGE_VALUE_THRESHOLD = 4 * 1024;
+    /**
+     * Default max bytes of a large value stored in the entity itself, larger values are split into chunk entities
+     */
+    public static final int DEFAULT_LARGE_VALUE_MAX_INLINE_BYTES = 900 * 1024;
+    /**
+     * Default time a write may take before the write rate is lowered
+     */
+    public static final Duration DEFAULT_WRITE_LATENCY_TARGET = Duration.ofSeconds(2);
+
+    private final int batchSize;
+    private final long batchBytes;
+    private final Executor executor;
+    private final int queryPageSize;
+    private final int countShards;
+    private final Duration countCacheTtl;
+    private final int deleteConcurrency;
+    private final int lookupBatchSize;
+    private final Duration lookupBatchWindow;
+    private final int idBlockSize;
+    private final Executor asyncExecutor;
+    private final int asyncConcurrency;
+    private final long entityCacheSize;
+    private final Duration entityCacheTtl;
+    private final Duration entityCacheNegativeTtl;
+    private final RepositoryMetrics metrics;
+    private final int bufferFlushSize;
+    private final Duration bufferFlushInterval;
+    private final int bufferCapacity;
+    private final int transactionMaxAttempts;
+    private final Duration transactionInitialBackoff;
+    private final Duration transactionMaxBackoff;
+    private final Duration transactionDeadline;
+    private final long queryCacheSize;
+    private final Duration queryCacheTtl;
+    private final Duration queryCacheRefreshAfter;
+    private final int largeValueThreshold;
+    private final int largeValueMaxInlineBytes;
+    private final double writeInitialRate;
+    private final Duration writeRampUpInterval;
+    private final Duration writeLatencyTarget;
+
+    private RepositoryOptions(Builder builder) {
+        this.batchSize = builder.batchSize;
+        this.batchBytes = builder.batchBytes;
+        this.queryPageSize = builder.queryPageSize;
+        this.countShards = builder.countShards;
+        this.countCacheTtl = builder.countCacheTtl;
+        this.deleteConcurrency = builder.deleteConcurrency;
+        this.lookupBatchSize = builder.lookupBatchSize;
+        this.lookupBatchWindow = builder.lookupBatchWindow;
+        this.idBlockSize = builder.idBlockSize;
+        this.asyncExecutor = builder.asyncExecutor != null ? builder.asyncExecutor : RepositoryExecutors.async();
+        this.asyncConcurrency = builder.asyncConcurrency;
+        this.entityCacheSize = builder.entityCacheSize;
+        this.entityCacheTtl = builder.entityCacheTtl;
+        this.entityCacheNegativeTtl = builder.entityCacheNegativeTtl;
+        this.executor = builder.executor != null ? builder.executor : RepositoryExecutors.shared();
+        this.metrics = builder.metrics != null ? builder.metrics : RepositoryMetrics.noop();
+        this.bufferFlushSize = builder.bufferFlushSize;
+        this.bufferFlushInterval = builder.bufferFlushInterval;
+        this.bufferCapacity = Math.max(builder.bufferCapacity, builder.bufferFlushSize);
+        this.transactionMaxAttempts = builder.transactionMaxAttempts;
+        this.transactionInitialBackoff = builder.transactionInitialBackoff;
+        this.transactionMaxBackoff = builder.transactionMaxBackoff;
+        this.transactionDeadline = builder.transactionDeadline;
+        this.queryCacheSize = builder.queryCacheSize;
+        this.queryCacheTtl = builder.queryCacheTtl;
+        this.queryCacheRefreshAfter = builder.queryCacheRefreshAfter;
+        this.largeValueThreshold = builder.largeValueThreshold;
+        this.largeValueMaxInlineBytes = builder.largeValueMaxInlineBytes;
+        this.writeInitialRate = builder.writeInitialRate;
+        this.writeRampUpInterval = builder.writeRampUpInterval;
+        this.writeLatencyTarget = builder.writeLatencyTarget;
+    }
+
+    public static RepositoryOptions defaults() {
+        return newBuilder().build();
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public long getBatchBytes() {
+        return batchBytes;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getQueryPageSize() {
+        return queryPageSize;
+    }
+
+    public int getCountShards() {
+        return countShards;
+    }
+
+    public Duration getCountCacheTtl() {
+        return countCacheTtl;
+    }
+
+    public int getDeleteConcurrency() {
+        return deleteConcurrency;
+    }
+
+    public int getLookupBatchSize() {
+        return lookupBatchSize;
+    }
+
+    public Duration getLookupBatchWindow() {
+        return lookupBatchWindow;
+    }
+
+    public int getIdBlockSize() {
+        return idBlockSize;
+    }
+
+    public Executor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    public int getAsyncConcurrency() {
+        return asyncConcurrency;
+    }
+
+    public long getEntityCacheSize() {
+        return entityCacheSize;
+    }
+
+    public Duration getEntityCacheTtl() {
+        return entityCacheTtl;
+    }
+
+    public Duration getEntityCacheNegativeTtl() {
+        return entityCacheNegativeTtl;
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    public int getBufferFlushSize() {
+        return bufferFlushSize;
+    }
+
+    public Duration getBufferFlushInterval() {
+        return bufferFlushInterval;
+    }
+
+    public int getBufferCapacity() {
+        return bufferCapacity;
+    }
+
+    public int getTransactionMaxAttempts() {
+        return transactionMaxAttempts;
+    }
+
+    public Duration getTransactionInitialBackoff() {
+        return transactionInitialBackoff;
+    }
+
+    public Duration getTransactionMaxBackoff() {
+        return transactionMaxBackoff;
+    }
+
+    public Duration getTransactionDeadline() {
+        return transactionDeadline;
+    }
+
+    public long getQueryCacheSize() {
+        return queryCacheSize;
+    }
+
+    public Duration getQueryCacheTtl() {
+        return queryCacheTtl;
+    }
+
+    public Duration getQueryCacheRefreshAfter() {
+        return queryCacheRefreshAfter;
+    }
+
+    public int getLargeValueThreshold() {
+        return largeValueThreshold;
+    }
+
+    public int getLargeValueMaxInlineBytes() {
+        return largeValueMaxInlineBytes;
+    }
+
+    public double getWriteInitialRate() {
+        return writeInitialRate;
+    }
+
+    public Duration getWriteRampUpInterval() {
+        return writeRampUpInterval;
+    }
+
+    public Duration getWriteLatencyTarget() {
+        return writeLatencyTarget;
+    }
+
+    public static class Builder {
+        private int batchSize = MAX_BATCH_SIZE;
+        private long batchBytes = DEFAULT_BATCH_BYTES;
+        private Executor executor;
+        private int queryPageSize = DEFAULT_QUERY_PAGE_SIZE;
+        private int countShards = DEFAULT_COUNT_SHARDS;
+        private Duration countCacheTtl = DEFAULT_COUNT_CACHE_TTL;
+        private int deleteConcurrency = DEFAULT_DELETE_CONCURRENCY;
+        private int lookupBatchSize = BatchLookup.MAX_LOOKUP_SIZE;
+        private Duration lookupBatchWindow = DEFAULT_LOOKUP_BATCH_WINDOW;
+        private int idBlockSize = DEFAULT_ID_BLOCK_SIZE;
+        private Executor asyncExecutor;
+        private int asyncConcurrency = DEFAULT_ASYNC_CONCURRENCY;
+        private long entityCacheSize;
+        private Duration entityCacheTtl = DEFAULT_ENTITY_CACHE_TTL;
+        private Duration entityCacheNegativeTtl = DEFAULT_ENTITY_CACHE_NEGATIVE_TTL;
+        private RepositoryMetrics metrics;
+        private int bufferFlushSize = MAX_BATCH_SIZE;
+        private Duration bufferFlushInterval = DEFAULT_BUFFER_FLUSH_INTERVAL;
+        private int bufferCapacity = DEFAULT_BUFFER_CAPACITY;
+        private int transactionMaxAttempts = DEFAULT_TRANSACTION_MAX_ATTEMPTS;
+        private Duration transactionInitialBackoff = DEFAULT_TRANSACTION_INITIAL_BACKOFF;
+        private Duration transactionMaxBackoff = DEFAULT_TRANSACTION_MAX_BACKOFF;
+        private Duration transactionDeadline = DEFAULT_TRANSACTION_DEADLINE;
+        private long queryCacheSize;
+        private Duration queryCacheTtl = DEFAULT_QUERY_CACHE_TTL;
+        private Duration queryCacheRefreshAfter = DEFAULT_QUERY_CACHE_REFRESH_AFTER;
+        private int largeValueThreshold = DEFAULT_LARGE_VALUE_THRESHOLD;
+        private int largeValueMaxInlineBytes = DEFAULT_LARGE_VALUE_MAX_INLINE_BYTES;
+        private double writeInitialRate;
+        private Duration writeRampUpInterval = WriteRateLimiter.RAMP_UP_INTERVAL;
+        private Duration writeLatencyTarget = DEFAULT_WRITE_LATENCY_TARGET;
+
+        private Builder() {
+        }
+
+        /**
+         * Max entities or keys written in one commit, max 500
+         *
+         * @param batchSize
+         * @return Builder
+         */
+        public Builder setBatchSize(int batchSize) {
+            this.batchSize = batchSize > MAX_BATCH_SIZE ? MAX_BATCH_SIZE : batchSize < 1 ? MAX_BATCH_SIZE : batchSize;
+            return this;
+        }
+
+        /**
+         * Max estimated bytes written in one commit, max 10 MiB
+         *
+         * @param batchBytes
+         * @return Builder
+         */
+        public Builder setBatchBytes(long batchBytes) {
+            this.batchBytes = batchBytes > MAX_BATCH_BYTES ? MAX_BATCH_BYTES : batchBytes < 1 ? DEFAULT_BATCH_BYTES : batchBytes;
+            return this;
+        }
+
+        /**
+         * Executor the chunks of batch writes run on, defaults to a shared bounded pool
+         *
+         * @param executor
+         * @return Builder
+         */
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Number of entities fetched per page by cursor based queries
+         *
+         * @param queryPageSize
+         * @return Builder
+         */
+        public Builder setQueryPageSize(int queryPageSize) {
+            this.queryPageSize = queryPageSize < 1 ? DEFAULT_QUERY_PAGE_SIZE : queryPageSize;
+            return this;
+        }
+
+        /**
+         * Number of parallel key range scans used by count, 1 disables sharding
+         *
+         * @param countShards
+         * @return Builder
+         */
+        public Builder setCountShards(int countShards) {
+            this.countShards = countShards < 1 ? 1 : countShards;
+            return this;
+        }
+
+        /**
+         * Time an approximate count is reused before it is counted again
+         *
+         * @param countCacheTtl
+         * @return Builder
+         */
+        public Builder setCountCacheTtl(Duration countCacheTtl) {
+            this.countCacheTtl = countCacheTtl == null || countCacheTtl.isNegative() ? Duration.ZERO : countCacheTtl;
+            return this;
+        }
+
+        /**
+         * Max delete batches in flight during bulk deletes
+         *
+         * @param deleteConcurrency
+         * @return Builder
+         */
+        public Builder setDeleteConcurrency(int deleteConcurrency) {
+            this.deleteConcurrency = deleteConcurrency < 1 ? DEFAULT_DELETE_CONCURRENCY : deleteConcurrency;
+            return this;
+        }
+
+        /**
+         * Max keys per lookup of batched gets, max 1000
+         *
+         * @param lookupBatchSize
+         * @return Builder
+         */
+        public Builder setLookupBatchSize(int lookupBatchSize) {
+            this.lookupBatchSize = lookupBatchSize > BatchLookup.MAX_LOOKUP_SIZE || lookupBatchSize < 1
+                    ? BatchLookup.MAX_LOOKUP_SIZE : lookupBatchSize;
+            return this;
+        }
+
+        /**
+         * Time concurrent single key lookups of findById are collected into one multi get of max the lookup batch size.
+         * Concurrent lookups of the same key always share one lookup, the window also merges lookups of different keys
+         * at the cost of waiting for it, a few milliseconds suits hot read paths. Zero disables merging which is the default.
+         *
+         * @param lookupBatchWindow
+         * @return Builder
+         */
+        public Builder setLookupBatchWindow(Duration lookupBatchWindow) {
+            this.lookupBatchWindow = lookupBatchWindow == null || lookupBatchWindow.isNegative()
+                    ? DEFAULT_LOOKUP_BATCH_WINDOW : lookupBatchWindow;
+            return this;
+        }
+
+        /**
+         * Ids allocated at once for keys without a parent created by the repository,
+         * the pool is refilled in the background when half of a block is left
+         *
+         * @param idBlockSize
+         * @return Builder
+         */
+        public Builder setIdBlockSize(int idBlockSize) {
+            this.idBlockSize = idBlockSize < 1 ? DEFAULT_ID_BLOCK_SIZE : idBlockSize;
+            return this;
+        }
+
+        /**
+         * Executor async operations run on, defaults to virtual threads on JDK 21+ and a bounded pool before.
+         * Should not be the batch executor, since async operations block on their batch chunks.
+         *
+         * @param asyncExecutor
+         * @return Builder
+         */
+        public Builder setAsyncExecutor(Executor asyncExecutor) {
+            this.asyncExecutor = asyncExecutor;
+            return this;
+        }
+
+        /**
+         * Max async operations running at the same time, further operations are queued
+         *
+         * @param asyncConcurrency
+         * @return Builder
+         */
+        public Builder setAsyncConcurrency(int asyncConcurrency) {
+            this.asyncConcurrency = asyncConcurrency < 1 ? DEFAULT_ASYNC_CONCURRENCY : asyncConcurrency;
+            return this;
+        }
+
+        /**
+         * Max entities in the read through entity cache, 0 disables the cache which is the default
+         *
+         * @param entityCacheSize
+         * @return Builder
+         */
+        public Builder setEntityCacheSize(long entityCacheSize) {
+            this.entityCacheSize = entityCacheSize < 0 ? 0 : entityCacheSize;
+            return this;
+        }
+
+        /**
+         * Time an entity is cached after it was read or written
+         *
+         * @param entityCacheTtl
+         * @return Builder
+         */
+        public Builder setEntityCacheTtl(Duration entityCacheTtl) {
+            this.entityCacheTtl = entityCacheTtl == null || entityCacheTtl.isNegative() ? DEFAULT_ENTITY_CACHE_TTL : entityCacheTtl;
+            return this;
+        }
+
+        /**
+         * Time a missing key is cached, zero disables negative caching
+         *
+         * @param entityCacheNegativeTtl
+         * @return Builder
+         */
+        public Builder setEntityCacheNegativeTtl(Duration entityCacheNegativeTtl) {
+            this.entityCacheNegativeTtl = entityCacheNegativeTtl == null || entityCacheNegativeTtl.isNegative()
+                    ? Duration.ZERO : entityCacheNegativeTtl;
+            return this;
+        }
+
+        /**
+         * Receives operation timings, entity counts, batch sizes and errors, defaults to no metrics
+         *
+         * @param metrics
+         * @return Builder
+         */
+        public Builder setMetrics(RepositoryMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Pending buffered writes which trigger a flush before the flush interval, max 500
+         *
+         * @param bufferFlushSize
+         * @return Builder
+         */
+        public Builder setBufferFlushSize(int bufferFlushSize) {
+            this.bufferFlushSize = bufferFlushSize > MAX_BATCH_SIZE || bufferFlushSize < 1 ? MAX_BATCH_SIZE : bufferFlushSize;
+            return this;
+        }
+
+        /**
+         * Max time a buffered write waits before it is flushed
+         *
+         * @param bufferFlushInterval
+         * @return Builder
+         */
+        public Builder setBufferFlushInterval(Duration bufferFlushInterval) {
+            this.bufferFlushInterval = bufferFlushInterval == null || bufferFlushInterval.isNegative() || bufferFlushInterval.isZero()
+                    ? DEFAULT_BUFFER_FLUSH_INTERVAL : bufferFlushInterval;
+            return this;
+        }
+
+        /**
+         * Max keys with a pending buffered write, at least the flush size. Writes of new keys block while the buffer is full.
+         *
+         * @param bufferCapacity
+         * @return Builder
+         */
+        public Builder setBufferCapacity(int bufferCapacity) {
+            this.bufferCapacity = bufferCapacity < 1 ? DEFAULT_BUFFER_CAPACITY : bufferCapacity;
+            return this;
+        }
+
+        /**
+         * Max attempts of a transaction aborted by contention, 1 disables retries
+         *
+         * @param transactionMaxAttempts
+         * @return Builder
+         */
+        public Builder setTransactionMaxAttempts(int transactionMaxAttempts) {
+            this.transactionMaxAttempts = transactionMaxAttempts < 1 ? DEFAULT_TRANSACTION_MAX_ATTEMPTS : transactionMaxAttempts;
+            return this;
+        }
+
+        /**
+         * Upper bound of the jittered backoff before the first transaction retry, doubled on every further retry
+         *
+         * @param transactionInitialBackoff
+         * @return Builder
+         */
+        public Builder setTransactionInitialBackoff(Duration transactionInitialBackoff) {
+            this.transactionInitialBackoff = transactionInitialBackoff == null || transactionInitialBackoff.isNegative()
+                    ? DEFAULT_TRANSACTION_INITIAL_BACKOFF : transactionInitialBackoff;
+            return this;
+        }
+
+        /**
+         * Upper bound of the jittered backoff before any transaction retry
+         *
+         * @param transactionMaxBackoff
+         * @return Builder
+         */
+        public Builder setTransactionMaxBackoff(Duration transactionMaxBackoff) {
+            this.transactionMaxBackoff = transactionMaxBackoff == null || transactionMaxBackoff.isNegative()
+                    ? DEFAULT_TRANSACTION_MAX_BACKOFF : transactionMaxBackoff;
+            return this;
+        }
+
+        /**
+         * Time since the first attempt after which a transaction is not retried anymore
+         *
+         * @param transactionDeadline
+         * @return Builder
+         */
+        public Builder setTransactionDeadline(Duration transactionDeadline) {
+            this.transactionDeadline = transactionDeadline == null || transactionDeadline.isNegative()
+                    ? DEFAULT_TRANSACTION_DEADLINE : transactionDeadline;
+            return this;
+        }
+
+        /**
+         * Max query results cached over all queries of the repository, zero disables the query cache.
+         * Writes through the repository drop all cached results of the kind, writes by other clients are seen after the ttl.
+         *
+         * @param queryCacheSize
+         * @return Builder
+         */
+        public Builder setQueryCacheSize(long queryCacheSize) {
+            this.queryCacheSize = queryCacheSize < 0 ? 0 : queryCacheSize;
+            return this;
+        }
+
+        /**
+         * Time query results are cached after they were loaded
+         *
+         * @param queryCacheTtl
+         * @return Builder
+         */
+        public Builder setQueryCacheTtl(Duration queryCacheTtl) {
+            this.queryCacheTtl = queryCacheTtl == null || queryCacheTtl.isNegative() ? DEFAULT_QUERY_CACHE_TTL : queryCacheTtl;
+            return this;
+        }
+
+        /**
+         * Time after which cached query results are still returned but reloaded in the background, at least the ttl disables refreshes
+         *
+         * @param queryCacheRefreshAfter
+         * @return Builder
+         */
+        public Builder setQueryCacheRefreshAfter(Duration queryCacheRefreshAfter) {
+            this.queryCacheRefreshAfter = queryCacheRefreshAfter == null || queryCacheRefreshAfter.isNegative()
+                    ? DEFAULT_QUERY_CACHE_REFRESH_AFTER : queryCacheRefreshAfter;
+            return this;
+        }
+
+        /**
+         * Size from which values written with the large value methods are compressed, smaller values are stored as they are
+         *
+         * @param largeValueThreshold
+         * @return Builder
+         */
+        public Builder setLargeValueThreshold(int largeValueThreshold) {
+            this.largeValueThreshold = largeValueThreshold < 0 ? DEFAULT_LARGE_VALUE_THRESHOLD : largeValueThreshold;
+            return this;
+        }
+
+        /**
+         * Max bytes of a large value stored in the entity itself, max 1,000,000. Larger values are split into chunk entities.
+         *
+         * @param largeValueMaxInlineBytes
+         * @return Builder
+         */
+        public Builder setLargeValueMaxInlineBytes(int largeValueMaxInlineBytes) {
+            this.largeValueMaxInlineBytes = largeValueMaxInlineBytes > MAX_LARGE_VALUE_INLINE_BYTES || largeValueMaxInlineBytes < 1
+                    ? DEFAULT_LARGE_VALUE_MAX_INLINE_BYTES : largeValueMaxInlineBytes;
+            return this;
+        }
+
+        /**
+         * Writes per second the repository starts with, zero disables the write rate limit.
+         * WriteRateLimiter.RAMP_UP_INITIAL_RATE follows the 500/50/5 rule for new kinds and bulk imports.
+         *
+         * @param writeInitialRate
+         * @return Builder
+         */
+        public Builder setWriteInitialRate(double writeInitialRate) {
+            this.writeInitialRate = writeInitialRate < 0 || Double.isNaN(writeInitialRate) ? 0 : writeInitialRate;
+            return this;
+        }
+
+        /**
+         * Time after which the write rate ceiling grows by half, zero lets the rate grow without a ceiling
+         *
+         * @param writeRampUpInterval
+         * @return Builder
+         */
+        public Builder setWriteRampUpInterval(Duration writeRampUpInterval) {
+            this.writeRampUpInterval = writeRampUpInterval == null || writeRampUpInterval.isNegative()
+                    ? WriteRateLimiter.RAMP_UP_INTERVAL : writeRampUpInterval;
+            return this;
+        }
+
+        /**
+         * Time a write may take before the write rate is halved, like after a throttled write
+         *
+         * @param writeLatencyTarget
+         * @return Builder
+         */
+        public Builder setWriteLatencyTarget(Duration writeLatencyTarget) {
+            this.writeLatencyTarget = writeLatencyTarget == null || writeLatencyTarget.isNegative() || writeLatencyTarget.isZero()
+                    ? DEFAULT_WRITE_LATENCY_TARGET : writeLatencyTarget;
+            return this;
+        }
+
+        public RepositoryOptions build() {
+            return new RepositoryOptions(this);
+        }
+    }
+}
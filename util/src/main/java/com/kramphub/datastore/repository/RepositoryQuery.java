@@ -0,0 +1,230 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.EntityQuery;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.StructuredQuery.OrderBy;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.kind.BaseKind;
+import com.kramphub.datastore.query.KeyRange;
+import com.kramphub.datastore.query.QueryPage;
+import com.kramphub.datastore.query.QueryParameter;
+import com.kramphub.datastore.query.QueryValues;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Fluent query on the kind of a DatastoreRepository, with properties taken from the BaseKind of the kind:
+ * <pre>
+ * repository.query()
+ *         .where(ExampleKind.FIELD).eq("value")
+ *         .orderBy(ExampleKind.ID)
+ *         .limit(10)
+ *         .list();
+ * </pre>
+ * Filter values can be QueryParameters, such a query is compiled once with template()
+ * and executed with the parameter values in the order the parameters were added.
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class RepositoryQuery<T extends BaseEntity> {
+    private final DatastoreRepository<T> repository;
+    private final List<Condition> conditions = new ArrayList<>();
+    private final List<OrderBy> orders = new ArrayList<>();
+    private Key ancestor;
+    private Integer limit;
+
+    RepositoryQuery(DatastoreRepository<T> repository, Integer limit) {
+        this.repository = repository;
+        this.limit = limit;
+    }
+
+    /**
+     * This method starts a filter on the property
+     *
+     * @param field property of the repository kind
+     * @return Where to complete with the operator and value
+     * @throws IllegalArgumentException if the field belongs to another kind
+     */
+    public Where where(BaseKind field) {
+        return new Where(property(field));
+    }
+
+    /**
+     * This method starts a filter on the entity key
+     *
+     * @return Where to complete with the operator and value
+     */
+    public Where whereKey() {
+        return new Where(KeyRange.KEY_PROPERTY);
+    }
+
+    /**
+     * This method restricts the query to descendants of the ancestor
+     *
+     * @param ancestor
+     * @return RepositoryQuery
+     */
+    public RepositoryQuery<T> ancestor(Key ancestor) {
+        this.ancestor = ancestor;
+        return this;
+    }
+
+    /**
+     * This method adds an ascending order on the property
+     *
+     * @param field property of the repository kind
+     * @return RepositoryQuery
+     */
+    public RepositoryQuery<T> orderBy(BaseKind field) {
+        orders.add(OrderBy.asc(property(field)));
+        return this;
+    }
+
+    /**
+     * This method adds a descending order on the property
+     *
+     * @param field property of the repository kind
+     * @return RepositoryQuery
+     */
+    public RepositoryQuery<T> orderByDesc(BaseKind field) {
+        orders.add(OrderBy.desc(property(field)));
+        return this;
+    }
+
+    /**
+     * This method sets the max results, the default is the default query limit of the repository
+     *
+     * @param limit null for no limit
+     * @return RepositoryQuery
+     */
+    public RepositoryQuery<T> limit(Integer limit) {
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * This method compiles the query into a reusable template.
+     * The Datastore query objects are built once, only parameterized filters are built per execution.
+     *
+     * @return QueryTemplate
+     * @throws IllegalArgumentException if inequality filters are on more than one property
+     *                                  or the first order is not on the inequality property
+     */
+    public QueryTemplate<T> template() {
+        return new QueryTemplate<>(repository, new ArrayList<>(conditions), new ArrayList<>(orders), ancestor, limit);
+    }
+
+    /**
+     * @return the Datastore query
+     * @throws IllegalArgumentException if the query has parameters
+     */
+    public EntityQuery build() {
+        return template().bind();
+    }
+
+    /**
+     * @see DatastoreRepository#executeQuery
+     */
+    public List<T> list() {
+        return template().list();
+    }
+
+    /**
+     * @see DatastoreRepository#stream
+     */
+    public Stream<T> stream() {
+        return template().stream();
+    }
+
+    /**
+     * @see DatastoreRepository#fetchPage
+     */
+    public QueryPage<T> fetchPage(String cursorToken) {
+        return template().fetchPage(cursorToken);
+    }
+
+    /**
+     * @see DatastoreRepository#executeKeyQuery
+     */
+    public List<Key> keys() {
+        return template().keys();
+    }
+
+    private String property(BaseKind field) {
+        if (field == null) {
+            throw new IllegalArgumentException("Property must not be null");
+        }
+        if (!repository.kindIdentifier.equals(field.getKindIdentifier())) {
+            throw new IllegalArgumentException("Property " + field.value() + " belongs to kind " + field.getKindIdentifier()
+                    + ", not to " + repository.kindIdentifier);
+        }
+        return field.value();
+    }
+
+    /**
+     * Filter on a property waiting for its operator and value
+     */
+    public class Where {
+        private final String property;
+
+        private Where(String property) {
+            this.property = property;
+        }
+
+        public RepositoryQuery<T> eq(Object value) {
+            return add(Operator.EQUAL, value);
+        }
+
+        public RepositoryQuery<T> lt(Object value) {
+            return add(Operator.LESS_THAN, value);
+        }
+
+        public RepositoryQuery<T> le(Object value) {
+            return add(Operator.LESS_THAN_OR_EQUAL, value);
+        }
+
+        public RepositoryQuery<T> gt(Object value) {
+            return add(Operator.GREATER_THAN, value);
+        }
+
+        public RepositoryQuery<T> ge(Object value) {
+            return add(Operator.GREATER_THAN_OR_EQUAL, value);
+        }
+
+        private RepositoryQuery<T> add(Operator operator, Object value) {
+            conditions.add(new Condition(property, operator,
+                    value instanceof QueryParameter ? value : QueryValues.toValue(value)));
+            return RepositoryQuery.this;
+        }
+    }
+
+    enum Operator {
+        EQUAL,
+        LESS_THAN,
+        LESS_THAN_OR_EQUAL,
+        GREATER_THAN,
+        GREATER_THAN_OR_EQUAL;
+
+        boolean isInequality() {
+            return this != EQUAL;
+        }
+    }
+
+    /**
+     * Property filter, the value is a Datastore Value or a QueryParameter
+     */
+    static final class Condition {
+        final String property;
+        final Operator operator;
+        final Object value;
+
+        Condition(String property, Operator operator, Object value) {
+            this.property = property;
+            this.operator = operator;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.kramphub.datastore.repository;
+
+import com.google.cloud.datastore.Entity;
+import com.google.cloud.datastore.Key;
+import com.google.cloud.datastore.StructuredQuery;
+import com.google.cloud.datastore.Transaction;
+import com.kramphub.datastore.entity.BaseEntity;
+import com.kramphub.datastore.exception.EntityNotFoundException;
+import com.kramphub.datastore.exception.InvalidEntityException;
+
+import java.util.*;
+
+import static com.kramphub.datastore.util.ValidationUtil.validateEntitiesOrThrow;
+import static com.kramphub.datastore.util.ValidationUtil.validateEntityOrThrow;
+
+/**
+ * Typed view of a Datastore transaction, handed to the work of DatastoreRepository#runInTransaction.
+ * Reads see a consistent snapshot and bypass the entity cache, writes are buffered by the transaction and
+ * applied atomically on commit. Queries inside a transaction must be ancestor queries.
+ * The view is only valid inside the work it was handed to, the work may run more than once on contention.
+ *
+ * @param <T> mapped entity type
+ */
+@SuppressWarnings("unused")
+public class TransactionalRepository<T extends BaseEntity> {
+    private final DatastoreRepository<T> repository;
+    private final Transaction transaction;
+    private final boolean readOnly;
+    private final int attempt;
+    private final Map<Key, Entity> mutations = new LinkedHashMap<>();
+
+    TransactionalRepository(DatastoreRepository<T> repository, Transaction transaction, boolean readOnly, int attempt) {
+        this.repository = repository;
+        this.transaction = transaction;
+        this.readOnly = readOnly;
+        this.attempt = attempt;
+    }
+
+    /**
+     * This method finds entity by their given keyId in the transaction and maps it
+     *
+     * @param id
+     * @return Mapped entity if found
+     * @throws InvalidEntityException  mapping failed
+     * @throws EntityNotFoundException if not found
+     */
+    public T findById(Long id) throws InvalidEntityException, EntityNotFoundException {
+        return findByKey(repository.keyFactory.newKey(id));
+    }
+
+    /**
+     * This method finds entity by their given keyName in the transaction and maps it
+     *
+     * @param name
+     * @return Mapped entity if found
+     * @throws InvalidEntityException  mapping failed
+     * @throws EntityNotFoundException if not found
+     */
+    public T findById(String name) throws InvalidEntityException, EntityNotFoundException {
+        return findByKey(repository.keyFactory.newKey(name));
+    }
+
+    /**
+     * This method finds entity by the given key in the transaction and maps it, e.g. for keys with an ancestor
+     *
+     * @param key
+     * @return Mapped entity if found
+     * @throws InvalidEntityException  mapping failed
+     * @throws EntityNotFoundException if not found
+     */
+    public T findByKey(Key key) throws InvalidEntityException, EntityNotFoundException {
+        return repository.map(transaction.get(key));
+    }
+
+    /**
+     * This method returns the raw entity in the transaction, to modify and write it back
+     *
+     * @param key
+     * @return Entity, null if not found
+     */
+    public Entity get(Key key) {
+        return transaction.get(key);
+    }
+
+    /**
+     * This method executes the ancestor query in the transaction and maps the results
+     *
+     * @param structuredQuery must have an ancestor filter
+     * @return Mapped entity list
+     */
+    public List<T> executeQuery(StructuredQuery<Entity> structuredQuery) {
+        return repository.parseQueryResult(transaction.run(structuredQuery));
+    }
+
+    /**
+     * This method adds the entity in the transaction, the commit fails if it already exists
+     *
+     * @param entity
+     * @throws EntityNotFoundException if entity is null or has no key
+     */
+    public void add(Entity entity) throws EntityNotFoundException {
+        validateEntityOrThrow(entity);
+        checkWritable();
+        transaction.add(entity);
+        mutations.put(entity.getKey(), entity);
+    }
+
+    /**
+     * This method saves or updates the entity in the transaction
+     *
+     * @param entity
+     * @throws EntityNotFoundException if entity is null or has no key
+     */
+    public void upsert(Entity entity) throws EntityNotFoundException {
+        upsert(Collections.singletonList(entity));
+    }
+
+    /**
+     * This method saves or updates the entities in the transaction
+     *
+     * @param entities
+     * @throws EntityNotFoundException if entity is null or has no key
+     */
+    public void upsert(Collection<Entity> entities) throws EntityNotFoundException {
+        if (entities == null || entities.isEmpty()) {
+            return;
+        }
+        validateEntitiesOrThrow(entities);
+        checkWritable();
+        transaction.put(entities.toArray(new Entity[0]));
+        entities.forEach(entity -> mutations.put(entity.getKey(), entity));
+    }
+
+    /**
+     * This method updates the entity in the transaction, the commit fails if it does not exist
+     *
+     * @param entity
+     * @throws EntityNotFoundException if entity is null or has no key
+     */
+    public void update(Entity entity) throws EntityNotFoundException {
+        validateEntityOrThrow(entity);
+        checkWritable();
+        transaction.update(entity);
+        mutations.put(entity.getKey(), entity);
+    }
+
+    /**
+     * This method deletes the entity by the given key in the transaction
+     *
+     * @param key
+     * @throws EntityNotFoundException if key is null or has no key
+     */
+    public void delete(Key key) throws EntityNotFoundException {
+        delete(Collections.singletonList(key));
+    }
+
+    /**
+     * This method deletes the entities by the given keys in the transaction
+     *
+     * @param keys
+     * @throws EntityNotFoundException if key is null or has no key
+     */
+    public void delete(Collection<Key> keys) throws EntityNotFoundException {
+        if (keys == null || keys.isEmpty()) {
+            return;
+        }
+        for (Key key : keys) {
+            if (key == null || key.getNameOrId() == null || ("" + key.getNameOrId()).isEmpty())
+                throw new EntityNotFoundException("key");
+        }
+        checkWritable();
+        transaction.delete(keys.toArray(new Key[0]));
+        keys.forEach(key -> mutations.put(key, null));
+    }
+
+    /**
+     * @return attempt the work runs in, 1 for the first
+     */
+    public int getAttempt() {
+        return attempt;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    /**
+     * @return the underlying Datastore transaction
+     */
+    public Transaction getTransaction() {
+        return transaction;
+    }
+
+    /**
+     * @return written entities by key in write order, null values for deleted keys
+     */
+    Map<Key, Entity> getMutations() {
+        return mutations;
+    }
+
+    private void checkWritable() {
+        if (readOnly) {
+            throw new IllegalStateException("Writes are not allowed in a read only transaction");
+        }
+    }
+}